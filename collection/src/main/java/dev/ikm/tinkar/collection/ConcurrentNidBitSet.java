@@ -0,0 +1,289 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.collection;
+
+import org.eclipse.collections.api.block.procedure.primitive.IntProcedure;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A concurrent set of nids stored as a bitset, indexed by the offset of the nid from {@code Integer.MIN_VALUE}.
+ * <p>
+ * The bits are held in spines of {@link AtomicLongArray} words that are only allocated when a nid in their range
+ * is added, so sparse sets stay small. Adds and removes are lock free; only allocating a new spine takes a lock.
+ * Iteration is in ascending nid order and does not allocate.
+ */
+public class ConcurrentNidBitSet {
+    private static final int WORD_BITS_SHIFT = 6;
+    private static final int SPINE_WORDS_SHIFT = 8;
+    private static final int SPINE_WORDS = 1 << SPINE_WORDS_SHIFT;
+    private static final int SPINE_BITS_SHIFT = WORD_BITS_SHIFT + SPINE_WORDS_SHIFT;
+    private static final int INITIAL_SPINE_CAPACITY = 16;
+    /**
+     * Suffix of the temporary file that {@link #write(File)} writes before moving it over the target file.
+     */
+    public static final String TEMP_SUFFIX = ".tmp";
+
+    private final Object spineLock = new Object();
+    private volatile AtomicReferenceArray<AtomicLongArray> spines;
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicBoolean changed = new AtomicBoolean();
+
+    public ConcurrentNidBitSet() {
+        this.spines = new AtomicReferenceArray<>(INITIAL_SPINE_CAPACITY);
+    }
+
+    /**
+     * Maps nids in ascending order onto unsigned bit indexes, so Integer.MIN_VALUE is bit 0.
+     */
+    private static int bitIndex(int nid) {
+        return nid ^ Integer.MIN_VALUE;
+    }
+
+    private static int spineIndex(int bitIndex) {
+        return bitIndex >>> SPINE_BITS_SHIFT;
+    }
+
+    private static int wordIndex(int bitIndex) {
+        return (bitIndex >>> WORD_BITS_SHIFT) & (SPINE_WORDS - 1);
+    }
+
+    private AtomicLongArray spineForRead(int spineIndex) {
+        AtomicReferenceArray<AtomicLongArray> spinesNow = this.spines;
+        if (spineIndex < spinesNow.length()) {
+            return spinesNow.get(spineIndex);
+        }
+        return null;
+    }
+
+    private AtomicLongArray spineForWrite(int spineIndex) {
+        AtomicLongArray spine = spineForRead(spineIndex);
+        if (spine != null) {
+            return spine;
+        }
+        synchronized (spineLock) {
+            AtomicReferenceArray<AtomicLongArray> spinesNow = this.spines;
+            if (spineIndex >= spinesNow.length()) {
+                int newLength = Math.max(spineIndex + 1, spinesNow.length() * 2);
+                AtomicReferenceArray<AtomicLongArray> newSpines = new AtomicReferenceArray<>(newLength);
+                for (int i = 0; i < spinesNow.length(); i++) {
+                    newSpines.set(i, spinesNow.get(i));
+                }
+                this.spines = newSpines;
+                spinesNow = newSpines;
+            }
+            spine = spinesNow.get(spineIndex);
+            if (spine == null) {
+                spine = new AtomicLongArray(SPINE_WORDS);
+                spinesNow.set(spineIndex, spine);
+            }
+            return spine;
+        }
+    }
+
+    /**
+     * @return true if the nid was not already in the set.
+     */
+    public boolean add(int nid) {
+        int bitIndex = bitIndex(nid);
+        AtomicLongArray spine = spineForWrite(spineIndex(bitIndex));
+        int wordIndex = wordIndex(bitIndex);
+        long mask = 1L << bitIndex;
+        long word = spine.get(wordIndex);
+        while ((word & mask) == 0) {
+            long witness = spine.compareAndExchange(wordIndex, word, word | mask);
+            if (witness == word) {
+                size.incrementAndGet();
+                changed.set(true);
+                return true;
+            }
+            word = witness;
+        }
+        return false;
+    }
+
+    /**
+     * @return true if the nid was in the set.
+     */
+    public boolean remove(int nid) {
+        int bitIndex = bitIndex(nid);
+        AtomicLongArray spine = spineForRead(spineIndex(bitIndex));
+        if (spine == null) {
+            return false;
+        }
+        int wordIndex = wordIndex(bitIndex);
+        long mask = 1L << bitIndex;
+        long word = spine.get(wordIndex);
+        while ((word & mask) != 0) {
+            long witness = spine.compareAndExchange(wordIndex, word, word & ~mask);
+            if (witness == word) {
+                size.decrementAndGet();
+                changed.set(true);
+                return true;
+            }
+            word = witness;
+        }
+        return false;
+    }
+
+    public boolean contains(int nid) {
+        int bitIndex = bitIndex(nid);
+        AtomicLongArray spine = spineForRead(spineIndex(bitIndex));
+        return spine != null && (spine.get(wordIndex(bitIndex)) & (1L << bitIndex)) != 0;
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    public boolean isEmpty() {
+        return size.get() == 0;
+    }
+
+    public boolean notEmpty() {
+        return size.get() != 0;
+    }
+
+    /**
+     * @return true if the set changed since it was last read or written.
+     */
+    public boolean changed() {
+        return changed.get();
+    }
+
+    /**
+     * Pass each nid in the set to the procedure, in ascending nid order.
+     */
+    public void forEach(IntProcedure procedure) {
+        AtomicReferenceArray<AtomicLongArray> spinesNow = this.spines;
+        for (int spineIndex = 0; spineIndex < spinesNow.length(); spineIndex++) {
+            AtomicLongArray spine = spinesNow.get(spineIndex);
+            if (spine != null) {
+                int spineBase = spineIndex << SPINE_BITS_SHIFT;
+                for (int wordIndex = 0; wordIndex < SPINE_WORDS; wordIndex++) {
+                    long word = spine.get(wordIndex);
+                    int wordBase = spineBase | (wordIndex << WORD_BITS_SHIFT);
+                    while (word != 0) {
+                        int bit = Long.numberOfTrailingZeros(word);
+                        procedure.value((wordBase | bit) ^ Integer.MIN_VALUE);
+                        word &= word - 1;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the nids in the set, in ascending order.
+     */
+    public int[] toArray() {
+        int[] nids = new int[size.get()];
+        int[] count = new int[1];
+        forEach(nid -> {
+            if (count[0] == nids.length) {
+                return;
+            }
+            nids[count[0]++] = nid;
+        });
+        if (count[0] < nids.length) {
+            int[] trimmed = new int[count[0]];
+            System.arraycopy(nids, 0, trimmed, 0, count[0]);
+            return trimmed;
+        }
+        return nids;
+    }
+
+    public void clear() {
+        synchronized (spineLock) {
+            this.spines = new AtomicReferenceArray<>(INITIAL_SPINE_CAPACITY);
+            this.size.set(0);
+            this.changed.set(true);
+        }
+    }
+
+    /**
+     * Write the populated spines of this set to the file. The spines are written to a temporary file that is
+     * forced to disk and then moved over the file, so a crash while writing leaves the previous file in place.
+     */
+    public void write(File file) throws IOException {
+        file.getParentFile().mkdirs();
+        // Clear before writing so concurrent additions are written next time.
+        changed.set(false);
+        AtomicReferenceArray<AtomicLongArray> spinesNow = this.spines;
+        File tempFile = new File(file.getParentFile(), file.getName() + TEMP_SUFFIX);
+        try (FileOutputStream fos = new FileOutputStream(tempFile);
+             DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(fos))) {
+            int populatedSpines = 0;
+            for (int spineIndex = 0; spineIndex < spinesNow.length(); spineIndex++) {
+                if (spinesNow.get(spineIndex) != null) {
+                    populatedSpines++;
+                }
+            }
+            dos.writeInt(populatedSpines);
+            for (int spineIndex = 0; spineIndex < spinesNow.length() && populatedSpines > 0; spineIndex++) {
+                AtomicLongArray spine = spinesNow.get(spineIndex);
+                if (spine != null) {
+                    populatedSpines--;
+                    dos.writeInt(spineIndex);
+                    for (int wordIndex = 0; wordIndex < SPINE_WORDS; wordIndex++) {
+                        dos.writeLong(spine.get(wordIndex));
+                    }
+                }
+            }
+            dos.flush();
+            fos.getFD().sync();
+        } catch (IOException | RuntimeException e) {
+            changed.set(true);
+            throw e;
+        }
+        Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * @return a set with the spines read from the file.
+     */
+    public static ConcurrentNidBitSet read(File file) throws IOException {
+        ConcurrentNidBitSet nidBitSet = new ConcurrentNidBitSet();
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            int populatedSpines = dis.readInt();
+            int size = 0;
+            for (int i = 0; i < populatedSpines; i++) {
+                int spineIndex = dis.readInt();
+                AtomicLongArray spine = nidBitSet.spineForWrite(spineIndex);
+                for (int wordIndex = 0; wordIndex < SPINE_WORDS; wordIndex++) {
+                    long word = dis.readLong();
+                    spine.set(wordIndex, word);
+                    size += Long.bitCount(word);
+                }
+            }
+            nidBitSet.size.set(size);
+        }
+        return nidBitSet;
+    }
+}
@@ -58,6 +58,16 @@ protected AtomicReferenceArray<byte[]> readSpine(int spineIndex) {
         return new AtomicReferenceArray<>(spineSize);
     }
 
+    @Override
+    protected boolean readsElementsWithoutSpine() {
+        return this.byteArrayStore.readsValuesWithoutSpine();
+    }
+
+    @Override
+    protected byte[] readElement(int spineIndex, int indexInSpine) {
+        return this.byteArrayStore.getBytes(spineIndex, indexInSpine);
+    }
+
     public boolean write() {
 
         try {
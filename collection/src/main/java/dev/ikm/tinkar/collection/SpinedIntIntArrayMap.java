@@ -74,7 +74,13 @@ public boolean write() {
             if (spineChanged) {
                 wroteAny.set(true);
                 changedSpineIndexes.remove(key);
-                this.intIntArrayStore.put(key, spines.getSpine(key));
+                try {
+                    this.intIntArrayStore.put(key, spines.getSpine(key));
+                } catch (RuntimeException e) {
+                    // Not written, so the next write tries the spine again.
+                    changedSpineIndexes.add(key);
+                    throw e;
+                }
             }
         }
         return wroteAny.get();
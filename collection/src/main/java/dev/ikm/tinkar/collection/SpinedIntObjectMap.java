@@ -32,6 +32,7 @@
 import java.util.concurrent.Future;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.function.BinaryOperator;
 import java.util.function.Consumer;
@@ -57,7 +58,11 @@
     // TODO: consider growth strategies instead of just a large array expected to be big enough to hold all the spines...
     private final AtomicReferenceArray<AtomicReferenceArray<E>> spines;
     private final AtomicInteger spineCount = new AtomicInteger();
-    private final boolean[] changedSpineIndexes;
+    /**
+     * One bit per spine index. Bits are set after an element is written, and cleared before a changed spine is
+     * passed to a writer, so a concurrent update during a save leaves its spine marked for the next save.
+     */
+    private final AtomicLongArray changedSpineIndexes;
     private final boolean ephemoral;
     private Function<E, String> elementStringConverter;
 
@@ -66,7 +71,7 @@ public SpinedIntObjectMap() {
         this.maxSpineCount = DEFAULT_MAX_SPINE_COUNT;
         this.spineSize = DEFAULT_SPINE_SIZE;
         this.spines = new AtomicReferenceArray(this.maxSpineCount);
-        this.changedSpineIndexes = new boolean[this.maxSpineCount * this.spineSize];
+        this.changedSpineIndexes = new AtomicLongArray((this.maxSpineCount + Long.SIZE - 1) / Long.SIZE);
         this.spineCount.set(0);
     }
 
@@ -75,7 +80,7 @@ public SpinedIntObjectMap(int spineCount) {
         this.maxSpineCount = DEFAULT_MAX_SPINE_COUNT;
         this.spineSize = DEFAULT_SPINE_SIZE;
         this.spines = new AtomicReferenceArray(this.maxSpineCount);
-        this.changedSpineIndexes = new boolean[this.maxSpineCount * this.spineSize];
+        this.changedSpineIndexes = new AtomicLongArray((this.maxSpineCount + Long.SIZE - 1) / Long.SIZE);
         this.spineCount.set(spineCount);
     }
 
@@ -156,6 +161,37 @@ protected AtomicReferenceArray<E> readSpine(int spineIndex) {
         throw new IllegalStateException("Subclass must implement readSpine");
     }
 
+    /**
+     * @return true if the subclass can read single elements, and transient copies of spines, from its backing
+     * store, so that spines only need to become resident when they are written.
+     */
+    protected boolean readsElementsWithoutSpine() {
+        return false;
+    }
+
+    /**
+     * Read a single element from the backing store. Only called for spines that are not resident, when
+     * {@link #readsElementsWithoutSpine()} returns true.
+     */
+    protected E readElement(int spineIndex, int indexInSpine) {
+        throw new UnsupportedOperationException("Subclass must implement readElement");
+    }
+
+    /**
+     * @return the resident spine, or if the backing store can read spines on demand, a transient copy of
+     * the spine that is not retained after the scan.
+     */
+    private AtomicReferenceArray<E> spineForScan(int spineIndex) {
+        if (readsElementsWithoutSpine()) {
+            AtomicReferenceArray<E> spine = this.spines.get(spineIndex);
+            if (spine != null) {
+                return spine;
+            }
+            return readSpine(spineIndex);
+        }
+        return getSpine(spineIndex);
+    }
+
     private AtomicReferenceArray<E> newSpine(int spineKey) {
         return makeNewSpine(spineKey);
     }
@@ -170,15 +206,50 @@ public boolean forEachChangedSpine(ObjIntConsumer<AtomicReferenceArray<E>> consu
         boolean foundChange = false;
         int spineCountNow = spineCount.get();
         for (int spineIndex = 0; spineIndex < spineCountNow; spineIndex++) {
-            if (changedSpineIndexes[spineIndex]) {
+            if (clearSpineChanged(spineIndex)) {
                 foundChange = true;
-                consumer.accept(getSpine(spineIndex), spineIndex);
-                changedSpineIndexes[spineIndex] = false;
+                try {
+                    consumer.accept(getSpine(spineIndex), spineIndex);
+                } catch (RuntimeException | Error e) {
+                    // Not written, so the next write tries the spine again.
+                    markSpineChanged(spineIndex);
+                    throw e;
+                }
             }
         }
         return foundChange;
     }
 
+    private void markSpineChanged(int spineIndex) {
+        long mask = 1L << spineIndex;
+        int wordIndex = spineIndex >>> 6;
+        long word = changedSpineIndexes.get(wordIndex);
+        while ((word & mask) == 0) {
+            long witness = changedSpineIndexes.compareAndExchange(wordIndex, word, word | mask);
+            if (witness == word) {
+                return;
+            }
+            word = witness;
+        }
+    }
+
+    /**
+     * @return true if the spine was marked as changed.
+     */
+    private boolean clearSpineChanged(int spineIndex) {
+        long mask = 1L << spineIndex;
+        int wordIndex = spineIndex >>> 6;
+        long word = changedSpineIndexes.get(wordIndex);
+        while ((word & mask) != 0) {
+            long witness = changedSpineIndexes.compareAndExchange(wordIndex, word, word & ~mask);
+            if (witness == word) {
+                return true;
+            }
+            word = witness;
+        }
+        return false;
+    }
+
     public int getSpineCount() {
         return spineCount.get();
     }
@@ -196,7 +267,7 @@ public void printToConsole() {
     }
 
     private int forEachOnSpine(ObjIntConsumer<E> consumer, int spineIndex) {
-        AtomicReferenceArray<E> spine = getSpine(spineIndex);
+        AtomicReferenceArray<E> spine = spineForScan(spineIndex);
         int index = spineIndex * spineSize;
         int processed = 0;
         for (int indexInSpine = 0; indexInSpine < spineSize; indexInSpine++) {
@@ -217,8 +288,11 @@ private int forEachOnSpine(ObjIntConsumer<E> consumer, int spineIndex) {
 
     public final boolean compareAndSet(int index, E expectedValue, E newValue) {
         int spineIndex = toSpineIndex(index);
-        this.changedSpineIndexes[spineIndex] = true;
-        return getSpine(spineIndex).compareAndSet(toIndexInSpine(index), expectedValue, newValue);
+        boolean set = getSpine(spineIndex).compareAndSet(toIndexInSpine(index), expectedValue, newValue);
+        if (set) {
+            markSpineChanged(spineIndex);
+        }
+        return set;
     }
 
     /**
@@ -227,9 +301,9 @@ public final boolean compareAndSet(int index, E expectedValue, E newValue) {
     @Override
     public final boolean put(int index, E element) {
         int spineIndex = toSpineIndex(index);
-        this.changedSpineIndexes[spineIndex] = true;
-        return getSpine(spineIndex).getAndSet(toIndexInSpine(index), element) == null;
-
+        boolean added = getSpine(spineIndex).getAndSet(toIndexInSpine(index), element) == null;
+        markSpineChanged(spineIndex);
+        return added;
     }
 
     /**
@@ -238,8 +312,9 @@ public final boolean put(int index, E element) {
     @Override
     public final E getAndSet(int index, E element) {
         int spineIndex = toSpineIndex(index);
-        this.changedSpineIndexes[spineIndex] = true;
-        return getSpine(spineIndex).getAndSet(toIndexInSpine(index), element);
+        E previous = getSpine(spineIndex).getAndSet(toIndexInSpine(index), element);
+        markSpineChanged(spineIndex);
+        return previous;
     }
     private final int toSpineIndex(int index) {
         if (index == 0) {
@@ -265,7 +340,15 @@ private final int toIndexInSpine(int index) {
      */
     @Override
     public final E get(int index) {
-        return getSpine(toSpineIndex(index)).get(toIndexInSpine(index));
+        int spineIndex = toSpineIndex(index);
+        if (readsElementsWithoutSpine() && spineIndex < spineCount.get()) {
+            AtomicReferenceArray<E> spine = this.spines.get(spineIndex);
+            if (spine == null) {
+                return readElement(spineIndex, toIndexInSpine(index));
+            }
+            return spine.get(toIndexInSpine(index));
+        }
+        return getSpine(spineIndex).get(toIndexInSpine(index));
     }
 
     /**
@@ -292,7 +375,7 @@ public final int size() {
         int size = 0;
         int currentSpineCount = this.spineCount.get();
         for (int spineIndex = 0; spineIndex < currentSpineCount; spineIndex++) {
-            AtomicReferenceArray<E> spine = getSpine(spineIndex);
+            AtomicReferenceArray<E> spine = spineForScan(spineIndex);
             for (int indexInSpine = 0; indexInSpine < spineSize; indexInSpine++) {
                 E element = spine.get(indexInSpine);
                 if (element != null) {
@@ -326,10 +409,10 @@ public final void forEach(ObjIntConsumer<E> consumer) {
     @Override
     public final E accumulateAndGet(int index, E x, BinaryOperator<E> accumulatorFunction) {
         int spineIndex = toSpineIndex(index);
-        this.changedSpineIndexes[spineIndex] = true;
-        return getSpine(toSpineIndex(index))
+        E result = getSpine(spineIndex)
                 .accumulateAndGet(toIndexInSpine(index), x, accumulatorFunction);
-
+        markSpineChanged(spineIndex);
+        return result;
     }
 
     public final void forEachParallel(ObjIntConsumer<E> consumer) throws ExecutionException, InterruptedException {
@@ -389,7 +472,7 @@ private void doParallelWork(ObjIntConsumer<E> consumer, int[][] nidLists) {
                         int nid = nidList[nidListIndex];
                         while (nid != Integer.MIN_VALUE) {
                             int spineIndex = (nid + Integer.MAX_VALUE) / spineSize;
-                            AtomicReferenceArray<E> spine = getSpine(spineIndex);
+                            AtomicReferenceArray<E> spine = spineForScan(spineIndex);
                             while (nid != Integer.MIN_VALUE &&
                                     (nid + Integer.MAX_VALUE) / spineSize == spineIndex) {
                                 int indexInSpine = (nid + Integer.MAX_VALUE) % spineSize;
@@ -29,4 +29,21 @@ public interface ByteArrayStore {
         int getSpineCount();
 
         void writeSpineCount(int spineCount);
+
+        /**
+         * @return true if this store can read a single value with {@link #getBytes(int, int)} without
+         * the caller holding the whole spine on heap.
+         */
+        default boolean readsValuesWithoutSpine() {
+                return false;
+        }
+
+        /**
+         * Read a single value from a spine in the store.
+         *
+         * @return the value, or null if there is no value at the index.
+         */
+        default byte[] getBytes(int spineIndex, int indexInSpine) {
+                throw new UnsupportedOperationException();
+        }
 }
@@ -0,0 +1,346 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.common.service;
+
+import dev.ikm.tinkar.common.util.uuid.UuidUtil;
+import org.eclipse.collections.api.factory.Sets;
+import org.eclipse.collections.api.list.ImmutableList;
+import org.eclipse.collections.api.set.MutableSet;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.function.IntPredicate;
+
+import static dev.ikm.tinkar.common.service.PrimitiveDataService.STAMP_DATA_TYPE;
+
+/**
+ * Merge engine behind {@link PrimitiveDataService#merge(byte[], byte[])}.
+ * <p>
+ * Both byte arrays are parsed into slices of (array, offset, length) for the chronology and each version, without
+ * copying. Versions are deduplicated by stamp nid, or for stamps by content hash and {@link Arrays#equals(byte[],
+ * int, int, byte[], int, int)}. Only the slice indexes are sorted, and the result is written straight into a single
+ * presized array. When the merged result would be identical to the new bytes, as when a new version is appended to
+ * an existing chronology, the new bytes are returned without writing anything.
+ * <p>
+ * Entity byte layout: int array count, then the chronology array as int size, byte entity format, chronology bytes,
+ * int version count; then each version array as int size followed by the version bytes.
+ */
+final class EntityBytesMerge {
+    // Entity format byte + version count int, written around the chronology bytes and included in its array size.
+    private static final int CHRONOLOGY_OVERHEAD = 5;
+
+    private final byte[][] arrays;
+    private final int[] offsets;
+    private final int[] lengths;
+    private final int[] hashes;
+    private final IntPredicate canceledStampNid;
+    private int size;
+    // Stamp nids of added versions, stored as (1L << 32) | stampNid so that 0 marks an empty slot.
+    private final long[] stampTable;
+
+    private EntityBytesMerge(int capacity, IntPredicate canceledStampNid) {
+        this.canceledStampNid = canceledStampNid;
+        this.arrays = new byte[capacity][];
+        this.offsets = new int[capacity];
+        this.lengths = new int[capacity];
+        this.hashes = new int[capacity];
+        this.stampTable = new long[Integer.highestOneBit(Math.max(capacity, 2)) << 2];
+    }
+
+    /**
+     * @param canceledStampNid tests if a stamp nid is canceled, only called when there are more than two arrays
+     *                         to merge.
+     */
+    static byte[] merge(byte[] oldBytes, byte[] newBytes, IntPredicate canceledStampNid) {
+        byte entityFormat = newBytes[8];
+        EntityBytesMerge merge = new EntityBytesMerge(readInt(newBytes, 0) + readInt(oldBytes, 0), canceledStampNid);
+        // The newer bytes are added first, so a newer version replaces an older version with the same stamp.
+        merge.addSlices(newBytes, entityFormat);
+        merge.addSlices(oldBytes, entityFormat);
+        return merge.mergedBytes(newBytes, entityFormat);
+    }
+
+    private void addSlices(byte[] bytes, byte entityFormat) {
+        boolean stampDataType = bytes[9] == STAMP_DATA_TYPE;
+        int arrayCount = readInt(bytes, 0);
+        int position = 4;
+        for (int i = 0; i < arrayCount; i++) {
+            int arraySize = readInt(bytes, position);
+            position += 4;
+            if (i == 0) {
+                byte localEntityFormat = bytes[position];
+                if (localEntityFormat != entityFormat) {
+                    throw new IllegalStateException("All entities should be the same format. Found: " + entityFormat + " != " + localEntityFormat);
+                }
+                int chronologyLength = arraySize - CHRONOLOGY_OVERHEAD;
+                addIfUnique(bytes, position + 1, chronologyLength);
+                int versionCount = readInt(bytes, position + 1 + chronologyLength);
+                if (versionCount != arrayCount - 1) {
+                    throw new IllegalStateException("Malformed data. versionCount: " +
+                            versionCount + " arrayCount: " + arrayCount);
+                }
+                // Version count is not retained as the version count may change as a result of merge.
+                position += arraySize;
+            } else {
+                if (stampDataType) {
+                    addIfUnique(bytes, position, arraySize);
+                } else if (addStampNid(readInt(bytes, position + 1))) {
+                    // A version with the same stamp from newer bytes is already added. There should be
+                    // no concurrent editing on versions with the same stamp.
+                    add(bytes, position, arraySize, 0);
+                }
+                position += arraySize;
+            }
+        }
+    }
+
+    private void addIfUnique(byte[] bytes, int offset, int length) {
+        int hash = 1;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + bytes[i];
+        }
+        for (int i = 0; i < size; i++) {
+            if (hashes[i] == hash && Arrays.equals(arrays[i], offsets[i], offsets[i] + lengths[i],
+                    bytes, offset, offset + length)) {
+                return;
+            }
+        }
+        add(bytes, offset, length, hash);
+    }
+
+    private void add(byte[] bytes, int offset, int length, int hash) {
+        arrays[size] = bytes;
+        offsets[size] = offset;
+        lengths[size] = length;
+        hashes[size] = hash;
+        size++;
+    }
+
+    /**
+     * @return true if the stamp nid was not already added.
+     */
+    private boolean addStampNid(int stampNid) {
+        long entry = (1L << 32) | (stampNid & 0xFFFFFFFFL);
+        int mask = stampTable.length - 1;
+        int slot = (stampNid * 0x9E3779B9) >>> 16 & mask;
+        while (stampTable[slot] != 0) {
+            if (stampTable[slot] == entry) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        stampTable[slot] = entry;
+        return true;
+    }
+
+    private byte[] mergedBytes(byte[] newBytes, byte entityFormat) {
+        int[] order = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        sort(order, new int[size], 0, size);
+        int count = size;
+        if (count > 2) {
+            count = removeCanceledVersions(order, count);
+            count = mergeChronologies(order, count);
+        }
+        if (isSameAs(newBytes, order, count)) {
+            return newBytes;
+        }
+        int totalSize = 4 + CHRONOLOGY_OVERHEAD;
+        for (int i = 0; i < count; i++) {
+            totalSize += 4 + lengths[order[i]];
+        }
+        ByteBuffer output = ByteBuffer.wrap(new byte[totalSize]);
+        output.putInt(count);
+        for (int i = 0; i < count; i++) {
+            int slice = order[i];
+            if (i == 0) {
+                output.putInt(lengths[slice] + CHRONOLOGY_OVERHEAD);
+                output.put(entityFormat);
+                output.put(arrays[slice], offsets[slice], lengths[slice]);
+                output.putInt(count - 1);
+            } else {
+                output.putInt(lengths[slice]);
+                output.put(arrays[slice], offsets[slice], lengths[slice]);
+            }
+        }
+        return output.array();
+    }
+
+    /**
+     * @return true if the ordered slices are exactly the arrays of the new bytes, in the same order.
+     */
+    private boolean isSameAs(byte[] newBytes, int[] order, int count) {
+        if (readInt(newBytes, 0) != count) {
+            return false;
+        }
+        int expectedOffset = 4 + 4 + 1;
+        for (int i = 0; i < count; i++) {
+            int slice = order[i];
+            if (arrays[slice] != newBytes || offsets[slice] != expectedOffset) {
+                return false;
+            }
+            // Skip the version count after the chronology, and the size of the next array.
+            expectedOffset += lengths[slice] + (i == 0 ? 8 : 4);
+        }
+        return true;
+    }
+
+    private int removeCanceledVersions(int[] order, int count) {
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            int slice = order[i];
+            byte[] array = arrays[slice];
+            int offset = offsets[slice];
+            boolean remove = switch (array[offset]) {
+                /*
+                    CONCEPT_VERSION((byte) 4, ConceptVersion.class),
+                    PATTERN_VERSION((byte) 5, PatternVersion.class),
+                    SEMANTIC_VERSION((byte) 6, SemanticVersion.class),
+                    STAMP_VERSION((byte) 25, Stamp.class)
+                 */
+                // Garbage collection for canceled versions...
+                case 4, 5, 6, 25 -> canceledStampNid.test(readInt(array, offset + 1));
+                // Leave all other arrays. Need to retain canceled version if component is a stamp.
+                default -> false;
+            };
+            if (!remove) {
+                order[kept++] = slice;
+            }
+        }
+        return kept;
+    }
+
+    private static boolean isChronology(byte token) {
+        /*
+            CONCEPT_CHRONOLOGY((byte) 1, ConceptChronology.class),
+            PATTERN_CHRONOLOGY((byte) 2, PatternChronology.class),
+            SEMANTIC_CHRONOLOGY((byte) 3, SemanticChronology.class),
+            STAMP(STAMP_DATA_TYPE, Stamp.class)
+        */
+        return switch (token) {
+            case 1, 2, 3, STAMP_DATA_TYPE -> true;
+            default -> false;
+        };
+    }
+
+    /**
+     * If the chronologies differ, as when UUIDs were added, merge them into one chronology with the union of the
+     * UUIDs, placed first.
+     */
+    private int mergeChronologies(int[] order, int count) {
+        int chronologyCount = 0;
+        for (int i = 0; i < count; i++) {
+            if (isChronology(arrays[order[i]][offsets[order[i]]])) {
+                chronologyCount++;
+            }
+        }
+        if (chronologyCount < 2) {
+            return count;
+        }
+        MutableSet<UUID> uuids = Sets.mutable.empty();
+        int firstChronology = -1;
+        int kept = 1;
+        for (int i = 0; i < count; i++) {
+            int slice = order[i];
+            byte[] array = arrays[slice];
+            int position = offsets[slice];
+            if (isChronology(array[position])) {
+                if (firstChronology == -1) {
+                    firstChronology = slice;
+                }
+                // Skip the entity type token and the entity nid.
+                position += 5;
+                int additionalUuidLongs = array[position + 16];
+                long[] uuidLongs = new long[2 + additionalUuidLongs];
+                uuidLongs[0] = readLong(array, position);
+                uuidLongs[1] = readLong(array, position + 8);
+                for (int j = 0; j < additionalUuidLongs; j++) {
+                    uuidLongs[2 + j] = readLong(array, position + 17 + j * 8);
+                }
+                uuids.addAll(UuidUtil.toList(uuidLongs).castToList());
+            } else {
+                order[kept++] = slice;
+            }
+        }
+        ImmutableList<UUID> uuidList = uuids.toImmutableList();
+        byte[] array = arrays[firstChronology];
+        int offset = offsets[firstChronology];
+        int uuidsEnd = offset + 5 + 17 + array[offset + 5 + 16] * 8;
+        int remaining = offset + lengths[firstChronology] - uuidsEnd;
+        ByteBuffer chronology = ByteBuffer.wrap(new byte[5 + 17 + (uuidList.size() - 1) * 16 + remaining]);
+        // Entity type token and entity nid
+        chronology.put(array, offset, 5);
+        chronology.putLong(uuidList.get(0).getMostSignificantBits());
+        chronology.putLong(uuidList.get(0).getLeastSignificantBits());
+        chronology.put((byte) (uuidList.size() * 2 - 2));
+        for (int uuidIndex = 1; uuidIndex < uuidList.size(); uuidIndex++) {
+            chronology.putLong(uuidList.get(uuidIndex).getMostSignificantBits());
+            chronology.putLong(uuidList.get(uuidIndex).getLeastSignificantBits());
+        }
+        chronology.put(array, uuidsEnd, remaining);
+        // Reuse the first chronology's slice for the merged chronology.
+        arrays[firstChronology] = chronology.array();
+        offsets[firstChronology] = 0;
+        lengths[firstChronology] = chronology.capacity();
+        order[0] = firstChronology;
+        return kept;
+    }
+
+    /**
+     * Stable merge sort of slice indexes, comparing the slices as signed bytes, with shorter slices first when
+     * one is a prefix of the other. Entity arrays are usually already ordered, which the run check exploits.
+     */
+    private void sort(int[] order, int[] scratch, int from, int to) {
+        if (to - from < 2) {
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        sort(order, scratch, from, middle);
+        sort(order, scratch, middle, to);
+        if (compare(order[middle - 1], order[middle]) <= 0) {
+            return;
+        }
+        System.arraycopy(order, from, scratch, from, to - from);
+        int left = from;
+        int right = middle;
+        for (int i = from; i < to; i++) {
+            if (right >= to || (left < middle && compare(scratch[left], scratch[right]) <= 0)) {
+                order[i] = scratch[left++];
+            } else {
+                order[i] = scratch[right++];
+            }
+        }
+    }
+
+    private int compare(int slice1, int slice2) {
+        return Arrays.compare(arrays[slice1], offsets[slice1], offsets[slice1] + lengths[slice1],
+                arrays[slice2], offsets[slice2], offsets[slice2] + lengths[slice2]);
+    }
+
+    private static int readInt(byte[] bytes, int position) {
+        return ((bytes[position] & 0xFF) << 24) |
+                ((bytes[position + 1] & 0xFF) << 16) |
+                ((bytes[position + 2] & 0xFF) << 8) |
+                (bytes[position + 3] & 0xFF);
+    }
+
+    private static long readLong(byte[] bytes, int position) {
+        return ((long) readInt(bytes, position) << 32) | (readInt(bytes, position + 4) & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.common.service;
+
+import dev.ikm.tinkar.common.util.thread.LatencyHistogram;
+
+/**
+ * A point in time view of one of the {@link TinkExecutor} pools.
+ *
+ * @param poolName           name of the pool
+ * @param poolSize           current number of threads, or the number of tasks that may run at once on virtual threads
+ * @param activeCount        approximate number of threads running tasks
+ * @param queuedCount        approximate number of tasks waiting to run
+ * @param queueCapacity      maximum number of tasks that may wait, or {@code Integer.MAX_VALUE} if unbounded
+ * @param completedTaskCount approximate number of tasks that have completed
+ * @param rejectedTaskCount  number of tasks the pool rejected, or ran on the submitting thread, because it was full
+ * @param queueLatency       time tasks waited before running
+ * @param runLatency         time tasks took to run
+ */
+public record ExecutorPoolMetrics(String poolName, int poolSize, int activeCount, long queuedCount,
+                                  int queueCapacity, long completedTaskCount, long rejectedTaskCount,
+                                  LatencyHistogram.Snapshot queueLatency, LatencyHistogram.Snapshot runLatency) {
+
+    @Override
+    public String toString() {
+        return poolName + ": pool=" + poolSize + " active=" + activeCount + " queued=" + queuedCount +
+                (queueCapacity == Integer.MAX_VALUE ? "" : "/" + queueCapacity) +
+                " completed=" + completedTaskCount + " rejected=" + rejectedTaskCount +
+                "\n  queue latency: " + queueLatency + "\n  run latency: " + runLatency;
+    }
+}
@@ -15,6 +15,7 @@
  */
 package dev.ikm.tinkar.common.service;
 
+import java.util.List;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadPoolExecutor;
@@ -36,4 +37,14 @@ public interface ExecutorService {
     /** The scheduled executor. */
     ScheduledExecutorService scheduled();
 
+    /** The executor that runs each task on its own virtual thread, for tasks that block on I/O. */
+    default java.util.concurrent.ExecutorService virtualThreadExecutor() {
+        return ioThreadPool();
+    }
+
+    /** Current metrics of each pool. */
+    default List<ExecutorPoolMetrics> metrics() {
+        return List.of();
+    }
+
 }
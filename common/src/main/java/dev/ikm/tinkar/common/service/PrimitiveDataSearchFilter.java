@@ -0,0 +1,74 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.common.service;
+
+import dev.ikm.tinkar.common.id.IntIdSet;
+
+import java.util.function.IntPredicate;
+
+/**
+ * Constraints on the semantics a search may return, applied to each match before the top results are taken, so a
+ * search returns up to its maximum number of results from within scope. A null constraint accepts every value.
+ *
+ * @param patternNids               the patterns of the semantics to return
+ * @param referencedComponentFilter accepts the referenced components of the semantics to return, for example the
+ *                                  descendents of a concept, or components of one type
+ * @param semanticFilter            accepts the semantics to return, for example those with a latest version. It is
+ *                                  tested after the other constraints, since it may be costly.
+ */
+public record PrimitiveDataSearchFilter(IntIdSet patternNids,
+                                        IntPredicate referencedComponentFilter,
+                                        IntPredicate semanticFilter) {
+
+    public static final PrimitiveDataSearchFilter NONE = new PrimitiveDataSearchFilter(null, null, null);
+
+    public PrimitiveDataSearchFilter withPatternNids(IntIdSet patternNids) {
+        return new PrimitiveDataSearchFilter(patternNids, referencedComponentFilter, semanticFilter);
+    }
+
+    /**
+     * @return a filter that also requires the referenced component to pass the given filter
+     */
+    public PrimitiveDataSearchFilter andReferencedComponent(IntPredicate filter) {
+        return new PrimitiveDataSearchFilter(patternNids,
+                referencedComponentFilter == null ? filter : referencedComponentFilter.and(filter), semanticFilter);
+    }
+
+    /**
+     * @return a filter that also requires the semantic to pass the given filter
+     */
+    public PrimitiveDataSearchFilter andSemantic(IntPredicate filter) {
+        return new PrimitiveDataSearchFilter(patternNids, referencedComponentFilter,
+                semanticFilter == null ? filter : semanticFilter.and(filter));
+    }
+
+    public boolean acceptsPattern(int patternNid) {
+        return patternNids == null || patternNids.contains(patternNid);
+    }
+
+    public boolean acceptsReferencedComponent(int referencedComponentNid) {
+        return referencedComponentFilter == null || referencedComponentFilter.test(referencedComponentNid);
+    }
+
+    public boolean acceptsSemantic(int semanticNid) {
+        return semanticFilter == null || semanticFilter.test(semanticNid);
+    }
+
+    public boolean accepts(PrimitiveDataSearchResult result) {
+        return acceptsPattern(result.patternNid()) && acceptsReferencedComponent(result.rcNid())
+                && acceptsSemantic(result.nid());
+    }
+}
@@ -17,29 +17,21 @@
 
 import dev.ikm.tinkar.common.id.PublicId;
 import dev.ikm.tinkar.common.sets.ConcurrentHashSet;
-import dev.ikm.tinkar.common.util.uuid.UuidUtil;
-import io.activej.bytebuf.ByteBuf;
-import io.activej.bytebuf.ByteBufPool;
 import org.eclipse.collections.api.block.procedure.primitive.IntProcedure;
 import org.eclipse.collections.api.factory.Lists;
-import org.eclipse.collections.api.factory.Sets;
 import org.eclipse.collections.api.list.ImmutableList;
 import org.eclipse.collections.api.list.ListIterable;
-import org.eclipse.collections.api.list.MutableList;
-import org.eclipse.collections.api.list.primitive.ByteList;
 import org.eclipse.collections.api.list.primitive.ImmutableIntList;
 import org.eclipse.collections.api.list.primitive.MutableIntList;
-import org.eclipse.collections.api.list.primitive.MutableLongList;
-import org.eclipse.collections.api.set.MutableSet;
+import org.eclipse.collections.api.set.primitive.MutableIntSet;
 import org.eclipse.collections.api.set.primitive.MutableLongSet;
-import org.eclipse.collections.impl.factory.primitive.ByteLists;
 import org.eclipse.collections.impl.factory.primitive.IntLists;
-import org.eclipse.collections.impl.factory.primitive.LongLists;
+import org.eclipse.collections.impl.factory.primitive.IntSets;
 import org.eclipse.collections.impl.factory.primitive.LongSets;
 
-import java.io.IOException;
-import java.io.UncheckedIOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentMap;
@@ -142,188 +134,7 @@ static byte[] merge(byte[] oldBytes, byte[] newBytes) {
         if (Arrays.equals(oldBytes, newBytes)) {
             return oldBytes;
         }
-        try {
-            MutableSet<ByteList> byteArraySet = Sets.mutable.empty();
-            MutableIntList stampList = IntLists.mutable.withInitialCapacity(16);
-            byte entityFormat = newBytes[8];
-            addToSet(newBytes, byteArraySet, stampList, entityFormat);
-            addToSet(oldBytes, byteArraySet, stampList, entityFormat);
-            MutableList<ByteList> byteArrayList = byteArraySet.toList();
-
-            byteArrayList.sort((o1, o2) -> {
-                int minSize = Math.min(o1.size(), o2.size());
-                for (int i = 0; i < minSize; i++) {
-                    if (o1.get(i) != o2.get(i)) {
-                        return Integer.compare(o1.get(i), o2.get(i));
-                    }
-                }
-                return Integer.compare(o1.size(), o2.size());
-            });
-            // Remove canceled versions here
-            if (byteArrayList.size() > 2) {
-                MutableList<ByteList> chronologyByteLists = Lists.mutable.empty();
-                MutableIntList indexesToRemove = IntLists.mutable.empty();
-                for (int i = 0; i < byteArrayList.size(); i++) {
-                    ByteList versionBytes = byteArrayList.get(i);
-                    byte versionToken = versionBytes.get(0);
-                    switch (versionToken) {
-                        /*
-                            CONCEPT_CHRONOLOGY((byte) 1, ConceptChronology.class),
-                            PATTERN_CHRONOLOGY((byte) 2, PatternChronology.class),
-                            SEMANTIC_CHRONOLOGY((byte) 3, SemanticChronology.class),
-                            STAMP(STAMP_DATA_TYPE, Stamp.class)
-                        */
-                        case 1, 2, 3, STAMP_DATA_TYPE-> chronologyByteLists.add(versionBytes);
-
-                        /*
-                            CONCEPT_VERSION((byte) 4, ConceptVersion.class),
-                            PATTERN_VERSION((byte) 5, PatternVersion.class),
-                            SEMANTIC_VERSION((byte) 6, SemanticVersion.class),
-                            STAMP_VERSION((byte) 25, Stamp.class)
-                         */
-                        case 4, 5, 6, 25 -> {
-                            int stampNid = ((versionBytes.get(1) & 0xFF) << 24) |
-                                    ((versionBytes.get(2) & 0xFF) << 16) |
-                                    ((versionBytes.get(3) & 0xFF) << 8) |
-                                    ((versionBytes.get(4) & 0xFF) << 0);
-                            if (PrimitiveData.get().isCanceledStampNid(stampNid)) {
-                                // Garbage collection for canceled versions...
-                                indexesToRemove.add(i);
-                            }
-                        }
-                        default -> {
-                            // Leave all versions. Need to retain canceled version if component is a stamp.
-                        }
-                    }
-                }
-                indexesToRemove.reverseThis().forEach(index -> byteArrayList.remove(index));
-
-                // UUIDs were added...
-                if (chronologyByteLists.size() > 1) {
-                    // need to merge into one record for the chronology...
-                    MutableSet<UUID> uuids = Sets.mutable.empty();
-                    for (ByteList chronologyByteList : chronologyByteLists) {
-                        MutableLongList longList = LongLists.mutable.empty();
-                        ByteBuf chronologyBytes = ByteBuf.wrapForReading(chronologyByteList.toArray());
-                        chronologyBytes.readByte(); // EntityType token
-                        chronologyBytes.readInt(); // Entity nid
-                        longList.add(chronologyBytes.readLong()); // Entity most significant bits
-                        longList.add(chronologyBytes.readLong()); // Entity least significant bits
-                        int additionalUuidLongs = chronologyBytes.readByte(); // Additional UUID longs...
-                        for (int i = 0; i < additionalUuidLongs; i++) {
-                            longList.add(chronologyBytes.readLong());
-                        }
-                        uuids.addAll(UuidUtil.toList(longList.toArray()).castToList());
-                    }
-                    ImmutableList<UUID> uuidList = uuids.toImmutableList();
-                    ByteBuf chronologyBytes = ByteBuf.wrapForReading(chronologyByteLists.get(0).toArray());
-                    ByteBuf writeBuf = ByteBufPool.allocate(16 * uuidList.size() + chronologyBytes.array().length);
-                    writeBuf.writeByte(chronologyBytes.readByte()); // EntityType token
-                    writeBuf.writeInt(chronologyBytes.readInt()); // Entity nid
-                    chronologyBytes.readLong(); // Discard msb
-                    chronologyBytes.readLong(); // Discard lsb
-                    int discardAdditionalUuidLongs = chronologyBytes.readByte();
-                    for (int i = 0; i < discardAdditionalUuidLongs; i++) {
-                        chronologyBytes.readLong();
-                    }
-
-                    // write the new UUIDs.
-                    writeBuf.writeLong(uuidList.get(0).getMostSignificantBits());
-                    writeBuf.writeLong(uuidList.get(0).getLeastSignificantBits());
-                    int additionalUuidLongs = uuidList.size() * 2 - 2;
-                    writeBuf.writeByte((byte) additionalUuidLongs);
-                    for (int uuidIndex = 1; uuidIndex < uuidList.size(); uuidIndex++) {
-                        writeBuf.writeLong(uuidList.get(uuidIndex).getMostSignificantBits());
-                        writeBuf.writeLong(uuidList.get(uuidIndex).getLeastSignificantBits());
-                    }
-                    while (chronologyBytes.canRead()) {
-                        writeBuf.writeByte(chronologyBytes.readByte());
-                    }
-                    byteArrayList.removeAll(chronologyByteLists);
-                    byteArrayList.add(0, ByteLists.immutable.of(writeBuf.asArray()));
-                }
-            }
-
-            ByteBuf byteBuf = ByteBufPool.allocate(oldBytes.length + newBytes.length);
-            byteBuf.writeInt(byteArrayList.size());
-            boolean first = true;
-            for (ByteList byteArray : byteArrayList) {
-                if (first) {
-                    // Add 4 to have room for the number of versions.
-                    // Add 1 for the entity format token
-                    byteBuf.writeInt(byteArray.size() + 5);
-                    byteBuf.writeByte(entityFormat);
-                    byteArray.forEach(b -> {
-                        byteBuf.put(b);
-                    });
-                    // write the number of versions...
-                    byteBuf.writeInt(byteArrayList.size() - 1);
-                    first = false;
-                } else {
-                    byteBuf.writeInt(byteArray.size());
-                    byteArray.forEach(b -> {
-                        byteBuf.put(b);
-                    });
-                }
-            }
-            return byteBuf.asArray();
-        } catch (IOException e) {
-            throw new UncheckedIOException(e);
-        }
-    }
-
-    /**
-     * @param bytes
-     * @param byteArraySet
-     * @param stampsInSet  represents the stamps already added to the set. If two versions with the same stamp are being merged,
-     *                     the newer version must be the merged version, as it represents a newer edit. There is an assumption that
-     *                     the edits of a single version under a single stamp value are sequential, not concurrent.
-     * @throws IOException
-     */
-    private static void addToSet(byte[] bytes, MutableSet<ByteList> byteArraySet, MutableIntList stampsInSet,
-                                 byte entityFormat) throws IOException {
-        ByteBuf readBuf = ByteBuf.wrapForReading(bytes);
-        boolean stampDataType = bytes[9] == STAMP_DATA_TYPE;
-        int arrayCount = readBuf.readInt();
-        for (int i = 0; i < arrayCount; i++) {
-            int arraySize = readBuf.readInt();
-            if (i == 0) {
-                byte localEntityFormat = readBuf.readByte();
-                if (localEntityFormat != entityFormat) {
-                    throw new IllegalStateException("All entities should be the same format. Found: " + entityFormat + " != " + localEntityFormat);
-                }
-                // The first array is the chronicle, and has a field for the number of versions...
-                // Add one for the entityFormat token.
-                byte[] newArray = new byte[arraySize - 5];
-                readBuf.read(newArray);
-                byteArraySet.add(ByteLists.immutable.of(newArray));
-                int versionCount = readBuf.readInt();
-                if (versionCount != arrayCount - 1) {
-                    throw new IllegalStateException("Malformed data. versionCount: " +
-                            versionCount + " arrayCount: " + arrayCount);
-                }
-                // Version count is not included as the version count may change as a result of merge.
-                // It must be added back in after sorting unique versions.
-            } else {
-                byte[] newArray = new byte[arraySize];
-                readBuf.read(newArray);
-                if (stampDataType) {
-                    byteArraySet.add(ByteLists.immutable.of(newArray));
-                } else {
-                    int stampNid = ((newArray[1] & 0xFF) << 24) |
-                            ((newArray[2] & 0xFF) << 16) |
-                            ((newArray[3] & 0xFF) << 8) |
-                            ((newArray[4] & 0xFF) << 0);
-                    if (stampsInSet.contains(stampNid)) {
-                        // Don't add, a newer version already exists (assuming addToSet is called in order of newest to oldest bytearray)
-                        // There should be no concurrent editing on versions with the same stamp.
-                    } else {
-                        byteArraySet.add(ByteLists.immutable.of(newArray));
-                        stampsInSet.add(stampNid);
-                    }
-                }
-            }
-        }
+        return EntityBytesMerge.merge(oldBytes, newBytes, stampNid -> PrimitiveData.get().isCanceledStampNid(stampNid));
     }
 
     default boolean isCanceledStampNid(int stampNid) {
@@ -416,8 +227,63 @@ default byte[] merge(int nid, int patternNid, int referencedComponentNid, byte[]
      */
     byte[] merge(int nid, int patternNid, int referencedComponentNid, byte[] value, Object sourceObject, DataActivity activity);
 
+    /**
+     * Merge as {@link #merge(int, int, int, byte[], Object, DataActivity)} for a bulk load. The provider may defer
+     * maintaining indexes derived from the merged entities, such as citations, pattern membership, and the search
+     * index, until {@link #rebuildDeferredIndexes()}. The default merges and maintains the indexes immediately.
+     */
+    default byte[] mergeDeferringIndexes(int nid, int patternNid, int referencedComponentNid, byte[] value,
+                                         Object sourceObject, DataActivity activity) {
+        return merge(nid, patternNid, referencedComponentNid, value, sourceObject, activity);
+    }
+
+    /**
+     * Bring the derived indexes up to date for every entity merged with
+     * {@link #mergeDeferringIndexes(int, int, int, byte[], Object, DataActivity)} since the last call.
+     */
+    default void rebuildDeferredIndexes() {
+    }
+
     PrimitiveDataSearchResult[] search(String query, int maxResultSize) throws Exception;
 
+    /**
+     * Search for up to maxResultSize semantics that match the query and are accepted by the filter, with at most
+     * one result per semantic, in descending score order, with highlighted strings.
+     */
+    default PrimitiveDataSearchResult[] search(String query, int maxResultSize, PrimitiveDataSearchFilter filter)
+            throws Exception {
+        return search(query, maxResultSize, filter, true);
+    }
+
+    /**
+     * Search as {@link #search(String, int, PrimitiveDataSearchFilter)}, highlighting the matched text of each
+     * result only if requested, since callers such as type ahead do not show it. Providers with a search index
+     * apply the filter in the index; the default widens an unfiltered search until enough matches are accepted or
+     * no more remain, and always highlights.
+     */
+    default PrimitiveDataSearchResult[] search(String query, int maxResultSize, PrimitiveDataSearchFilter filter,
+                                               boolean highlight) throws Exception {
+        int requested = maxResultSize;
+        while (true) {
+            PrimitiveDataSearchResult[] results = search(query, requested);
+            MutableIntSet resultNids = IntSets.mutable.empty();
+            List<PrimitiveDataSearchResult> accepted = new ArrayList<>();
+            for (PrimitiveDataSearchResult result : results) {
+                if (accepted.size() == maxResultSize) {
+                    break;
+                }
+                if (!resultNids.contains(result.nid()) && filter.accepts(result)) {
+                    resultNids.add(result.nid());
+                    accepted.add(result);
+                }
+            }
+            if (accepted.size() == maxResultSize || results.length < requested || requested == Integer.MAX_VALUE) {
+                return accepted.toArray(new PrimitiveDataSearchResult[accepted.size()]);
+            }
+            requested = (int) Math.min(Integer.MAX_VALUE, requested * 2L);
+        }
+    }
+
     CompletableFuture<Void> recreateLuceneIndex() throws Exception;
 
     /**
@@ -456,6 +322,63 @@ default int[] semanticNidsForComponentOfPattern(int componentNid, int patternNid
 
     void forEachSemanticNidForComponentOfPattern(int componentNid, int patternNid, IntProcedure procedure);
 
+    /**
+     * @return true if this service maintains an index of identifier semantics, and supports
+     * {@link #semanticNidsForIdentifier(int, String)}.
+     */
+    default boolean indexesIdentifiers() {
+        return false;
+    }
+
+    /**
+     * Look up identifier semantics by identifier source and value, without scanning the identifier pattern.
+     * Only supported when {@link #indexesIdentifiers()} is true.
+     *
+     * @return the nids of the identifier semantics that have the identifier source and value in any version.
+     */
+    default int[] semanticNidsForIdentifier(int identifierSourceNid, String identifierValue) {
+        throw new UnsupportedOperationException("Identifiers are not indexed by " + name());
+    }
+
+    /**
+     * Bulk variant of {@link #semanticNidsForIdentifier(int, String)}.
+     *
+     * @return an array of identifier semantic nids for each identifier value, in the order of the values.
+     */
+    default int[][] semanticNidsForIdentifiers(int identifierSourceNid, String... identifierValues) {
+        int[][] semanticNids = new int[identifierValues.length][];
+        for (int i = 0; i < identifierValues.length; i++) {
+            semanticNids[i] = semanticNidsForIdentifier(identifierSourceNid, identifierValues[i]);
+        }
+        return semanticNids;
+    }
+
+    /**
+     * @return true if this service maintains an index of stamps by time, and of the components that cite each
+     * stamp, and supports {@link #forEachStampNidInTimeRange(long, long, IntProcedure)} and
+     * {@link #forEachNidForStamp(int, IntProcedure)}.
+     */
+    default boolean indexesStamps() {
+        return false;
+    }
+
+    /**
+     * Pass each stamp with a version whose time is within the inclusive range to the procedure, in ascending
+     * time order, without reading the other stamps. A stamp with versions at several times in the range may be
+     * passed more than once. Only supported when {@link #indexesStamps()} is true.
+     */
+    default void forEachStampNidInTimeRange(long fromEpochMillis, long toEpochMillis, IntProcedure procedure) {
+        throw new UnsupportedOperationException("Stamps are not indexed by " + name());
+    }
+
+    /**
+     * Pass each concept, semantic and pattern with a version on the stamp to the procedure.
+     * Only supported when {@link #indexesStamps()} is true.
+     */
+    default void forEachNidForStamp(int stampNid, IntProcedure procedure) {
+        throw new UnsupportedOperationException("Stamps are not indexed by " + name());
+    }
+
     default void addCanceledStampNid(int stampNid) {
         canceledStampNids.add(stampNid);
     }
@@ -465,10 +388,61 @@ default void addCanceledStampNid(int stampNid) {
      */
     String name();
 
+    /**
+     * Operations of the websocket protocol between a remote data service client and server. Each message starts
+     * with the operation token, a request id, and a flags byte, so a connection can carry many outstanding
+     * requests. Responses carry the request id of their request; streamed responses arrive as several messages,
+     * and the last has {@link #LAST_MESSAGE} set. Notifications from the server carry request id 0.
+     */
     enum RemoteOperations {
         NID_FOR_UUIDS(1),
         GET_BYTES(2),
-        MERGE(3);
+        MERGE(3),
+        HAS_UUID(4),
+        HAS_PUBLIC_ID(5),
+        FOR_EACH(6),
+        FOR_EACH_CONCEPT_NID(7),
+        FOR_EACH_PATTERN_NID(8),
+        FOR_EACH_SEMANTIC_NID(9),
+        FOR_EACH_STAMP_NID(10),
+        FOR_EACH_SEMANTIC_NID_OF_PATTERN(11),
+        FOR_EACH_SEMANTIC_NID_FOR_COMPONENT(12),
+        FOR_EACH_SEMANTIC_NID_FOR_COMPONENT_OF_PATTERN(13),
+        SEARCH(14),
+        /**
+         * Grants the server permission to send more messages of a streamed response.
+         */
+        CREDIT(15),
+        /**
+         * Notification of the server's write sequence and the nids written.
+         */
+        WRITE_SEQUENCE(16),
+        /**
+         * Response to a request that failed, with the failure message.
+         */
+        ERROR(17),
+        /**
+         * Recreates the server's search index, responding when it is complete.
+         */
+        RECREATE_LUCENE_INDEX(18);
+
+        /**
+         * Flag set on the last message of a response.
+         */
+        public static final byte LAST_MESSAGE = 1;
+
+        /**
+         * Size in bytes of the operation token, request id and flags that start each message.
+         */
+        public static final int HEADER_SIZE = 6;
+
+        private static final RemoteOperations[] BY_TOKEN = new RemoteOperations[values().length + 1];
+
+        static {
+            for (RemoteOperations operation : values()) {
+                BY_TOKEN[operation.token] = operation;
+            }
+        }
 
         public final byte token;
 
@@ -477,16 +451,10 @@ enum RemoteOperations {
         }
 
         public static RemoteOperations fromToken(byte token) {
-            switch (token) {
-                case 1:
-                    return NID_FOR_UUIDS;
-                case 2:
-                    return GET_BYTES;
-                case 3:
-                    return MERGE;
-                default:
-                    throw new UnsupportedOperationException("Can't handle token: " + token);
+            if (token > 0 && token < BY_TOKEN.length) {
+                return BY_TOKEN[token];
             }
+            throw new UnsupportedOperationException("Can't handle token: " + token);
         }
     }
 
@@ -27,5 +27,70 @@ public enum ServiceKeys {
     /**
      * Unique to each cache period. It is reset each time CachingService.reset() is called.
      */
-    CACHE_PERIOD_UUID
+    CACHE_PERIOD_UUID,
+    /**
+     * Boolean. When true, the spined array provider reads entity bytes through memory mapped spine files
+     * instead of decoding whole spines onto the heap.
+     */
+    SPINED_ARRAY_MAPPED_STORE,
+    /**
+     * Integer. Maximum number of frequently read spines the memory mapped spined array store keeps decoded on heap.
+     */
+    SPINED_ARRAY_HOT_SPINE_CACHE_SIZE,
+    /**
+     * String naming a write ahead log sync policy of the spined array provider: EVERY_COMMIT, BATCHED, or NONE.
+     */
+    SPINED_ARRAY_WAL_SYNC_POLICY,
+    /**
+     * Long. Milliseconds between forcing the spined array write ahead log to disk with the BATCHED sync policy.
+     */
+    SPINED_ARRAY_WAL_SYNC_INTERVAL_MS,
+    /**
+     * Long. Size in bytes the spined array write ahead log may reach before a background checkpoint writes the
+     * changed spines and truncates the log.
+     */
+    SPINED_ARRAY_WAL_CHECKPOINT_BYTES,
+    /**
+     * Integer. Number of semantics that may wait to be indexed before writers block.
+     */
+    INDEXER_QUEUE_CAPACITY,
+    /**
+     * Integer. Number of threads that add queued semantics to the Lucene index.
+     */
+    INDEXER_THREADS,
+    /**
+     * Integer. Number of edited entities that may wait to be written to the change set before editors block.
+     */
+    CHANGE_SET_QUEUE_CAPACITY,
+    /**
+     * Integer. Number of threads of the compute thread pool and the blocking thread pool.
+     */
+    EXECUTOR_THREAD_POOL_SIZE,
+    /**
+     * Integer. Number of threads of the IO thread pool.
+     */
+    EXECUTOR_IO_THREAD_POOL_SIZE,
+    /**
+     * Integer. Number of tasks that may wait in the queue of the compute thread pool or the IO thread pool.
+     * Unbounded if not set.
+     */
+    EXECUTOR_QUEUE_CAPACITY,
+    /**
+     * String naming what a thread pool does with a task when its queue is full: CALLER_RUNS, BLOCK, or ABORT.
+     */
+    EXECUTOR_BACK_PRESSURE_POLICY,
+    /**
+     * Long. Milliseconds a submitter waits for room in a full pool before the task is rejected, for the blocking
+     * thread pool and the BLOCK back pressure policy.
+     */
+    EXECUTOR_BLOCK_TIMEOUT_MS,
+    /**
+     * Integer. Number of threads of the scheduled executor.
+     */
+    EXECUTOR_SCHEDULED_POOL_SIZE,
+    /**
+     * Integer. Number of tasks the virtual thread executor runs at once. Further tasks wait on their own virtual
+     * thread without blocking the submitter.
+     */
+    EXECUTOR_VIRTUAL_THREAD_CONCURRENCY
 }
@@ -103,6 +103,24 @@ public static ScheduledExecutorService scheduled() {
         return executorSingleton.scheduled();
     }
 
+    /**
+     * @return an executor that runs each task on its own virtual thread. Use it for tasks that spend most of their
+     * time blocked on disk or network I/O, rather than the small {@link #ioThreadPool()}.
+     */
+    public static java.util.concurrent.ExecutorService virtualThreadExecutor() {
+        if (executorSingleton == null) {
+            start();
+        }
+        return executorSingleton.virtualThreadExecutor();
+    }
+
+    public static List<ExecutorPoolMetrics> metrics() {
+        if (executorSingleton == null) {
+            start();
+        }
+        return executorSingleton.metrics();
+    }
+
 
     public static class CacheProvider implements CachingService {
 
@@ -0,0 +1,105 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.common.util.thread;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts task latencies in buckets whose upper bounds are powers of two microseconds. Recording is lock free, so
+ * executors can record the queue wait and run time of every task.
+ */
+public class LatencyHistogram {
+    public static final int BUCKET_COUNT = 32;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKET_COUNT];
+    private final LongAdder totalNanos = new LongAdder();
+    private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Bucket 0 counts latencies under a microsecond, and bucket i counts latencies from 2^(i-1) up to 2^i
+     * microseconds. The last bucket also counts everything longer.
+     */
+    static int bucketIndex(long nanos) {
+        long micros = nanos / 1_000;
+        return Math.min(BUCKET_COUNT - 1, 64 - Long.numberOfLeadingZeros(micros));
+    }
+
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        buckets[bucketIndex(nanos)].increment();
+        totalNanos.add(nanos);
+        maxNanos.accumulate(nanos);
+    }
+
+    public Snapshot snapshot() {
+        long[] bucketCounts = new long[BUCKET_COUNT];
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            bucketCounts[i] = buckets[i].sum();
+            count += bucketCounts[i];
+        }
+        return new Snapshot(bucketCounts, count, totalNanos.sum(), maxNanos.get());
+    }
+
+    /**
+     * @param bucketCounts the number of latencies in each bucket
+     * @param count        the number of latencies recorded
+     * @param totalNanos   the sum of the latencies recorded
+     * @param maxNanos     the longest latency recorded
+     */
+    public record Snapshot(long[] bucketCounts, long count, long totalNanos, long maxNanos) {
+        public static final Snapshot EMPTY = new Snapshot(new long[BUCKET_COUNT], 0, 0, 0);
+
+        public static long bucketUpperBoundMicros(int bucketIndex) {
+            return 1L << bucketIndex;
+        }
+
+        public double meanMicros() {
+            return count == 0 ? 0 : totalNanos / 1_000.0 / count;
+        }
+
+        /**
+         * @param percentile between 0 and 100
+         * @return the upper bound of the bucket that contains the percentile, in microseconds
+         */
+        public long percentileMicros(double percentile) {
+            long rank = (long) Math.ceil(count * percentile / 100.0);
+            long seen = 0;
+            for (int i = 0; i < bucketCounts.length; i++) {
+                seen += bucketCounts[i];
+                if (seen >= rank && seen > 0) {
+                    return bucketUpperBoundMicros(i);
+                }
+            }
+            return 0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("count=%d mean=%.1fus p50<%dus p99<%dus max=%dus", count, meanMicros(),
+                    percentileMicros(50), percentileMicros(99), maxNanos / 1_000);
+        }
+    }
+}
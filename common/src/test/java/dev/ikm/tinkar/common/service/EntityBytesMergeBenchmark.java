@@ -0,0 +1,133 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.common.service;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures merging entity bytes for chronologies of 1, 10 and 100 versions. Run with the main method from the
+ * test classpath; it is not run as part of the test suite.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EntityBytesMergeBenchmark {
+    private static final byte SEMANTIC_CHRONOLOGY = 3;
+    private static final byte SEMANTIC_VERSION = 6;
+
+    @Param({"1", "10", "100"})
+    int versionCount;
+
+    byte[] existingBytes;
+    byte[] appendedVersionBytes;
+    byte[] concurrentEditBytes;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(versionCount);
+        byte[][] versions = new byte[versionCount + 2][];
+        for (int i = 0; i < versions.length; i++) {
+            versions[i] = version(i + 1, random);
+        }
+        existingBytes = entityBytes(versions, 0, versionCount);
+        // The common case: an edit writes the existing versions plus a new one.
+        appendedVersionBytes = entityBytes(versions, 0, versionCount + 1);
+        // A concurrent edit that did not see the latest existing version.
+        concurrentEditBytes = entityBytes(versions, 0, versionCount - 1, versionCount + 1);
+    }
+
+    @Benchmark
+    public byte[] appendVersion() {
+        return EntityBytesMerge.merge(existingBytes, appendedVersionBytes, stampNid -> false);
+    }
+
+    @Benchmark
+    public byte[] mergeConcurrentEdit() {
+        return EntityBytesMerge.merge(existingBytes, concurrentEditBytes, stampNid -> false);
+    }
+
+    private static byte[] version(int stampNid, Random random) {
+        byte[] version = new byte[5 + 40 + random.nextInt(40)];
+        random.nextBytes(version);
+        version[0] = SEMANTIC_VERSION;
+        ByteBuffer.wrap(version).putInt(1, stampNid);
+        return version;
+    }
+
+    /**
+     * @param versionIndexes the versions from {@code versions} to include, as a range from the first two values,
+     * plus any individual indexes that follow.
+     */
+    private static byte[] entityBytes(byte[][] versions, int... versionIndexes) {
+        int count = versionIndexes[1] - versionIndexes[0] + versionIndexes.length - 2;
+        ByteBuffer chronology = ByteBuffer.allocate(34);
+        chronology.put(SEMANTIC_CHRONOLOGY);
+        chronology.putInt(Integer.MIN_VALUE + 1000);
+        chronology.putLong(0x1234_5678_9ABC_DEF0L);
+        chronology.putLong(0x0FED_CBA9_8765_4321L);
+        chronology.put((byte) 0);
+        // referenced component nid, pattern nid
+        chronology.putInt(Integer.MIN_VALUE + 10);
+        chronology.putInt(Integer.MIN_VALUE + 20);
+        int size = 4 + 4 + 1 + chronology.capacity() + 4;
+        for (int i = 0; i < count; i++) {
+            size += 4 + versions[versionAt(versionIndexes, i)].length;
+        }
+        ByteBuffer bytes = ByteBuffer.allocate(size);
+        bytes.putInt(count + 1);
+        bytes.putInt(chronology.capacity() + 5);
+        bytes.put((byte) 1);
+        bytes.put(chronology.array());
+        bytes.putInt(count);
+        for (int i = 0; i < count; i++) {
+            byte[] version = versions[versionAt(versionIndexes, i)];
+            bytes.putInt(version.length);
+            bytes.put(version);
+        }
+        return bytes.array();
+    }
+
+    private static int versionAt(int[] versionIndexes, int i) {
+        int rangeSize = versionIndexes[1] - versionIndexes[0];
+        return i < rangeSize ? versionIndexes[0] + i : versionIndexes[2 + i - rangeSize];
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(EntityBytesMergeBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.common.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class EntityBytesMergeTest {
+
+    private static final byte[] CHRONOLOGY = {3, 0, 0, 0, 9, 0, 0, 0, 0, 0, 0, 0, 1, 0, 0, 0, 0, 0, 0, 0, 2, 0};
+
+    @Test
+    void appendedVersionReturnsNewBytes() {
+        byte[] oldBytes = entityBytes(version(1, 10), version(2, 20));
+        byte[] newBytes = entityBytes(version(1, 10), version(2, 20), version(3, 30));
+        assertSame(newBytes, EntityBytesMerge.merge(oldBytes, newBytes, stampNid -> false));
+    }
+
+    @Test
+    void concurrentVersionsAreUnionedAndSorted() {
+        byte[] oldBytes = entityBytes(version(1, 10), version(3, 30));
+        byte[] newBytes = entityBytes(version(2, 20), version(1, 11));
+        byte[] merged = EntityBytesMerge.merge(oldBytes, newBytes, stampNid -> false);
+        // The newer version with stamp 1 replaces the older one.
+        assertArrayEquals(entityBytes(version(1, 11), version(2, 20), version(3, 30)), merged);
+        assertArrayEquals(merged, EntityBytesMerge.merge(merged, newBytes, stampNid -> false));
+    }
+
+    @Test
+    void canceledVersionsAreRemoved() {
+        byte[] oldBytes = entityBytes(version(1, 10), version(2, 20));
+        byte[] newBytes = entityBytes(version(3, 30));
+        byte[] merged = EntityBytesMerge.merge(oldBytes, newBytes, stampNid -> stampNid == 2);
+        assertEquals(3, ByteBuffer.wrap(merged).getInt());
+        assertArrayEquals(entityBytes(version(1, 10), version(3, 30)), merged);
+    }
+
+    private static byte[] version(int stampNid, int value) {
+        return ByteBuffer.allocate(9).put((byte) 6).putInt(stampNid).putInt(value).array();
+    }
+
+    private static byte[] entityBytes(byte[]... versions) {
+        int size = 4 + 4 + 1 + CHRONOLOGY.length + 4;
+        for (byte[] version : versions) {
+            size += 4 + version.length;
+        }
+        ByteBuffer bytes = ByteBuffer.allocate(size);
+        bytes.putInt(versions.length + 1);
+        bytes.putInt(CHRONOLOGY.length + 5);
+        bytes.put((byte) 1);
+        bytes.put(CHRONOLOGY);
+        bytes.putInt(versions.length);
+        for (byte[] version : versions) {
+            bytes.putInt(version.length);
+            bytes.put(version);
+        }
+        return bytes.array();
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.common.util.thread;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void bucketIndex() {
+        assertEquals(0, LatencyHistogram.bucketIndex(0));
+        assertEquals(0, LatencyHistogram.bucketIndex(999));
+        assertEquals(1, LatencyHistogram.bucketIndex(1_000));
+        assertEquals(2, LatencyHistogram.bucketIndex(2_000));
+        assertEquals(2, LatencyHistogram.bucketIndex(3_999));
+        assertEquals(3, LatencyHistogram.bucketIndex(4_000));
+        assertEquals(LatencyHistogram.BUCKET_COUNT - 1, LatencyHistogram.bucketIndex(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void snapshot() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.snapshot().count());
+        assertEquals(0, histogram.snapshot().percentileMicros(50));
+
+        for (int i = 0; i < 99; i++) {
+            histogram.record(1_500);
+        }
+        histogram.record(100_000);
+        histogram.record(-1);
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(101, snapshot.count());
+        assertEquals(99 * 1_500 + 100_000, snapshot.totalNanos());
+        assertEquals(100_000, snapshot.maxNanos());
+        assertEquals(1, snapshot.bucketCounts()[0]);
+        assertEquals(99, snapshot.bucketCounts()[1]);
+        assertEquals(2, snapshot.percentileMicros(50));
+        assertEquals(2, snapshot.percentileMicros(99));
+        assertEquals(128, snapshot.percentileMicros(100));
+        assertEquals((99 * 1_500 + 100_000) / 1_000.0 / 101, snapshot.meanMicros(), 1e-9);
+    }
+
+    @Test
+    public void concurrentRecording() throws InterruptedException {
+        LatencyHistogram histogram = new LatencyHistogram();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        for (int thread = 0; thread < 4; thread++) {
+            executor.execute(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    histogram.record(i * 1_000L);
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        assertEquals(40_000, histogram.snapshot().count());
+        assertEquals(9_999_000, histogram.snapshot().maxNanos());
+    }
+}
@@ -76,7 +76,7 @@ public LanguageCalculatorWithCache(StampCoordinateRecord stampFilter, ImmutableL
         this.stampCalculator = StampCalculatorWithCache.getCalculator(stampFilter);
         this.languageCoordinateList = languageCoordinateList;
         this.cacheInvalidationSubscriber.addCaches(preferredCache, fqnCache, descriptionCache, definitionCache, descriptionsForComponentCache);
-        Entity.provider().addSubscriberWithWeakReference(this.cacheInvalidationSubscriber);
+        Entity.provider().addCacheInvalidationSubscriber(this.cacheInvalidationSubscriber);
     }
 
     /**
@@ -59,11 +59,22 @@ default IntIdSet descendentsOf(ConceptFacade concept) {
     IntIdSet descendentsOf(int conceptNid);
 
     default IntIdSet ancestorsOf(ConceptFacade concept) {
-        return descendentsOf(concept.nid());
+        return ancestorsOf(concept.nid());
     }
 
     IntIdSet ancestorsOf(int conceptNid);
 
+    default boolean isDescendentOf(ConceptFacade descendent, ConceptFacade ancestor) {
+        return isDescendentOf(descendent.nid(), ancestor.nid());
+    }
+
+    /**
+     * @return true if the ancestor is reachable from the descendent by one or more parent edges
+     */
+    default boolean isDescendentOf(int descendentNid, int ancestorNid) {
+        return ancestorsOf(descendentNid).contains(ancestorNid);
+    }
+
     default IntIdSet kindOf(ConceptFacade concept) {
         return kindOf(concept.nid());
     }
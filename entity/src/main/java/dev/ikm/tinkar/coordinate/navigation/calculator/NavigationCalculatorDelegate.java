@@ -139,4 +139,9 @@ default IntIdSet descendentsOf(int conceptNid) {
     default IntIdSet ancestorsOf(int conceptNid) {
         return navigationCalculator().ancestorsOf(conceptNid);
     }
+
+    @Override
+    default boolean isDescendentOf(int descendentNid, int ancestorNid) {
+        return navigationCalculator().isDescendentOf(descendentNid, ancestorNid);
+    }
 }
@@ -32,6 +32,7 @@
 import dev.ikm.tinkar.coordinate.stamp.calculator.StampCalculator;
 import dev.ikm.tinkar.coordinate.stamp.calculator.StampCalculatorWithCache;
 import dev.ikm.tinkar.coordinate.view.VertexSortNaturalOrder;
+import dev.ikm.tinkar.entity.Entity;
 import dev.ikm.tinkar.entity.PatternEntityVersion;
 import dev.ikm.tinkar.entity.SemanticEntityVersion;
 import dev.ikm.tinkar.terms.EntityProxy;
@@ -45,11 +46,11 @@
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Arrays;
 
 /**
  * TODO: Filter vertex concepts by status values.
  * TODO: Sort based on patterns in addition to natural order
- *  TODO: add cache of descendents, ancestors, and similar.
  */
 public class NavigationCalculatorWithCache implements NavigationCalculator {
     /**
@@ -63,6 +64,7 @@ public class NavigationCalculatorWithCache implements NavigationCalculator {
     private final StampCalculatorWithCache vertexStampCalculator;
     private final LanguageCalculatorWithCache languageCalculator;
     private final NavigationCoordinateRecord navigationCoordinate;
+    private final NavigationClosure closure;
 
     public NavigationCalculatorWithCache(StampCoordinateRecord stampFilter,
                                          ImmutableList<LanguageCoordinateRecord> languageCoordinateList,
@@ -71,6 +73,9 @@ public NavigationCalculatorWithCache(StampCoordinateRecord stampFilter,
         this.languageCalculator = LanguageCalculatorWithCache.getCalculator(stampFilter, languageCoordinateList);
         this.navigationCoordinate = navigationCoordinate;
         this.vertexStampCalculator = StampCalculatorWithCache.getCalculator(stampFilter.withAllowedStates(navigationCoordinate.vertexStates()));
+        // Subscribed after the stamp calculators, so their caches are invalidated before the closure is patched.
+        this.closure = new NavigationClosure(this);
+        Entity.provider().addCacheInvalidationSubscriber(this.closure);
     }
 
     /**
@@ -96,24 +101,6 @@ public LanguageCalculator languageCalculator() {
         return languageCalculator;
     }
 
-    private void addDescendents(int conceptNid, MutableIntSet nidSet) {
-        if (!nidSet.contains(conceptNid)) {
-            childrenOf(conceptNid).forEach(childNid -> {
-                addDescendents(childNid, nidSet);
-                nidSet.add(childNid);
-            });
-        }
-    }
-
-    private void addAncestors(int conceptNid, MutableIntSet nidSet) {
-        if (!nidSet.contains(conceptNid)) {
-            parentsOf(conceptNid).forEach(parentNid -> {
-                addAncestors(parentNid, nidSet);
-                nidSet.add(parentNid);
-            });
-        }
-    }
-
     @Override
     public StampCalculatorWithCache vertexStampCalculator() {
         return this.vertexStampCalculator;
@@ -141,23 +128,28 @@ public IntIdList unsortedParentsOf(int conceptNid) {
 
     @Override
     public IntIdSet descendentsOf(int conceptNid) {
-        MutableIntSet nidSet = IntSets.mutable.empty();
-        addDescendents(conceptNid, nidSet);
-        return IntIds.set.of(nidSet.toArray());
+        return IntIds.set.ofAlreadySorted(closure.descendents(conceptNid));
     }
 
     @Override
     public IntIdSet ancestorsOf(int conceptNid) {
-        MutableIntSet nidSet = IntSets.mutable.empty();
-        addAncestors(conceptNid, nidSet);
-        return IntIds.set.of(nidSet.toArray());
+        return IntIds.set.ofAlreadySorted(closure.ancestors(conceptNid));
     }
 
     @Override
     public IntIdSet kindOf(int conceptNid) {
-        MutableIntSet kindOfSet = IntSets.mutable.of(conceptNid);
-        kindOfSet.addAll(descendentsOf(conceptNid).toArray());
-        return IntIds.set.of(kindOfSet.toArray());
+        int[] descendents = closure.descendents(conceptNid);
+        int[] kindOf = new int[descendents.length + 1];
+        int index = -Arrays.binarySearch(descendents, conceptNid) - 1;
+        System.arraycopy(descendents, 0, kindOf, 0, index);
+        kindOf[index] = conceptNid;
+        System.arraycopy(descendents, index, kindOf, index + 1, descendents.length - index);
+        return IntIds.set.ofAlreadySorted(kindOf);
+    }
+
+    @Override
+    public boolean isDescendentOf(int descendentNid, int ancestorNid) {
+        return closure.isDescendentOf(descendentNid, ancestorNid);
     }
 
     @Override
@@ -0,0 +1,301 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.coordinate.navigation.calculator;
+
+import dev.ikm.tinkar.collection.ConcurrentNidBitSet;
+import dev.ikm.tinkar.collection.ConcurrentReferenceHashMap;
+import dev.ikm.tinkar.common.util.broadcast.Subscriber;
+import dev.ikm.tinkar.entity.CacheInvalidation;
+import dev.ikm.tinkar.entity.ConceptEntity;
+import dev.ikm.tinkar.entity.Entity;
+import dev.ikm.tinkar.entity.SemanticEntity;
+import org.eclipse.collections.api.list.primitive.MutableIntList;
+import org.eclipse.collections.api.map.primitive.MutableIntObjectMap;
+import org.eclipse.collections.api.set.primitive.MutableIntSet;
+import org.eclipse.collections.impl.factory.primitive.IntLists;
+import org.eclipse.collections.impl.factory.primitive.IntObjectMaps;
+import org.eclipse.collections.impl.factory.primitive.IntSets;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+/**
+ * The transitive closure of the navigation graph of one {@link NavigationCalculatorWithCache}, materialized as
+ * concepts are queried.
+ * <p>
+ * The ancestors of each concept are kept as a sorted nid array, built from the arrays of its parents, so shared
+ * ancestry in a polyhierarchy is walked once, and {@link #isDescendentOf(int, int)} is a binary search. Descendents
+ * are found by a breadth first walk that expands each level in parallel, visiting each concept once, and are kept
+ * by soft reference, since the descendents of concepts near the root are most of the graph. Neither walk recurses.
+ * <p>
+ * When a batch of cache invalidations changes a navigation semantic, or a concept whose state may filter it from
+ * the graph, only the closures that contain a changed concept are dropped, and are rebuilt when next queried.
+ * Ancestor closures are indexed by the concepts they contain, so they are found without a scan. Descendent
+ * closures are few, and held softly, so they are scanned rather than indexed.
+ */
+final class NavigationClosure implements Subscriber<CacheInvalidation> {
+    private static final Logger LOG = LoggerFactory.getLogger(NavigationClosure.class);
+    /**
+     * Batches larger than this drop every closure, rather than finding the concepts they change.
+     */
+    private static final int MAX_PATCHED_INVALIDATIONS = 10_000;
+    /**
+     * Levels of a descendent walk with fewer concepts than this are expanded on the calling thread.
+     */
+    private static final int MIN_PARALLEL_LEVEL = 64;
+
+    private final NavigationCalculatorWithCache calculator;
+    private final ConcurrentHashMap<Integer, int[]> ancestorMap = new ConcurrentHashMap<>();
+    private final ConcurrentReferenceHashMap<Integer, int[]> descendentMap =
+            new ConcurrentReferenceHashMap<>(ConcurrentReferenceHashMap.ReferenceType.STRONG,
+                    ConcurrentReferenceHashMap.ReferenceType.SOFT);
+    /**
+     * The concepts whose cached ancestor closure contains each concept. Guarded by {@link #lock}.
+     */
+    private final MutableIntObjectMap<MutableIntSet> ancestorKeysByMember = IntObjectMaps.mutable.empty();
+    private final Object lock = new Object();
+    /**
+     * The sequence of the last invalidation batch applied. Written under {@link #lock}.
+     */
+    private volatile long appliedSequence;
+
+    NavigationClosure(NavigationCalculatorWithCache calculator) {
+        this.calculator = calculator;
+        this.appliedSequence = Entity.provider().invalidationSequence();
+    }
+
+    /**
+     * @return true if the ancestor is reachable from the descendent by parent edges
+     */
+    boolean isDescendentOf(int descendentNid, int ancestorNid) {
+        return Arrays.binarySearch(ancestors(descendentNid), ancestorNid) >= 0;
+    }
+
+    /**
+     * @return the ancestors of the concept, in ascending nid order. Do not modify.
+     */
+    int[] ancestors(int conceptNid) {
+        int[] ancestors = ancestorMap.get(conceptNid);
+        if (ancestors != null) {
+            return ancestors;
+        }
+        long sequence = appliedSequence;
+        MutableIntObjectMap<int[]> computed = IntObjectMaps.mutable.empty();
+        MutableIntObjectMap<int[]> parentsByNid = IntObjectMaps.mutable.empty();
+        // Concepts whose parents are being walked. A concept pushed but not yet expanded is not in progress,
+        // since it may be pushed again by a concept below it in a diamond.
+        MutableIntSet inProgress = IntSets.mutable.empty();
+        MutableIntList stack = IntLists.mutable.of(conceptNid);
+        // Post order walk, so each concept's array is merged from the arrays of its parents.
+        while (!stack.isEmpty()) {
+            int nid = stack.getLast();
+            if (computed.containsKey(nid)) {
+                // Pushed more than once, and completed above.
+                stack.removeAtIndex(stack.size() - 1);
+                continue;
+            }
+            inProgress.add(nid);
+            int[] parents = parentsByNid.getIfAbsentPut(nid, () -> calculator.unsortedParentsOf(nid).toArray());
+            boolean parentsDone = true;
+            for (int parentNid : parents) {
+                if (computed.containsKey(parentNid)) {
+                    continue;
+                }
+                int[] cachedAncestors = ancestorMap.get(parentNid);
+                if (cachedAncestors != null) {
+                    computed.put(parentNid, cachedAncestors);
+                    continue;
+                }
+                if (inProgress.contains(parentNid)) {
+                    // The concept is reachable from every concept in progress, so this edge closes a cycle.
+                    LOG.warn("Navigation cycle through {}; ancestors of {} are not cached", parentNid, conceptNid);
+                    return reachable(conceptNid, false);
+                }
+                parentsDone = false;
+                stack.add(parentNid);
+            }
+            if (parentsDone) {
+                MutableIntSet union = IntSets.mutable.of(parents);
+                for (int parentNid : parents) {
+                    union.addAll(computed.get(parentNid));
+                }
+                computed.put(nid, union.toSortedArray());
+                stack.removeAtIndex(stack.size() - 1);
+                inProgress.remove(nid);
+            }
+        }
+        synchronized (lock) {
+            if (isCurrent(sequence)) {
+                computed.forEachKeyValue((nid, closure) -> {
+                    if (ancestorMap.putIfAbsent(nid, closure) == null) {
+                        for (int member : closure) {
+                            ancestorKeysByMember.getIfAbsentPut(member, IntSets.mutable::empty).add(nid);
+                        }
+                    }
+                });
+            }
+        }
+        return computed.get(conceptNid);
+    }
+
+    /**
+     * @return the descendents of the concept, in ascending nid order. Do not modify.
+     */
+    int[] descendents(int conceptNid) {
+        int[] descendents = descendentMap.get(conceptNid);
+        if (descendents != null) {
+            return descendents;
+        }
+        long sequence = appliedSequence;
+        descendents = reachable(conceptNid, true);
+        synchronized (lock) {
+            if (isCurrent(sequence)) {
+                descendentMap.putIfAbsent(conceptNid, descendents);
+            }
+        }
+        return descendents;
+    }
+
+    /**
+     * A closure computed while a batch was being dispatched may have read caches the batch had not yet reached,
+     * so it is kept only if no batch was published or applied since the computation began.
+     */
+    private boolean isCurrent(long sequenceBeforeComputing) {
+        return appliedSequence == sequenceBeforeComputing
+                && Entity.provider().invalidationSequence() == sequenceBeforeComputing;
+    }
+
+    /**
+     * Breadth first walk that checks each neighbor, rather than the concept being expanded, against the visited
+     * set, so each concept is expanded once.
+     */
+    private int[] reachable(int conceptNid, boolean children) {
+        ConcurrentNidBitSet visited = new ConcurrentNidBitSet();
+        int[] level = {conceptNid};
+        while (level.length > 0) {
+            IntStream nids = Arrays.stream(level);
+            if (level.length >= MIN_PARALLEL_LEVEL) {
+                nids = nids.parallel();
+            }
+            level = nids.flatMap(nid -> Arrays.stream(children ?
+                            calculator.unsortedChildrenOf(nid).toArray() : calculator.unsortedParentsOf(nid).toArray()))
+                    .filter(visited::add)
+                    .toArray();
+        }
+        visited.remove(conceptNid);
+        return visited.toArray();
+    }
+
+    @Override
+    public void onNext(CacheInvalidation invalidation) {
+        synchronized (lock) {
+            if (invalidation.invalidatesAll() || invalidation.size() > MAX_PATCHED_INVALIDATIONS) {
+                clear();
+            } else if (!ancestorMap.isEmpty() || !descendentMap.isEmpty()) {
+                MutableIntSet changedNids = changedConcepts(invalidation);
+                if (changedNids == null) {
+                    clear();
+                } else if (!changedNids.isEmpty()) {
+                    removeAncestorsContaining(changedNids);
+                    removeContaining(descendentMap, changedNids);
+                }
+            }
+            appliedSequence = Math.max(appliedSequence, invalidation.sequence());
+        }
+    }
+
+    /**
+     * A closure may change only if it contains, or is of, a concept whose parent or child edges changed. Those
+     * are the concepts that navigation semantics in the batch reference, and the concepts in the batch with their
+     * neighbors, whose edges to them a change of vertex state may filter.
+     *
+     * @return the changed concepts, or null if a navigation pattern changed, and every closure may change
+     */
+    private MutableIntSet changedConcepts(CacheInvalidation invalidation) {
+        MutableIntSet changedNids = IntSets.mutable.empty();
+        for (int nid : invalidation.nids()) {
+            if (calculator.navigationCoordinate().navigationPatternNids().contains(nid)) {
+                return null;
+            }
+            Entity<?> entity = Entity.getFast(nid);
+            if (entity instanceof SemanticEntity<?> semantic) {
+                if (calculator.navigationCoordinate().navigationPatternNids().contains(semantic.patternNid())) {
+                    changedNids.add(semantic.referencedComponentNid());
+                }
+            } else if (entity instanceof ConceptEntity<?>) {
+                changedNids.add(nid);
+                changedNids.addAll(calculator.unsortedUnversionedParentsOf(nid).toArray());
+                changedNids.addAll(calculator.unsortedUnversionedChildrenOf(nid).toArray());
+            }
+        }
+        return changedNids;
+    }
+
+    private void clear() {
+        ancestorMap.clear();
+        ancestorKeysByMember.clear();
+        descendentMap.clear();
+    }
+
+    /**
+     * Removes the ancestor closures of the changed concepts, and those that contain a changed concept, which are
+     * found from {@link #ancestorKeysByMember}.
+     */
+    private void removeAncestorsContaining(MutableIntSet changedNids) {
+        MutableIntSet keys = IntSets.mutable.withAll(changedNids);
+        changedNids.forEach(nid -> {
+            MutableIntSet containingKeys = ancestorKeysByMember.get(nid);
+            if (containingKeys != null) {
+                keys.addAll(containingKeys);
+            }
+        });
+        keys.forEach(key -> {
+            int[] closure = ancestorMap.remove(key);
+            if (closure != null) {
+                for (int member : closure) {
+                    MutableIntSet containingKeys = ancestorKeysByMember.get(member);
+                    if (containingKeys != null && containingKeys.remove(key) && containingKeys.isEmpty()) {
+                        ancestorKeysByMember.remove(member);
+                    }
+                }
+            }
+        });
+    }
+
+    private static void removeContaining(Map<Integer, int[]> closures, MutableIntSet changedNids) {
+        for (Map.Entry<Integer, int[]> entry : closures.entrySet()) {
+            if (changedNids.contains(entry.getKey()) || containsAny(entry.getValue(), changedNids)) {
+                closures.remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private static boolean containsAny(int[] closure, MutableIntSet changedNids) {
+        if (closure.length > changedNids.size()) {
+            return changedNids.anySatisfy(nid -> Arrays.binarySearch(closure, nid) >= 0);
+        }
+        for (int nid : closure) {
+            if (changedNids.contains(nid)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -17,12 +17,13 @@
 
 import com.github.benmanes.caffeine.cache.Cache;
 import dev.ikm.tinkar.common.util.broadcast.Subscriber;
+import dev.ikm.tinkar.entity.CacheInvalidation;
 import dev.ikm.tinkar.entity.Entity;
 import dev.ikm.tinkar.entity.PatternEntity;
 
 import java.util.concurrent.CopyOnWriteArrayList;
 
-public class CacheInvalidationIfPatternSubscriber implements Subscriber<Integer> {
+public class CacheInvalidationIfPatternSubscriber implements Subscriber<CacheInvalidation> {
 	CopyOnWriteArrayList<Cache<? extends Object, ? extends Object>> cachesToManage = new CopyOnWriteArrayList<>();
 
 
@@ -34,17 +35,21 @@ public void addCaches(Cache<? extends Object, ? extends Object>... caches) {
 
 
 	@Override
-	public void onNext(Integer nid) {
-		// Do nothing with item, but request another...
-		if (nid == Integer.MIN_VALUE) {
-			return;
-		}
-		Entity entity = Entity.provider().getEntityFast(nid);
-		if (entity instanceof PatternEntity) {
+	public void onNext(CacheInvalidation invalidation) {
+		if (invalidation.invalidatesAll() || containsPattern(invalidation.nids())) {
 			for (Cache<?, ?> cache : cachesToManage) {
 				cache.invalidateAll();
 			}
 		}
 	}
 
+	private static boolean containsPattern(int[] nids) {
+		for (int nid : nids) {
+			if (Entity.provider().getEntityFast(nid) instanceof PatternEntity) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 }
@@ -19,6 +19,7 @@
 import dev.ikm.tinkar.common.id.PublicId;
 import dev.ikm.tinkar.common.service.NonExistentValue;
 import dev.ikm.tinkar.common.service.PrimitiveData;
+import dev.ikm.tinkar.common.service.PrimitiveDataSearchFilter;
 import dev.ikm.tinkar.common.service.PrimitiveDataSearchResult;
 import dev.ikm.tinkar.common.util.functional.QuadConsumer;
 import dev.ikm.tinkar.common.util.functional.TriConsumer;
@@ -385,7 +386,47 @@ default <T extends Object> Latest<Field<T>> getFieldForSemanticWithMeaning(int c
      * @throws Exception
      */
     default ImmutableList<LatestVersionSearchResult> search(String query, int maxResultSize) throws Exception {
-        PrimitiveDataSearchResult[] primitiveResults = PrimitiveData.get().search(query, maxResultSize);
+        return latestVersionSearchResults(PrimitiveData.get().search(query, maxResultSize));
+    }
+
+    /**
+     * Performs a lucene based search for up to maxResultSize semantics that match the query, are accepted by the
+     * filter, and have a latest version for this calculator. The constraints are applied by the search index as
+     * hits are collected, so matches outside the filter's scope, or without a latest version, do not displace
+     * matches within it from the results.
+     * <p>
+     * For example, to search the descriptions of concepts only:
+     * {@code search(query, 10, PrimitiveDataSearchFilter.NONE.withPatternNids(IntIds.set.of(TinkarTerm.DESCRIPTION_PATTERN.nid()))
+     * .andReferencedComponent(nid -> Entity.getFast(nid) instanceof ConceptEntity))}
+     *
+     * @param query Search string
+     * @param maxResultSize Search results size limit
+     * @param filter pattern, referenced component and semantic constraints on the results
+     * @return Immutable list of LatestVersionSearchResult records
+     * @throws Exception
+     */
+    default ImmutableList<LatestVersionSearchResult> search(String query, int maxResultSize, PrimitiveDataSearchFilter filter) throws Exception {
+        return search(query, maxResultSize, filter, true);
+    }
+
+    /**
+     * Performs a lucene based search as {@link #search(String, int, PrimitiveDataSearchFilter)}, highlighting the
+     * matched text of each result only if requested.
+     *
+     * @param query Search string
+     * @param maxResultSize Search results size limit
+     * @param filter pattern, referenced component and semantic constraints on the results
+     * @param highlight true to compute the highlighted string of each result, false to leave it null
+     * @return Immutable list of LatestVersionSearchResult records
+     * @throws Exception
+     */
+    default ImmutableList<LatestVersionSearchResult> search(String query, int maxResultSize, PrimitiveDataSearchFilter filter,
+                                                            boolean highlight) throws Exception {
+        PrimitiveDataSearchFilter latestFilter = filter.andSemantic(semanticNid -> latest(semanticNid).isPresent());
+        return latestVersionSearchResults(PrimitiveData.get().search(query, maxResultSize, latestFilter, highlight));
+    }
+
+    private ImmutableList<LatestVersionSearchResult> latestVersionSearchResults(PrimitiveDataSearchResult[] primitiveResults) {
         final MutableIntObjectMap<LatestVersionSearchResult> semanticNidSearchResultMap = IntObjectMaps.mutable.ofInitialCapacity(primitiveResults.length);
         final AtomicInteger duplicates = new AtomicInteger();
         for (PrimitiveDataSearchResult primitiveResult : primitiveResults) {
@@ -431,8 +472,8 @@ default ImmutableList<LatestVersionSearchResult> searchDescendants(PublicId ance
     }
 
     /**
-     * Performs a lucene based search using the {@link #search(String, int)} method but applies an additional constraint
-     * which restricts the search results to only those concepts that qualify as descendants of the passed in ancestor.
+     * Performs a lucene based search using the {@link #search(String, int, PrimitiveDataSearchFilter)} method, constrained
+     * to semantics whose referenced components are descendants of the passed in ancestor.
      *
      * @param navigationCalculator Navigation calculator used to compute the latest descendants of filter
      * @param ancestor Concept that is ancestor to all returned search results
@@ -442,19 +483,9 @@ default ImmutableList<LatestVersionSearchResult> searchDescendants(PublicId ance
      * @throws Exception
      */
     default ImmutableList<LatestVersionSearchResult> searchDescendants(NavigationCalculator navigationCalculator, PublicId ancestor, String query, int maxResultSize) throws Exception {
-        ImmutableList<LatestVersionSearchResult> latestVersionSearchResults = search(query, maxResultSize);
-        MutableList<LatestVersionSearchResult> latestVersionSearchResultMutableList = Lists.mutable.empty();
-
+        // The navigation calculator keeps the descendent set, so repeated searches under one ancestor reuse it.
         IntIdSet descendantNids = navigationCalculator.descendentsOf(EntityService.get().nidForPublicId(ancestor));
-
-        latestVersionSearchResults.forEach(latestVersionSearchResult -> {
-            int chronologyNid = latestVersionSearchResult.latestVersion().get().chronology().referencedComponent().nid();
-            if (descendantNids.contains(chronologyNid)) {
-                latestVersionSearchResultMutableList.add(latestVersionSearchResult);
-            }
-        });
-
-        return latestVersionSearchResultMutableList.toImmutable();
+        return search(query, maxResultSize, PrimitiveDataSearchFilter.NONE.andReferencedComponent(descendantNids::contains));
     }
 
     default boolean latestIsActive(Entity entity) {
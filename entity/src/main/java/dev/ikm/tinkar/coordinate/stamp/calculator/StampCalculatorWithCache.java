@@ -71,6 +71,7 @@
 import dev.ikm.tinkar.entity.CacheInvalidationSubscriber;
 import dev.ikm.tinkar.entity.Entity;
 import dev.ikm.tinkar.entity.EntityFactory;
+import dev.ikm.tinkar.entity.EntityView;
 import dev.ikm.tinkar.entity.EntityService;
 import dev.ikm.tinkar.entity.EntityVersion;
 import dev.ikm.tinkar.entity.Field;
@@ -109,6 +110,7 @@
 import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiConsumer;
+import java.util.function.IntUnaryOperator;
 import java.util.stream.Stream;
 
 /**
@@ -121,6 +123,8 @@ public class StampCalculatorWithCache implements StampCalculator {
      * The Constant LOG.
      */
     private static final Logger LOG = LoggerFactory.getLogger(StampCalculatorWithCache.class);
+    private static final int NO_LATEST = -1;
+    private static final int UNRANKED = -2;
 
     private static final ConcurrentReferenceHashMap<StampCoordinateRecord, StampCalculatorWithCache> SINGLETONS =
             new ConcurrentReferenceHashMap<>(ConcurrentReferenceHashMap.ReferenceType.WEAK,
@@ -131,8 +135,10 @@ public class StampCalculatorWithCache implements StampCalculator {
     private final StampCoordinateRecord filter;
     private final StateSet allowedStates;
     private final ConcurrentHashMap<Integer, ImmutableSet<StampBranchRecord>> branchMap = new ConcurrentHashMap<>();
-    private final ConcurrentHashMap<Integer, Boolean> stampOnRoute = new ConcurrentHashMap<>();
-    private final ConcurrentHashMap<Integer, Boolean> stampIsAllowedState = new ConcurrentHashMap<>();
+    /**
+     * Whether each stamp seen is on route and in an allowed state, and its position for ranking versions.
+     */
+    private final StampClassifications stampClassifications = new StampClassifications();
     /**
      * Mapping from pathNid to each segment for that pathNid. There is one entry
      * for each path reachable antecedent to the destination position of the
@@ -145,6 +151,11 @@ public class StampCalculatorWithCache implements StampCalculator {
     private final Cache<Integer, Latest<EntityVersion>> latestCache = Caffeine.newBuilder().maximumSize(10_240).build();
     private final CacheInvalidationSubscriber cacheInvalidationSubscriber = new CacheInvalidationSubscriber();
     private final CacheInvalidationIfPatternSubscriber cacheInvalidationIfPatternSubscriber = new CacheInvalidationIfPatternSubscriber();
+    /**
+     * True if every segment is preceded by exactly the segments with lower sequences, so that positions on route
+     * are totally ordered by segment sequence, then time, and the latest version can be found by rank.
+     */
+    private final boolean segmentsRanked;
     /**
      * The error count.
      */
@@ -159,11 +170,13 @@ private StampCalculatorWithCache(StampCoordinateRecord filter) {
         //For the internal callback to populate the cache
         this.filter = filter;
         setupPathNidSegmentMap(filter.stampPosition().toStampPositionImmutable());
+        this.segmentsRanked = segmentsRanked();
         this.allowedStates = filter.allowedStates();
+        Entity.provider().addCacheInvalidationSubscriber(this.stampClassifications);
         this.cacheInvalidationSubscriber.addCaches(patternVersionCache, latestCache);
-        Entity.provider().addSubscriberWithWeakReference(this.cacheInvalidationSubscriber);
+        Entity.provider().addCacheInvalidationSubscriber(this.cacheInvalidationSubscriber);
         this.cacheInvalidationIfPatternSubscriber.addCaches(indexForMeaningCache, indexForPurposeCache);
-        Entity.provider().addSubscriberWithWeakReference(this.cacheInvalidationIfPatternSubscriber);
+        Entity.provider().addCacheInvalidationSubscriber(this.cacheInvalidationIfPatternSubscriber);
     }
 
     /**
@@ -312,11 +325,151 @@ public <V extends EntityVersion> List<DiTreeVersion<V>> getVersionGraphList(Enti
      * @return the latest version
      */
     public <V extends EntityVersion> Latest<V> latest(Entity<V> chronicle) {
-        final HashSet<EntityVersion> latestVersionSet = new HashSet<>();
         if (chronicle == null) {
             return Latest.empty();
         }
+        if (segmentsRanked) {
+            Latest<V> latest = latestByRank(chronicle);
+            if (latest != null) {
+                return latest;
+            }
+        }
+        return latestByRelativePosition(chronicle);
+    }
 
+    /**
+     * Finds the latest version by comparing the segment sequence and time of each version's stamp, from the
+     * classification table, without allocating.
+     *
+     * @return the latest version, or null if two versions have equal positions, or a stamp could not be
+     * classified, and the latest must be found by relative position
+     */
+    private <V extends EntityVersion> Latest<V> latestByRank(Entity<V> chronicle) {
+        ImmutableList<V> versions = chronicle.versions();
+        int latestIndex = latestIndexByRank(versions.size(), versionIndex -> versions.get(versionIndex).stampNid());
+        return switch (latestIndex) {
+            case UNRANKED -> null;
+            case NO_LATEST -> new Latest<>();
+            default -> new Latest<>(versions.get(latestIndex));
+        };
+    }
+
+    /**
+     * Ranks versions by the segment sequence and time of their stamps, as {@link #latestByRank(Entity)} does.
+     *
+     * @param versionCount      the number of versions
+     * @param stampNidOfVersion the stamp of the version at an index
+     * @return the index of the latest version, {@link #NO_LATEST} if no version is latest, or {@link #UNRANKED}
+     * if two versions have equal positions, or a stamp could not be classified
+     */
+    private int latestIndexByRank(int versionCount, IntUnaryOperator stampNidOfVersion) {
+        StampClassifications.Table table = stampClassifications.table();
+        int latestIndex = NO_LATEST;
+        int latestInfo = 0;
+        long latestTime = 0;
+        for (int i = 0; i < versionCount; i++) {
+            int stampNid = stampNidOfVersion.applyAsInt(i);
+            int slot = table.slot(stampNid);
+            if (slot < 0) {
+                table = classify(stampNid);
+                if (table == null) {
+                    return UNRANKED;
+                }
+                slot = table.slot(stampNid);
+            }
+            int info = table.info(slot);
+            if ((info & StampClassifications.ON_ROUTE) == 0 || (info & StampClassifications.CANCELED) != 0) {
+                continue;
+            }
+            long time = table.time(slot);
+            if (latestIndex != NO_LATEST) {
+                // A lower segment sequence is closer to the calculator's position, and so later.
+                int segmentOrder = Integer.compare(StampClassifications.segmentSequence(latestInfo),
+                        StampClassifications.segmentSequence(info));
+                int order = segmentOrder != 0 ? segmentOrder : Long.compare(time, latestTime);
+                if (order < 0) {
+                    continue;
+                }
+                if (order == 0) {
+                    return UNRANKED;
+                }
+            }
+            latestIndex = i;
+            latestInfo = info;
+            latestTime = time;
+        }
+        if (latestIndex == NO_LATEST || (latestInfo & StampClassifications.ALLOWED_STATE) == 0) {
+            return NO_LATEST;
+        }
+        return latestIndex;
+    }
+
+    /**
+     * The latest version of an entity read from its bytes. When the stamps of the stored versions show that no
+     * version is latest, as for semantics retired before the calculator's position or on other paths, the entity
+     * is not decoded.
+     */
+    private Latest<EntityVersion> latest(byte[] bytes) {
+        if (segmentsRanked) {
+            EntityView view = EntityView.of(bytes);
+            if (latestIndexByRank(view.versionCount(), view::stampNid) == NO_LATEST) {
+                return new Latest<>();
+            }
+        }
+        Entity<EntityVersion> entity = EntityFactory.make(bytes);
+        return latest(entity);
+    }
+
+    /**
+     * Classifies a stamp and adds it to the classification table.
+     *
+     * @return the table with the stamp, or null if the stamp changed while it was classified
+     */
+    private StampClassifications.Table classify(int stampNid) {
+        long sequence = Entity.provider().invalidationSequence();
+        StampEntity stamp = Entity.getStamp(stampNid);
+        int info = 0;
+        long time = Long.MIN_VALUE;
+        if (stamp != null) {
+            time = stamp.time();
+            Segment segment = this.pathNidSegmentMap.get(stamp.pathNid());
+            boolean onRoute = segment != null && segment.containsPosition(stamp.pathNid(), stamp.moduleNid(), time);
+            info = StampClassifications.info(onRoute,
+                    this.allowedStates.contains(State.fromConceptNid(stamp.stateNid())),
+                    time == Long.MIN_VALUE,
+                    onRoute ? segment.segmentSequence : 0);
+        }
+        return stampClassifications.add(stampNid, info, time, sequence);
+    }
+
+    /**
+     * @return the classification of the stamp, or -1 if it could not be kept in the table
+     */
+    private int classification(int stampNid) {
+        StampClassifications.Table table = stampClassifications.table();
+        int slot = table.slot(stampNid);
+        if (slot < 0) {
+            table = classify(stampNid);
+            if (table == null) {
+                return -1;
+            }
+            slot = table.slot(stampNid);
+        }
+        return table.info(slot);
+    }
+
+    private boolean segmentsRanked() {
+        for (Segment segment : this.pathNidSegmentMap.values()) {
+            if (segment.precedingSegments.size() != segment.segmentSequence ||
+                    (segment.segmentSequence > 0 && segment.precedingSegments.last() != segment.segmentSequence - 1)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private <V extends EntityVersion> Latest<V> latestByRelativePosition(Entity<V> chronicle) {
+        final HashSet<EntityVersion> latestVersionSet = new HashSet<>();
         chronicle.versions()
                 .stream()
                 .filter((newVersionToTest) -> (newVersionToTest.stamp() != null && newVersionToTest.stamp().time() > Long.MIN_VALUE))
@@ -386,10 +539,7 @@ public void forEachSemanticVersionOfPatternParallel(int patternNid, BiConsumer<S
             PrimitiveData.get().forEachParallel(IntLists.immutable.of(semanticNidsOfPattern), (byte[] bytes, int nid) -> {
 
                 Latest<? extends EntityVersion> latestSemanticVersion =
-                        latestCache.get(nid, integer -> {
-                            Entity<EntityVersion> semanticRecord = EntityFactory.make(bytes);
-                            return latest(semanticRecord);
-                        });
+                        latestCache.get(nid, integer -> latest(bytes));
                 latestSemanticVersion.ifPresent(semanticVersion -> procedure.accept((SemanticEntityVersion) semanticVersion, patternEntityVersion));
             });
         });
@@ -523,11 +673,11 @@ public <T> Latest<Field<T>> getFieldForSemantic(int componentNid, int criterionN
      * @return true, if successful
      */
     public boolean onRoute(int stampNid) {
-        if (stampOnRoute.containsKey(stampNid)) {
-            return stampOnRoute.get(stampNid);
+        int classification = classification(stampNid);
+        if (classification < 0) {
+            return onRoute(Entity.getStamp(stampNid));
         }
-        StampEntity stamp = Entity.getStamp(stampNid);
-        return onRoute(stamp);
+        return (classification & StampClassifications.ON_ROUTE) != 0;
     }
 
     /**
@@ -546,19 +696,14 @@ public RelativePosition fastRelativePosition(int stampNid1,
     }
 
     public boolean onRoute(StampEntity stamp) {
-        if (stampOnRoute.containsKey(stamp.nid())) {
-            return stampOnRoute.get(stamp.nid());
-        }
         final Segment seg = this.pathNidSegmentMap.get(stamp.pathNid());
-        boolean returnValue = false;
         if (seg != null) {
-            returnValue = seg.containsPosition(
+            return seg.containsPosition(
                     stamp.pathNid(),
                     stamp.moduleNid(),
                     stamp.time());
         }
-        stampOnRoute.put(stamp.pathNid(), returnValue);
-        return returnValue;
+        return false;
     }
 
     /**
@@ -1035,13 +1180,12 @@ private int[] getResults(MutableIntSet stampsForPosition) {
     }
 
     private boolean isAllowedState(int stampNid) {
-        if (stampIsAllowedState.containsKey(stampNid)) {
-            return stampIsAllowedState.get(stampNid);
+        int classification = classification(stampNid);
+        if (classification < 0) {
+            StampEntity stamp = Entity.getStamp(stampNid);
+            return this.allowedStates.contains(State.fromConceptNid(stamp.stateNid()));
         }
-        StampEntity stamp = Entity.getStamp(stampNid);
-        boolean allowed = this.allowedStates.contains(State.fromConceptNid(stamp.stateNid()));
-        stampIsAllowedState.put(stampNid, allowed);
-        return allowed;
+        return (classification & StampClassifications.ALLOWED_STATE) != 0;
     }
 
     /**
@@ -0,0 +1,207 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.coordinate.stamp.calculator;
+
+import dev.ikm.tinkar.common.util.broadcast.Subscriber;
+import dev.ikm.tinkar.entity.CacheInvalidation;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * How one stamp calculator classifies each stamp it has seen, in an open addressing table keyed by stamp nid.
+ * <p>
+ * Each entry packs flags and the sequence of the segment the stamp is on into an int, beside the stamp time. Entries
+ * are added as stamps are first seen, and removed when a {@link CacheInvalidation} batch names the stamp, as when
+ * it is committed or canceled. Reads do not lock: a {@link Table} is read through a volatile reference, and a key
+ * is published after its entry, so a reader that finds the key also sees the entry. Writes lock, and replace the
+ * table when it grows or loses entries.
+ */
+final class StampClassifications implements Subscriber<CacheInvalidation> {
+    /**
+     * The stamp is on the route of the calculator's position.
+     */
+    static final int ON_ROUTE = 1;
+    /**
+     * The stamp's state is one of the calculator's allowed states.
+     */
+    static final int ALLOWED_STATE = 1 << 1;
+    /**
+     * The stamp was canceled, so versions on it are never latest.
+     */
+    static final int CANCELED = 1 << 2;
+    private static final int SEGMENT_SHIFT = 8;
+    private static final int EMPTY = Integer.MIN_VALUE;
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final Object lock = new Object();
+    private volatile Table table = new Table(INITIAL_CAPACITY);
+    /**
+     * Guarded by {@link #lock}.
+     */
+    private long invalidatedSequence;
+
+    static int info(boolean onRoute, boolean allowedState, boolean canceled, int segmentSequence) {
+        return (onRoute ? ON_ROUTE : 0) | (allowedState ? ALLOWED_STATE : 0) | (canceled ? CANCELED : 0)
+                | (segmentSequence << SEGMENT_SHIFT);
+    }
+
+    static int segmentSequence(int info) {
+        return info >>> SEGMENT_SHIFT;
+    }
+
+    Table table() {
+        return table;
+    }
+
+    /**
+     * Adds the classification of a stamp, unless an invalidation batch later than the sequence read before
+     * classifying it has since been applied, since the classification may then be stale.
+     *
+     * @return the table with the entry, or null if it was not added
+     */
+    Table add(int stampNid, int info, long time, long sequenceBeforeClassifying) {
+        synchronized (lock) {
+            if (invalidatedSequence > sequenceBeforeClassifying) {
+                return null;
+            }
+            Table current = this.table;
+            if (current.slot(stampNid) >= 0) {
+                return current;
+            }
+            if ((current.size + 1) * 4 > current.capacity() * 3) {
+                Table grown = new Table(current.capacity() * 2);
+                current.copyTo(grown, null);
+                current = grown;
+            }
+            current.insert(stampNid, info, time);
+            this.table = current;
+            return current;
+        }
+    }
+
+    @Override
+    public void onNext(CacheInvalidation invalidation) {
+        synchronized (lock) {
+            Table current = this.table;
+            if (invalidation.invalidatesAll()) {
+                this.table = new Table(INITIAL_CAPACITY);
+            } else if (containsAny(current, invalidation)) {
+                // Open addressing cannot remove in place without breaking probes that readers may be following.
+                Table rebuilt = new Table(current.capacity());
+                current.copyTo(rebuilt, invalidation);
+                this.table = rebuilt;
+            }
+            invalidatedSequence = Math.max(invalidatedSequence, invalidation.sequence());
+        }
+    }
+
+    private static boolean containsAny(Table table, CacheInvalidation invalidation) {
+        if (invalidation.size() > table.size) {
+            return table.anyKey(invalidation);
+        }
+        for (int nid : invalidation.nids()) {
+            if (table.slot(nid) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A snapshot of the classifications, with room for more. Slots are only written under the lock of the owning
+     * {@link StampClassifications}, and never overwritten.
+     */
+    static final class Table {
+        private final AtomicIntegerArray keys;
+        private final int[] infos;
+        private final long[] times;
+        private final int mask;
+        private int size;
+
+        private Table(int capacity) {
+            this.keys = new AtomicIntegerArray(capacity);
+            for (int i = 0; i < capacity; i++) {
+                keys.setPlain(i, EMPTY);
+            }
+            this.infos = new int[capacity];
+            this.times = new long[capacity];
+            this.mask = capacity - 1;
+        }
+
+        private int capacity() {
+            return mask + 1;
+        }
+
+        private static int hash(int nid) {
+            int h = nid * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+
+        /**
+         * @return the slot of the stamp, or -1 if it has not been classified
+         */
+        int slot(int stampNid) {
+            for (int slot = hash(stampNid) & mask; ; slot = (slot + 1) & mask) {
+                int key = keys.get(slot);
+                if (key == stampNid) {
+                    return slot;
+                }
+                if (key == EMPTY) {
+                    return -1;
+                }
+            }
+        }
+
+        int info(int slot) {
+            return infos[slot];
+        }
+
+        long time(int slot) {
+            return times[slot];
+        }
+
+        private void insert(int stampNid, int info, long time) {
+            int slot = hash(stampNid) & mask;
+            while (keys.getPlain(slot) != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            infos[slot] = info;
+            times[slot] = time;
+            // Published last, so readers that find the key see the entry.
+            keys.set(slot, stampNid);
+            size++;
+        }
+
+        private void copyTo(Table target, CacheInvalidation excluded) {
+            for (int slot = 0; slot < capacity(); slot++) {
+                int key = keys.getPlain(slot);
+                if (key != EMPTY && (excluded == null || !excluded.contains(key))) {
+                    target.insert(key, infos[slot], times[slot]);
+                }
+            }
+        }
+
+        private boolean anyKey(CacheInvalidation invalidation) {
+            for (int slot = 0; slot < capacity(); slot++) {
+                int key = keys.getPlain(slot);
+                if (key != EMPTY && invalidation.contains(key)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
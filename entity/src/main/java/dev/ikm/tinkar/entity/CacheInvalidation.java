@@ -0,0 +1,63 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.entity;
+
+import java.util.Arrays;
+
+/**
+ * A batch of nids whose cached values may be stale, published by the entity service to each
+ * {@link EntityService#addCacheInvalidationSubscriber cache invalidation subscriber} after a write or a commit.
+ * <p>
+ * The sequence is the entity service's {@link EntityService#invalidationSequence() invalidation sequence} after
+ * this batch. A cache that records the sequence it read before computing a value can lazily discard that value
+ * if a later batch was published while it was being computed.
+ *
+ * @param nids sorted, distinct nids to invalidate, or null if every cached value should be invalidated
+ * @param sequence the invalidation sequence of this batch
+ */
+public record CacheInvalidation(int[] nids, long sequence) {
+
+    public static CacheInvalidation all(long sequence) {
+        return new CacheInvalidation(null, sequence);
+    }
+
+    public static CacheInvalidation of(long sequence, int... nids) {
+        int[] sorted = nids.clone();
+        Arrays.sort(sorted);
+        int distinct = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[distinct - 1]) {
+                sorted[distinct++] = sorted[i];
+            }
+        }
+        return new CacheInvalidation(distinct == sorted.length ? sorted : Arrays.copyOf(sorted, distinct), sequence);
+    }
+
+    public boolean invalidatesAll() {
+        return nids == null;
+    }
+
+    public boolean contains(int nid) {
+        return nids == null || Arrays.binarySearch(nids, nid) >= 0;
+    }
+
+    /**
+     * @return the number of nids in this batch, or {@code Integer.MAX_VALUE} if every value is invalidated
+     */
+    public int size() {
+        return nids == null ? Integer.MAX_VALUE : nids.length;
+    }
+}
@@ -18,14 +18,15 @@
 import com.github.benmanes.caffeine.cache.Cache;
 import dev.ikm.tinkar.common.util.broadcast.Subscriber;
 
-import java.util.List;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Remove objects from a cache based on
+ * Remove objects from a cache based on the nids in each {@link CacheInvalidation} batch.
  */
-public class CacheInvalidationSubscriber implements Subscriber<Integer> {
+public class CacheInvalidationSubscriber implements Subscriber<CacheInvalidation> {
     CopyOnWriteArrayList<Cache<Integer, ? extends Object>> cachesToManage = new CopyOnWriteArrayList<>();
+    private final AtomicLong invalidatedSequence = new AtomicLong();
 
 
     public void addCaches(Cache<Integer, ? extends Object>... caches) {
@@ -36,15 +37,28 @@ public void addCaches(Cache<Integer, ? extends Object>... caches) {
 
 
 
+    /**
+     * @return the sequence of the latest batch applied to the managed caches. A value computed after reading
+     * {@link EntityService#invalidationSequence()} is current if no later batch has been applied.
+     */
+    public long invalidatedSequence() {
+        return invalidatedSequence.get();
+    }
+
     @Override
-    public void onNext(Integer nid) {
-        // Do nothing with item, but request another...
+    public void onNext(CacheInvalidation invalidation) {
         for (Cache<Integer, ?> cache : cachesToManage) {
-            if (nid == Integer.MIN_VALUE) {
+            if (invalidation.invalidatesAll()) {
                 cache.invalidateAll();
+            } else if (invalidation.size() > cache.estimatedSize()) {
+                // Cheaper to test each cached key against the sorted batch than to remove each nid in the batch.
+                cache.asMap().keySet().removeIf(invalidation::contains);
             } else {
-                cache.invalidate(nid);
+                for (int nid : invalidation.nids()) {
+                    cache.invalidate(nid);
+                }
             }
         }
+        invalidatedSequence.accumulateAndGet(invalidation.sequence(), Math::max);
     }
 }
@@ -51,6 +51,7 @@
 import dev.ikm.tinkar.terms.SemanticFacade;
 import io.activej.bytebuf.ByteBuf;
 import io.activej.bytebuf.ByteBufPool;
+import org.eclipse.collections.api.block.procedure.primitive.IntIntProcedure;
 import org.eclipse.collections.api.factory.Lists;
 import org.eclipse.collections.api.list.ImmutableList;
 import org.eclipse.collections.api.list.MutableList;
@@ -65,6 +66,7 @@
 import java.math.BigDecimal;
 import java.time.Instant;
 import java.util.UUID;
+import java.util.function.ObjIntConsumer;
 
 import static dev.ikm.tinkar.component.FieldDataType.COMPONENT_ID_LIST;
 import static dev.ikm.tinkar.component.FieldDataType.SEMANTIC_CHRONOLOGY;
@@ -409,38 +411,30 @@ private static <V extends EntityVersion> V makeVersion(Version version, Entity<?
 
     public static void collectUuids(byte[] data, ConcurrentHashMap<Integer, ConcurrentHashSet<Integer>> patternElementNidsMap,
                                     ConcurrentHashMap<UUID, Integer> uuidToNidMap) {
-        ByteBuf buf = ByteBuf.wrapForReading(data);
-        // bytes starts with number of arrays (int = 4 bytes), then size of first array (int = 4 bytes), then type token
-        int numberOfArrays = buf.readInt();
-        int sizeOfFirstArray = buf.readInt();
-        byte formatVersion = buf.readByte();
-        FieldDataType fieldDataType = FieldDataType.fromToken(buf.readByte());
-        if (formatVersion != ENTITY_FORMAT_VERSION) {
-            throw new IllegalStateException("Unsupported entity format version: " + formatVersion);
-        }
-        int nid = buf.readInt();
-        long mostSignificantBits = buf.readLong();
-        long leastSignificantBits = buf.readLong();
-        uuidToNidMap.put(new UUID(mostSignificantBits, leastSignificantBits), nid);
-        int additionalUuidLongCount = buf.readByte();
-        long[] additionalUuidLongs = null;
+        collectUuids(data, (patternNid, elementNid) -> patternElementNidsMap
+                .getIfAbsentPut(patternNid, integer -> new ConcurrentHashSet()).add(elementNid), uuidToNidMap::put);
+    }
 
-        if (additionalUuidLongCount > 0) {
-            additionalUuidLongs = new long[additionalUuidLongCount];
-            for (int i = 0; i < additionalUuidLongs.length; i++) {
-                additionalUuidLongs[i] = buf.readLong();
-            }
-            for (int i = 0; i < additionalUuidLongCount; i += 2) {
-                uuidToNidMap.put(new UUID(additionalUuidLongs[i], additionalUuidLongs[i + 1]), nid);
+    /**
+     * Collect the UUIDs and pattern membership of an entity without decoding its versions.
+     *
+     * @param data                    the entity bytes
+     * @param patternElementProcedure accepts the pattern nid and semantic nid if the entity is a semantic
+     * @param uuidNidConsumer         accepts each UUID of the entity with the entity nid, or null if UUIDs need not
+     *                                be collected
+     */
+    public static void collectUuids(byte[] data, IntIntProcedure patternElementProcedure,
+                                    ObjIntConsumer<UUID> uuidNidConsumer) {
+        EntityView view = EntityView.of(data);
+        int nid = view.nid();
+        if (uuidNidConsumer != null) {
+            uuidNidConsumer.accept(view.primordialUuid(), nid);
+            for (int i = 0; i < view.additionalUuidLongCount(); i += 2) {
+                uuidNidConsumer.accept(new UUID(view.additionalUuidLong(i), view.additionalUuidLong(i + 1)), nid);
             }
         }
-
-        if (fieldDataType == SEMANTIC_CHRONOLOGY) {
-            int referencedComponentNid = buf.readInt();
-            int patternNid = buf.readInt();
-            int versionCount = buf.readInt();
-            patternElementNidsMap.getIfAbsentPut(patternNid, integer -> new ConcurrentHashSet())
-                    .add(nid);
+        if (view.isSemantic()) {
+            patternElementProcedure.value(view.patternNid(), nid);
         }
     }
 
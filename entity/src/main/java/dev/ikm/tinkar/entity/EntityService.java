@@ -19,8 +19,10 @@
 import dev.ikm.tinkar.common.id.PublicId;
 import dev.ikm.tinkar.common.id.PublicIds;
 import dev.ikm.tinkar.common.service.DataActivity;
+import dev.ikm.tinkar.common.service.PrimitiveData;
 import dev.ikm.tinkar.common.service.TinkExecutor;
 import dev.ikm.tinkar.common.util.broadcast.Broadcaster;
+import dev.ikm.tinkar.common.util.broadcast.Subscriber;
 import dev.ikm.tinkar.component.Chronology;
 import dev.ikm.tinkar.component.ChronologyService;
 import dev.ikm.tinkar.component.Component;
@@ -29,9 +31,17 @@
 import dev.ikm.tinkar.entity.internal.EntityServiceFinder;
 import dev.ikm.tinkar.entity.load.LoadEntitiesFromProtobufFile;
 import dev.ikm.tinkar.entity.transaction.Transaction;
+import dev.ikm.tinkar.entity.util.IdentifierSemantics;
 import dev.ikm.tinkar.terms.ComponentWithNid;
 import dev.ikm.tinkar.terms.EntityFacade;
+import dev.ikm.tinkar.terms.TinkarTerm;
+import org.eclipse.collections.api.factory.primitive.IntLists;
+import org.eclipse.collections.api.factory.primitive.IntSets;
+import org.eclipse.collections.api.factory.primitive.ObjectIntMaps;
 import org.eclipse.collections.api.list.ImmutableList;
+import org.eclipse.collections.api.list.primitive.MutableIntList;
+import org.eclipse.collections.api.map.primitive.MutableObjectIntMap;
+import org.eclipse.collections.api.set.primitive.MutableIntSet;
 
 import java.io.File;
 import java.util.Arrays;
@@ -55,7 +65,7 @@ default CompletableFuture<EntityCountSummary> fullExport(File file) {
             } catch (InterruptedException | ExecutionException e) {
                 throw new RuntimeException(e);
             }
-        }, TinkExecutor.ioThreadPool());
+        }, TinkExecutor.virtualThreadExecutor());
     }
 
     default CompletableFuture<EntityCountSummary> temporalExport(File file, long fromEpoch, long toEpoch) {
@@ -65,7 +75,7 @@ default CompletableFuture<EntityCountSummary> temporalExport(File file, long fro
             } catch (InterruptedException | ExecutionException e) {
                 throw new RuntimeException(e);
             }
-        }, TinkExecutor.ioThreadPool());
+        }, TinkExecutor.virtualThreadExecutor());
     }
 
     default CompletableFuture<EntityCountSummary> membershipExport(File file, List<PublicId> membershipTags) {
@@ -75,7 +85,7 @@ default CompletableFuture<EntityCountSummary> membershipExport(File file, List<P
             } catch (InterruptedException | ExecutionException e) {
                 throw new RuntimeException(e);
             }
-        }, TinkExecutor.ioThreadPool());
+        }, TinkExecutor.virtualThreadExecutor());
     }
 
     default CompletableFuture<EntityCountSummary> loadData(File file) {
@@ -85,7 +95,7 @@ default CompletableFuture<EntityCountSummary> loadData(File file) {
             } catch (InterruptedException | ExecutionException e) {
                 throw new RuntimeException(e);
             }
-        }, TinkExecutor.ioThreadPool());
+        }, TinkExecutor.virtualThreadExecutor());
     }
 
     @Override
@@ -223,6 +233,21 @@ default void putEntityQuietly(Entity entity) {
         putEntityQuietly(entity, DataActivity.SYNCHRONIZABLE_EDIT);
     }
 
+    /**
+     * Write a batch of entities for a bulk load. Within a load phase, implementations may skip populating caches
+     * and dispatching change notifications, and may defer maintaining derived indexes, such as citations,
+     * pattern membership, and the search index, until {@link #endLoadPhase()}. Outside a load phase, each entity
+     * is written with {@link #putEntityQuietly(Entity, DataActivity)}.
+     *
+     * @param entities the entities to write, in order
+     * @param activity the data activity performed
+     */
+    default void putEntitiesInBulk(Iterable<? extends Entity<?>> entities, DataActivity activity) {
+        for (Entity<?> entity : entities) {
+            putEntityQuietly(entity, activity);
+        }
+    }
+
     /**
      * @param stampEntity
      * @deprecated Use putEntity instead
@@ -278,8 +303,67 @@ default void addSortedUuids(List<UUID> uuidList, int... nids) throws NoSuchEleme
 
     int[] semanticNidsForComponentOfPattern(int componentNid, int patternNid);
 
+    /**
+     * Look up identifier semantics by identifier source and identifier value. The lookup uses the data service's
+     * identifier index when it has one, and otherwise scans the semantics of the identifier pattern.
+     *
+     * @return the nids of the identifier semantics that have the identifier source and value in any version.
+     */
+    default int[] semanticNidsForIdentifier(int identifierSourceNid, String identifierValue) {
+        return semanticNidsForIdentifiers(identifierSourceNid, identifierValue)[0];
+    }
+
+    /**
+     * Bulk variant of {@link #semanticNidsForIdentifier(int, String)}, which scans the identifier pattern at most
+     * once for all the values.
+     *
+     * @return an array of identifier semantic nids for each identifier value, in the order of the values.
+     */
+    default int[][] semanticNidsForIdentifiers(int identifierSourceNid, String... identifierValues) {
+        if (PrimitiveData.get().indexesIdentifiers()) {
+            return PrimitiveData.get().semanticNidsForIdentifiers(identifierSourceNid, identifierValues);
+        }
+        MutableObjectIntMap<String> valueIndexes = ObjectIntMaps.mutable.empty();
+        MutableIntList[] semanticNids = new MutableIntList[identifierValues.length];
+        for (int i = 0; i < identifierValues.length; i++) {
+            valueIndexes.put(identifierValues[i], i);
+            semanticNids[i] = IntLists.mutable.empty();
+        }
+        forEachSemanticOfPattern(TinkarTerm.IDENTIFIER_PATTERN.nid(), semantic -> {
+            MutableIntSet matchedIndexes = IntSets.mutable.empty();
+            IdentifierSemantics.forEachIdentifier(semantic, (sourceNid, value) -> {
+                if (sourceNid == identifierSourceNid && valueIndexes.containsKey(value)) {
+                    matchedIndexes.add(valueIndexes.get(value));
+                }
+            });
+            matchedIndexes.forEach(index -> semanticNids[index].add(semantic.nid()));
+        });
+        int[][] result = new int[identifierValues.length][];
+        for (int i = 0; i < identifierValues.length; i++) {
+            // Repeated values share the last index, so copy its matches.
+            result[i] = semanticNids[valueIndexes.get(identifierValues[i])].toArray();
+        }
+        return result;
+    }
+
     void notifyRefreshRequired(Transaction transaction);
 
+    /**
+     * Adds a subscriber, held by weak reference, that receives a {@link CacheInvalidation} batch for each write
+     * that is dispatched, each committed or canceled transaction, and the end of each load phase. Caches of values
+     * computed from entities should subscribe here rather than to the per-nid broadcast.
+     * @param subscriber the subscriber that invalidates its caches
+     */
+    void addCacheInvalidationSubscriber(Subscriber<CacheInvalidation> subscriber);
+
+    void removeCacheInvalidationSubscriber(Subscriber<CacheInvalidation> subscriber);
+
+    /**
+     * @return the sequence of the most recently published {@link CacheInvalidation} batch, which increases with
+     * each batch
+     */
+    long invalidationSequence();
+
     boolean isLoadPhase();
 
     void endLoadPhase();
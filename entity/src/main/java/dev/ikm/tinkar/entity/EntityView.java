@@ -0,0 +1,300 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.entity;
+
+import dev.ikm.tinkar.common.service.PrimitiveData;
+import dev.ikm.tinkar.component.FieldDataType;
+import io.activej.bytebuf.ByteBuf;
+
+import java.util.UUID;
+
+import static dev.ikm.tinkar.component.FieldDataType.SEMANTIC_CHRONOLOGY;
+import static dev.ikm.tinkar.entity.EntityRecordFactory.ENTITY_FORMAT_VERSION;
+
+/**
+ * A read only view of an entity over the bytes written by {@link EntityRecordFactory#getBytes(Entity)}, for scans
+ * that need the header, the stamps, or a few fields of many entities, and would otherwise decode every version and
+ * field with {@link EntityRecordFactory#make(byte[])}.
+ * <p>
+ * The header is read from fixed offsets, and the stamp of each version from the offset of the version, which is
+ * found from the version sizes without reading the version. A field is decoded when it is asked for, by skipping
+ * the fields before it. Unlike {@link EntityRecordFactory#make(byte[])}, versions on canceled stamps are not
+ * removed, so callers that need only current versions check {@link #stampNid(int)} themselves.
+ * <p>
+ * A view holds only the bytes and the version offsets, so it is cheap to make for each entity of a scan, and
+ * is not safe to keep if the entity may change. Use {@link #toEntity()} when the whole entity is needed.
+ */
+public final class EntityView {
+    private static final int ARRAY_COUNT_BYTES = Integer.BYTES;
+    private static final int HEADER_START = ARRAY_COUNT_BYTES + Integer.BYTES;
+    private static final int FORMAT_VERSION_OFFSET = HEADER_START;
+    private static final int DATA_TYPE_OFFSET = FORMAT_VERSION_OFFSET + 1;
+    private static final int NID_OFFSET = DATA_TYPE_OFFSET + 1;
+    private static final int MSB_OFFSET = NID_OFFSET + Integer.BYTES;
+    private static final int LSB_OFFSET = MSB_OFFSET + Long.BYTES;
+    private static final int ADDITIONAL_UUID_COUNT_OFFSET = LSB_OFFSET + Long.BYTES;
+    private static final int ADDITIONAL_UUIDS_OFFSET = ADDITIONAL_UUID_COUNT_OFFSET + 1;
+    /**
+     * The version type token and stamp nid, which start every version.
+     */
+    private static final int VERSION_PREFIX_BYTES = 1 + Integer.BYTES;
+
+    private final byte[] bytes;
+    private final FieldDataType entityDataType;
+    /**
+     * Offset of the type token of each version, found when a version is first read.
+     */
+    private int[] versionOffsets;
+
+    private EntityView(byte[] bytes) {
+        this.bytes = bytes;
+        if (bytes[FORMAT_VERSION_OFFSET] != ENTITY_FORMAT_VERSION) {
+            throw new IllegalStateException("Unsupported entity format version: " + bytes[FORMAT_VERSION_OFFSET]);
+        }
+        this.entityDataType = FieldDataType.fromToken(bytes[DATA_TYPE_OFFSET]);
+    }
+
+    /**
+     * @param bytes the entity bytes, which are not copied
+     * @return a view of the bytes
+     */
+    public static EntityView of(byte[] bytes) {
+        return new EntityView(bytes);
+    }
+
+    /**
+     * @return a view of the stored entity, or null if no entity is stored for the nid
+     */
+    public static EntityView get(int nid) {
+        byte[] bytes = PrimitiveData.get().getBytes(nid);
+        if (bytes == null) {
+            return null;
+        }
+        return new EntityView(bytes);
+    }
+
+    public byte[] bytes() {
+        return bytes;
+    }
+
+    public FieldDataType entityDataType() {
+        return entityDataType;
+    }
+
+    public boolean isSemantic() {
+        return entityDataType == SEMANTIC_CHRONOLOGY;
+    }
+
+    public int nid() {
+        return readInt(NID_OFFSET);
+    }
+
+    public long mostSignificantBits() {
+        return readLong(MSB_OFFSET);
+    }
+
+    public long leastSignificantBits() {
+        return readLong(LSB_OFFSET);
+    }
+
+    public UUID primordialUuid() {
+        return new UUID(mostSignificantBits(), leastSignificantBits());
+    }
+
+    /**
+     * @return the number of additional uuid longs, two for each additional uuid
+     */
+    public int additionalUuidLongCount() {
+        return bytes[ADDITIONAL_UUID_COUNT_OFFSET];
+    }
+
+    public long additionalUuidLong(int index) {
+        return readLong(ADDITIONAL_UUIDS_OFFSET + index * Long.BYTES);
+    }
+
+    /**
+     * @return the pattern of the semantic
+     * @throws IllegalStateException if the entity is not a semantic
+     */
+    public int patternNid() {
+        return readInt(semanticHeaderOffset() + Integer.BYTES);
+    }
+
+    /**
+     * @return the referenced component of the semantic
+     * @throws IllegalStateException if the entity is not a semantic
+     */
+    public int referencedComponentNid() {
+        return readInt(semanticHeaderOffset());
+    }
+
+    /**
+     * @return the number of stored versions, including versions on canceled stamps
+     */
+    public int versionCount() {
+        return readInt(versionCountOffset());
+    }
+
+    public int stampNid(int versionIndex) {
+        return readInt(versionOffsets()[versionIndex] + 1);
+    }
+
+    /**
+     * @return the stamps of the stored versions, in stored order
+     */
+    public int[] stampNids() {
+        int[] offsets = versionOffsets();
+        int[] stampNids = new int[offsets.length];
+        for (int i = 0; i < offsets.length; i++) {
+            stampNids[i] = readInt(offsets[i] + 1);
+        }
+        return stampNids;
+    }
+
+    /**
+     * @return the number of fields of a semantic version
+     * @throws IllegalStateException if the entity is not a semantic
+     */
+    public int fieldCount(int versionIndex) {
+        return readInt(fieldCountOffset(versionIndex));
+    }
+
+    /**
+     * @return the data type of a field of a semantic version
+     * @throws IllegalStateException if the entity is not a semantic
+     */
+    public FieldDataType fieldDataType(int versionIndex, int fieldIndex) {
+        ByteBuf buf = fieldBuf(versionIndex, fieldIndex);
+        return FieldDataType.fromToken(buf.readByte());
+    }
+
+    /**
+     * Decodes one field of a semantic version, as {@link SemanticEntityVersion#fieldValues()} would hold it.
+     *
+     * @throws IllegalStateException if the entity is not a semantic
+     */
+    public <T> T field(int versionIndex, int fieldIndex) {
+        ByteBuf buf = fieldBuf(versionIndex, fieldIndex);
+        FieldDataType dataType = FieldDataType.fromToken(buf.readByte());
+        return (T) EntityRecordFactory.readFieldData(buf, dataType, ENTITY_FORMAT_VERSION);
+    }
+
+    /**
+     * @return the nid of a concept, semantic, pattern or component field, without making a proxy
+     * @throws IllegalStateException if the field is not a component
+     */
+    public int nidField(int versionIndex, int fieldIndex) {
+        ByteBuf buf = fieldBuf(versionIndex, fieldIndex);
+        FieldDataType dataType = FieldDataType.fromToken(buf.readByte());
+        return switch (dataType) {
+            case CONCEPT, SEMANTIC, PATTERN, IDENTIFIED_THING -> buf.readInt();
+            default -> throw new IllegalStateException("Field " + fieldIndex + " is not a component: " + dataType);
+        };
+    }
+
+    /**
+     * @return the entity, decoded from the bytes by {@link EntityRecordFactory#make(byte[])}
+     */
+    public <T extends Entity<V>, V extends EntityVersion> T toEntity() {
+        return EntityRecordFactory.make(bytes);
+    }
+
+    @Override
+    public String toString() {
+        return "EntityView{" + entityDataType + " nid=" + nid() + " versions=" + versionCount() + "}";
+    }
+
+    private int semanticHeaderOffset() {
+        if (entityDataType != SEMANTIC_CHRONOLOGY) {
+            throw new IllegalStateException("Not a semantic: " + entityDataType);
+        }
+        return ADDITIONAL_UUIDS_OFFSET + additionalUuidLongCount() * Long.BYTES;
+    }
+
+    private int versionCountOffset() {
+        int offset = ADDITIONAL_UUIDS_OFFSET + additionalUuidLongCount() * Long.BYTES;
+        if (entityDataType == SEMANTIC_CHRONOLOGY) {
+            offset += 2 * Integer.BYTES;
+        }
+        return offset;
+    }
+
+    /**
+     * The header and each version are written as an array preceded by its size, so the versions are found by
+     * skipping sizes.
+     */
+    private int[] versionOffsets() {
+        int[] offsets = this.versionOffsets;
+        if (offsets == null) {
+            // Views are not shared between threads, but computing twice is harmless if one is.
+            offsets = new int[versionCount()];
+            int offset = HEADER_START + readInt(ARRAY_COUNT_BYTES);
+            for (int i = 0; i < offsets.length; i++) {
+                offsets[i] = offset + Integer.BYTES;
+                offset = offsets[i] + readInt(offset);
+            }
+            this.versionOffsets = offsets;
+        }
+        return offsets;
+    }
+
+    private int fieldCountOffset(int versionIndex) {
+        if (entityDataType != SEMANTIC_CHRONOLOGY) {
+            throw new IllegalStateException("Not a semantic: " + entityDataType);
+        }
+        return versionOffsets()[versionIndex] + VERSION_PREFIX_BYTES;
+    }
+
+    /**
+     * @return a buffer positioned at the type token of the field
+     */
+    private ByteBuf fieldBuf(int versionIndex, int fieldIndex) {
+        int fieldCountOffset = fieldCountOffset(versionIndex);
+        int fieldCount = readInt(fieldCountOffset);
+        if (fieldIndex < 0 || fieldIndex >= fieldCount) {
+            throw new IndexOutOfBoundsException("Field " + fieldIndex + " of " + fieldCount);
+        }
+        ByteBuf buf = ByteBuf.wrapForReading(bytes);
+        buf.head(fieldCountOffset + Integer.BYTES);
+        for (int i = 0; i < fieldIndex; i++) {
+            skipField(buf);
+        }
+        return buf;
+    }
+
+    private static void skipField(ByteBuf buf) {
+        FieldDataType dataType = FieldDataType.fromToken(buf.readByte());
+        switch (dataType) {
+            case BOOLEAN -> buf.moveHead(1);
+            case FLOAT, INTEGER, CONCEPT, SEMANTIC, PATTERN, IDENTIFIED_THING -> buf.moveHead(Integer.BYTES);
+            case LONG -> buf.moveHead(Long.BYTES);
+            case INSTANT -> buf.moveHead(Long.BYTES + Integer.BYTES);
+            case BYTE_ARRAY, STRING, DECIMAL -> buf.moveHead(buf.readInt());
+            case COMPONENT_ID_LIST, COMPONENT_ID_SET -> buf.moveHead(buf.readInt() * Integer.BYTES);
+            // Graphs and points have no size to skip by, so are read as make would read them.
+            default -> EntityRecordFactory.readFieldData(buf, dataType, ENTITY_FORMAT_VERSION);
+        }
+    }
+
+    private int readInt(int offset) {
+        return ((bytes[offset] & 0xFF) << 24) | ((bytes[offset + 1] & 0xFF) << 16)
+                | ((bytes[offset + 2] & 0xFF) << 8) | (bytes[offset + 3] & 0xFF);
+    }
+
+    private long readLong(int offset) {
+        return ((long) readInt(offset) << 32) | (readInt(offset + Integer.BYTES) & 0xFFFFFFFFL);
+    }
+}
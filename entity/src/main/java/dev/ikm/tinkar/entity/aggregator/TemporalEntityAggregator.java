@@ -16,16 +16,31 @@
 package dev.ikm.tinkar.entity.aggregator;
 
 import dev.ikm.tinkar.common.service.PrimitiveData;
+import dev.ikm.tinkar.entity.ConceptEntity;
+import dev.ikm.tinkar.entity.Entity;
 import dev.ikm.tinkar.entity.EntityCountSummary;
 import dev.ikm.tinkar.entity.EntityService;
+import dev.ikm.tinkar.entity.EntityVersion;
+import dev.ikm.tinkar.entity.PatternEntity;
+import dev.ikm.tinkar.entity.SemanticEntity;
+import org.eclipse.collections.api.factory.primitive.IntLists;
+import org.eclipse.collections.api.factory.primitive.IntSets;
+import org.eclipse.collections.api.list.primitive.MutableIntList;
+import org.eclipse.collections.api.set.primitive.IntSet;
+import org.eclipse.collections.api.set.primitive.MutableIntSet;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.util.Optional;
 import java.util.function.IntConsumer;
 
+/**
+ * Aggregates the whole chronology of each concept, semantic and pattern with a version on a stamp in the time
+ * span, followed by the stamps of those chronologies.
+ * <p>
+ * When the data service {@link dev.ikm.tinkar.common.service.PrimitiveDataService#indexesStamps() indexes stamps},
+ * only the stamps in the time span and the components that cite them are read, so the cost follows the size of
+ * the change rather than of the store. A stamp is then in the span if any of its versions is. Otherwise every stamp
+ * and component is read to find them.
+ */
 public class TemporalEntityAggregator extends EntityAggregator {
     private final long fromEpochMillis;
     private final long toEpochMillis;
@@ -38,8 +53,40 @@ public TemporalEntityAggregator(long fromEpochMillis, long toEpochMillis) {
     @Override
     public EntityCountSummary aggregate(IntConsumer nidConsumer) {
         initCounts();
+        Aggregation aggregation = new Aggregation();
+        if (PrimitiveData.get().indexesStamps()) {
+            aggregateIndexed(aggregation);
+        } else {
+            aggregateByScan(aggregation);
+        }
+
+        aggregation.conceptNids.forEach(nidConsumer::accept);
+        conceptsAggregatedCount.set(aggregation.conceptNids.size());
+        aggregation.semanticNids.forEach(nidConsumer::accept);
+        semanticsAggregatedCount.set(aggregation.semanticNids.size());
+        aggregation.patternNids.forEach(nidConsumer::accept);
+        patternsAggregatedCount.set(aggregation.patternNids.size());
+        for (int stampNid : aggregation.stampNids.toSortedArray()) {
+            nidConsumer.accept(stampNid);
+        }
+        stampsAggregatedCount.set(aggregation.stampNids.size());
+
+        return summarize();
+    }
+
+    private void aggregateIndexed(Aggregation aggregation) {
+        MutableIntSet changedNids = IntSets.mutable.empty();
+        PrimitiveData.get().forEachStampNidInTimeRange(fromEpochMillis, toEpochMillis, stampNid ->
+                PrimitiveData.get().forEachNidForStamp(stampNid, changedNids::add));
+        for (int changedNid : changedNids.toSortedArray()) {
+            Optional<Entity<EntityVersion>> entity = EntityService.get().getEntity(changedNid);
+            entity.ifPresent(aggregation::add);
+        }
+    }
+
+    private void aggregateByScan(Aggregation aggregation) {
         // Filter Stamp Nids based on the supplied time span
-        Set<Integer> filteredStampNids = new HashSet<>();
+        MutableIntSet filteredStampNids = IntSets.mutable.empty();
         PrimitiveData.get().forEachStampNid((stampNid) -> {
             EntityService.get().getStamp(stampNid).ifPresent((stampEntity) -> {
                 if (fromEpochMillis <= stampEntity.time() && stampEntity.time() <= toEpochMillis) {
@@ -48,52 +95,46 @@ public EntityCountSummary aggregate(IntConsumer nidConsumer) {
             });
         });
 
-        List<Integer> stampsToExport = new ArrayList<>();
+        // Write whole chronology if ANY of the stamps satisfy conditions
+        PrimitiveData.get().forEachConceptNid(nid -> aggregation.addIfOnAnyStamp(nid, filteredStampNids));
+        PrimitiveData.get().forEachSemanticNid(nid -> aggregation.addIfOnAnyStamp(nid, filteredStampNids));
+        PrimitiveData.get().forEachPatternNid(nid -> aggregation.addIfOnAnyStamp(nid, filteredStampNids));
+    }
 
-        // Aggregate concepts with a filtered stamp
-        PrimitiveData.get().forEachConceptNid((conceptNid) -> {
-            EntityService.get().getEntity(conceptNid).ifPresent((conceptEntity) -> {
-                Set<Integer> conceptStampNidList = conceptEntity.stampNids().mapToSet(i->i);
-                // Write whole chronology if ANY of the stamps satisfy conditions
-                if (!Collections.disjoint(filteredStampNids, conceptStampNidList)) {
-                    conceptsAggregatedCount.incrementAndGet();
-                    nidConsumer.accept(conceptNid);
-                    stampsToExport.addAll(conceptStampNidList);
-                }
-            });
-        });
+    private static final class Aggregation {
+        final MutableIntList conceptNids = IntLists.mutable.empty();
+        final MutableIntList semanticNids = IntLists.mutable.empty();
+        final MutableIntList patternNids = IntLists.mutable.empty();
+        final MutableIntSet stampNids = IntSets.mutable.empty();
 
-        // Aggregate semantics with a filtered stamp
-        PrimitiveData.get().forEachSemanticNid((semanticNid) -> {
-            EntityService.get().getEntity(semanticNid).ifPresent((semanticEntity) -> {
-                Set<Integer> semanticStampNidList = semanticEntity.stampNids().mapToSet(i->i);
-                // Write whole chronology if ANY of the stamps satisfy conditions
-                if (!Collections.disjoint(filteredStampNids, semanticStampNidList)) {
-                    semanticsAggregatedCount.incrementAndGet();
-                    nidConsumer.accept(semanticNid);
-                    stampsToExport.addAll(semanticStampNidList);
+        void addIfOnAnyStamp(int nid, IntSet filteredStampNids) {
+            Optional<Entity<EntityVersion>> optionalEntity = EntityService.get().getEntity(nid);
+            optionalEntity.ifPresent(entity -> {
+                for (EntityVersion version : entity.versions()) {
+                    if (filteredStampNids.contains(version.stampNid())) {
+                        add(entity);
+                        return;
+                    }
                 }
             });
-        });
+        }
 
-        // Aggregate patterns with a filtered stamp
-        PrimitiveData.get().forEachPatternNid((patternNid) -> {
-            EntityService.get().getEntity(patternNid).ifPresent((patternEntity) -> {
-                Set<Integer> patternStampNidList = patternEntity.stampNids().mapToSet(i->i);
-                // Write whole chronology if ANY of the stamps satisfy conditions
-                if (!Collections.disjoint(filteredStampNids, patternStampNidList)) {
-                    patternsAggregatedCount.incrementAndGet();
-                    nidConsumer.accept(patternNid);
-                    stampsToExport.addAll(patternStampNidList);
+        /**
+         * Adds a concept, semantic or pattern and the stamps of its versions. Stamps are only aggregated through
+         * the chronologies that use them.
+         */
+        void add(Entity<EntityVersion> entity) {
+            switch (entity) {
+                case ConceptEntity _ -> conceptNids.add(entity.nid());
+                case SemanticEntity _ -> semanticNids.add(entity.nid());
+                case PatternEntity _ -> patternNids.add(entity.nid());
+                default -> {
+                    return;
                 }
-            });
-        });
-
-        // Deduplicate and Export Aggregated stamps
-        Set<Integer> deduplicatedStampsToExport = new HashSet<>(stampsToExport);
-        stampsAggregatedCount.set(deduplicatedStampsToExport.size());
-        deduplicatedStampsToExport.forEach(nidConsumer::accept);
-
-        return summarize();
+            }
+            for (EntityVersion version : entity.versions()) {
+                stampNids.add(version.stampNid());
+            }
+        }
     }
 }
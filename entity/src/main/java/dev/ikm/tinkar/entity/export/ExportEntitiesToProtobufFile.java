@@ -18,6 +18,7 @@
 import dev.ikm.tinkar.common.alert.AlertStreams;
 import dev.ikm.tinkar.common.id.PublicId;
 import dev.ikm.tinkar.common.service.PrimitiveData;
+import dev.ikm.tinkar.common.service.TinkExecutor;
 import dev.ikm.tinkar.common.service.TrackingCallable;
 import dev.ikm.tinkar.entity.Entity;
 import dev.ikm.tinkar.entity.EntityCountSummary;
@@ -31,6 +32,9 @@
 import dev.ikm.tinkar.entity.transform.EntityToTinkarSchemaTransformer;
 import dev.ikm.tinkar.schema.TinkarMsg;
 import dev.ikm.tinkar.terms.TinkarTerm;
+import org.eclipse.collections.api.factory.primitive.IntLists;
+import org.eclipse.collections.api.list.primitive.IntList;
+import org.eclipse.collections.api.list.primitive.MutableIntList;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -38,43 +42,82 @@
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.time.Clock;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
-import java.util.function.IntConsumer;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
+/**
+ * Exports the entities of an {@link EntityAggregator} to a zip file of length-delimited {@link TinkarMsg} messages,
+ * followed by a manifest entry.
+ * <p>
+ * With a part count of one, every message is written on the calling thread to a single zip entry. With a larger
+ * part count, the aggregated nids are split into contiguous ranges, and each range is transformed and deflated into
+ * its own entry by a worker on the {@link TinkExecutor#threadPool() thread pool}. The manifest then lists the parts
+ * under {@value #PARTS_ATTRIBUTE}, so {@link dev.ikm.tinkar.entity.load.LoadEntitiesFromProtobufFile} can load them
+ * in parallel. Readers that ignore the attribute still see an ordinary zip with the entries in aggregator order.
+ */
 public class ExportEntitiesToProtobufFile extends TrackingCallable<EntityCountSummary> {
     private static final Logger LOG =
             LoggerFactory.getLogger(ExportEntitiesToProtobufFile.class);
+    public static final String MANIFEST_RELPATH = "META-INF/MANIFEST.MF";
+    public static final String PART_COUNT_ATTRIBUTE = "Part-Count";
+    public static final String PARTS_ATTRIBUTE = "Parts";
+    /**
+     * The part count of a full export: several parts per processor, so that loading balances across workers even
+     * when parts differ in size.
+     */
+    public static final int DEFAULT_PART_COUNT = 4 * Runtime.getRuntime().availableProcessors();
+    private static final int MIN_NIDS_PER_PART = 10_000;
+    private static final int MANIFEST_LINE_LENGTH = 72;
     private final File protobufFile;
     private final EntityToTinkarSchemaTransformer entityTransformer =
             EntityToTinkarSchemaTransformer.getInstance();
-    private final Set<PublicId> moduleList = new HashSet<>();
-    private final Set<PublicId> authorList = new HashSet<>();
+    private final Set<PublicId> moduleList = ConcurrentHashMap.newKeySet();
+    private final Set<PublicId> authorList = ConcurrentHashMap.newKeySet();
     private final EntityAggregator entityAggregator;
+    private final int partCount;
 
 
     public ExportEntitiesToProtobufFile(File file, EntityAggregator entityAggregator) {
+        this(file, entityAggregator, 1);
+    }
+
+    /**
+     * @param partCount the maximum number of zip entries to export in parallel; small exports use fewer parts,
+     *                  and a count of one writes a single entry on the calling thread
+     */
+    public ExportEntitiesToProtobufFile(File file, EntityAggregator entityAggregator, int partCount) {
         super(false, true);
+        if (partCount < 1) {
+            throw new IllegalArgumentException("Part count must be positive: " + partCount);
+        }
         this.protobufFile = file;
         LOG.info("Exporting entities to: " + file);
         this.entityAggregator = entityAggregator;
+        this.partCount = partCount;
         if (getTitle()==null || getTitle().isBlank()) {
             updateTitle("Export to Protobuf");
         }
     }
 
     public ExportEntitiesToProtobufFile(File file) {
-        this(file, new DefaultEntityAggregator());
+        this(file, new DefaultEntityAggregator(), DEFAULT_PART_COUNT);
         updateTitle("Full Export to Protobuf");
     }
 
@@ -95,34 +138,35 @@ public EntityCountSummary compute() {
 
         EntityCountSummary entityCountSummary = null;
         updateMessage("Exporting Entities...");
-        addToTotalWork(entityAggregator.totalCount());
 
+        try {
+            entityCountSummary = partCount == 1 ? exportSingleEntry() : exportParts();
+        } catch (Throwable e) {
+            LOG.error("Caught " + e + " while Exporting Entities");
+            if (!(e instanceof RuntimeException rx && rx.getCause() instanceof InterruptedException)) {
+                AlertStreams.dispatchToRoot(e);
+                throw new RuntimeException(e);
+            }
+        } finally {
+            updateMessage("In " + durationString());
+            updateProgress(1,1);
+        }    
+
+        logCounts(entityCountSummary);
+        return entityCountSummary;
+    }
+
+    private EntityCountSummary exportSingleEntry() throws IOException {
+        addToTotalWork(entityAggregator.totalCount());
         try (FileOutputStream fos = new FileOutputStream(protobufFile);
              BufferedOutputStream bos = new BufferedOutputStream(fos);
              ZipOutputStream zos = new ZipOutputStream(bos)) {
 
             // Create a single entry
-            ZipEntry zipEntry = new ZipEntry(protobufFile.getName().replace(".zip", ""));
+            ZipEntry zipEntry = new ZipEntry(entryName());
             zos.putNextEntry(zipEntry);
 
-            IntConsumer exportNidConsumer = (nid) -> {
-                Entity<? extends EntityVersion> entity = EntityService.get().getEntityFast(nid);
-                // Store Module & Author Dependencies for Manifest
-                if (entity instanceof StampEntity stampEntity) {
-                    moduleList.add(stampEntity.module().publicId());
-                    authorList.add(stampEntity.author().publicId());
-                }
-                // Transform and Write data
-                TinkarMsg pbTinkarMsg = entityTransformer.transform(entity);
-                try {
-                    pbTinkarMsg.writeDelimitedTo(zos);
-                } catch (IOException e) {
-                    throw new RuntimeException(e);
-                }
-                completedUnitOfWork();
-            };
-
-            entityCountSummary = entityAggregator.aggregate(exportNidConsumer);
+            EntityCountSummary entityCountSummary = entityAggregator.aggregate(nid -> exportEntity(nid, zos));
 
             zos.closeEntry();
             zos.flush();
@@ -130,7 +174,7 @@ public EntityCountSummary compute() {
             LOG.info("Data zipEntry compressed size: " + zipEntry.getCompressedSize());
 
             // Write Manifest File
-            ZipEntry manifestEntry = new ZipEntry("META-INF/MANIFEST.MF");
+            ZipEntry manifestEntry = new ZipEntry(MANIFEST_RELPATH);
             zos.putNextEntry(manifestEntry);
             zos.write(generateManifestContent(entityCountSummary.getTotalCount(),
                     entityCountSummary.conceptsCount(),
@@ -145,21 +189,147 @@ public EntityCountSummary compute() {
 
             // Cleanup
             zos.finish();
-        } catch (Throwable e) {
-            LOG.error("Caught " + e + " while Exporting Entities");
-            if (!(e instanceof RuntimeException rx && rx.getCause() instanceof InterruptedException)) {
-                AlertStreams.dispatchToRoot(e);
-                throw new RuntimeException(e);
+            return entityCountSummary;
+        }
+    }
+
+    /**
+     * Aggregates the nids once, then exports contiguous ranges of them as separate parts in parallel. The parts
+     * keep the aggregator's order, so the first parts hold the stamps.
+     */
+    private EntityCountSummary exportParts() throws IOException, InterruptedException, ExecutionException {
+        MutableIntList nids = IntLists.mutable.empty();
+        EntityCountSummary entityCountSummary = entityAggregator.aggregate(nids::add);
+        addToTotalWork(nids.size());
+
+        int parts = Math.clamp(Math.ceilDiv(nids.size(), MIN_NIDS_PER_PART), 1, partCount);
+        Path directory = protobufFile.getAbsoluteFile().getParentFile().toPath();
+        AtomicBoolean abandoned = new AtomicBoolean();
+        List<Future<ParallelZipArchive.Part>> partFutures = new ArrayList<>(parts);
+        for (int i = 0; i < parts; i++) {
+            String partName = partName(i);
+            int from = (int) ((long) nids.size() * i / parts);
+            int to = (int) ((long) nids.size() * (i + 1) / parts);
+            partFutures.add(TinkExecutor.threadPool().submit(
+                    () -> exportPart(partName, directory, nids, from, to, abandoned)));
+        }
+
+        List<ParallelZipArchive.Part> entries = new ArrayList<>(parts + 1);
+        try {
+            // Collect every part, even after a failure, so that no temporary file is left behind.
+            ExecutionException failure = null;
+            for (Future<ParallelZipArchive.Part> partFuture : partFutures) {
+                try {
+                    entries.add(partFuture.get());
+                } catch (ExecutionException e) {
+                    failure = failure == null ? e : failure;
+                }
+            }
+            if (failure != null) {
+                throw failure;
             }
-        } finally {
-            updateMessage("In " + durationString());
-            updateProgress(1,1);
-        }    
 
-        logCounts(entityCountSummary);
+            List<String> partNames = entries.stream().map(ParallelZipArchive.Part::name).toList();
+            ParallelZipArchive.Part manifest = new ParallelZipArchive.Part(MANIFEST_RELPATH, directory);
+            entries.add(manifest);
+            try (manifest) {
+                manifest.write(generateManifestContent(entityCountSummary.getTotalCount(),
+                        entityCountSummary.conceptsCount(),
+                        entityCountSummary.semanticsCount(),
+                        entityCountSummary.patternsCount(),
+                        entityCountSummary.stampsCount(),
+                        moduleList,
+                        authorList,
+                        partNames
+                ).getBytes(StandardCharsets.UTF_8));
+            }
+            ParallelZipArchive.write(protobufFile.toPath(), entries);
+            LOG.info("Exported " + parts + " parts to " + protobufFile.getName());
+        } finally {
+            // If the export failed or was interrupted, parts still being exported stop at their next entity. Wait
+            // for them, even when interrupted, so that their temporary files are deleted too.
+            abandoned.set(true);
+            for (Future<ParallelZipArchive.Part> partFuture : partFutures) {
+                ParallelZipArchive.Part part = awaitUninterruptibly(partFuture);
+                if (part != null) {
+                    part.delete();
+                }
+            }
+            for (ParallelZipArchive.Part entry : entries) {
+                entry.delete();
+            }
+        }
         return entityCountSummary;
     }
 
+    /**
+     * Returns the part of a completed export, or null if it failed, in which case {@link #exportPart} has
+     * already deleted it. Restores the interrupt status if the wait is interrupted.
+     */
+    private static ParallelZipArchive.Part awaitUninterruptibly(Future<ParallelZipArchive.Part> partFuture) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return partFuture.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException | CancellationException e) {
+                    return null;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private ParallelZipArchive.Part exportPart(String partName, Path directory, IntList nids, int from, int to,
+                                               AtomicBoolean abandoned) throws IOException {
+        if (abandoned.get()) {
+            throw new CancellationException("Export abandoned before " + partName);
+        }
+        ParallelZipArchive.Part part = new ParallelZipArchive.Part(partName, directory);
+        try (part) {
+            for (int i = from; i < to; i++) {
+                if (abandoned.get()) {
+                    throw new CancellationException("Export abandoned during " + partName);
+                }
+                exportEntity(nids.get(i), part);
+            }
+        } catch (IOException | RuntimeException e) {
+            part.delete();
+            throw e;
+        }
+        return part;
+    }
+
+    private void exportEntity(int nid, OutputStream out) {
+        Entity<? extends EntityVersion> entity = EntityService.get().getEntityFast(nid);
+        // Store Module & Author Dependencies for Manifest
+        if (entity instanceof StampEntity stampEntity) {
+            moduleList.add(stampEntity.module().publicId());
+            authorList.add(stampEntity.author().publicId());
+        }
+        // Transform and Write data
+        TinkarMsg pbTinkarMsg = entityTransformer.transform(entity);
+        try {
+            pbTinkarMsg.writeDelimitedTo(out);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        completedUnitOfWork();
+    }
+
+    private String entryName() {
+        return protobufFile.getName().replace(".zip", "");
+    }
+
+    private String partName(int index) {
+        return String.format("%s-part-%04d", entryName(), index);
+    }
+
     public static String generateManifestContent(long entityCount,
                                            long conceptsCount,
                                            long semanticsCount,
@@ -167,6 +337,22 @@ public static String generateManifestContent(long entityCount,
                                            long stampsCount,
                                            Set<PublicId> moduleList,
                                            Set<PublicId> authorList){
+        return generateManifestContent(entityCount, conceptsCount, semanticsCount, patternsCount, stampsCount,
+                moduleList, authorList, List.of());
+    }
+
+    /**
+     * @param partNames the names of the entries of a multi-part export, in order, or an empty list for a
+     *                  single-entry export
+     */
+    public static String generateManifestContent(long entityCount,
+                                           long conceptsCount,
+                                           long semanticsCount,
+                                           long patternsCount,
+                                           long stampsCount,
+                                           Set<PublicId> moduleList,
+                                           Set<PublicId> authorList,
+                                           List<String> partNames){
         StringBuilder manifestContent = new StringBuilder()
                 // TODO: Dynamically populate this user
                 .append("Packager-Name: ").append(TinkarTerm.KOMET_USER.description()).append("\n")
@@ -175,13 +361,30 @@ public static String generateManifestContent(long entityCount,
                 .append("Concept-Count: ").append(conceptsCount).append("\n")
                 .append("Semantic-Count: ").append(semanticsCount).append("\n")
                 .append("Pattern-Count: ").append(patternsCount).append("\n")
-                .append("Stamp-Count: ").append(stampsCount).append("\n")
-                .append(idsToManifestEntry(moduleList))
+                .append("Stamp-Count: ").append(stampsCount).append("\n");
+        if (!partNames.isEmpty()) {
+            manifestContent.append(PART_COUNT_ATTRIBUTE).append(": ").append(partNames.size()).append("\n")
+                    .append(manifestAttribute(PARTS_ATTRIBUTE, String.join(" ", partNames)));
+        }
+        manifestContent.append(idsToManifestEntry(moduleList))
                 .append(idsToManifestEntry(authorList))
                 .append("\n"); // Final new line necessary per Manifest spec
         return manifestContent.toString();
     }
 
+    /**
+     * Formats an attribute with an ASCII value, continuing lines longer than the manifest specification allows.
+     */
+    private static String manifestAttribute(String name, String value) {
+        String line = name + ": " + value;
+        StringBuilder attribute = new StringBuilder(line.length() + 3 * (line.length() / MANIFEST_LINE_LENGTH + 1));
+        attribute.append(line, 0, Math.min(line.length(), MANIFEST_LINE_LENGTH));
+        for (int start = MANIFEST_LINE_LENGTH; start < line.length(); start += MANIFEST_LINE_LENGTH - 1) {
+            attribute.append("\n ").append(line, start, Math.min(line.length(), start + MANIFEST_LINE_LENGTH - 1));
+        }
+        return attribute.append("\n").toString();
+    }
+
     public static String idsToManifestEntry(Collection<PublicId> publicIds) {
         StringBuilder manifestEntry = new StringBuilder();
         publicIds.forEach((publicId) -> {
@@ -0,0 +1,247 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.entity.export;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes a zip archive whose entries are deflated independently, so each entry can be compressed on its own thread.
+ * {@link java.util.zip.ZipOutputStream} deflates one entry at a time as it is written; here each {@link Part}
+ * deflates to a temporary file while it is written, and {@link #write(Path, List)} then copies the deflated parts
+ * into one archive with a local header per entry, a central directory, and Zip64 records where the sizes require
+ * them. The result is an ordinary zip file, readable by {@link java.util.zip.ZipInputStream} and
+ * {@link java.util.zip.ZipFile}.
+ */
+final class ParallelZipArchive {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+    private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+    private static final int ZIP64_END_SIGNATURE = 0x06064b50;
+    private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+    private static final int END_SIGNATURE = 0x06054b50;
+    private static final int LOCAL_HEADER_SIZE = 30;
+    private static final int CENTRAL_HEADER_SIZE = 46;
+    private static final int ZIP64_END_SIZE = 56;
+    private static final int VERSION = 20;
+    private static final int ZIP64_VERSION = 45;
+    private static final int UTF8_NAMES_FLAG = 0x0800;
+    private static final int DEFLATED = 8;
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+    private static final int ZIP64_MAGIC_COUNT = 0xFFFF;
+
+    private ParallelZipArchive() {
+    }
+
+    /**
+     * One entry of the archive. Bytes written to a part are deflated into a temporary file; close the part before
+     * passing it to {@link #write(Path, List)}, and {@link #delete()} it afterwards.
+     */
+    static final class Part extends OutputStream {
+        private final String name;
+        private final Path deflatedFile;
+        private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        private final CRC32 crc = new CRC32();
+        // Released on close, so that closed parts waiting to be archived do not hold their buffers.
+        private DeflaterOutputStream out;
+        private long size;
+        private long compressedSize;
+
+        Part(String name, Path directory) throws IOException {
+            this.name = name;
+            this.deflatedFile = Files.createTempFile(directory, "export-", ".part");
+            this.out = new DeflaterOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(deflatedFile), BUFFER_SIZE), deflater, BUFFER_SIZE);
+        }
+
+        String name() {
+            return name;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            crc.update(b);
+            size++;
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            out.write(bytes, offset, length);
+            crc.update(bytes, offset, length);
+            size += length;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (out == null) {
+                return;
+            }
+            try (DeflaterOutputStream closing = out) {
+                out = null;
+                closing.finish();
+                compressedSize = deflater.getBytesWritten();
+            } finally {
+                deflater.end();
+            }
+        }
+
+        void delete() throws IOException {
+            close();
+            Files.deleteIfExists(deflatedFile);
+        }
+    }
+
+    /**
+     * Writes the closed parts, in order, as the entries of a new archive.
+     */
+    static void write(Path archive, List<Part> parts) throws IOException {
+        LocalDateTime now = LocalDateTime.now();
+        int dosTime = (now.getHour() << 11) | (now.getMinute() << 5) | (now.getSecond() >> 1);
+        int dosDate = ((now.getYear() - 1980) << 9) | (now.getMonthValue() << 5) | now.getDayOfMonth();
+        long[] localHeaderOffsets = new long[parts.size()];
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(archive), BUFFER_SIZE)) {
+            long offset = 0;
+            for (int i = 0; i < parts.size(); i++) {
+                Part part = parts.get(i);
+                localHeaderOffsets[i] = offset;
+                byte[] header = localHeader(part, dosTime, dosDate);
+                out.write(header);
+                Files.copy(part.deflatedFile, out);
+                offset += header.length + part.compressedSize;
+            }
+            long centralDirectoryOffset = offset;
+            for (int i = 0; i < parts.size(); i++) {
+                byte[] header = centralHeader(parts.get(i), localHeaderOffsets[i], dosTime, dosDate);
+                out.write(header);
+                offset += header.length;
+            }
+            out.write(end(parts.size(), offset - centralDirectoryOffset, centralDirectoryOffset));
+        }
+    }
+
+    private static byte[] localHeader(Part part, int dosTime, int dosDate) {
+        boolean zip64 = part.size >= ZIP64_MAGIC || part.compressedSize >= ZIP64_MAGIC;
+        byte[] name = part.name.getBytes(StandardCharsets.UTF_8);
+        int extraLength = zip64 ? 20 : 0;
+        ByteBuffer header = buffer(LOCAL_HEADER_SIZE + name.length + extraLength)
+                .putInt(LOCAL_HEADER_SIGNATURE)
+                .putShort((short) (zip64 ? ZIP64_VERSION : VERSION))
+                .putShort((short) UTF8_NAMES_FLAG)
+                .putShort((short) DEFLATED)
+                .putShort((short) dosTime)
+                .putShort((short) dosDate)
+                .putInt((int) part.crc.getValue())
+                .putInt((int) (zip64 ? ZIP64_MAGIC : part.compressedSize))
+                .putInt((int) (zip64 ? ZIP64_MAGIC : part.size))
+                .putShort((short) name.length)
+                .putShort((short) extraLength)
+                .put(name);
+        if (zip64) {
+            header.putShort((short) ZIP64_EXTRA_ID)
+                    .putShort((short) 16)
+                    .putLong(part.size)
+                    .putLong(part.compressedSize);
+        }
+        return header.array();
+    }
+
+    private static byte[] centralHeader(Part part, long localHeaderOffset, int dosTime, int dosDate) {
+        boolean zip64Sizes = part.size >= ZIP64_MAGIC || part.compressedSize >= ZIP64_MAGIC;
+        boolean zip64Offset = localHeaderOffset >= ZIP64_MAGIC;
+        boolean zip64 = zip64Sizes || zip64Offset;
+        byte[] name = part.name.getBytes(StandardCharsets.UTF_8);
+        int extraDataLength = (zip64Sizes ? 16 : 0) + (zip64Offset ? 8 : 0);
+        int extraLength = zip64 ? 4 + extraDataLength : 0;
+        ByteBuffer header = buffer(CENTRAL_HEADER_SIZE + name.length + extraLength)
+                .putInt(CENTRAL_HEADER_SIGNATURE)
+                .putShort((short) ZIP64_VERSION)
+                .putShort((short) (zip64 ? ZIP64_VERSION : VERSION))
+                .putShort((short) UTF8_NAMES_FLAG)
+                .putShort((short) DEFLATED)
+                .putShort((short) dosTime)
+                .putShort((short) dosDate)
+                .putInt((int) part.crc.getValue())
+                .putInt((int) (zip64Sizes ? ZIP64_MAGIC : part.compressedSize))
+                .putInt((int) (zip64Sizes ? ZIP64_MAGIC : part.size))
+                .putShort((short) name.length)
+                .putShort((short) extraLength)
+                .putShort((short) 0)  // comment length
+                .putShort((short) 0)  // disk number
+                .putShort((short) 0)  // internal attributes
+                .putInt(0)            // external attributes
+                .putInt((int) (zip64Offset ? ZIP64_MAGIC : localHeaderOffset))
+                .put(name);
+        if (zip64) {
+            header.putShort((short) ZIP64_EXTRA_ID).putShort((short) extraDataLength);
+            if (zip64Sizes) {
+                header.putLong(part.size).putLong(part.compressedSize);
+            }
+            if (zip64Offset) {
+                header.putLong(localHeaderOffset);
+            }
+        }
+        return header.array();
+    }
+
+    private static byte[] end(int entryCount, long centralDirectorySize, long centralDirectoryOffset) {
+        boolean zip64 = entryCount >= ZIP64_MAGIC_COUNT || centralDirectorySize >= ZIP64_MAGIC
+                || centralDirectoryOffset >= ZIP64_MAGIC;
+        ByteBuffer end = buffer((zip64 ? ZIP64_END_SIZE + 20 : 0) + 22);
+        if (zip64) {
+            long zip64EndOffset = centralDirectoryOffset + centralDirectorySize;
+            end.putInt(ZIP64_END_SIGNATURE)
+                    .putLong(ZIP64_END_SIZE - 12)
+                    .putShort((short) ZIP64_VERSION)
+                    .putShort((short) ZIP64_VERSION)
+                    .putInt(0)
+                    .putInt(0)
+                    .putLong(entryCount)
+                    .putLong(entryCount)
+                    .putLong(centralDirectorySize)
+                    .putLong(centralDirectoryOffset)
+                    .putInt(ZIP64_LOCATOR_SIGNATURE)
+                    .putInt(0)
+                    .putLong(zip64EndOffset)
+                    .putInt(1);
+        }
+        end.putInt(END_SIGNATURE)
+                .putShort((short) 0)
+                .putShort((short) 0)
+                .putShort((short) Math.min(entryCount, ZIP64_MAGIC_COUNT))
+                .putShort((short) Math.min(entryCount, ZIP64_MAGIC_COUNT))
+                .putInt((int) Math.min(centralDirectorySize, ZIP64_MAGIC))
+                .putInt((int) Math.min(centralDirectoryOffset, ZIP64_MAGIC))
+                .putShort((short) 0);
+        return end.array();
+    }
+
+    private static ByteBuffer buffer(int size) {
+        return ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
@@ -15,11 +15,14 @@
  */
 package dev.ikm.tinkar.entity.load;
 
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
 import dev.ikm.tinkar.common.alert.AlertStreams;
 import dev.ikm.tinkar.common.id.PublicId;
 import dev.ikm.tinkar.common.id.PublicIds;
 import dev.ikm.tinkar.common.service.DataActivity;
 import dev.ikm.tinkar.common.service.PrimitiveData;
+import dev.ikm.tinkar.common.service.TinkExecutor;
 import dev.ikm.tinkar.common.service.TrackingCallable;
 import dev.ikm.tinkar.entity.ConceptEntity;
 import dev.ikm.tinkar.entity.Entity;
@@ -29,19 +32,35 @@
 import dev.ikm.tinkar.entity.PatternEntity;
 import dev.ikm.tinkar.entity.SemanticEntity;
 import dev.ikm.tinkar.entity.StampEntity;
+import dev.ikm.tinkar.entity.export.ExportEntitiesToProtobufFile;
 import dev.ikm.tinkar.entity.transform.TinkarSchemaToEntityTransformer;
 import dev.ikm.tinkar.schema.TinkarMsg;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedInputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.function.Consumer;
 import java.util.jar.Manifest;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 
 /**
@@ -54,12 +73,19 @@ public class LoadEntitiesFromProtobufFile extends TrackingCallable<EntityCountSu
     private final TinkarSchemaToEntityTransformer entityTransformer =
             TinkarSchemaToEntityTransformer.getInstance();
     private static final String MANIFEST_RELPATH = "META-INF/MANIFEST.MF";
+    private static final int CPU_COUNT = Runtime.getRuntime().availableProcessors();
+    private static final int PARSED_CHUNKS_PER_CPU = 2;
+    private static final long CHUNKS_PER_CPU = 64;
+    private static final long MIN_CHUNK_SIZE = 64;
+    private static final long MAX_CHUNK_SIZE = 4096;
+    private static final long READER_POLL_MS = 100;
     private final File importFile;
     private final AtomicLong importCount = new AtomicLong();
     private final AtomicLong importConceptCount = new AtomicLong();
     private final AtomicLong importSemanticCount = new AtomicLong();
     private final AtomicLong importPatternCount = new AtomicLong();
     private final AtomicLong importStampCount = new AtomicLong();
+    private List<String> partNames = List.of();
 
     public LoadEntitiesFromProtobufFile(File importFile) {
         super(false, true);
@@ -84,38 +110,14 @@ public EntityCountSummary compute() {
         updateProgress(0, expectedImports);
         updateMessage("Importing Protobuf Data...");
 
-        // Process Protobuf Entry
         EntityService.get().beginLoadPhase();
-        try (ZipInputStream zis = new ZipInputStream(new FileInputStream(importFile))) {
-            // Consumer to be run for each transformed Entity
-            Consumer<Entity<? extends  EntityVersion>> entityConsumer = entity -> {
-                EntityService.get().putEntityQuietly(entity, DataActivity.LOADING_CHANGE_SET);
-				updateCounts(entity);
-            };
-
-            ZipEntry zipEntry;
-            while ((zipEntry = zis.getNextEntry()) != null) {
-                if (zipEntry.getName().equals(MANIFEST_RELPATH)) {
-                    continue;
-                }
-                while (zis.available() > 0) {
-                    // zis.available returns 1 until AFTER EOF has been reached
-                    // Protobuf parser reads the data UP TO EOF, so zis.available
-                    // will return 1 when the only thing left is EOF
-                    // pbTinkarMsg should be null for this last entry
-                    TinkarMsg pbTinkarMsg = TinkarMsg.parseDelimitedFrom(zis);
-                    if (pbTinkarMsg == null) {
-                        continue;
-                    }
-
-                    // TODO: Remove need for Stamp Consumer since Stamps are now consumed by Entity Consumer
-                    entityTransformer.transform(pbTinkarMsg, entityConsumer, (stampEntity) -> {});
-
-                    // Batch progress updates to prevent hanging the UI thread
-                    if (importCount.incrementAndGet() % 1000 == 0) {
-                        updateProgress(importCount.get(), expectedImports);
-                    }
-                }
+        int chunkSize = chunkSize(expectedImports);
+        long startNanos = System.nanoTime();
+        try {
+            if (partNames.size() > 1) {
+                loadParts(chunkSize, expectedImports, startNanos);
+            } else {
+                loadEntries(chunkSize, expectedImports, startNanos);
             }
         } catch (Exception e) {
             updateTitle("Failed: Import Protobuf data from " + importFile.getName());
@@ -129,6 +131,8 @@ public EntityCountSummary compute() {
             updateMessage("In " + durationString());
             updateProgress(1,1);
         }
+        LOG.info("Imported {} messages at {} messages/s using {} message chunks",
+                importCount.get(), messagesPerSecond(startNanos), chunkSize);
 
         if (importCount.get() != expectedImports) {
             IllegalStateException e = new IllegalStateException("Import Failed: Expected " + expectedImports + " Entities, but imported " + importCount.get());
@@ -138,6 +142,209 @@ public EntityCountSummary compute() {
         return summarize();
     }
 
+    /**
+     * Sizes chunks so that each worker gets many chunks over the whole import, while keeping the per-chunk
+     * overhead of queueing and writing small.
+     */
+    private static int chunkSize(long expectedImports) {
+        return (int) Math.clamp(expectedImports / (CPU_COUNT * CHUNKS_PER_CPU), MIN_CHUNK_SIZE, MAX_CHUNK_SIZE);
+    }
+
+    /**
+     * Loads the entries of the import file in sequence: a reader frames messages into chunks, worker threads parse
+     * and transform each chunk, and this thread writes the chunks in file order.
+     */
+    private void loadEntries(int chunkSize, long expectedImports, long startNanos)
+            throws InterruptedException, ExecutionException {
+        BlockingQueue<Future<ParsedChunk>> parsedChunks = new ArrayBlockingQueue<>(PARSED_CHUNKS_PER_CPU * CPU_COUNT);
+        AtomicBoolean stopReading = new AtomicBoolean();
+        Future<?> reader = TinkExecutor.virtualThreadExecutor().submit(() -> readChunks(chunkSize, parsedChunks, stopReading));
+        try {
+            writeChunks(parsedChunks, reader, expectedImports, startNanos);
+        } finally {
+            // Unblock the reader if the writer stopped early.
+            stopReading.set(true);
+            parsedChunks.clear();
+        }
+    }
+
+    /**
+     * Loads the parts listed in the manifest of a multi-part export, each part read, inflated, parsed and written
+     * by its own worker. Parts are written in no particular order, which the load phase allows: the data store
+     * defers indexing until the load ends, and the transformer resolves references by public id alone.
+     */
+    private void loadParts(int chunkSize, long expectedImports, long startNanos)
+            throws IOException, InterruptedException, ExecutionException {
+        try (ZipFile zipFile = new ZipFile(importFile)) {
+            List<Future<?>> partLoads = new ArrayList<>(partNames.size());
+            AtomicBoolean stopLoading = new AtomicBoolean();
+            try {
+                for (String partName : partNames) {
+                    ZipEntry partEntry = zipFile.getEntry(partName);
+                    if (partEntry == null) {
+                        throw new IllegalStateException("Manifest lists " + partName + ", which is missing from " + importFile.getName());
+                    }
+                    partLoads.add(TinkExecutor.threadPool().submit(() -> {
+                        loadPart(zipFile, partEntry, chunkSize, expectedImports, startNanos, stopLoading);
+                        return null;
+                    }));
+                }
+                for (Future<?> partLoad : partLoads) {
+                    partLoad.get();
+                }
+            } finally {
+                // Stop the remaining parts if one failed, and wait for them before the zip file closes under them.
+                // They are not cancelled, since get() on a cancelled future returns before its task has stopped.
+                stopLoading.set(true);
+                partLoads.forEach(LoadEntitiesFromProtobufFile::awaitUninterruptibly);
+            }
+        }
+    }
+
+    /**
+     * Waits for a part load to finish, ignoring its failure, which the caller has already seen or is replacing.
+     * Restores the interrupt status if the wait is interrupted.
+     */
+    private static void awaitUninterruptibly(Future<?> partLoad) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    partLoad.get();
+                    return;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException | CancellationException e) {
+                    return;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void loadPart(ZipFile zipFile, ZipEntry partEntry, int chunkSize, long expectedImports, long startNanos,
+                          AtomicBoolean stopLoading) throws IOException {
+        try (InputStream in = new BufferedInputStream(zipFile.getInputStream(partEntry))) {
+            List<byte[]> messages = new ArrayList<>(chunkSize);
+            int firstByte;
+            while (!stopLoading.get() && (firstByte = in.read()) != -1) {
+                messages.add(readMessage(firstByte, in, partEntry));
+                if (messages.size() == chunkSize) {
+                    writeChunk(parseChunk(messages), expectedImports, startNanos);
+                    messages = new ArrayList<>(chunkSize);
+                }
+            }
+            if (!stopLoading.get() && !messages.isEmpty()) {
+                writeChunk(parseChunk(messages), expectedImports, startNanos);
+            }
+        }
+    }
+
+    private static byte[] readMessage(int firstByte, InputStream in, ZipEntry zipEntry) throws IOException {
+        int size = CodedInputStream.readRawVarint32(firstByte, in);
+        byte[] message = in.readNBytes(size);
+        if (message.length != size) {
+            throw new EOFException("Truncated message in " + zipEntry.getName());
+        }
+        return message;
+    }
+
+    /**
+     * Inflates the import file and frames each length-delimited message into a byte array, handing chunks of
+     * messages to the thread pool for parsing. Blocks when the writer falls {@code parsedChunks} behind.
+     */
+    private void readChunks(int chunkSize, BlockingQueue<Future<ParsedChunk>> parsedChunks, AtomicBoolean stopReading) {
+        try (ZipInputStream zis = new ZipInputStream(new BufferedInputStream(new FileInputStream(importFile)))) {
+            List<byte[]> messages = new ArrayList<>(chunkSize);
+            ZipEntry zipEntry;
+            while (!stopReading.get() && (zipEntry = zis.getNextEntry()) != null) {
+                if (zipEntry.getName().equals(MANIFEST_RELPATH)) {
+                    continue;
+                }
+                int firstByte;
+                while (!stopReading.get() && (firstByte = zis.read()) != -1) {
+                    messages.add(readMessage(firstByte, zis, zipEntry));
+                    if (messages.size() == chunkSize) {
+                        submitChunk(messages, parsedChunks);
+                        messages = new ArrayList<>(chunkSize);
+                    }
+                }
+            }
+            if (stopReading.get()) {
+                return;
+            }
+            if (!messages.isEmpty()) {
+                submitChunk(messages, parsedChunks);
+            }
+            parsedChunks.put(CompletableFuture.completedFuture(ParsedChunk.END));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void submitChunk(List<byte[]> messages, BlockingQueue<Future<ParsedChunk>> parsedChunks)
+            throws InterruptedException {
+        parsedChunks.put(CompletableFuture.supplyAsync(() -> parseChunk(messages), TinkExecutor.threadPool()));
+    }
+
+    private ParsedChunk parseChunk(List<byte[]> messages) {
+        List<Entity<? extends EntityVersion>> entities = new ArrayList<>(messages.size());
+        for (byte[] message : messages) {
+            try {
+                // TODO: Remove need for Stamp Consumer since Stamps are now consumed by Entity Consumer
+                entityTransformer.transform(TinkarMsg.parseFrom(message), entities::add, (stampEntity) -> {});
+            } catch (InvalidProtocolBufferException e) {
+                throw new RuntimeException(e);
+            }
+        }
+        return new ParsedChunk(messages.size(), entities);
+    }
+
+    /**
+     * Writes parsed chunks in the order the reader framed them, so the data store sees entities in file order.
+     */
+    private void writeChunks(BlockingQueue<Future<ParsedChunk>> parsedChunks, Future<?> reader,
+                             long expectedImports, long startNanos) throws InterruptedException, ExecutionException {
+        while (true) {
+            Future<ParsedChunk> next = parsedChunks.poll(READER_POLL_MS, TimeUnit.MILLISECONDS);
+            if (next == null) {
+                if (reader.isDone()) {
+                    // Rethrows a failure from the reader; otherwise the end marker is still queued.
+                    reader.get();
+                }
+                continue;
+            }
+            ParsedChunk chunk = next.get();
+            if (chunk == ParsedChunk.END) {
+                return;
+            }
+            writeChunk(chunk, expectedImports, startNanos);
+        }
+    }
+
+    private void writeChunk(ParsedChunk chunk, long expectedImports, long startNanos) {
+        EntityService.get().putEntitiesInBulk(chunk.entities(), DataActivity.LOADING_CHANGE_SET);
+        chunk.entities().forEach(this::updateCounts);
+        long count = importCount.addAndGet(chunk.messageCount());
+        updateProgress(count, expectedImports);
+        updateMessage("Importing Protobuf Data... " + messagesPerSecond(startNanos) + " messages/s");
+    }
+
+    private long messagesPerSecond(long startNanos) {
+        long elapsedNanos = Math.max(1, System.nanoTime() - startNanos);
+        return importCount.get() * TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+    }
+
+    private record ParsedChunk(int messageCount, List<Entity<? extends EntityVersion>> entities) {
+        static final ParsedChunk END = new ParsedChunk(0, List.of());
+    }
+
     private void updateCounts(Entity entity){
         switch (entity) {
             case ConceptEntity ignored -> importConceptCount.incrementAndGet();
@@ -168,6 +375,7 @@ protected void initCounts() {
 
     private long analyzeManifest() {
         long expectedImports = -1;
+        partNames = List.of();
         Map<PublicId, String> manifestEntryData = new HashMap<>();
 
         // Read Manifest from Zip
@@ -177,6 +385,10 @@ private long analyzeManifest() {
                 if (zipEntry.getName().equals(MANIFEST_RELPATH)) {
                     Manifest manifest = new Manifest(zis);
                     expectedImports = Long.parseLong(manifest.getMainAttributes().getValue("Total-Count"));
+                    String parts = manifest.getMainAttributes().getValue(ExportEntitiesToProtobufFile.PARTS_ATTRIBUTE);
+                    if (parts != null && !parts.isBlank()) {
+                        partNames = List.of(parts.trim().split(" +"));
+                    }
                     // Get Dependent Module / Author PublicIds and Descriptions
                     manifest.getEntries().keySet().forEach((publicIdKey) -> {
                         PublicId publicId = PublicIds.of(publicIdKey.split(","));
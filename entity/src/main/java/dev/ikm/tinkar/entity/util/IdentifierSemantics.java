@@ -0,0 +1,70 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.entity.util;
+
+import dev.ikm.tinkar.entity.SemanticEntity;
+import dev.ikm.tinkar.entity.SemanticEntityVersion;
+import dev.ikm.tinkar.terms.EntityFacade;
+import dev.ikm.tinkar.terms.TinkarTerm;
+import org.eclipse.collections.api.block.procedure.primitive.IntObjectProcedure;
+
+/**
+ * Reads the identifier source and identifier value of semantics of {@link TinkarTerm#IDENTIFIER_PATTERN}.
+ * <p>
+ * The source is the first component field of a version, and the value is its first string field, so decoding
+ * does not depend on the pattern's field order, or on the pattern being loaded.
+ */
+public final class IdentifierSemantics {
+
+    private IdentifierSemantics() {
+    }
+
+    /**
+     * Pass the identifier source nid and identifier value of each version of the semantic to the procedure.
+     * Versions may repeat the same identifier.
+     */
+    public static void forEachIdentifier(SemanticEntity<? extends SemanticEntityVersion> semantic,
+                                         IntObjectProcedure<String> procedure) {
+        for (SemanticEntityVersion version : semantic.versions()) {
+            EntityFacade source = null;
+            String value = null;
+            for (Object field : version.fieldValues()) {
+                if (source == null && field instanceof EntityFacade entityFacade) {
+                    source = entityFacade;
+                } else if (value == null && field instanceof String text) {
+                    value = text;
+                }
+            }
+            if (source != null && value != null) {
+                procedure.value(source.nid(), value);
+            }
+        }
+    }
+
+    /**
+     * @return true if any version of the semantic has the identifier source and value.
+     */
+    public static boolean hasIdentifier(SemanticEntity<? extends SemanticEntityVersion> semantic,
+                                        int identifierSourceNid, String identifierValue) {
+        boolean[] found = new boolean[1];
+        forEachIdentifier(semantic, (sourceNid, value) -> {
+            if (sourceNid == identifierSourceNid && value.equals(identifierValue)) {
+                found[0] = true;
+            }
+        });
+        return found[0];
+    }
+}
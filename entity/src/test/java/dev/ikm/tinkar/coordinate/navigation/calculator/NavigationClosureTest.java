@@ -0,0 +1,192 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.coordinate.navigation.calculator;
+
+import dev.ikm.tinkar.common.id.IntIds;
+import dev.ikm.tinkar.entity.CacheInvalidation;
+import dev.ikm.tinkar.entity.ConceptEntity;
+import dev.ikm.tinkar.entity.Entity;
+import dev.ikm.tinkar.entity.EntityService;
+import org.eclipse.collections.api.map.primitive.MutableIntObjectMap;
+import org.eclipse.collections.impl.factory.primitive.IntObjectMaps;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.MockedStatic;
+import org.mockito.Mockito;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class NavigationClosureTest {
+    private final MutableIntObjectMap<int[]> parents = IntObjectMaps.mutable.empty();
+    private final MutableIntObjectMap<int[]> children = IntObjectMaps.mutable.empty();
+    private final AtomicLong invalidationSequence = new AtomicLong();
+    private MockedStatic<Entity> mockedEntity;
+    private NavigationCalculatorWithCache calculator;
+
+    @BeforeEach
+    void setUp() {
+        mockedEntity = Mockito.mockStatic(Entity.class);
+        EntityService entityService = mock(EntityService.class);
+        when(entityService.invalidationSequence()).thenAnswer(invocation -> invalidationSequence.get());
+        mockedEntity.when(Entity::provider).thenReturn(entityService);
+        ConceptEntity<?> concept = mock(ConceptEntity.class);
+        mockedEntity.when(() -> Entity.getFast(anyInt())).thenReturn(concept);
+
+        calculator = mock(NavigationCalculatorWithCache.class, RETURNS_DEEP_STUBS);
+        when(calculator.unsortedParentsOf(anyInt())).thenAnswer(invocation -> edges(parents, invocation.getArgument(0)));
+        when(calculator.unsortedUnversionedParentsOf(anyInt())).thenAnswer(invocation -> edges(parents, invocation.getArgument(0)));
+        when(calculator.unsortedChildrenOf(anyInt())).thenAnswer(invocation -> edges(children, invocation.getArgument(0)));
+        when(calculator.unsortedUnversionedChildrenOf(anyInt())).thenAnswer(invocation -> edges(children, invocation.getArgument(0)));
+    }
+
+    @AfterEach
+    void tearDown() {
+        mockedEntity.close();
+    }
+
+    private static Object edges(MutableIntObjectMap<int[]> edges, int nid) {
+        return IntIds.list.of(edges.getIfAbsent(nid, () -> new int[0]));
+    }
+
+    private void addEdge(int childNid, int parentNid) {
+        parents.put(childNid, append(parents.get(childNid), parentNid));
+        children.put(parentNid, append(children.get(parentNid), childNid));
+    }
+
+    private void removeEdges(int childNid) {
+        for (int parentNid : parents.getIfAbsent(childNid, () -> new int[0])) {
+            children.put(parentNid, Arrays.stream(children.get(parentNid))
+                    .filter(nid -> nid != childNid).toArray());
+        }
+        parents.remove(childNid);
+    }
+
+    private static int[] append(int[] nids, int nid) {
+        if (nids == null) {
+            return new int[]{nid};
+        }
+        int[] appended = Arrays.copyOf(nids, nids.length + 1);
+        appended[nids.length] = nid;
+        return appended;
+    }
+
+    @Test
+    void diamondIsNotACycle() {
+        // 1 has parents 3 and 2, and 2 also has parent 3, so 3 is pushed before 2 reaches it.
+        addEdge(1, 3);
+        addEdge(1, 2);
+        addEdge(2, 3);
+        addEdge(3, 4);
+        NavigationClosure closure = new NavigationClosure(calculator);
+
+        assertArrayEquals(new int[]{2, 3, 4}, closure.ancestors(1));
+        assertArrayEquals(new int[]{3, 4}, closure.ancestors(2));
+        assertTrue(closure.isDescendentOf(1, 4));
+        assertFalse(closure.isDescendentOf(4, 1));
+        assertArrayEquals(new int[]{1, 2, 3}, closure.descendents(4));
+
+        // Cached, so the graph is not walked again.
+        clearInvocations(calculator);
+        assertArrayEquals(new int[]{2, 3, 4}, closure.ancestors(1));
+        verify(calculator, never()).unsortedParentsOf(anyInt());
+    }
+
+    @Test
+    void cycleIsWalkedButNotCached() {
+        addEdge(1, 2);
+        addEdge(2, 3);
+        addEdge(3, 2);
+        addEdge(3, 4);
+        NavigationClosure closure = new NavigationClosure(calculator);
+
+        assertArrayEquals(new int[]{2, 3, 4}, closure.ancestors(1));
+        clearInvocations(calculator);
+        assertArrayEquals(new int[]{2, 3, 4}, closure.ancestors(1));
+        verify(calculator, atLeast(1)).unsortedParentsOf(anyInt());
+    }
+
+    @Test
+    void selfCycle() {
+        addEdge(1, 1);
+        addEdge(1, 2);
+        NavigationClosure closure = new NavigationClosure(calculator);
+
+        assertArrayEquals(new int[]{2}, closure.ancestors(1));
+    }
+
+    @Test
+    void invalidationDropsClosuresContainingChangedConcepts() {
+        addEdge(1, 2);
+        addEdge(2, 3);
+        addEdge(5, 6);
+        addEdge(7, 8);
+        NavigationClosure closure = new NavigationClosure(calculator);
+        assertArrayEquals(new int[]{2, 3}, closure.ancestors(1));
+        assertArrayEquals(new int[]{6}, closure.ancestors(5));
+        assertArrayEquals(new int[]{8}, closure.ancestors(7));
+
+        // Move 2 from 3 to 6.
+        removeEdges(2);
+        addEdge(2, 6);
+        invalidate(closure, 2, 3);
+
+        assertArrayEquals(new int[]{2, 6}, closure.ancestors(1));
+        assertArrayEquals(new int[]{6}, closure.ancestors(2));
+        assertArrayEquals(new int[]{6}, closure.ancestors(5));
+        assertArrayEquals(new int[]{1, 2, 5}, closure.descendents(6));
+
+        // The closure of 7 contains no changed concept, so is still cached.
+        clearInvocations(calculator);
+        assertArrayEquals(new int[]{8}, closure.ancestors(7));
+        verify(calculator, never()).unsortedParentsOf(anyInt());
+
+        // Closures rebuilt after the invalidation are cached, and dropped by the next one.
+        assertArrayEquals(new int[]{2, 6}, closure.ancestors(1));
+        verify(calculator, never()).unsortedParentsOf(anyInt());
+        removeEdges(2);
+        invalidate(closure, 2);
+        assertArrayEquals(new int[]{2}, closure.ancestors(1));
+    }
+
+    private void invalidate(NavigationClosure closure, int... nids) {
+        closure.onNext(CacheInvalidation.of(invalidationSequence.incrementAndGet(), nids));
+    }
+
+    @Test
+    void invalidateAll() {
+        addEdge(1, 2);
+        NavigationClosure closure = new NavigationClosure(calculator);
+        assertArrayEquals(new int[]{2}, closure.ancestors(1));
+
+        addEdge(1, 3);
+        closure.onNext(CacheInvalidation.all(invalidationSequence.incrementAndGet()));
+        assertArrayEquals(new int[]{2, 3}, closure.ancestors(1));
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.coordinate.stamp.calculator;
+
+import dev.ikm.tinkar.entity.CacheInvalidation;
+import org.junit.jupiter.api.Test;
+
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StampClassificationsTest {
+    private static final int STAMP_COUNT = 1_000;
+
+    @Test
+    void info() {
+        int info = StampClassifications.info(true, false, true, 12_345);
+        assertEquals(StampClassifications.ON_ROUTE, info & StampClassifications.ON_ROUTE);
+        assertEquals(0, info & StampClassifications.ALLOWED_STATE);
+        assertEquals(StampClassifications.CANCELED, info & StampClassifications.CANCELED);
+        assertEquals(12_345, StampClassifications.segmentSequence(info));
+
+        info = StampClassifications.info(false, true, false, 0);
+        assertEquals(StampClassifications.ALLOWED_STATE, info);
+        assertEquals(0, StampClassifications.segmentSequence(info));
+    }
+
+    @Test
+    void addAndGrow() {
+        StampClassifications classifications = new StampClassifications();
+        assertEquals(-1, classifications.table().slot(-1));
+        // Nids are negative, and more stamps than the initial capacity make the table grow.
+        for (int i = 0; i < STAMP_COUNT; i++) {
+            StampClassifications.Table table = classifications.add(stampNid(i), info(i), time(i), 0);
+            assertSame(classifications.table(), table);
+        }
+        StampClassifications.Table table = classifications.table();
+        for (int i = 0; i < STAMP_COUNT; i++) {
+            assertClassified(table, i);
+        }
+        assertEquals(-1, table.slot(stampNid(STAMP_COUNT)));
+        assertEquals(-1, table.slot(Integer.MAX_VALUE));
+
+        // Adding a stamp again keeps its first classification.
+        assertSame(table, classifications.add(stampNid(0), info(1), time(1), 0));
+        assertClassified(classifications.table(), 0);
+    }
+
+    @Test
+    void invalidationRemovesNamedStamps() {
+        StampClassifications classifications = classified();
+        StampClassifications.Table before = classifications.table();
+
+        classifications.onNext(CacheInvalidation.of(1, stampNid(3), stampNid(500)));
+        StampClassifications.Table after = classifications.table();
+        assertNotSame(before, after);
+        assertEquals(-1, after.slot(stampNid(3)));
+        assertEquals(-1, after.slot(stampNid(500)));
+        for (int i = 0; i < STAMP_COUNT; i++) {
+            if (i != 3 && i != 500) {
+                assertClassified(after, i);
+            }
+        }
+        // Readers holding the previous table still see every entry.
+        for (int i = 0; i < STAMP_COUNT; i++) {
+            assertClassified(before, i);
+        }
+
+        // Removed stamps can be classified again.
+        assertSame(classifications.table(), classifications.add(stampNid(3), info(3), time(3), 1));
+        assertClassified(classifications.table(), 3);
+    }
+
+    @Test
+    void invalidationOfUnclassifiedStampsKeepsTable() {
+        StampClassifications classifications = classified();
+        StampClassifications.Table before = classifications.table();
+        classifications.onNext(CacheInvalidation.of(1, stampNid(STAMP_COUNT), stampNid(STAMP_COUNT + 1)));
+        assertSame(before, classifications.table());
+
+        // More nids than entries are checked against the table's keys instead.
+        int[] unclassified = IntStream.range(STAMP_COUNT, STAMP_COUNT * 3).map(StampClassificationsTest::stampNid).toArray();
+        classifications.onNext(CacheInvalidation.of(2, unclassified));
+        assertSame(before, classifications.table());
+
+        int[] oneClassified = IntStream.range(STAMP_COUNT - 1, STAMP_COUNT * 3).map(StampClassificationsTest::stampNid).toArray();
+        classifications.onNext(CacheInvalidation.of(3, oneClassified));
+        assertEquals(-1, classifications.table().slot(stampNid(STAMP_COUNT - 1)));
+        assertClassified(classifications.table(), STAMP_COUNT - 2);
+    }
+
+    @Test
+    void invalidateAll() {
+        StampClassifications classifications = classified();
+        classifications.onNext(CacheInvalidation.all(1));
+        for (int i = 0; i < STAMP_COUNT; i++) {
+            assertEquals(-1, classifications.table().slot(stampNid(i)));
+        }
+    }
+
+    @Test
+    void staleClassificationIsNotAdded() {
+        StampClassifications classifications = new StampClassifications();
+        classifications.onNext(CacheInvalidation.of(5, stampNid(0)));
+
+        // Classified before the invalidation was applied, so possibly from stale data.
+        assertNull(classifications.add(stampNid(0), info(0), time(0), 4));
+        assertEquals(-1, classifications.table().slot(stampNid(0)));
+
+        assertTrue(classifications.add(stampNid(0), info(0), time(0), 5).slot(stampNid(0)) >= 0);
+        assertClassified(classifications.table(), 0);
+    }
+
+    private static StampClassifications classified() {
+        StampClassifications classifications = new StampClassifications();
+        for (int i = 0; i < STAMP_COUNT; i++) {
+            classifications.add(stampNid(i), info(i), time(i), 0);
+        }
+        return classifications;
+    }
+
+    private static void assertClassified(StampClassifications.Table table, int i) {
+        int slot = table.slot(stampNid(i));
+        assertTrue(slot >= 0, "stamp " + i + " is classified");
+        assertEquals(info(i), table.info(slot));
+        assertEquals(time(i), table.time(slot));
+    }
+
+    private static int stampNid(int i) {
+        return Integer.MIN_VALUE + 1 + i * 7;
+    }
+
+    private static int info(int i) {
+        return StampClassifications.info(i % 2 == 0, i % 3 == 0, i % 5 == 0, i);
+    }
+
+    private static long time(int i) {
+        return 1_700_000_000_000L + i * 1_000L;
+    }
+}
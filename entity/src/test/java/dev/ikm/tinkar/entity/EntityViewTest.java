@@ -0,0 +1,227 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.entity;
+
+import dev.ikm.tinkar.common.id.IntIdList;
+import dev.ikm.tinkar.common.id.IntIdSet;
+import dev.ikm.tinkar.common.id.IntIds;
+import dev.ikm.tinkar.common.service.PrimitiveData;
+import dev.ikm.tinkar.common.service.PrimitiveDataService;
+import dev.ikm.tinkar.component.FieldDataType;
+import dev.ikm.tinkar.terms.EntityProxy;
+import org.eclipse.collections.api.factory.Lists;
+import org.eclipse.collections.api.list.ImmutableList;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.MockedStatic;
+import org.mockito.Mockito;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class EntityViewTest {
+    private static final int CONCEPT_NID = -1_000;
+    private static final int SEMANTIC_NID = -1_001;
+    private static final int PATTERN_NID = -1_002;
+    private static final int REFERENCED_NID = -1_003;
+    private static final int STAMP_NID = -2_000;
+    private static final int SECOND_STAMP_NID = -2_001;
+    private static final int CANCELED_STAMP_NID = -2_002;
+    private static final UUID PRIMORDIAL_UUID = UUID.randomUUID();
+    private static final UUID[] ADDITIONAL_UUIDS = {UUID.randomUUID(), UUID.randomUUID()};
+
+    private MockedStatic<PrimitiveData> mockedPrimitiveData;
+    private PrimitiveDataService primitiveDataService;
+
+    @BeforeEach
+    void setUp() {
+        mockedPrimitiveData = Mockito.mockStatic(PrimitiveData.class);
+        primitiveDataService = mock(PrimitiveDataService.class);
+        when(primitiveDataService.isCanceledStampNid(anyInt()))
+                .thenAnswer(invocation -> (int) invocation.getArgument(0) == CANCELED_STAMP_NID);
+        mockedPrimitiveData.when(PrimitiveData::get).thenReturn(primitiveDataService);
+    }
+
+    @AfterEach
+    void tearDown() {
+        mockedPrimitiveData.close();
+    }
+
+    @Test
+    void conceptHeaderAndStamps() {
+        RecordListBuilder<ConceptVersionRecord> versions = RecordListBuilder.make();
+        ConceptRecord conceptRecord = ConceptRecordBuilder.builder()
+                .nid(CONCEPT_NID)
+                .mostSignificantBits(PRIMORDIAL_UUID.getMostSignificantBits())
+                .leastSignificantBits(PRIMORDIAL_UUID.getLeastSignificantBits())
+                .versions(versions)
+                .build();
+        for (int stampNid : new int[]{STAMP_NID, CANCELED_STAMP_NID, SECOND_STAMP_NID}) {
+            versions.add(ConceptVersionRecordBuilder.builder().chronology(conceptRecord).stampNid(stampNid).build());
+        }
+        conceptRecord = ConceptRecordBuilder.builder(conceptRecord).versions(versions.toImmutable()).build();
+
+        EntityView view = EntityView.of(EntityRecordFactory.getBytes(conceptRecord));
+        assertEquals(FieldDataType.CONCEPT_CHRONOLOGY, view.entityDataType());
+        assertFalse(view.isSemantic());
+        assertEquals(CONCEPT_NID, view.nid());
+        assertEquals(PRIMORDIAL_UUID, view.primordialUuid());
+        assertEquals(0, view.additionalUuidLongCount());
+        // Versions on canceled stamps are kept by the view.
+        assertEquals(3, view.versionCount());
+        assertArrayEquals(new int[]{STAMP_NID, CANCELED_STAMP_NID, SECOND_STAMP_NID}, view.stampNids());
+        assertEquals(SECOND_STAMP_NID, view.stampNid(2));
+        assertThrows(IllegalStateException.class, view::patternNid);
+        assertThrows(IllegalStateException.class, view::referencedComponentNid);
+        assertThrows(IllegalStateException.class, () -> view.fieldCount(0));
+
+        // But not by the decoded entity.
+        ConceptRecord entity = view.toEntity();
+        assertEquals(CONCEPT_NID, entity.nid());
+        assertEquals(2, entity.versions().size());
+        assertEquals(STAMP_NID, entity.versions().get(0).stampNid());
+        assertEquals(SECOND_STAMP_NID, entity.versions().get(1).stampNid());
+    }
+
+    @Test
+    void semanticWithAdditionalUuids() {
+        ImmutableList<Object> firstFields = Lists.immutable.of(
+                "first",
+                Boolean.TRUE,
+                42,
+                1.5f,
+                Long.MAX_VALUE,
+                Instant.ofEpochSecond(1_700_000_000L, 123),
+                new BigDecimal("3.14159"),
+                new byte[]{1, 2, 3},
+                IntIds.list.of(-3, -1, -2),
+                IntIds.set.of(-5, -4),
+                EntityProxy.Concept.make(CONCEPT_NID),
+                EntityProxy.Pattern.make(PATTERN_NID));
+        ImmutableList<Object> secondFields = Lists.immutable.of("second", EntityProxy.make(REFERENCED_NID));
+        SemanticRecord semanticRecord = semantic(firstFields, secondFields);
+
+        EntityView view = EntityView.of(EntityRecordFactory.getBytes(semanticRecord));
+        assertEquals(FieldDataType.SEMANTIC_CHRONOLOGY, view.entityDataType());
+        assertTrue(view.isSemantic());
+        assertEquals(SEMANTIC_NID, view.nid());
+        assertEquals(PRIMORDIAL_UUID, view.primordialUuid());
+        assertEquals(4, view.additionalUuidLongCount());
+        for (int i = 0; i < ADDITIONAL_UUIDS.length; i++) {
+            assertEquals(ADDITIONAL_UUIDS[i].getMostSignificantBits(), view.additionalUuidLong(i * 2));
+            assertEquals(ADDITIONAL_UUIDS[i].getLeastSignificantBits(), view.additionalUuidLong(i * 2 + 1));
+        }
+        // The semantic header and versions follow the additional uuids.
+        assertEquals(PATTERN_NID, view.patternNid());
+        assertEquals(REFERENCED_NID, view.referencedComponentNid());
+        assertEquals(2, view.versionCount());
+        assertArrayEquals(new int[]{STAMP_NID, SECOND_STAMP_NID}, view.stampNids());
+
+        assertEquals(firstFields.size(), view.fieldCount(0));
+        assertEquals(secondFields.size(), view.fieldCount(1));
+        assertEquals(FieldDataType.STRING, view.fieldDataType(0, 0));
+        assertEquals(FieldDataType.COMPONENT_ID_SET, view.fieldDataType(0, 9));
+        assertEquals(FieldDataType.CONCEPT, view.fieldDataType(0, 10));
+        assertEquals(FieldDataType.IDENTIFIED_THING, view.fieldDataType(1, 1));
+
+        // Each field is found by skipping every field before it.
+        assertEquals("first", view.field(0, 0));
+        assertEquals(Boolean.TRUE, view.field(0, 1));
+        assertEquals(42, (int) view.field(0, 2));
+        assertEquals(1.5f, (float) view.field(0, 3));
+        assertEquals(Long.MAX_VALUE, (long) view.field(0, 4));
+        assertEquals(Instant.ofEpochSecond(1_700_000_000L, 123), view.field(0, 5));
+        assertEquals(new BigDecimal("3.14159"), view.field(0, 6));
+        assertArrayEquals(new byte[]{1, 2, 3}, view.<byte[]>field(0, 7));
+        assertArrayEquals(new int[]{-3, -1, -2}, view.<IntIdList>field(0, 8).toArray());
+        int[] set = view.<IntIdSet>field(0, 9).toArray();
+        Arrays.sort(set);
+        assertArrayEquals(new int[]{-5, -4}, set);
+        assertEquals(CONCEPT_NID, view.<EntityProxy.Concept>field(0, 10).nid());
+        assertEquals(PATTERN_NID, view.<EntityProxy.Pattern>field(0, 11).nid());
+        assertEquals("second", view.field(1, 0));
+
+        assertEquals(CONCEPT_NID, view.nidField(0, 10));
+        assertEquals(PATTERN_NID, view.nidField(0, 11));
+        assertEquals(REFERENCED_NID, view.nidField(1, 1));
+        assertThrows(IllegalStateException.class, () -> view.nidField(0, 0));
+        assertThrows(IndexOutOfBoundsException.class, () -> view.field(0, firstFields.size()));
+        assertThrows(IndexOutOfBoundsException.class, () -> view.field(1, -1));
+
+        SemanticRecord entity = view.toEntity();
+        assertEquals(SEMANTIC_NID, entity.nid());
+        assertArrayEquals(semanticRecord.additionalUuidLongs(), entity.additionalUuidLongs());
+        assertEquals(PATTERN_NID, entity.patternNid());
+        assertEquals(REFERENCED_NID, entity.referencedComponentNid());
+        assertEquals(2, entity.versions().size());
+        assertEquals("first", entity.versions().get(0).fieldValues().get(0));
+        assertEquals("second", entity.versions().get(1).fieldValues().get(0));
+    }
+
+    @Test
+    void get() {
+        SemanticRecord semanticRecord = semantic(Lists.immutable.of("first"));
+        byte[] bytes = EntityRecordFactory.getBytes(semanticRecord);
+        when(primitiveDataService.getBytes(SEMANTIC_NID)).thenReturn(bytes);
+
+        EntityView view = EntityView.get(SEMANTIC_NID);
+        assertEquals(SEMANTIC_NID, view.nid());
+        assertSame(bytes, view.bytes());
+        assertNull(EntityView.get(CONCEPT_NID));
+    }
+
+    @SafeVarargs
+    private static SemanticRecord semantic(ImmutableList<Object>... versionFields) {
+        long[] additionalUuidLongs = new long[ADDITIONAL_UUIDS.length * 2];
+        for (int i = 0; i < ADDITIONAL_UUIDS.length; i++) {
+            additionalUuidLongs[i * 2] = ADDITIONAL_UUIDS[i].getMostSignificantBits();
+            additionalUuidLongs[i * 2 + 1] = ADDITIONAL_UUIDS[i].getLeastSignificantBits();
+        }
+        RecordListBuilder<SemanticVersionRecord> versions = RecordListBuilder.make();
+        SemanticRecord semanticRecord = SemanticRecordBuilder.builder()
+                .nid(SEMANTIC_NID)
+                .mostSignificantBits(PRIMORDIAL_UUID.getMostSignificantBits())
+                .leastSignificantBits(PRIMORDIAL_UUID.getLeastSignificantBits())
+                .additionalUuidLongs(additionalUuidLongs)
+                .patternNid(PATTERN_NID)
+                .referencedComponentNid(REFERENCED_NID)
+                .versions(versions)
+                .build();
+        int[] stampNids = {STAMP_NID, SECOND_STAMP_NID};
+        for (int i = 0; i < versionFields.length; i++) {
+            versions.add(SemanticVersionRecordBuilder.builder()
+                    .chronology(semanticRecord)
+                    .stampNid(stampNids[i])
+                    .fieldValues(versionFields[i])
+                    .build());
+        }
+        return SemanticRecordBuilder.builder(semanticRecord).versions(versions.toImmutable()).build();
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.entity.export;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ParallelZipArchiveTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void roundTrip() throws IOException {
+        Random random = new Random(42);
+        byte[] incompressible = new byte[300_000];
+        random.nextBytes(incompressible);
+        byte[][] contents = {
+                "Hello, archive".getBytes(StandardCharsets.UTF_8),
+                new byte[0],
+                "repeated ".repeat(100_000).getBytes(StandardCharsets.UTF_8),
+                incompressible
+        };
+        String[] names = {"first.pb", "empty.pb", "nested/repeated.pb", "random-é.pb"};
+
+        List<ParallelZipArchive.Part> parts = new ArrayList<>();
+        for (int i = 0; i < contents.length; i++) {
+            ParallelZipArchive.Part part = new ParallelZipArchive.Part(names[i], tempDir);
+            try (part) {
+                // Mix single byte and array writes.
+                if (contents[i].length > 0) {
+                    part.write(contents[i][0]);
+                    part.write(contents[i], 1, contents[i].length - 1);
+                }
+            }
+            parts.add(part);
+        }
+        Path archive = tempDir.resolve("archive.zip");
+        ParallelZipArchive.write(archive, parts);
+        for (ParallelZipArchive.Part part : parts) {
+            part.delete();
+        }
+        try (Stream<Path> files = Files.list(tempDir)) {
+            assertEquals(List.of(archive), files.toList());
+        }
+
+        try (ZipFile zipFile = new ZipFile(archive.toFile())) {
+            assertEquals(contents.length, zipFile.size());
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            for (int i = 0; i < contents.length; i++) {
+                ZipEntry entry = entries.nextElement();
+                assertEquals(names[i], entry.getName());
+                assertEquals(ZipEntry.DEFLATED, entry.getMethod());
+                assertEquals(contents[i].length, entry.getSize());
+                CRC32 crc = new CRC32();
+                crc.update(contents[i]);
+                assertEquals(crc.getValue(), entry.getCrc());
+                try (InputStream in = zipFile.getInputStream(entry)) {
+                    assertArrayEquals(contents[i], in.readAllBytes());
+                }
+            }
+        }
+
+        try (ZipInputStream in = new ZipInputStream(Files.newInputStream(archive))) {
+            for (int i = 0; i < contents.length; i++) {
+                assertEquals(names[i], in.getNextEntry().getName());
+                assertArrayEquals(contents[i], in.readAllBytes());
+            }
+            assertNull(in.getNextEntry());
+        }
+    }
+
+    @Test
+    void zip64EntryCount() throws IOException {
+        // More entries than the 16 bit count of the end of central directory record holds.
+        int entryCount = 70_000;
+        List<ParallelZipArchive.Part> parts = new ArrayList<>(entryCount);
+        for (int i = 0; i < entryCount; i++) {
+            ParallelZipArchive.Part part = new ParallelZipArchive.Part("part-" + i, tempDir);
+            try (part) {
+                part.write(Integer.toString(i).getBytes(StandardCharsets.UTF_8));
+            }
+            parts.add(part);
+        }
+        Path archive = tempDir.resolve("archive.zip");
+        try {
+            ParallelZipArchive.write(archive, parts);
+        } finally {
+            for (ParallelZipArchive.Part part : parts) {
+                part.delete();
+            }
+        }
+
+        try (ZipFile zipFile = new ZipFile(archive.toFile())) {
+            assertEquals(entryCount, zipFile.size());
+            Enumeration<? extends ZipEntry> entries = zipFile.entries();
+            for (int i = 0; i < entryCount; i++) {
+                ZipEntry entry = entries.nextElement();
+                assertEquals("part-" + i, entry.getName());
+                try (InputStream in = zipFile.getInputStream(entry)) {
+                    assertEquals(Integer.toString(i), new String(in.readAllBytes(), StandardCharsets.UTF_8));
+                }
+            }
+            assertFalse(entries.hasMoreElements());
+        }
+    }
+}
@@ -0,0 +1,305 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.events;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Thread safe event bus. Subscriptions are kept in immutable snapshots that are replaced on each subscribe or
+ * unsubscribe, so publishing never locks or copies. The subscribers for each published event class, including
+ * subscribers to its superclasses, are resolved once per snapshot and cached.
+ * <p>
+ * Subscribers added with {@link #subscribe(Object, Class, Subscriber)} are called on the publishing thread.
+ * Subscribers added with one of the {@code subscribeAsync} methods are called on a virtual thread, one event at a
+ * time and in publish order for each subscriber.
+ */
+@EvtBusName("ConcurrentEvtBus")
+public class ConcurrentEvtBus implements EvtBus {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ConcurrentEvtBus.class);
+
+    private static final ThreadFactory DELIVERY_THREAD_FACTORY = Thread.ofVirtual().name("evt-bus-delivery-", 0).factory();
+
+    private static final Registration[] NO_REGISTRATIONS = new Registration[0];
+
+    private final ConcurrentHashMap<Object, Topic> topics = new ConcurrentHashMap<>();
+
+    private final AtomicLong registrationSequence = new AtomicLong();
+
+    public ConcurrentEvtBus() {}
+
+    @Override
+    public <T extends Evt> void publish(Object topic, T evt) {
+        Topic subscribedTopic = topics.get(topic);
+        if (subscribedTopic == null) {
+            return;
+        }
+        for (Registration registration : subscribedTopic.snapshot.registrationsFor(evt.getClass())) {
+            registration.deliver(evt);
+        }
+    }
+
+    @Override
+    public <T extends Evt> void subscribe(Object topic, Class<T> eventClass, Subscriber<T> subscriber) {
+        register(topic, new Registration(eventClass, subscriber, registrationSequence.incrementAndGet(), null));
+    }
+
+    @Override
+    public <T extends Evt> void subscribeAsync(Object topic, Class<T> eventClass, Subscriber<T> subscriber) {
+        register(topic, new Registration(eventClass, subscriber, registrationSequence.incrementAndGet(),
+                new Mailbox(subscriber)));
+    }
+
+    @Override
+    public <T extends Evt> void subscribeAsync(Object topic, Class<T> eventClass, Subscriber<T> subscriber,
+                                               Function<? super T, ?> coalescingKey) {
+        register(topic, new Registration(eventClass, subscriber, registrationSequence.incrementAndGet(),
+                new CoalescingMailbox(subscriber, coalescingKey)));
+    }
+
+    @Override
+    public <T extends Evt> void unsubscribe(Object topic, Class<T> eventClass, Subscriber<T> subscriber) {
+        Topic subscribedTopic = topics.get(topic);
+        if (subscribedTopic == null) {
+            LOG.warn("Unsubscribing Topic: {}, eventClass: {}, subscriber: {}. contains no subscriber", topic, eventClass.getName(), subscriber);
+            return;
+        }
+        subscribedTopic.remove(registration -> registration.eventClass == eventClass && registration.subscriber.equals(subscriber));
+    }
+
+    @Override
+    public <T extends Evt> void unsubscribe(Subscriber<T> subscriber) {
+        topics.values().forEach(topic -> topic.remove(registration -> registration.subscriber.equals(subscriber)));
+    }
+
+    @Override
+    public void unsubscribe(Subscriber<?>... subscriber) {
+        if (null != subscriber) {
+            for (Subscriber<?> s : subscriber) {
+                unsubscribe(s);
+            }
+        }
+    }
+
+    private void register(Object topic, Registration registration) {
+        topics.computeIfAbsent(topic, key -> new Topic()).add(registration);
+    }
+
+    /**
+     * The subscriptions to one topic. Writers serialize on the topic and publish a new snapshot.
+     */
+    private static final class Topic {
+        private volatile Snapshot snapshot = new Snapshot(Map.of());
+
+        synchronized void add(Registration registration) {
+            Map<Class<?>, Registration[]> subscriptions = new HashMap<>(snapshot.subscriptions);
+            Registration[] registrations = subscriptions.getOrDefault(registration.eventClass, NO_REGISTRATIONS);
+            Registration[] added = Arrays.copyOf(registrations, registrations.length + 1);
+            added[registrations.length] = registration;
+            subscriptions.put(registration.eventClass, added);
+            snapshot = new Snapshot(Map.copyOf(subscriptions));
+        }
+
+        synchronized void remove(Predicate<Registration> filter) {
+            Map<Class<?>, Registration[]> subscriptions = new HashMap<>();
+            boolean removed = false;
+            for (Map.Entry<Class<?>, Registration[]> entry : snapshot.subscriptions.entrySet()) {
+                List<Registration> kept = new ArrayList<>(entry.getValue().length);
+                for (Registration registration : entry.getValue()) {
+                    if (filter.test(registration)) {
+                        registration.cancel();
+                        removed = true;
+                    } else {
+                        kept.add(registration);
+                    }
+                }
+                if (!kept.isEmpty()) {
+                    subscriptions.put(entry.getKey(), kept.toArray(NO_REGISTRATIONS));
+                }
+            }
+            if (removed) {
+                snapshot = new Snapshot(Map.copyOf(subscriptions));
+            }
+        }
+    }
+
+    /**
+     * Immutable subscriptions by event class, with a cache of the registrations that receive each published event
+     * class. The cache belongs to the snapshot, so a publisher racing a subscribe only fills the cache of the
+     * snapshot it read.
+     */
+    private record Snapshot(Map<Class<?>, Registration[]> subscriptions,
+                            ConcurrentHashMap<Class<?>, Registration[]> dispatch) {
+        Snapshot(Map<Class<?>, Registration[]> subscriptions) {
+            this(subscriptions, new ConcurrentHashMap<>());
+        }
+
+        Registration[] registrationsFor(Class<?> eventClass) {
+            Registration[] registrations = dispatch.get(eventClass);
+            if (registrations == null) {
+                registrations = dispatch.computeIfAbsent(eventClass, this::resolve);
+            }
+            return registrations;
+        }
+
+        private Registration[] resolve(Class<?> eventClass) {
+            List<Registration> resolved = new ArrayList<>();
+            for (Class<?> type = eventClass; type != null && Evt.class.isAssignableFrom(type); type = type.getSuperclass()) {
+                resolved.addAll(Arrays.asList(subscriptions.getOrDefault(type, NO_REGISTRATIONS)));
+            }
+            // Deliver in subscription order regardless of which class in the hierarchy was subscribed to.
+            resolved.sort(Comparator.comparingLong(Registration::sequence));
+            return resolved.toArray(NO_REGISTRATIONS);
+        }
+    }
+
+    private record Registration(Class<?> eventClass, Subscriber subscriber, long sequence, Mailbox mailbox) {
+
+        @SuppressWarnings("unchecked")
+        void deliver(Evt evt) {
+            if (mailbox == null) {
+                subscriber.handle(evt);
+            } else {
+                mailbox.offer(evt);
+            }
+        }
+
+        void cancel() {
+            if (mailbox != null) {
+                mailbox.cancel();
+            }
+        }
+    }
+
+    /**
+     * Queue of events for one asynchronous subscriber. At most one virtual thread drains the queue at a time, which
+     * keeps the events for a subscriber in publish order.
+     */
+    private static class Mailbox {
+        private final Subscriber subscriber;
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private final Queue<Evt> pending = new ConcurrentLinkedQueue<>();
+        private volatile boolean cancelled;
+
+        Mailbox(Subscriber subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        void offer(Evt evt) {
+            if (cancelled) {
+                return;
+            }
+            enqueue(evt);
+            if (draining.compareAndSet(false, true)) {
+                DELIVERY_THREAD_FACTORY.newThread(this::drain).start();
+            }
+        }
+
+        void cancel() {
+            cancelled = true;
+        }
+
+        void enqueue(Evt evt) {
+            pending.add(evt);
+        }
+
+        Evt next() {
+            return pending.poll();
+        }
+
+        boolean isEmpty() {
+            return pending.isEmpty();
+        }
+
+        @SuppressWarnings("unchecked")
+        private void drain() {
+            do {
+                Evt evt;
+                while (!cancelled && (evt = next()) != null) {
+                    try {
+                        subscriber.handle(evt);
+                    } catch (RuntimeException e) {
+                        LOG.error("Subscriber {} failed to handle {}", subscriber, evt, e);
+                    }
+                }
+                draining.set(false);
+                // An event offered after the queue emptied but before the flag was cleared is still ours to deliver.
+            } while (!cancelled && !isEmpty() && draining.compareAndSet(false, true));
+        }
+    }
+
+    /**
+     * Mailbox that keeps only the latest pending event for each key, so a burst of events about the same thing is
+     * delivered once. A replaced event moves to the end of the queue.
+     */
+    private static final class CoalescingMailbox extends Mailbox {
+        private final Function<Evt, ?> coalescingKey;
+        private final LinkedHashMap<Object, Evt> pending = new LinkedHashMap<>();
+
+        @SuppressWarnings("unchecked")
+        CoalescingMailbox(Subscriber subscriber, Function<?, ?> coalescingKey) {
+            super(subscriber);
+            this.coalescingKey = (Function<Evt, ?>) coalescingKey;
+        }
+
+        @Override
+        void enqueue(Evt evt) {
+            Object key = coalescingKey.apply(evt);
+            synchronized (pending) {
+                pending.remove(key);
+                pending.put(key, evt);
+            }
+        }
+
+        @Override
+        Evt next() {
+            synchronized (pending) {
+                Iterator<Evt> iterator = pending.values().iterator();
+                if (!iterator.hasNext()) {
+                    return null;
+                }
+                Evt evt = iterator.next();
+                iterator.remove();
+                return evt;
+            }
+        }
+
+        @Override
+        boolean isEmpty() {
+            synchronized (pending) {
+                return pending.isEmpty();
+            }
+        }
+    }
+}
@@ -45,7 +45,7 @@ public DefaultEvtBus() {}
     @Override
     public <T extends Evt> void publish(Object topic, T evt) {
         // if there is no topic then create one as a String
-        LOG.info(evt.getSource().toString());
+        LOG.trace("Publishing {} from {}", evt.getClass().getName(), evt.getSource());
         // event class name is the key -> List<Subscriber>
         String eventClassName = evt.getClass().getName();
         subscribersMap.putIfAbsent(topic, new HashMap<>());
@@ -15,6 +15,7 @@
  */
 package dev.ikm.tinkar.events;
 
+import java.util.function.Function;
 
 /**
  * Event Bus. Allow components in the Komet Application to communicate
@@ -38,6 +39,30 @@ public interface EvtBus {
      */
     <T extends Evt> void subscribe(Object topic, Class<T> eventClass, Subscriber<T> subscriber);
 
+    /**
+     * Subscribe to a topic, with events delivered to the subscriber on a separate thread, one at a time and in
+     * publish order. Implementations without asynchronous delivery call the subscriber on the publishing thread.
+     * @param topic the topic name
+     * @param eventClass the class of events to receive, including subclasses where the implementation supports it
+     * @param subscriber subscriber to the topic
+     */
+    default <T extends Evt> void subscribeAsync(Object topic, Class<T> eventClass, Subscriber<T> subscriber) {
+        subscribe(topic, eventClass, subscriber);
+    }
+
+    /**
+     * Subscribe to a topic with asynchronous delivery, where an event that has not yet been delivered is replaced
+     * by a newer event with the same key. Suited to bursty events where only the latest state matters.
+     * @param topic the topic name
+     * @param eventClass the class of events to receive
+     * @param subscriber subscriber to the topic
+     * @param coalescingKey function returning the key that identifies events that replace each other
+     */
+    default <T extends Evt> void subscribeAsync(Object topic, Class<T> eventClass, Subscriber<T> subscriber,
+                                                Function<? super T, ?> coalescingKey) {
+        subscribeAsync(topic, eventClass, subscriber);
+    }
+
     /**
      * unsubscribe to the topic
      * @param topic the topic name
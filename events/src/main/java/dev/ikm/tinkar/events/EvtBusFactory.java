@@ -17,10 +17,9 @@
 
 import dev.ikm.tinkar.common.service.PluggableService;
 
-import java.util.HashMap;
 import java.util.Map;
-import java.util.Optional;
 import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Factory class to create and return an Event Bus implementation
@@ -28,7 +27,7 @@
 public class EvtBusFactory {
 
     // collection of EvtBus implementations
-    private static final Map<String, EvtBus> evtBusMap = new HashMap<>();
+    private static final Map<String, EvtBus> evtBusMap = new ConcurrentHashMap<>();
 
     private EvtBusFactory() {}
 
@@ -38,14 +37,11 @@ private EvtBusFactory() {}
      * @return the EvtBus implementation
      */
     public static EvtBus getInstance(Class clazz) {
-        if (null == evtBusMap.get(clazz.getSimpleName())) {
-            EvtBus bus = (EvtBus) ServiceLoader.load(clazz).findFirst().get();
-            if (clazz == EvtBus.class) {
-                evtBusMap.put(clazz.getSimpleName(), bus);
-            }
-            evtBusMap.put(bus.getClass().getSimpleName(), bus);
-        }
-        return evtBusMap.get(clazz.getSimpleName());
+        // Loaded at most once per name, so concurrent callers get the same bus.
+        EvtBus bus = evtBusMap.computeIfAbsent(clazz.getSimpleName(),
+                simpleName -> (EvtBus) ServiceLoader.load(clazz).findFirst().get());
+        evtBusMap.putIfAbsent(bus.getClass().getSimpleName(), bus);
+        return bus;
     }
 
     /**
@@ -54,19 +50,12 @@ public static EvtBus getInstance(Class clazz) {
      * @return the EvtBus implementation
      */
     public static EvtBus getInstance(String name) {
-        if (null == evtBusMap.get(name)) {
-            Optional<EvtBus> optBus = PluggableService.load(EvtBus.class)
-                    .stream()
-                    .filter(evtBusProvider ->
-                            evtBusProvider.type().isAnnotationPresent(EvtBusName.class)
-                                    && evtBusProvider.type().getAnnotation(EvtBusName.class).value().equals(name)
-                    ).map(ServiceLoader.Provider::get).findFirst();
-            if (optBus.isPresent()) {
-                evtBusMap.put(name, optBus.get());
-            }
-
-        }
-        return evtBusMap.get(name);
+        return evtBusMap.computeIfAbsent(name, key -> PluggableService.load(EvtBus.class)
+                .stream()
+                .filter(evtBusProvider ->
+                        evtBusProvider.type().isAnnotationPresent(EvtBusName.class)
+                                && evtBusProvider.type().getAnnotation(EvtBusName.class).value().equals(key)
+                ).map(ServiceLoader.Provider::get).findFirst().orElse(null));
     }
 
     /**
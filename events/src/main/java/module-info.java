@@ -21,7 +21,8 @@
     requires org.slf4j;
 
     provides dev.ikm.tinkar.events.EvtBus
-            with dev.ikm.tinkar.events.DefaultEvtBus;
+            with dev.ikm.tinkar.events.ConcurrentEvtBus,
+                    dev.ikm.tinkar.events.DefaultEvtBus;
 
     uses dev.ikm.tinkar.events.EvtBus;
 }
@@ -0,0 +1,130 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.events.test;
+
+import dev.ikm.tinkar.events.ConcurrentEvtBus;
+import dev.ikm.tinkar.events.Evt;
+import dev.ikm.tinkar.events.EvtType;
+import dev.ikm.tinkar.events.Subscriber;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ConcurrentEvtBusTest {
+
+    @Test
+    public void superclassSubscribersReceiveSubclassEvents() {
+        ConcurrentEvtBus evtBus = new ConcurrentEvtBus();
+        List<String> received = new ArrayList<>();
+        evtBus.subscribe("topic", Evt.class, evt -> received.add("any"));
+        evtBus.subscribe("topic", CountEvent.class, evt -> received.add("count " + evt.count));
+
+        evtBus.publish("topic", new CountEvent(this, 1));
+        evtBus.publish("topic", new Evt(this, Evt.ANY));
+        evtBus.publish("other topic", new CountEvent(this, 2));
+
+        assertEquals(List.of("any", "count 1", "any"), received);
+    }
+
+    @Test
+    public void unsubscribeStopsDelivery() {
+        ConcurrentEvtBus evtBus = new ConcurrentEvtBus();
+        List<Integer> received = new ArrayList<>();
+        Subscriber<CountEvent> subscriber = evt -> received.add(evt.count);
+        evtBus.subscribe("topic", CountEvent.class, subscriber);
+        evtBus.publish("topic", new CountEvent(this, 1));
+        evtBus.unsubscribe(subscriber);
+        evtBus.publish("topic", new CountEvent(this, 2));
+
+        assertEquals(List.of(1), received);
+    }
+
+    @Test
+    public void asyncDeliveryKeepsPublishOrder() throws InterruptedException {
+        ConcurrentEvtBus evtBus = new ConcurrentEvtBus();
+        int eventCount = 10_000;
+        List<Integer> received = new ArrayList<>();
+        CountDownLatch latch = new CountDownLatch(eventCount);
+        evtBus.subscribeAsync("topic", CountEvent.class, evt -> {
+            received.add(evt.count);
+            latch.countDown();
+        });
+        for (int i = 0; i < eventCount; i++) {
+            evtBus.publish("topic", new CountEvent(this, i));
+        }
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < eventCount; i++) {
+            assertEquals(i, received.get(i));
+        }
+    }
+
+    @Test
+    public void coalescingDeliversLatestEventForEachKey() throws InterruptedException {
+        ConcurrentEvtBus evtBus = new ConcurrentEvtBus();
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        List<Integer> received = new ArrayList<>();
+        evtBus.subscribeAsync("topic", CountEvent.class, evt -> {
+            if (evt.count == 0) {
+                blocked.countDown();
+                awaitQuietly(release);
+            }
+            received.add(evt.count);
+            if (evt.count == -1) {
+                done.countDown();
+            }
+        }, evt -> evt.count > 0 ? "positive" : evt.count);
+
+        evtBus.publish("topic", new CountEvent(this, 0));
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+        // Published while the subscriber is busy, so all but the last positive count are replaced.
+        for (int i = 1; i <= 100; i++) {
+            evtBus.publish("topic", new CountEvent(this, i));
+        }
+        evtBus.publish("topic", new CountEvent(this, -1));
+        release.countDown();
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of(0, 100, -1), received);
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    static class CountEvent extends Evt {
+        static final EvtType<CountEvent> COUNT = new EvtType<>(Evt.ANY, "COUNT");
+
+        final int count;
+
+        CountEvent(Object source, int count) {
+            super(source, COUNT);
+            this.count = count;
+        }
+    }
+}
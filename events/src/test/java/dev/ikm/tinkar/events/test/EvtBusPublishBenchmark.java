@@ -0,0 +1,88 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.events.test;
+
+import dev.ikm.tinkar.events.ConcurrentEvtBus;
+import dev.ikm.tinkar.events.DefaultEvtBus;
+import dev.ikm.tinkar.events.Evt;
+import dev.ikm.tinkar.events.EvtBus;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures publish throughput to a topic with synchronous subscribers, for the default and the concurrent event
+ * bus. Run with the main method from the test classpath; it is not run as part of the test suite. Publishing is from
+ * a single thread because the default bus is not thread safe.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EvtBusPublishBenchmark {
+    private static final String TOPIC = "benchmark";
+
+    @Param({"ConcurrentEvtBus", "DefaultEvtBus"})
+    String evtBusName;
+
+    @Param({"1", "8"})
+    int subscriberCount;
+
+    EvtBus evtBus;
+    Evt evt;
+    long handled;
+
+    @Setup
+    public void setup() {
+        evtBus = evtBusName.equals("DefaultEvtBus") ? new DefaultEvtBus() : new ConcurrentEvtBus();
+        for (int i = 0; i < subscriberCount; i++) {
+            evtBus.subscribe(TOPIC, Evt.class, event -> handled++);
+        }
+        evt = new Evt(this, Evt.ANY);
+    }
+
+    @Benchmark
+    public long publish() {
+        evtBus.publish(TOPIC, evt);
+        return handled;
+    }
+
+    @Benchmark
+    public void publishToTopicWithoutSubscribers() {
+        evtBus.publish("unsubscribed", evt);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(EvtBusPublishBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -23,6 +23,7 @@
 import dev.ikm.tinkar.composer.assembler.SemanticAssembler;
 import dev.ikm.tinkar.coordinate.Coordinates;
 import dev.ikm.tinkar.coordinate.navigation.calculator.NavigationCalculatorWithCache;
+import dev.ikm.tinkar.entity.EntityService;
 import dev.ikm.tinkar.integration.TestConstants;
 import dev.ikm.tinkar.integration.helper.DataStore;
 import dev.ikm.tinkar.integration.helper.TestHelper;
@@ -107,6 +108,35 @@ public void searchAfterNewEntitiesAreWrittenToDatabaseViaSearcherIT() throws Exc
         assertTrue(searchResults.length > 0, "Missing search results");
     }
 
+    @Test
+    public void searchAfterLoadPhaseEndsIT() throws Exception {
+        //Given a semantic written during a load phase, by a thread other than the one searching
+        EntityService.get().beginLoadPhase();
+        try {
+            Thread writer = Thread.ofPlatform().start(() -> {
+                Session session = composer.open(State.ACTIVE, TinkarTerm.USER, TinkarTerm.SOLOR_OVERLAY_MODULE, TinkarTerm.DEVELOPMENT_PATH);
+                session.compose((SemanticAssembler semanticAssembler) -> semanticAssembler
+                        .pattern(TinkarTerm.COMMENT_PATTERN)
+                        .reference(TinkarTerm.COMMENT)
+                        .fieldValues((MutableList<Object> values) -> values.with("bulkloadedcomment"))
+                );
+            });
+            writer.join();
+        } finally {
+            EntityService.get().endLoadPhase();
+        }
+
+        //Then the semantic becomes searchable without further writes
+        var searcher = new Searcher();
+        long deadline = System.currentTimeMillis() + 5_000;
+        int resultCount = searcher.search("bulkloadedcomment", 10).length;
+        while (resultCount == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+            resultCount = searcher.search("bulkloadedcomment", 10).length;
+        }
+        assertEquals(1, resultCount, "Semantic written during the load phase should be searchable");
+    }
+
     @Test
     public void searchFromDescendantsOfConceptWithDefaultCalculatorIT() throws Exception {
         //Role: [46ae9325-dd24-5008-8fda-80cf1f0977c7]
@@ -185,6 +215,7 @@ public void typeAheadIndexerTest() throws InterruptedException {
         });
         assertTrue(entities.contains(TinkarTerm.COMMENT));
         assertEquals(1, commentConcepts.get());
+        assertEquals(List.of("rAdded"), TypeAheadSearch.get().textSuggestions("rAdd", 10));
     }
 
     @Test
@@ -7,6 +7,7 @@
 import dev.ikm.tinkar.common.service.ServiceKeys;
 import dev.ikm.tinkar.common.service.ServiceProperties;
 import dev.ikm.tinkar.common.service.TinkExecutor;
+import dev.ikm.tinkar.common.util.thread.NamedThreadFactory;
 import dev.ikm.tinkar.common.util.time.DateTimeUtil;
 import dev.ikm.tinkar.entity.ChangeSetWriterService;
 import dev.ikm.tinkar.entity.ConceptEntity;
@@ -26,10 +27,12 @@
 import org.slf4j.LoggerFactory;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Optional;
@@ -38,9 +41,12 @@
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.atomic.LongAdder;
@@ -57,6 +63,19 @@
 public class ChangeSetWriterProvider implements ChangeSetWriterService, SaveState {
     private static final Logger LOG = LoggerFactory.getLogger(ChangeSetWriterProvider.class);
     private static final long INACTIVITY_THRESHOLD_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    public static final int DEFAULT_QUEUE_CAPACITY = 10_000;
+    /**
+     * Maximum number of entities being serialized ahead of the entity being written to the zip file.
+     */
+    private static final int MAX_SERIALIZING = 256;
+    /**
+     * Serializes entities for the service thread. Not the shared thread pool, since threads in that pool may be
+     * blocked in {@link #writeToChangeSet(Entity, DataActivity)} waiting for the service thread to make room in
+     * the queue, while the service thread waits for them to serialize.
+     */
+    private static final ExecutorService SERIALIZATION_EXECUTOR = Executors.newFixedThreadPool(
+            Math.max(2, Runtime.getRuntime().availableProcessors() / 2),
+            new NamedThreadFactory("ChangeSetWriter-serialization-thread", true));
 
     /**
      * Represents the various states of the ChangeSetWriterProvider during its lifecycle.
@@ -99,7 +118,16 @@ public static ChangeSetWriterProvider provider() {
     }
 
     private final File changeSetFolder;
-    private final LinkedBlockingQueue<Entity<EntityVersion>> entitiesToWrite = new LinkedBlockingQueue<>();
+    private final LinkedBlockingQueue<Entity<EntityVersion>> entitiesToWrite = new LinkedBlockingQueue<>(
+            ServiceProperties.get(ServiceKeys.CHANGE_SET_QUEUE_CAPACITY, DEFAULT_QUEUE_CAPACITY));
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LongAdder entitiesWritten = new LongAdder();
+    private volatile ChangeSetFile currentChangeSetFile;
+    /**
+     * Set when the provider shuts down, after which no service thread drains the queue.
+     */
+    private volatile boolean shutdown;
 
     private ChangeSetWriterProvider() {
         Optional<File> optionalDataStoreRoot = ServiceProperties.get(ServiceKeys.DATA_STORE_ROOT);
@@ -122,7 +150,8 @@ private ChangeSetWriterProvider() {
      * Depending on the provided activity, the method will determine whether the
      * entity should be queued for writing or ignored. Specifically, entities with
      * the activity {@code SYNCHRONIZABLE_EDIT} are added to the internal queue for
-     * processing. All other activity types do not trigger any action.
+     * processing, blocking while the queue is full. All other activity types do not trigger any action.
+     * Once the provider has shut down, entities are dropped with a warning rather than queued.
      *
      * @param entity the entity to be written or processed based on the activity
      * @param activity the type of data activity that determines the operation
@@ -135,7 +164,16 @@ public void writeToChangeSet(Entity entity, DataActivity activity) {
         try {
             switch (activity) {
                 case SYNCHRONIZABLE_EDIT -> {
-                    this.entitiesToWrite.put(entity);
+                    // Offered with a timeout rather than put, so a writer blocked on a full queue sees the shutdown.
+                    boolean queued = false;
+                    while (!queued && !this.shutdown) {
+                        queued = this.entitiesToWrite.offer(entity, 250, TimeUnit.MILLISECONDS);
+                    }
+                    if (!queued) {
+                        LOG.warn("ChangeSetWriterProvider is shut down, not writing entity to a change set: {}", entity);
+                        return;
+                    }
+                    this.maxQueueDepth.accumulateAndGet(this.entitiesToWrite.size(), Math::max);
                     LOG.trace("ChangeSetWriterProvider queued entity for changeset write: {}", entity);
                 }
                 case LOADING_CHANGE_SET, INITIALIZE, LOCAL_EDIT, DATA_REPAIR -> {
@@ -146,6 +184,43 @@ public void writeToChangeSet(Entity entity, DataActivity activity) {
         }
     }
 
+    /**
+     * @return the number of entities waiting to be written.
+     */
+    public int queueDepth() {
+        return entitiesToWrite.size();
+    }
+
+    /**
+     * @return the largest number of entities that have waited to be written since the provider started.
+     */
+    public int maxQueueDepth() {
+        return maxQueueDepth.get();
+    }
+
+    /**
+     * @return the number of entities written to change set files since the provider started.
+     */
+    public long entitiesWritten() {
+        return entitiesWritten.sum();
+    }
+
+    /**
+     * @return the number of uncompressed protobuf bytes written to change set files since the provider started.
+     */
+    public long bytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    /**
+     * @return the rate at which uncompressed bytes have been written to the current change set file since it
+     * was opened, or 0 if no file is open.
+     */
+    public double bytesPerSecond() {
+        ChangeSetFile changeSetFile = this.currentChangeSetFile;
+        return changeSetFile == null ? 0 : changeSetFile.bytesPerSecond();
+    }
+
     /**
      * Generates a random alphanumeric string of the specified length.
      *
@@ -192,7 +267,8 @@ private File newZipFile() {
      * <p> - Processes entities from a queue for writing. Handles both committed and uncommitted entities
      *   separately, ensuring uncommitted entities are managed at the end.
      * <p> - Writes data into a ZIP file located in the change set folder, creating a primary "Entities"
-     *   entry and a manifest file for metadata when entities are successfully written.
+     *   entry and a manifest file for metadata when entities are successfully written. Entities are
+     *   serialized in parallel on a dedicated executor, and written to the entry in order by this thread.
      * <p> - Monitors and aggregates statistical counts including the number of entities, concepts,
      *   semantics, patterns, stamps, and associated module and author identifiers.
      * <p> - Cleans up resources and deletes the ZIP file if no entities were processed or if the file
@@ -213,22 +289,15 @@ private void startService() {
                 final MutableMultimap<Integer, Entity<EntityVersion>> uncommittedEntitiesByStamp = Multimaps.mutable.set.empty();
                 serviceThread.set(Thread.currentThread());
                 threadStateMap.put(Thread.currentThread(), STATE.RUNNING);
-                final LongAdder entityCount = new LongAdder();
-                final LongAdder conceptsCount = new LongAdder();
-                final LongAdder semanticsCount = new LongAdder();
-                final LongAdder patternsCount = new LongAdder();
-                final LongAdder stampsCount = new LongAdder();
-
-                final Set<PublicId> moduleList = new HashSet<>();
-                final Set<PublicId> authorList = new HashSet<>();
-                final EntityToTinkarSchemaTransformer entityTransformer =
-                        EntityToTinkarSchemaTransformer.getInstance();
 
                 final File zipfile = newZipFile();
+                final ChangeSetFile changeSetFile = new ChangeSetFile();
                 LOG.trace("ChangeSetWriterProvider starting new zip file: {}", zipfile.getAbsolutePath());
                 try (FileOutputStream fos = new FileOutputStream(zipfile);
                      BufferedOutputStream bos = new BufferedOutputStream(fos);
                      ZipOutputStream zos = new ZipOutputStream(bos)) {
+                    changeSetFile.zos = zos;
+                    this.currentChangeSetFile = changeSetFile;
                     // Create a single entry for all changes in this zip file
                     final ZipEntry zipEntry = new ZipEntry("Entities");
                     zos.putNextEntry(zipEntry);
@@ -248,15 +317,15 @@ private void startService() {
                                         uncommittedEntitiesByStamp.put(stampNid, entityToWrite);
                                     });
                                 } else {
-                                    writeEntity(entityCount, entityToWrite, conceptsCount, semanticsCount, patternsCount, stampsCount, moduleList, authorList, entityTransformer, zos);
+                                    changeSetFile.write(entityToWrite);
                                     // If a committed stamp comes through, then see if any previously uncommitted versions for that stamp exist, and write them if so.
                                     if (entityToWrite instanceof StampEntity stampEntity && uncommittedEntitiesByStamp.containsKey(stampEntity.nid())) {
-                                        uncommittedEntitiesByStamp.removeAll(stampEntity.nid()).forEach(entity ->
-                                                writeEntity(entityCount, entity, conceptsCount, semanticsCount, patternsCount,
-                                                        stampsCount, moduleList, authorList, entityTransformer, zos));
+                                        uncommittedEntitiesByStamp.removeAll(stampEntity.nid()).forEach(changeSetFile::write);
                                     }
                                 }
                             }
+                            // When the queue is idle, finish writing everything serialized so far.
+                            changeSetFile.writeSerialized(entityToWrite == null);
                             if (System.currentTimeMillis() - lastWriteTimeMillis.get() > INACTIVITY_THRESHOLD_MILLIS) {
                                 LOG.info("Rotating ChangeSetWriterProvider, no activity for {} minutes.",
                                         TimeUnit.MILLISECONDS.toMinutes(INACTIVITY_THRESHOLD_MILLIS));
@@ -266,24 +335,20 @@ private void startService() {
                     } catch (InterruptedException e) {
                     }
                     // Write any uncommitted entities.
-                    uncommittedEntitiesByStamp.forEachValue(entityToWrite ->
-                            writeEntity(entityCount, entityToWrite, conceptsCount, semanticsCount, patternsCount,
-                                    stampsCount, moduleList, authorList, entityTransformer, zos));
+                    uncommittedEntitiesByStamp.forEachValue(changeSetFile::write);
+                    changeSetFile.writeSerialized(true);
                     zos.closeEntry();
-                    if (entityCount.sum() > 0) {
+                    if (changeSetFile.entityCount.sum() > 0) {
                         LOG.debug("Data zipEntry size: " + zipEntry.getSize());
                         LOG.debug("Data zipEntry compressed size: " + zipEntry.getCompressedSize());
+                        LOG.info("ChangeSetWriterProvider wrote {} entities, {} bytes at {} bytes/s, max queue depth {}",
+                                changeSetFile.entityCount.sum(), changeSetFile.bytes.sum(),
+                                Math.round(changeSetFile.bytesPerSecond()), maxQueueDepth());
 
                         // Write Manifest File
                         final ZipEntry manifestEntry = new ZipEntry("META-INF/MANIFEST.MF");
                         zos.putNextEntry(manifestEntry);
-                        zos.write(generateManifestContent(entityCount,
-                                conceptsCount,
-                                semanticsCount,
-                                patternsCount,
-                                stampsCount,
-                                moduleList,
-                                authorList).getBytes(StandardCharsets.UTF_8));
+                        zos.write(changeSetFile.generateManifestContent().getBytes(StandardCharsets.UTF_8));
                         zos.closeEntry();
                     }
                     // Cleanup
@@ -294,8 +359,11 @@ private void startService() {
                     threadStateMap.put(Thread.currentThread(), STATE.FAILED);
                     throw new RuntimeException(e);
                 } finally {
+                    if (this.currentChangeSetFile == changeSetFile) {
+                        this.currentChangeSetFile = null;
+                    }
                     if (zipfile.exists()) {
-                        if (entityCount.sum() == 0) {
+                        if (changeSetFile.entityCount.sum() == 0) {
                             zipfile.delete();
                         }
                     }
@@ -309,84 +377,116 @@ private void startService() {
     }
 
     /**
-     * Writes a given entity to a ZIP output stream after transforming it,
-     * while incrementing corresponding statistical counters for entity types and
-     * collecting module and author public IDs for manifest generation.
+     * Serializes a transformed entity as a delimited protobuf message.
      *
-     * @param entityCount the counter for the total number of entities processed
-     * @param entityToWrite the entity to be written
-     * @param conceptsCount the counter for the number of concept entities processed
-     * @param semanticsCount the counter for the number of semantic entities processed
-     * @param patternsCount the counter for the number of pattern entities processed
-     * @param stampsCount the counter for the number of stamp entities processed
-     * @param moduleList the set to collect module public IDs for manifest generation
-     * @param authorList the set to collect author public IDs for manifest generation
-     * @param entityTransformer the transformer used to convert entities to Tinkar schema messages
-     * @param zos the ZIP output stream to write the entity data into
+     * @param entityToWrite the entity to be serialized
+     * @return the bytes to write to the "Entities" zip entry
      */
-    private static void writeEntity(LongAdder entityCount,
-                                    Entity<EntityVersion> entityToWrite,
-                                    LongAdder conceptsCount,
-                                    LongAdder semanticsCount,
-                                    LongAdder patternsCount,
-                                    LongAdder stampsCount,
-                                    Set<PublicId> moduleList,
-                                    Set<PublicId> authorList,
-                                    EntityToTinkarSchemaTransformer entityTransformer,
-                                    ZipOutputStream zos) {
-        entityCount.increment();
-        switch (entityToWrite) {
-            case ConceptEntity _ -> conceptsCount.increment();
-            case SemanticEntity _ -> semanticsCount.increment();
-            case PatternEntity _ -> patternsCount.increment();
-            case StampEntity stampEntity -> {
-                stampsCount.increment();
-                // Store Module & Author Dependencies for Manifest
-                moduleList.add(stampEntity.module().publicId());
-                authorList.add(stampEntity.author().publicId());
-            }
-            default -> {
-                throw new IllegalStateException("Unexpected value: " + entityToWrite);
-            }
-        }
-        // Transform and write data
+    private static byte[] serialize(Entity<EntityVersion> entityToWrite) {
         try {
-            TinkarMsg tinkarMsg = entityTransformer.transform(entityToWrite);
-            tinkarMsg.writeDelimitedTo(zos);
-            LOG.debug("ChangeSetWriterProvider wrote Entity:\n{}", entityToWrite);
+            TinkarMsg tinkarMsg = EntityToTinkarSchemaTransformer.getInstance().transform(entityToWrite);
+            ByteArrayOutputStream messageBytes = new ByteArrayOutputStream(tinkarMsg.getSerializedSize() + Integer.BYTES + 1);
+            tinkarMsg.writeDelimitedTo(messageBytes);
+            return messageBytes.toByteArray();
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
     /**
-     * Generates the content for a manifest file based on the provided entity counts, module data,
-     * and author data. This method aggregates the totals and passes them to another utility
-     * method that constructs the final manifest content.
-     *
-     * @param entityCount the counter for the total number of entities processed
-     * @param conceptsCount the counter for the total number of concepts processed
-     * @param semanticsCount the counter for the total number of semantics processed
-     * @param patternsCount the counter for the total number of patterns processed
-     * @param stampsCount the counter for the total number of stamps processed
-     * @param moduleList the set of module public IDs collected for the manifest
-     * @param authorList the set of author public IDs collected for the manifest
-     * @return the generated manifest content as a String
+     * The change set file being written by a service thread.
+     * <p>
+     * Entities are written in two stages. {@link #write(Entity)} counts the entity for the manifest on the
+     * service thread, and serializes it on the serialization executor, so protobuf transformation of several entities
+     * proceeds in parallel. {@link #writeSerialized(boolean)} then writes the serialized entities to the zip
+     * stream on the service thread, in the order they were submitted, so deflate and file output stay in a
+     * single ordered stage. At most {@link #MAX_SERIALIZING} entities are serialized ahead of the zip stream.
      */
-    private String generateManifestContent(LongAdder entityCount,
-                                           LongAdder conceptsCount,
-                                           LongAdder semanticsCount,
-                                           LongAdder patternsCount,
-                                           LongAdder stampsCount,
-                                           Set<PublicId> moduleList,
-                                           Set<PublicId> authorList) {
-        return ExportEntitiesToProtobufFile.generateManifestContent(entityCount.sum(),
-                conceptsCount.sum(),
-                semanticsCount.sum(),
-                patternsCount.sum(),
-                stampsCount.sum(),
-                moduleList,
-                authorList);
+    private final class ChangeSetFile {
+        final LongAdder entityCount = new LongAdder();
+        final LongAdder conceptsCount = new LongAdder();
+        final LongAdder semanticsCount = new LongAdder();
+        final LongAdder patternsCount = new LongAdder();
+        final LongAdder stampsCount = new LongAdder();
+        final LongAdder bytes = new LongAdder();
+        final Set<PublicId> moduleList = new HashSet<>();
+        final Set<PublicId> authorList = new HashSet<>();
+        final ArrayDeque<CompletableFuture<byte[]>> serializing = new ArrayDeque<>();
+        final long startNanos = System.nanoTime();
+        ZipOutputStream zos;
+
+        /**
+         * Counts the entity for the manifest, collecting module and author public IDs, and starts
+         * serializing it.
+         *
+         * @param entityToWrite the entity to be written
+         */
+        void write(Entity<EntityVersion> entityToWrite) {
+            entityCount.increment();
+            switch (entityToWrite) {
+                case ConceptEntity _ -> conceptsCount.increment();
+                case SemanticEntity _ -> semanticsCount.increment();
+                case PatternEntity _ -> patternsCount.increment();
+                case StampEntity stampEntity -> {
+                    stampsCount.increment();
+                    // Store Module & Author Dependencies for Manifest
+                    moduleList.add(stampEntity.module().publicId());
+                    authorList.add(stampEntity.author().publicId());
+                }
+                default -> {
+                    throw new IllegalStateException("Unexpected value: " + entityToWrite);
+                }
+            }
+            if (serializing.size() >= MAX_SERIALIZING) {
+                writeToZip(serializing.poll().join());
+            }
+            serializing.add(CompletableFuture.supplyAsync(() -> serialize(entityToWrite), SERIALIZATION_EXECUTOR));
+            LOG.debug("ChangeSetWriterProvider wrote Entity:\n{}", entityToWrite);
+        }
+
+        /**
+         * Writes serialized entities to the zip stream in the order they were submitted.
+         *
+         * @param all if true, wait for and write every submitted entity, otherwise only write the entities
+         *            whose serialization, and that of all entities before them, is complete.
+         */
+        void writeSerialized(boolean all) {
+            while (!serializing.isEmpty() && (all || serializing.peek().isDone())) {
+                writeToZip(serializing.poll().join());
+            }
+        }
+
+        private void writeToZip(byte[] messageBytes) {
+            try {
+                zos.write(messageBytes);
+                bytes.add(messageBytes.length);
+                bytesWritten.add(messageBytes.length);
+                entitiesWritten.increment();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        double bytesPerSecond() {
+            long elapsedNanos = System.nanoTime() - startNanos;
+            return elapsedNanos == 0 ? 0 : bytes.sum() * 1_000_000_000.0 / elapsedNanos;
+        }
+
+        /**
+         * Generates the content for a manifest file based on the entity counts, module data,
+         * and author data of the entities written to this file.
+         *
+         * @return the generated manifest content as a String
+         */
+        String generateManifestContent() {
+            return ExportEntitiesToProtobufFile.generateManifestContent(entityCount.sum(),
+                    conceptsCount.sum(),
+                    semanticsCount.sum(),
+                    patternsCount.sum(),
+                    stampsCount.sum(),
+                    moduleList,
+                    authorList);
+        }
     }
 
     /**
@@ -413,6 +513,7 @@ public CompletableFuture<Void> save() {
      * <p>
      * This method performs the following actions:
      * <p> - Logs the initiation of the shutdown process.
+     * <p> - Stops accepting entities to write, since no service thread will drain the queue.
      * <p> - Executes a checkpoint operation to save the current state without restarting the service.
      * <p> - Acquires the maximum allowed writer permits, effectively blocking further writing operations.
      * <p> - Logs the completion of the shutdown process.
@@ -423,6 +524,7 @@ public CompletableFuture<Void> save() {
     @Override
     public void shutdown() {
         LOG.info("Start shutdown of ChangeSetWriterProvider");
+        this.shutdown = true;
         try {
             checkpoint(false).get();
         } catch (InterruptedException | ExecutionException e) {
@@ -468,6 +570,6 @@ private CompletableFuture<Void> checkpoint(boolean restart) {
                 }
             }
             return null;
-        }, TinkExecutor.ioThreadPool());
+        }, TinkExecutor.virtualThreadExecutor());
     }
 }
@@ -21,6 +21,7 @@
 import dev.ikm.tinkar.common.id.PublicId;
 import dev.ikm.tinkar.common.service.DataActivity;
 import dev.ikm.tinkar.common.service.NidGenerator;
+import dev.ikm.tinkar.common.service.PrimitiveDataSearchFilter;
 import dev.ikm.tinkar.common.service.PrimitiveDataSearchResult;
 import dev.ikm.tinkar.common.service.PrimitiveDataService;
 import dev.ikm.tinkar.common.service.TinkExecutor;
@@ -198,6 +199,12 @@ public PrimitiveDataSearchResult[] search(String query, int maxResultSize) throw
         return this.searcher.search(query, maxResultSize);
     }
 
+    @Override
+    public PrimitiveDataSearchResult[] search(String query, int maxResultSize, PrimitiveDataSearchFilter filter,
+                                              boolean highlight) throws Exception {
+        return this.searcher.search(query, maxResultSize, filter, highlight);
+    }
+
     @Override
     public CompletableFuture<Void> recreateLuceneIndex() throws Exception {
         return CompletableFuture.supplyAsync(() -> {
@@ -208,7 +215,7 @@ public CompletableFuture<Void> recreateLuceneIndex() throws Exception {
                         "Search and Type Ahead Suggestions may not function as expected.", ex));
             }
             return null;
-        }, TinkExecutor.ioThreadPool());
+        }, TinkExecutor.virtualThreadExecutor());
     }
 
     @Override
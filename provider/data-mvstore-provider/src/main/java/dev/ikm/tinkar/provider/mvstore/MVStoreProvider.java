@@ -19,6 +19,7 @@
 import dev.ikm.tinkar.common.id.PublicId;
 import dev.ikm.tinkar.common.service.DataActivity;
 import dev.ikm.tinkar.common.service.NidGenerator;
+import dev.ikm.tinkar.common.service.PrimitiveDataSearchFilter;
 import dev.ikm.tinkar.common.service.PrimitiveDataSearchResult;
 import dev.ikm.tinkar.common.service.PrimitiveDataService;
 import dev.ikm.tinkar.common.service.ServiceKeys;
@@ -26,6 +27,7 @@
 import dev.ikm.tinkar.common.service.TinkExecutor;
 import dev.ikm.tinkar.common.util.ints2long.IntsInLong;
 import dev.ikm.tinkar.common.util.time.Stopwatch;
+import dev.ikm.tinkar.component.FieldDataType;
 import dev.ikm.tinkar.entity.Entity;
 import dev.ikm.tinkar.entity.PatternEntity;
 import dev.ikm.tinkar.provider.mvstore.internal.Get;
@@ -36,8 +38,7 @@
 import org.eclipse.collections.api.block.procedure.primitive.IntProcedure;
 import org.eclipse.collections.api.list.ImmutableList;
 import org.eclipse.collections.api.list.primitive.ImmutableIntList;
-import org.eclipse.collections.api.tuple.Pair;
-import org.eclipse.collections.impl.map.mutable.ConcurrentHashMap;
+import org.h2.mvstore.Cursor;
 import org.h2.mvstore.MVMap;
 import org.h2.mvstore.MVStore;
 import org.h2.mvstore.OffHeapStore;
@@ -46,13 +47,14 @@
 
 import java.io.File;
 import java.io.IOException;
-import java.util.Set;
+import java.util.Arrays;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntConsumer;
 import java.util.function.ObjIntConsumer;
 
 /**
@@ -75,12 +77,19 @@ public class MVStoreProvider implements PrimitiveDataService, NidGenerator {
      * Using "citing" instead of "referencing" to make the field names more distinct.
      */
     final MVMap<Integer, long[]> nidToCitingComponentsNidMap;
+    /**
+     * Pattern membership as it was saved before {@link #patternElementNids}, read once to migrate older stores.
+     */
     final MVMap<Integer, int[]> patternToElementNidsMap;
+    final PatternElementNids patternElementNids;
+    final MVMap<Integer, Boolean> conceptNids;
+    final MVMap<Integer, Boolean> patternNids;
+    final MVMap<Integer, Boolean> semanticNids;
+    final MVMap<Integer, Boolean> stampNids;
     final Indexer indexer;
     final Searcher searcher;
     final String name;
     protected LongAdder writeSequence = new LongAdder();
-    ConcurrentHashMap<Integer, ConcurrentHashMap<Integer, Integer>> patternElementNidsMap = ConcurrentHashMap.newMap();
 
 
     public MVStoreProvider() throws IOException {
@@ -101,12 +110,12 @@ public MVStoreProvider() throws IOException {
         this.nidToPatternNidMap = store.openMap("nidToPatternNidMap");
         this.nidToCitingComponentsNidMap = store.openMap("nidToCitingComponentsNidMap");
         this.patternToElementNidsMap = store.openMap("patternToElementNidsMap");
-        for (int patternNid : patternToElementNidsMap.keySet()) {
-            int[] elementNids = patternToElementNidsMap.get(patternNid);
-            for (int elementNid : elementNids) {
-                addToElementSet(patternNid, elementNid);
-            }
-        }
+        this.patternElementNids = new PatternElementNids(store.openMap("patternElementNidChunks"));
+        this.conceptNids = store.openMap("conceptNids");
+        this.patternNids = store.openMap("patternNids");
+        this.semanticNids = store.openMap("semanticNids");
+        this.stampNids = store.openMap("stampNids");
+        migrateDerivedMaps();
 
         if (this.uuidToNidMap.containsKey(nextNidKey)) {
             this.nextNid = new AtomicInteger(this.uuidToNidMap.get(nextNidKey));
@@ -126,9 +135,42 @@ public MVStoreProvider() throws IOException {
         this.searcher = new Searcher();
     }
 
+    /**
+     * Stores written before the nid sets and pattern membership chunks were persisted only have the components and
+     * the legacy pattern membership map, so derive the new maps from those once.
+     */
+    private void migrateDerivedMaps() {
+        if (!patternToElementNidsMap.isEmpty() && patternElementNids.isEmpty()) {
+            LOG.info("Migrating pattern membership for " + patternToElementNidsMap.size() + " patterns");
+            for (Integer patternNid : patternToElementNidsMap.keySet()) {
+                patternElementNids.addAll(patternNid, patternToElementNidsMap.get(patternNid));
+            }
+            patternToElementNidsMap.clear();
+        }
+        if (!nidToComponentMap.isEmpty() && conceptNids.isEmpty() && patternNids.isEmpty()
+                && semanticNids.isEmpty() && stampNids.isEmpty()) {
+            LOG.info("Building nid sets for " + nidToComponentMap.sizeAsLong() + " components");
+            forEachParallel((bytes, nid) -> addToNidSet(nid, bytes));
+        }
+    }
+
     public boolean addToElementSet(int patternNid, int elementNid) {
-        return null == patternElementNidsMap.getIfAbsentPut(patternNid, integer -> new ConcurrentHashMap<>())
-                .put(elementNid, elementNid);
+        return patternElementNids.add(patternNid, elementNid);
+    }
+
+    private void addToNidSet(int nid, byte[] bytes) {
+        // bytes start with the number of arrays (int), the size of the first array (int), the entity format
+        // version, and then the type token.
+        MVMap<Integer, Boolean> nidSet = switch (FieldDataType.fromToken(bytes[9])) {
+            case CONCEPT_CHRONOLOGY -> conceptNids;
+            case PATTERN_CHRONOLOGY -> patternNids;
+            case SEMANTIC_CHRONOLOGY -> semanticNids;
+            case STAMP -> stampNids;
+            default -> null;
+        };
+        if (nidSet != null) {
+            nidSet.putIfAbsent(nid, Boolean.TRUE);
+        }
     }
 
     @Override
@@ -161,10 +203,6 @@ public void save() {
         LOG.info("Saving MVStoreProvider");
         try {
             this.uuidToNidMap.put(nextNidKey, nextNid.get());
-            for (Pair<Integer, ConcurrentHashMap<Integer, Integer>> keyValue : patternElementNidsMap.keyValuesView()) {
-                patternToElementNidsMap.put(keyValue.getOne(), keyValue.getTwo().keySet()
-                        .stream().mapToInt(value -> (int) value).toArray());
-            }
             this.store.commit();
             this.offHeap.sync();
             this.indexer.commit();
@@ -201,14 +239,68 @@ public void forEach(ObjIntConsumer<byte[]> action) {
         nidToComponentMap.entrySet().forEach(entry -> action.accept(entry.getValue(), entry.getKey()));
     }
 
+    /**
+     * Splits the nids into key ranges of about equal size, using the positional index of the B-tree, and walks
+     * each range with its own cursor on the thread pool.
+     */
     @Override
     public void forEachParallel(ObjIntConsumer<byte[]> action) {
-        nidToComponentMap.entrySet().stream().parallel().forEach(entry -> action.accept(entry.getValue(), entry.getKey()));
+        long size = nidToComponentMap.sizeAsLong();
+        if (size == 0) {
+            return;
+        }
+        int partitionCount = (int) Math.min(size, partitionCount());
+        Integer[] startKeys = new Integer[partitionCount];
+        for (int i = 0; i < partitionCount; i++) {
+            startKeys[i] = nidToComponentMap.getKey(i * size / partitionCount);
+        }
+        // Concurrent writes may shift positions between lookups, so keep the ranges ordered and disjoint.
+        Arrays.sort(startKeys);
+        runPartitions(partitionCount, partition -> {
+            Integer endKey = partition + 1 < partitionCount ? startKeys[partition + 1] : null;
+            Cursor<Integer, byte[]> cursor = nidToComponentMap.cursor(startKeys[partition], endKey, false);
+            while (cursor.hasNext()) {
+                int nid = cursor.next();
+                if (endKey != null && nid == endKey) {
+                    break;
+                }
+                action.accept(cursor.getValue(), nid);
+            }
+        });
     }
 
+    /**
+     * Sorts the nids so each partition reads a contiguous key range, and skips nids without a component.
+     */
     @Override
     public void forEachParallel(ImmutableIntList nids, ObjIntConsumer<byte[]> action) {
-        throw new UnsupportedOperationException();
+        int[] sortedNids = nids.toSortedArray();
+        if (sortedNids.length == 0) {
+            return;
+        }
+        int partitionCount = Math.min(sortedNids.length, partitionCount());
+        runPartitions(partitionCount, partition -> {
+            int end = (int) ((long) (partition + 1) * sortedNids.length / partitionCount);
+            for (int i = (int) ((long) partition * sortedNids.length / partitionCount); i < end; i++) {
+                byte[] bytes = nidToComponentMap.get(sortedNids[i]);
+                if (bytes != null) {
+                    action.accept(bytes, sortedNids[i]);
+                }
+            }
+        });
+    }
+
+    private static int partitionCount() {
+        return Runtime.getRuntime().availableProcessors() * 4;
+    }
+
+    private static void runPartitions(int partitionCount, IntConsumer partitionAction) {
+        CompletableFuture<?>[] partitions = new CompletableFuture<?>[partitionCount];
+        for (int i = 0; i < partitionCount; i++) {
+            int partition = i;
+            partitions[i] = CompletableFuture.runAsync(() -> partitionAction.accept(partition), TinkExecutor.threadPool());
+        }
+        CompletableFuture.allOf(partitions).join();
     }
 
     @Override
@@ -221,16 +313,12 @@ public byte[] merge(int nid, int patternNid, int referencedComponentNid, byte[]
         if (!nidToPatternNidMap.containsKey(nid)) {
             this.nidToPatternNidMap.put(nid, patternNid);
             if (patternNid != Integer.MAX_VALUE) {
-
-                this.nidToPatternNidMap.put(nid, patternNid);
-                if (patternNid != Integer.MAX_VALUE) {
-                    long citationLong = IntsInLong.ints2Long(nid, patternNid);
-                    this.nidToCitingComponentsNidMap.merge(referencedComponentNid, new long[]{citationLong},
-                            PrimitiveDataService::mergeCitations);
-                    // TODO this will be slow merge for large sets. Consider alternatives.
-                    this.addToElementSet(patternNid, nid);
-                }
+                long citationLong = IntsInLong.ints2Long(nid, patternNid);
+                this.nidToCitingComponentsNidMap.merge(referencedComponentNid, new long[]{citationLong},
+                        PrimitiveDataService::mergeCitations);
+                this.addToElementSet(patternNid, nid);
             }
+            addToNidSet(nid, value);
         }
         byte[] mergedBytes = nidToComponentMap.merge(nid, value, PrimitiveDataService::merge);
         writeSequence.increment();
@@ -243,6 +331,12 @@ public PrimitiveDataSearchResult[] search(String query, int maxResultSize) throw
         return this.searcher.search(query, maxResultSize);
     }
 
+    @Override
+    public PrimitiveDataSearchResult[] search(String query, int maxResultSize, PrimitiveDataSearchFilter filter,
+                                              boolean highlight) throws Exception {
+        return this.searcher.search(query, maxResultSize, filter, highlight);
+    }
+
     @Override
     public CompletableFuture<Void> recreateLuceneIndex() throws Exception {
         return CompletableFuture.supplyAsync(() -> {
@@ -253,17 +347,17 @@ public CompletableFuture<Void> recreateLuceneIndex() throws Exception {
                         "Search and Type Ahead Suggestions may not function as expected.", ex));
             }
             return null;
-        }, TinkExecutor.ioThreadPool());
+        }, TinkExecutor.virtualThreadExecutor());
     }
 
     @Override
     public void forEachSemanticNidOfPattern(int patternNid, IntProcedure procedure) {
-        Set<Integer> elementNids = getElementNidsForPatternNid(patternNid);
-        if (elementNids != null && elementNids.size() > 0) {
-            for (int elementNid : elementNids) {
-                procedure.accept(elementNid);
-            }
-        } else {
+        int[] elementCount = {0};
+        patternElementNids.forEach(patternNid, elementNid -> {
+            elementCount[0]++;
+            procedure.accept(elementNid);
+        });
+        if (elementCount[0] == 0) {
             Entity entity = Entity.getFast(patternNid);
             if (entity instanceof PatternEntity == false) {
                 throw new IllegalStateException("Trying to iterate elements for entity that is not a pattern: " + entity);
@@ -272,31 +366,35 @@ public void forEachSemanticNidOfPattern(int patternNid, IntProcedure procedure)
         }
     }
 
-    public Set<Integer> getElementNidsForPatternNid(int patternNid) {
-        if (patternElementNidsMap.containsKey(patternNid)) {
-            return patternElementNidsMap.get(patternNid).keySet();
-        }
-        return Set.of();
+    @Override
+    public int[] semanticNidsOfPattern(int patternNid) {
+        return patternElementNids.elementNids(patternNid);
     }
 
     @Override
     public void forEachPatternNid(IntProcedure procedure) {
-        throw new UnsupportedOperationException();
+        forEachNid(patternNids, procedure);
     }
 
     @Override
     public void forEachConceptNid(IntProcedure procedure) {
-        throw new UnsupportedOperationException();
+        forEachNid(conceptNids, procedure);
     }
 
     @Override
     public void forEachStampNid(IntProcedure procedure) {
-        throw new UnsupportedOperationException();
+        forEachNid(stampNids, procedure);
     }
 
     @Override
     public void forEachSemanticNid(IntProcedure procedure) {
-        throw new UnsupportedOperationException();
+        forEachNid(semanticNids, procedure);
+    }
+
+    private static void forEachNid(MVMap<Integer, Boolean> nidSet, IntProcedure procedure) {
+        for (Integer nid : nidSet.keySet()) {
+            procedure.accept(nid);
+        }
     }
 
     @Override
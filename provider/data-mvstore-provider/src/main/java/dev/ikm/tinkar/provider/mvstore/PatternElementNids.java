@@ -0,0 +1,131 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.provider.mvstore;
+
+import org.eclipse.collections.api.block.procedure.primitive.IntProcedure;
+import org.eclipse.collections.api.factory.primitive.IntLists;
+import org.eclipse.collections.api.list.primitive.MutableIntList;
+import org.h2.mvstore.Cursor;
+import org.h2.mvstore.MVMap;
+
+import java.util.Arrays;
+
+/**
+ * Pattern membership persisted in an {@link MVMap} as sorted int array chunks. Each chunk is keyed by its pattern
+ * nid in the high int and its first element nid in the low int, so the chunks of a pattern are one contiguous key
+ * range that is read with a cursor, and adding an element copies at most one chunk.
+ */
+class PatternElementNids {
+    /**
+     * Chunks are split in half once they grow past this many elements.
+     */
+    static final int MAX_CHUNK_SIZE = 1024;
+    private static final int LOCK_STRIPES = 64;
+
+    private final MVMap<Long, int[]> chunkMap;
+    private final Object[] locks = new Object[LOCK_STRIPES];
+
+    PatternElementNids(MVMap<Long, int[]> chunkMap) {
+        this.chunkMap = chunkMap;
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    /**
+     * The low int is flipped so that unsigned ordering of the low half of the key matches signed ordering of nids.
+     */
+    static long chunkKey(int patternNid, int firstElementNid) {
+        return ((long) patternNid << 32) | Integer.toUnsignedLong(firstElementNid ^ Integer.MIN_VALUE);
+    }
+
+    static int patternNid(long chunkKey) {
+        return (int) (chunkKey >> 32);
+    }
+
+    boolean isEmpty() {
+        return chunkMap.isEmpty();
+    }
+
+    /**
+     * @return true if the element was not already a member of the pattern
+     */
+    boolean add(int patternNid, int elementNid) {
+        synchronized (locks[Math.floorMod(patternNid, LOCK_STRIPES)]) {
+            Long key = chunkMap.floorKey(chunkKey(patternNid, elementNid));
+            if (key == null || patternNid(key) != patternNid) {
+                // The element sorts before every chunk of the pattern, so it starts the first chunk.
+                key = chunkMap.ceilingKey(chunkKey(patternNid, Integer.MIN_VALUE));
+                if (key == null || patternNid(key) != patternNid) {
+                    chunkMap.put(chunkKey(patternNid, elementNid), new int[]{elementNid});
+                    return true;
+                }
+            }
+            int[] chunk = chunkMap.get(key);
+            int index = Arrays.binarySearch(chunk, elementNid);
+            if (index >= 0) {
+                return false;
+            }
+            int insertionPoint = -index - 1;
+            int[] updated = new int[chunk.length + 1];
+            System.arraycopy(chunk, 0, updated, 0, insertionPoint);
+            updated[insertionPoint] = elementNid;
+            System.arraycopy(chunk, insertionPoint, updated, insertionPoint + 1, chunk.length - insertionPoint);
+            if (insertionPoint == 0) {
+                chunkMap.remove(key);
+            }
+            if (updated.length > MAX_CHUNK_SIZE) {
+                int half = updated.length / 2;
+                int[] upper = Arrays.copyOfRange(updated, half, updated.length);
+                updated = Arrays.copyOf(updated, half);
+                chunkMap.put(chunkKey(patternNid, upper[0]), upper);
+            }
+            chunkMap.put(chunkKey(patternNid, updated[0]), updated);
+            return true;
+        }
+    }
+
+    void addAll(int patternNid, int[] elementNids) {
+        for (int elementNid : elementNids) {
+            add(patternNid, elementNid);
+        }
+    }
+
+    void forEach(int patternNid, IntProcedure procedure) {
+        Cursor<Long, int[]> cursor = chunkMap.cursor(chunkKey(patternNid, Integer.MIN_VALUE),
+                chunkKey(patternNid, Integer.MAX_VALUE), false);
+        while (cursor.hasNext()) {
+            cursor.next();
+            for (int elementNid : cursor.getValue()) {
+                procedure.accept(elementNid);
+            }
+        }
+    }
+
+    /**
+     * @return the sorted element nids of the pattern
+     */
+    int[] elementNids(int patternNid) {
+        MutableIntList elementNids = IntLists.mutable.empty();
+        Cursor<Long, int[]> cursor = chunkMap.cursor(chunkKey(patternNid, Integer.MIN_VALUE),
+                chunkKey(patternNid, Integer.MAX_VALUE), false);
+        while (cursor.hasNext()) {
+            cursor.next();
+            elementNids.addAll(cursor.getValue());
+        }
+        return elementNids.toArray();
+    }
+}
@@ -28,6 +28,7 @@
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Optional;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicReferenceArray;
@@ -99,7 +100,8 @@ public void put(int spineIndex, AtomicReferenceArray<byte[][]> spine) {
                 }
             }
         } catch (IOException ex) {
-            LOG.error(ex.getLocalizedMessage(), ex);
+            // Thrown, so the spine stays marked as changed and the checkpoint keeps its log segments.
+            throw new UncheckedIOException(ex);
         } finally {
             diskSemaphore.release();
         }
@@ -20,13 +20,11 @@
 import org.slf4j.LoggerFactory;
 
 import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Optional;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicReferenceArray;
@@ -77,22 +75,23 @@ public Optional<AtomicReferenceArray<byte[]>> get(int spineIndex) {
 
     @Override
     public void put(int spineIndex, AtomicReferenceArray<byte[]> spine) {
-        String spineKey = SPINE_PREFIX + spineIndex;
-        File spineFile = new File(directory, spineKey);
         diskSemaphore.acquireUninterruptibly();
-        try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(spineFile)))) {
-            dos.writeInt(spine.length());
-            for (int i = 0; i < spine.length(); i++) {
-                byte[] value = spine.get(i);
-                if (value == null) {
-                    dos.writeInt(0);
-                } else {
-                    dos.writeInt(value.length);
-                    dos.write(value);
+        try {
+            writeSpineFile(spineIndex, dos -> {
+                dos.writeInt(spine.length());
+                for (int i = 0; i < spine.length(); i++) {
+                    byte[] value = spine.get(i);
+                    if (value == null) {
+                        dos.writeInt(0);
+                    } else {
+                        dos.writeInt(value.length);
+                        dos.write(value);
+                    }
                 }
-            }
+            });
         } catch (IOException ex) {
-            LOG.error(ex.getLocalizedMessage(), ex);
+            // Thrown, so the spine stays marked as changed and the checkpoint keeps its log segments.
+            throw new UncheckedIOException(ex);
         } finally {
             diskSemaphore.release();
         }
@@ -0,0 +1,142 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.provider.spinedarray;
+
+import dev.ikm.tinkar.entity.SemanticEntity;
+import dev.ikm.tinkar.entity.util.IdentifierSemantics;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Persistent index from an identifier source nid and identifier value to the identifier semantics that have them,
+ * so resolving an external code does not scan every semantic of the identifier pattern.
+ * <p>
+ * Identifiers of every version are indexed, and entries are never removed, since versions are only appended.
+ * Callers that need the identifier of the latest version should check it against their view coordinate.
+ * The index is written to a single file, replacing the previous file atomically.
+ */
+public class IdentifierIndex {
+    private static final String INDEX_FILE = "identifiers";
+    private static final int[] NO_NIDS = new int[0];
+
+    private final File directory;
+    private final ConcurrentHashMap<Key, int[]> semanticNids = new ConcurrentHashMap<>();
+    private final AtomicBoolean changed = new AtomicBoolean();
+
+    public IdentifierIndex(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @return true if a previously saved index exists in the directory, false if the index must be
+     * populated from the identifier semantics in the store.
+     */
+    public boolean exists() {
+        return new File(directory, INDEX_FILE).exists();
+    }
+
+    /**
+     * @return the number of identifiers read.
+     */
+    public int read() throws IOException {
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(new File(directory, INDEX_FILE))))) {
+            int size = dis.readInt();
+            for (int i = 0; i < size; i++) {
+                int sourceNid = dis.readInt();
+                byte[] valueBytes = new byte[dis.readInt()];
+                dis.readFully(valueBytes);
+                int[] nids = new int[dis.readInt()];
+                for (int j = 0; j < nids.length; j++) {
+                    nids[j] = dis.readInt();
+                }
+                semanticNids.put(new Key(sourceNid, new String(valueBytes, StandardCharsets.UTF_8)), nids);
+            }
+            return size;
+        }
+    }
+
+    /**
+     * Write the index if it changed since the last write.
+     *
+     * @return true if the index was written.
+     */
+    public boolean write() throws IOException {
+        return IndexFiles.writeIfChanged(changed, directory, INDEX_FILE, dos -> {
+            // Entries added while writing are marked changed again, and written next time.
+            Map.Entry<Key, int[]>[] entries = semanticNids.entrySet().toArray(new Map.Entry[0]);
+            dos.writeInt(entries.length);
+            for (Map.Entry<Key, int[]> entry : entries) {
+                dos.writeInt(entry.getKey().sourceNid());
+                byte[] valueBytes = entry.getKey().value().getBytes(StandardCharsets.UTF_8);
+                dos.writeInt(valueBytes.length);
+                dos.write(valueBytes);
+                int[] nids = entry.getValue();
+                dos.writeInt(nids.length);
+                for (int nid : nids) {
+                    dos.writeInt(nid);
+                }
+            }
+        });
+    }
+
+    public int size() {
+        return semanticNids.size();
+    }
+
+    /**
+     * Index the identifiers of each version of an identifier semantic.
+     */
+    public void index(SemanticEntity<?> identifierSemantic) {
+        int semanticNid = identifierSemantic.nid();
+        IdentifierSemantics.forEachIdentifier(identifierSemantic, (sourceNid, value) ->
+                semanticNids.compute(new Key(sourceNid, value), (key, nids) -> {
+                    if (nids == null) {
+                        changed.set(true);
+                        return new int[]{semanticNid};
+                    }
+                    for (int nid : nids) {
+                        if (nid == semanticNid) {
+                            return nids;
+                        }
+                    }
+                    changed.set(true);
+                    int[] newNids = Arrays.copyOf(nids, nids.length + 1);
+                    newNids[nids.length] = semanticNid;
+                    return newNids;
+                }));
+    }
+
+    /**
+     * @return the nids of the identifier semantics with the identifier source and value in any version, or an
+     * empty array if there are none.
+     */
+    public int[] get(int identifierSourceNid, String identifierValue) {
+        int[] nids = semanticNids.get(new Key(identifierSourceNid, identifierValue));
+        return nids == null ? NO_NIDS : nids.clone();
+    }
+
+    private record Key(int sourceNid, String value) {}
+}
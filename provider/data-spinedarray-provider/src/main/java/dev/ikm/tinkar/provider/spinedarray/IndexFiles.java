@@ -0,0 +1,71 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.provider.spinedarray;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Writes an index that is saved to a single file, such as the identifier and stamp indexes.
+ */
+final class IndexFiles {
+    private static final String TEMP_PREFIX = "tmp-";
+
+    private IndexFiles() {
+    }
+
+    @FunctionalInterface
+    interface IndexWriter {
+        void write(DataOutputStream dos) throws IOException;
+    }
+
+    /**
+     * Write the index file if the index changed since the last write. The index is written to a temporary file
+     * that is forced to disk and then moved over the index file, so a crash while writing leaves the previous
+     * file in place. The changed flag is cleared before writing, so changes made while writing are written next
+     * time, and is set again if the write fails.
+     *
+     * @return true if the index was written.
+     */
+    static boolean writeIfChanged(AtomicBoolean changed, File directory, String fileName, IndexWriter indexWriter)
+            throws IOException {
+        if (!changed.getAndSet(false)) {
+            return false;
+        }
+        try {
+            directory.mkdirs();
+            File tempFile = new File(directory, TEMP_PREFIX + fileName);
+            try (FileOutputStream fos = new FileOutputStream(tempFile);
+                 DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(fos))) {
+                indexWriter.write(dos);
+                dos.flush();
+                fos.getFD().sync();
+            }
+            Files.move(tempFile.toPath(), new File(directory, fileName).toPath(),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException e) {
+            changed.set(true);
+            throw e;
+        }
+        return true;
+    }
+}
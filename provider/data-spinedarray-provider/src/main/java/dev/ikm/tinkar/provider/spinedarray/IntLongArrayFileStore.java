@@ -21,12 +21,9 @@
 import org.slf4j.LoggerFactory;
 
 import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.DataInputStream;
-import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.Optional;
 import java.util.concurrent.Semaphore;
@@ -73,22 +70,22 @@ public Optional<AtomicReferenceArray<long[]>> get(int spineIndex) {
     @Override
     public void put(int spineIndex, AtomicReferenceArray<long[]> spine) {
         directory.mkdirs();
-        String spineKey = SpineFileUtil.SPINE_PREFIX + spineIndex;
-        File spineFile = new File(directory, spineKey);
         diskSemaphore.acquireUninterruptibly();
-        try (DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(spineFile)))) {
-            dos.writeInt(spine.length());
-            for (int i = 0; i < spine.length(); i++) {
-                long[] value = spine.get(i);
-                if (value == null) {
-                    dos.writeInt(0);
-                } else {
-                    dos.writeInt(value.length);
-                    for (long valueElement : value) {
-                        dos.writeLong(valueElement);
+        try {
+            writeSpineFile(spineIndex, dos -> {
+                dos.writeInt(spine.length());
+                for (int i = 0; i < spine.length(); i++) {
+                    long[] value = spine.get(i);
+                    if (value == null) {
+                        dos.writeInt(0);
+                    } else {
+                        dos.writeInt(value.length);
+                        for (long valueElement : value) {
+                            dos.writeLong(valueElement);
+                        }
                     }
                 }
-            }
+            });
         } catch (IOException ex) {
             LOG.error(ex.getLocalizedMessage(), ex);
             throw new RuntimeException(ex);
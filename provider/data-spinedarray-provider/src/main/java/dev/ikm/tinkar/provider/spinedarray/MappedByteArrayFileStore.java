@@ -0,0 +1,248 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.provider.spinedarray;
+
+import dev.ikm.tinkar.collection.store.ByteArrayStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static dev.ikm.tinkar.collection.SpineFileUtil.SPINE_PREFIX;
+
+/**
+ * A {@link ByteArrayStore} that reads spine files through read-only memory mappings, rather than decoding
+ * whole spines onto the heap.
+ * <p>
+ * The file format is the same as {@link ByteArrayFileStore}, so either store can open the other's files. When a
+ * spine is first read, its file is mapped and the offset of each value is recorded, after which single values
+ * are copied straight out of the mapping without a lock. Reads are not serialized by the disk semaphore, so
+ * readers on different spines proceed in parallel, and the operating system's page cache decides which pages
+ * stay resident.
+ * <p>
+ * Spines that are read repeatedly are promoted into a bounded cache of decoded spines, so the hottest values are
+ * served without copying. Both the mappings and the hot spines are evicted in approximately least recently
+ * used order.
+ * <p>
+ * Spines are written with {@link #writeSpineFile(int, SpineWriter)}, so a file that is currently mapped is never
+ * truncated underneath a reader.
+ */
+public class MappedByteArrayFileStore extends SpinedArrayFileStore implements ByteArrayStore {
+    private static final Logger LOG = LoggerFactory.getLogger(MappedByteArrayFileStore.class);
+    public static final int DEFAULT_HOT_SPINE_CACHE_SIZE = 64;
+    public static final int DEFAULT_MAX_MAPPED_SPINES = 1024;
+    /**
+     * Number of single value reads of a mapped spine before it is decoded into the hot spine cache.
+     */
+    private static final int HOT_SPINE_READ_THRESHOLD = 256;
+
+    private final ConcurrentHashMap<Integer, MappedSpine> mappedSpines = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, HotSpine> hotSpines = new ConcurrentHashMap<>();
+    private final int maxMappedSpines;
+    private final int hotSpineCacheSize;
+    private final AtomicLong accessClock = new AtomicLong();
+
+    public MappedByteArrayFileStore(File directory) {
+        this(directory, DEFAULT_HOT_SPINE_CACHE_SIZE, DEFAULT_MAX_MAPPED_SPINES);
+    }
+
+    /**
+     * @param hotSpineCacheSize maximum number of decoded spines to keep on heap, 0 to disable the hot spine cache.
+     * @param maxMappedSpines   maximum number of spine files to keep mapped.
+     */
+    public MappedByteArrayFileStore(File directory, int hotSpineCacheSize, int maxMappedSpines) {
+        super(directory);
+        if (maxMappedSpines < 1) {
+            throw new IllegalArgumentException("maxMappedSpines must be > 0: " + maxMappedSpines);
+        }
+        this.hotSpineCacheSize = Math.max(0, hotSpineCacheSize);
+        this.maxMappedSpines = maxMappedSpines;
+    }
+
+    @Override
+    public boolean readsValuesWithoutSpine() {
+        return true;
+    }
+
+    @Override
+    public byte[] getBytes(int spineIndex, int indexInSpine) {
+        HotSpine hotSpine = hotSpines.get(spineIndex);
+        if (hotSpine != null) {
+            hotSpine.lastAccess = accessClock.incrementAndGet();
+            return hotSpine.values[indexInSpine];
+        }
+        MappedSpine mappedSpine = mappedSpine(spineIndex);
+        if (mappedSpine == null) {
+            return null;
+        }
+        if (hotSpineCacheSize > 0 && mappedSpine.reads.incrementAndGet() == HOT_SPINE_READ_THRESHOLD) {
+            promote(spineIndex, mappedSpine);
+        }
+        return mappedSpine.value(indexInSpine);
+    }
+
+    @Override
+    public Optional<AtomicReferenceArray<byte[]>> get(int spineIndex) {
+        MappedSpine mappedSpine = mappedSpine(spineIndex);
+        if (mappedSpine == null) {
+            return Optional.empty();
+        }
+        return Optional.of(new AtomicReferenceArray<>(mappedSpine.values()));
+    }
+
+    @Override
+    public void put(int spineIndex, AtomicReferenceArray<byte[]> spine) {
+        diskSemaphore.acquireUninterruptibly();
+        try {
+            writeSpineFile(spineIndex, dos -> {
+                dos.writeInt(spine.length());
+                for (int i = 0; i < spine.length(); i++) {
+                    byte[] value = spine.get(i);
+                    if (value == null) {
+                        dos.writeInt(0);
+                    } else {
+                        dos.writeInt(value.length);
+                        dos.write(value);
+                    }
+                }
+            });
+            // Readers holding the old mapping still see the old, unlinked file until they finish.
+            mappedSpines.remove(spineIndex);
+            hotSpines.remove(spineIndex);
+        } catch (IOException ex) {
+            // Thrown, so the spine stays marked as changed and the checkpoint keeps its log segments.
+            throw new UncheckedIOException(ex);
+        } finally {
+            diskSemaphore.release();
+        }
+    }
+
+    private MappedSpine mappedSpine(int spineIndex) {
+        MappedSpine mappedSpine = mappedSpines.get(spineIndex);
+        if (mappedSpine == null) {
+            File spineFile = new File(directory, SPINE_PREFIX + spineIndex);
+            if (!spineFile.exists()) {
+                return null;
+            }
+            mappedSpine = mappedSpines.computeIfAbsent(spineIndex, index -> map(spineFile));
+            if (mappedSpines.size() > maxMappedSpines) {
+                evictEldest(mappedSpines);
+            }
+        }
+        mappedSpine.lastAccess = accessClock.incrementAndGet();
+        return mappedSpine;
+    }
+
+    private static MappedSpine map(File spineFile) {
+        try (FileChannel channel = FileChannel.open(spineFile.toPath(), StandardOpenOption.READ)) {
+            // The mapping remains valid after the channel is closed.
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int arraySize = buffer.getInt(0);
+            int[] offsets = new int[arraySize];
+            int position = Integer.BYTES;
+            for (int i = 0; i < arraySize; i++) {
+                offsets[i] = position;
+                position += Integer.BYTES + buffer.getInt(position);
+            }
+            return new MappedSpine(buffer, offsets);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    private void promote(int spineIndex, MappedSpine mappedSpine) {
+        HotSpine hotSpine = new HotSpine(mappedSpine.values());
+        hotSpine.lastAccess = accessClock.incrementAndGet();
+        // Only cache if the spine was not replaced while decoding.
+        if (mappedSpines.get(spineIndex) == mappedSpine) {
+            hotSpines.put(spineIndex, hotSpine);
+            if (hotSpines.size() > hotSpineCacheSize) {
+                evictEldest(hotSpines);
+            }
+        }
+    }
+
+    private static <V extends Accessed> void evictEldest(Map<Integer, V> cache) {
+        Integer eldestKey = null;
+        long eldestAccess = Long.MAX_VALUE;
+        for (Map.Entry<Integer, V> entry : cache.entrySet()) {
+            if (entry.getValue().lastAccess < eldestAccess) {
+                eldestAccess = entry.getValue().lastAccess;
+                eldestKey = entry.getKey();
+            }
+        }
+        if (eldestKey != null) {
+            cache.remove(eldestKey);
+        }
+    }
+
+    private static abstract class Accessed {
+        volatile long lastAccess;
+    }
+
+    private static final class MappedSpine extends Accessed {
+        final MappedByteBuffer buffer;
+        final int[] offsets;
+        final AtomicInteger reads = new AtomicInteger();
+
+        MappedSpine(MappedByteBuffer buffer, int[] offsets) {
+            this.buffer = buffer;
+            this.offsets = offsets;
+        }
+
+        byte[] value(int indexInSpine) {
+            if (indexInSpine >= offsets.length) {
+                return null;
+            }
+            int offset = offsets[indexInSpine];
+            // Absolute gets do not touch the buffer position, so concurrent readers can share the buffer.
+            int valueSize = buffer.getInt(offset);
+            if (valueSize == 0) {
+                return null;
+            }
+            byte[] value = new byte[valueSize];
+            buffer.get(offset + Integer.BYTES, value);
+            return value;
+        }
+
+        byte[][] values() {
+            byte[][] values = new byte[offsets.length][];
+            for (int i = 0; i < offsets.length; i++) {
+                values[i] = value(i);
+            }
+            return values;
+        }
+    }
+
+    private static final class HotSpine extends Accessed {
+        final byte[][] values;
+
+        HotSpine(byte[][] values) {
+            this.values = values;
+        }
+    }
+}
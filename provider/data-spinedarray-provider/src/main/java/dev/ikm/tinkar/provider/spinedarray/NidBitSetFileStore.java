@@ -0,0 +1,135 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.provider.spinedarray;
+
+import dev.ikm.tinkar.collection.ConcurrentNidBitSet;
+import org.eclipse.collections.api.tuple.Pair;
+import org.eclipse.collections.impl.map.mutable.ConcurrentHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Persists the per entity type nid sets, and the per pattern semantic nid sets, of the spined array provider
+ * as {@link ConcurrentNidBitSet}s, so they do not need to be rebuilt from the entities at open.
+ */
+public class NidBitSetFileStore {
+    private static final Logger LOG = LoggerFactory.getLogger(NidBitSetFileStore.class);
+    private static final String PATTERN_ELEMENT_PREFIX = "pattern-";
+    private static final String COMPLETE_MARKER = "complete";
+
+    final File nidSetsDirectory;
+    final File patternElementNidsDirectory;
+    ConcurrentNidBitSet patternNids;
+    ConcurrentNidBitSet conceptNids;
+    ConcurrentNidBitSet semanticNids;
+    ConcurrentNidBitSet stampNids;
+    final ConcurrentHashMap<Integer, ConcurrentNidBitSet> patternElementNidsMap;
+
+    public NidBitSetFileStore(File nidSetsDirectory) {
+        this.nidSetsDirectory = nidSetsDirectory;
+        this.patternElementNidsDirectory = new File(nidSetsDirectory, "patternElementNids");
+        this.patternNids = new ConcurrentNidBitSet();
+        this.conceptNids = new ConcurrentNidBitSet();
+        this.semanticNids = new ConcurrentNidBitSet();
+        this.stampNids = new ConcurrentNidBitSet();
+        this.patternElementNidsMap = ConcurrentHashMap.newMap();
+    }
+
+    /**
+     * @return true if the nid sets were completely written by a prior save.
+     */
+    public boolean exists() {
+        return new File(nidSetsDirectory, COMPLETE_MARKER).exists();
+    }
+
+    /**
+     * Replace the sets with those previously written. Must be called before the sets are in use.
+     */
+    public void read() throws IOException {
+        this.patternNids = readOrEmpty(new File(nidSetsDirectory, "patternNids"));
+        this.conceptNids = readOrEmpty(new File(nidSetsDirectory, "conceptNids"));
+        this.semanticNids = readOrEmpty(new File(nidSetsDirectory, "semanticNids"));
+        this.stampNids = readOrEmpty(new File(nidSetsDirectory, "stampNids"));
+        File[] patternFiles = patternElementNidsDirectory.listFiles((dir, name) ->
+                name.startsWith(PATTERN_ELEMENT_PREFIX) && !name.endsWith(ConcurrentNidBitSet.TEMP_SUFFIX));
+        if (patternFiles != null) {
+            for (File patternFile : patternFiles) {
+                int patternNid = Integer.parseUnsignedInt(patternFile.getName().substring(PATTERN_ELEMENT_PREFIX.length()));
+                patternElementNidsMap.put(patternNid, ConcurrentNidBitSet.read(patternFile));
+            }
+        }
+    }
+
+    private static ConcurrentNidBitSet readOrEmpty(File file) throws IOException {
+        if (file.exists()) {
+            return ConcurrentNidBitSet.read(file);
+        }
+        return new ConcurrentNidBitSet();
+    }
+
+    /**
+     * Write the sets that changed since they were last written. Each set replaces its file atomically, and the
+     * complete marker is created only after every set is written, so a crash during the first write leaves no
+     * marker, and a crash during a later write leaves each file either as it was or as it is now.
+     */
+    public void write() throws IOException {
+        File completeMarker = new File(nidSetsDirectory, COMPLETE_MARKER);
+        writeIfChanged(new File(nidSetsDirectory, "patternNids"), patternNids, completeMarker);
+        writeIfChanged(new File(nidSetsDirectory, "conceptNids"), conceptNids, completeMarker);
+        writeIfChanged(new File(nidSetsDirectory, "semanticNids"), semanticNids, completeMarker);
+        writeIfChanged(new File(nidSetsDirectory, "stampNids"), stampNids, completeMarker);
+        for (Pair<Integer, ConcurrentNidBitSet> keyValue : patternElementNidsMap.keyValuesView()) {
+            writeIfChanged(new File(patternElementNidsDirectory,
+                    PATTERN_ELEMENT_PREFIX + Integer.toUnsignedString(keyValue.getOne())), keyValue.getTwo(), completeMarker);
+        }
+        nidSetsDirectory.mkdirs();
+        completeMarker.createNewFile();
+    }
+
+    private static void writeIfChanged(File file, ConcurrentNidBitSet nidBitSet, File completeMarker) throws IOException {
+        if (nidBitSet.changed() || !completeMarker.exists()) {
+            nidBitSet.write(file);
+        }
+    }
+
+    public ConcurrentNidBitSet getElementNidsForPatternNid(int patternNid) {
+        return patternElementNidsMap.get(patternNid);
+    }
+
+    public boolean addToPatternElementSet(int patternNid, int elementNid) {
+        return patternElementNidsMap.getIfAbsentPut(patternNid, integer -> new ConcurrentNidBitSet())
+                .add(elementNid);
+    }
+
+    public void remove(int nid) {
+        conceptNids.remove(nid);
+        semanticNids.remove(nid);
+        patternNids.remove(nid);
+        stampNids.remove(nid);
+    }
+
+    public String report() {
+        StringBuilder sb = new StringBuilder("Nid sets: ");
+        sb.append("\nConcepts: ").append(conceptNids.size());
+        sb.append("\nSemantics: ").append(semanticNids.size());
+        sb.append("\nPatterns: ").append(patternNids.size());
+        sb.append("\nStamps: ").append(stampNids.size());
+        return sb.toString();
+    }
+}
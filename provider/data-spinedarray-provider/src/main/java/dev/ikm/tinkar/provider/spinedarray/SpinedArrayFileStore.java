@@ -19,14 +19,20 @@
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.concurrent.Semaphore;
 
 import static dev.ikm.tinkar.collection.SpineFileUtil.SPINE_PREFIX;
 
 public class SpinedArrayFileStore {
     private static final Logger LOG = LoggerFactory.getLogger(SpinedArrayFileStore.class);
+    protected static final String TEMP_SPINE_PREFIX = "tmp-" + SPINE_PREFIX;
     protected final Semaphore diskSemaphore;
 
     protected final File directory;
@@ -57,6 +63,28 @@ public final int getSpineCount() {
         return SpineFileUtil.readSpineCount(directory);
     }
 
+    /**
+     * Write a spine to a temporary file that is forced to disk, then atomically rename it over the spine file,
+     * so a crash while saving never leaves a partially written spine, and a mapped spine file is never truncated.
+     */
+    protected final void writeSpineFile(int spineIndex, SpineWriter spineWriter) throws IOException {
+        File spineFile = new File(directory, SPINE_PREFIX + spineIndex);
+        File tempFile = new File(directory, TEMP_SPINE_PREFIX + spineIndex);
+        try (FileOutputStream fos = new FileOutputStream(tempFile);
+             DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(fos))) {
+            spineWriter.write(dos);
+            dos.flush();
+            fos.getFD().sync();
+        }
+        Files.move(tempFile.toPath(), spineFile.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    @FunctionalInterface
+    protected interface SpineWriter {
+        void write(DataOutputStream dos) throws IOException;
+    }
+
     public final int sizeOnDisk() {
         if (directory == null) {
             return 0;
@@ -15,6 +15,7 @@
  */
 package dev.ikm.tinkar.provider.spinedarray;
 
+import dev.ikm.tinkar.collection.ConcurrentNidBitSet;
 import dev.ikm.tinkar.collection.KeyType;
 import dev.ikm.tinkar.collection.SpinedByteArrayMap;
 import dev.ikm.tinkar.collection.SpinedIntIntMap;
@@ -26,12 +27,12 @@
 import dev.ikm.tinkar.common.service.PluggableService;
 import dev.ikm.tinkar.common.service.PrimitiveData;
 import dev.ikm.tinkar.common.service.PrimitiveDataRepair;
+import dev.ikm.tinkar.common.service.PrimitiveDataSearchFilter;
 import dev.ikm.tinkar.common.service.PrimitiveDataSearchResult;
 import dev.ikm.tinkar.common.service.PrimitiveDataService;
 import dev.ikm.tinkar.common.service.ServiceKeys;
 import dev.ikm.tinkar.common.service.ServiceProperties;
 import dev.ikm.tinkar.common.service.TinkExecutor;
-import dev.ikm.tinkar.common.sets.ConcurrentHashSet;
 import dev.ikm.tinkar.common.util.ints2long.IntsInLong;
 import dev.ikm.tinkar.common.util.io.FileUtil;
 import dev.ikm.tinkar.common.util.time.Stopwatch;
@@ -39,6 +40,7 @@
 import dev.ikm.tinkar.entity.ChangeSetWriterService;
 import dev.ikm.tinkar.entity.ConceptEntity;
 import dev.ikm.tinkar.entity.Entity;
+import dev.ikm.tinkar.entity.EntityRecordFactory;
 import dev.ikm.tinkar.entity.EntityService;
 import dev.ikm.tinkar.entity.PatternEntity;
 import dev.ikm.tinkar.entity.SemanticEntity;
@@ -53,29 +55,29 @@
 import dev.ikm.tinkar.provider.spinedarray.internal.Get;
 import dev.ikm.tinkar.provider.spinedarray.internal.Put;
 import dev.ikm.tinkar.terms.State;
+import dev.ikm.tinkar.terms.TinkarTerm;
 import io.activej.bytebuf.ByteBuf;
 import io.activej.bytebuf.ByteBufPool;
 import org.eclipse.collections.api.block.procedure.primitive.IntProcedure;
 import org.eclipse.collections.api.factory.Lists;
 import org.eclipse.collections.api.factory.Sets;
+import org.eclipse.collections.api.factory.primitive.IntLists;
+import org.eclipse.collections.api.factory.primitive.IntSets;
 import org.eclipse.collections.api.factory.primitive.LongSets;
 import org.eclipse.collections.api.list.ImmutableList;
 import org.eclipse.collections.api.list.MutableList;
 import org.eclipse.collections.api.list.primitive.ImmutableIntList;
-import org.eclipse.collections.api.list.primitive.MutableIntList;
 import org.eclipse.collections.api.list.primitive.MutableLongList;
 import org.eclipse.collections.api.set.MutableSet;
-import org.eclipse.collections.api.set.primitive.IntSet;
+import org.eclipse.collections.api.set.primitive.MutableIntSet;
 import org.eclipse.collections.api.set.primitive.MutableLongSet;
-import org.eclipse.collections.impl.factory.primitive.IntLists;
-import org.eclipse.collections.impl.factory.primitive.IntSets;
 import org.eclipse.collections.impl.factory.primitive.LongLists;
-import org.eclipse.collections.impl.map.mutable.ConcurrentHashMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.OptionalInt;
@@ -85,8 +87,13 @@
 import java.util.concurrent.CompletionException;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.ObjIntConsumer;
 
 /**
@@ -102,15 +109,28 @@ public class SpinedArrayProvider implements PrimitiveDataService, NidGenerator,
     protected static final File defaultDataDirectory = new File("target/spinedarrays/");
     protected static SpinedArrayProvider singleton;
     protected static LongAdder writeSequence = new LongAdder();
+    static final long DEFAULT_CHECKPOINT_BYTES = 64L * 1024 * 1024;
+    private static final long CHECKPOINT_CHECK_INTERVAL_MS = 1000;
     protected final CountDownLatch uuidsLoadedLatch = new CountDownLatch(1);
+    protected final CountDownLatch nidSetsLoadedLatch = new CountDownLatch(1);
     final AtomicInteger nextNid = new AtomicInteger(PrimitiveDataService.FIRST_NID);
 
-    final ConcurrentHashMap<UUID, Integer> uuidToNidMap = ConcurrentHashMap.newMap();
-    final ConcurrentHashSet<Integer> patternNids = new ConcurrentHashSet();
-    final ConcurrentHashSet<Integer> conceptNids = new ConcurrentHashSet();
-    final ConcurrentHashSet<Integer> semanticNids = new ConcurrentHashSet();
-    final ConcurrentHashSet<Integer> stampNids = new ConcurrentHashSet();
-    final ConcurrentHashMap<Integer, ConcurrentHashSet<Integer>> patternElementNidsMap = ConcurrentHashMap.newMap();
+    final UuidNidIndex uuidNidIndex;
+    final NidBitSetFileStore nidSets;
+    final IdentifierIndex identifierIndex;
+    protected final CountDownLatch identifierIndexLoadedLatch = new CountDownLatch(1);
+    /**
+     * False until the identifier index is read or populated, and left false if population fails, so the index is
+     * not saved or queried while it is missing semantics.
+     */
+    private volatile boolean identifierIndexComplete;
+    final StampIndex stampIndex;
+    protected final CountDownLatch stampIndexLoadedLatch = new CountDownLatch(1);
+    /**
+     * False until the stamp index is read or populated, and left false if population fails, so the index is not
+     * saved or queried while it is missing entities.
+     */
+    private volatile boolean stampIndexComplete;
 
     final SpinedByteArrayMap entityToBytesMap;
     final SpinedIntIntMap nidToPatternNidMap;
@@ -122,7 +142,35 @@ public class SpinedArrayProvider implements PrimitiveDataService, NidGenerator,
     final File nidToPatternNidMapDirectory;
     final File nidToByteArrayMapDirectory;
     final File nidToCitingComponentNidMapDirectory;
+    final File uuidNidIndexDirectory;
+    final File nidSetsDirectory;
+    final File identifierIndexDirectory;
+    final File stampIndexDirectory;
     final File nextNidKeyFile;
+    final File writeAheadLogDirectory;
+    final File deferredIndexNidsFile;
+    final WriteAheadLog writeAheadLog;
+    final long checkpointBytes;
+    /**
+     * Held shared by each merge while it is applied and logged, and exclusively by a checkpoint while it rebuilds
+     * deferred indexes and rotates the log, so no merge is applied before the rotation and logged after it.
+     */
+    final ReentrantReadWriteLock checkpointLock = new ReentrantReadWriteLock();
+    /**
+     * Serializes checkpoints, the rebuild of deferred indexes, and the index writes of the open time population
+     * tasks, which share their files.
+     */
+    final ReentrantLock saveLock = new ReentrantLock();
+    final ScheduledFuture<?> checkpointer;
+    /**
+     * Nids of semantics replayed from the write ahead log at open, which are indexed once the provider is open.
+     */
+    private final MutableIntSet replayedSemanticNids = IntSets.mutable.empty();
+    private volatile int identifierPatternNid = UuidNidIndex.NOT_FOUND;
+    /**
+     * Semantics merged during a bulk load whose derived indexes have not been maintained.
+     */
+    private final ConcurrentNidBitSet deferredIndexNids = new ConcurrentNidBitSet();
     final Indexer indexer;
     final Searcher searcher;
     final String name;
@@ -158,9 +206,22 @@ public SpinedArrayProvider() throws IOException, ExecutionException, Interrupted
         this.nidToByteArrayMapDirectory.mkdirs();
         this.nidToCitingComponentNidMapDirectory = new File(configuredRoot, "nidToCitingComponentNidMap");
         this.nidToCitingComponentNidMapDirectory.mkdirs();
+        this.uuidNidIndexDirectory = new File(configuredRoot, "uuidNidIndex");
+        this.nidSetsDirectory = new File(configuredRoot, "nidSets");
+        this.identifierIndexDirectory = new File(configuredRoot, "identifierIndex");
+        this.stampIndexDirectory = new File(configuredRoot, "stampIndex");
         this.nextNidKeyFile = new File(configuredRoot, "nextNidKeyFile");
-
-        this.entityToBytesMap = new SpinedByteArrayMap(new ByteArrayFileStore(nidToByteArrayMapDirectory));
+        this.writeAheadLogDirectory = new File(configuredRoot, "wal");
+        this.deferredIndexNidsFile = new File(configuredRoot, "deferredIndexNids");
+
+        if (ServiceProperties.get(ServiceKeys.SPINED_ARRAY_MAPPED_STORE, Boolean.FALSE)) {
+            int hotSpineCacheSize = ServiceProperties.get(ServiceKeys.SPINED_ARRAY_HOT_SPINE_CACHE_SIZE,
+                    MappedByteArrayFileStore.DEFAULT_HOT_SPINE_CACHE_SIZE);
+            this.entityToBytesMap = new SpinedByteArrayMap(new MappedByteArrayFileStore(nidToByteArrayMapDirectory,
+                    hotSpineCacheSize, MappedByteArrayFileStore.DEFAULT_MAX_MAPPED_SPINES));
+        } else {
+            this.entityToBytesMap = new SpinedByteArrayMap(new ByteArrayFileStore(nidToByteArrayMapDirectory));
+        }
         this.nidToPatternNidMap = new SpinedIntIntMap(KeyType.NID_KEY);
         this.nidToPatternNidMap.read(this.nidToPatternNidMapDirectory);
         this.nidToCitingComponentsNidMap = new SpinedIntLongArrayMap(new IntLongArrayFileStore(nidToCitingComponentNidMapDirectory));
@@ -169,23 +230,95 @@ public SpinedArrayProvider() throws IOException, ExecutionException, Interrupted
             String nextNidString = Files.readString(this.nextNidKeyFile.toPath());
             nextNid.set(Integer.valueOf(nextNidString));
         }
-        TinkExecutor.threadPool().submit(() -> {
-            Stopwatch uuidNidMapFromEntitiesStopwatch = new Stopwatch();
-            LOG.info("Starting UUID strategy 2");
-            UuidNidCollector uuidNidCollector = new UuidNidCollector(uuidToNidMap,
-                    patternNids, conceptNids, semanticNids, stampNids, patternElementNidsMap);
-            try {
-                this.entityToBytesMap.forEachParallel(uuidNidCollector);
-                this.uuidsLoadedLatch.countDown();
-            } catch (ExecutionException | InterruptedException e) {
-                LOG.error(e.getLocalizedMessage(), e);
-            } finally {
-                uuidNidMapFromEntitiesStopwatch.stop();
-                LOG.info("Finished UUID strategy 2 in: " + uuidNidMapFromEntitiesStopwatch.durationString());
-                LOG.info(uuidNidCollector.report());
-            }
+        this.uuidNidIndex = new UuidNidIndex(uuidNidIndexDirectory);
+        boolean uuidNidIndexExists = this.uuidNidIndex.exists();
+        if (uuidNidIndexExists) {
+            Stopwatch uuidNidIndexStopwatch = new Stopwatch();
+            int uuidCount = this.uuidNidIndex.read();
+            this.uuidsLoadedLatch.countDown();
+            uuidNidIndexStopwatch.stop();
+            LOG.info("Read " + uuidCount + " UUIDs from uuid index in: " + uuidNidIndexStopwatch.durationString());
+        }
+        this.nidSets = new NidBitSetFileStore(nidSetsDirectory);
+        boolean nidSetsExist = this.nidSets.exists();
+        if (nidSetsExist) {
+            Stopwatch nidSetsStopwatch = new Stopwatch();
+            this.nidSets.read();
+            this.nidSetsLoadedLatch.countDown();
+            nidSetsStopwatch.stop();
+            LOG.info("Read nid sets in: " + nidSetsStopwatch.durationString() + "\n" + this.nidSets.report());
+        }
+        this.identifierIndex = new IdentifierIndex(identifierIndexDirectory);
+        boolean identifierIndexExists = this.identifierIndex.exists();
+        if (identifierIndexExists) {
+            Stopwatch identifierIndexStopwatch = new Stopwatch();
+            int identifierCount = this.identifierIndex.read();
+            this.identifierIndexComplete = true;
+            this.identifierIndexLoadedLatch.countDown();
+            identifierIndexStopwatch.stop();
+            LOG.info("Read " + identifierCount + " identifiers from identifier index in: " + identifierIndexStopwatch.durationString());
+        }
+        this.stampIndex = new StampIndex(stampIndexDirectory);
+        boolean stampIndexExists = this.stampIndex.exists();
+        if (stampIndexExists) {
+            Stopwatch stampIndexStopwatch = new Stopwatch();
+            int citedStampCount = this.stampIndex.read();
+            this.stampIndexComplete = true;
+            this.stampIndexLoadedLatch.countDown();
+            stampIndexStopwatch.stop();
+            LOG.info("Read citations of " + citedStampCount + " stamps from stamp index in: " + stampIndexStopwatch.durationString());
+        }
+        WriteAheadLog.SyncPolicy syncPolicy = WriteAheadLog.SyncPolicy.valueOf(ServiceProperties.get(
+                ServiceKeys.SPINED_ARRAY_WAL_SYNC_POLICY, WriteAheadLog.SyncPolicy.BATCHED.name()));
+        this.writeAheadLog = new WriteAheadLog(writeAheadLogDirectory, syncPolicy,
+                positiveLongProperty(ServiceKeys.SPINED_ARRAY_WAL_SYNC_INTERVAL_MS, WriteAheadLog.DEFAULT_SYNC_INTERVAL_MS));
+        // Replay merges made after the last checkpoint, before any entity scan below.
+        this.writeAheadLog.open(this::replay, this::replayNidAssignment);
+        if (this.deferredIndexNidsFile.exists()) {
+            // Deferred by a bulk load that a checkpoint interrupted, and no longer in the log.
+            ConcurrentNidBitSet.read(this.deferredIndexNidsFile).forEach(this.deferredIndexNids::add);
+        }
+        this.checkpointBytes = positiveLongProperty(ServiceKeys.SPINED_ARRAY_WAL_CHECKPOINT_BYTES, DEFAULT_CHECKPOINT_BYTES);
+        if (uuidNidIndexExists && nidSetsExist) {
             Thread.ofVirtual().start(this::listAndCancelUncommittedStamps);
-        }).get();
+        } else {
+            Future<?> nidSetsFuture = TinkExecutor.threadPool().submit(() -> {
+                Stopwatch uuidNidMapFromEntitiesStopwatch = new Stopwatch();
+                LOG.info("Starting UUID strategy 2");
+                // Only collect what could not be read from disk.
+                UuidNidCollector uuidNidCollector = new UuidNidCollector(uuidNidIndexExists ? null : uuidNidIndex,
+                        nidSetsExist ? new NidBitSetFileStore(nidSetsDirectory) : nidSets);
+                try {
+                    this.entityToBytesMap.forEachParallel(uuidNidCollector);
+                    if (!uuidNidIndexExists) {
+                        this.uuidNidIndex.write();
+                        this.uuidsLoadedLatch.countDown();
+                    }
+                    if (!nidSetsExist) {
+                        this.nidSets.write();
+                        this.nidSetsLoadedLatch.countDown();
+                    }
+                } catch (ExecutionException | InterruptedException | IOException e) {
+                    LOG.error(e.getLocalizedMessage(), e);
+                } finally {
+                    uuidNidMapFromEntitiesStopwatch.stop();
+                    LOG.info("Finished UUID strategy 2 in: " + uuidNidMapFromEntitiesStopwatch.durationString());
+                    LOG.info(uuidNidCollector.report());
+                }
+                Thread.ofVirtual().start(this::listAndCancelUncommittedStamps);
+            });
+            if (!uuidNidIndexExists) {
+                // Without a saved uuid index, wait for the index to be populated from the entities.
+                nidSetsFuture.get();
+            }
+        }
+
+        if (!identifierIndexExists) {
+            TinkExecutor.threadPool().submit(this::populateIdentifierIndex);
+        }
+        if (!stampIndexExists) {
+            TinkExecutor.threadPool().submit(this::populateStampIndex);
+        }
 
         ServiceLoader<ChangeSetWriterService> changeSetServiceLoader = PluggableService.load(ChangeSetWriterService.class);
         MutableList<ChangeSetWriterService> changeSetWriters = Lists.mutable.empty();
@@ -205,6 +338,16 @@ public SpinedArrayProvider() throws IOException, ExecutionException, Interrupted
                 LOG.error(e.getLocalizedMessage(), e);
             }
         }
+        if (!this.deferredIndexNids.isEmpty()) {
+            rebuildDeferredIndexes();
+        }
+        if (replayedSemanticNids.notEmpty()) {
+            // Documents added to the index after its last commit were lost with the log's unsaved merges.
+            replayedSemanticNids.forEach(nid -> this.indexer.index(EntityRecordFactory.make(this.entityToBytesMap.get(nid))));
+            replayedSemanticNids.clear();
+        }
+        this.checkpointer = TinkExecutor.scheduled().scheduleWithFixedDelay(this::checkpointIfNeeded,
+                CHECKPOINT_CHECK_INTERVAL_MS, CHECKPOINT_CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS);
         // Prime TypeAheadSearch
         TypeAheadSearch.get();
 
@@ -220,12 +363,151 @@ public boolean hasUuid(UUID uuid) {
         } catch (InterruptedException e) {
             throw new RuntimeException(e);
         }
-        return uuidToNidMap.containsKey(uuid);
+        return uuidNidIndex.containsKey(uuid);
+    }
+
+    /**
+     * Index the stamps and components already in the store, for a store saved without a stamp index. Merges made
+     * while this runs index themselves, and indexing is idempotent, so none are missed. If indexing fails, the
+     * index is not saved, and {@link #indexesStamps()} returns false so callers scan instead.
+     */
+    private void populateStampIndex() {
+        Stopwatch stopwatch = new Stopwatch();
+        try {
+            this.entityToBytesMap.forEachParallel((bytes, nid) -> {
+                if (EntityRecordFactory.make(bytes) instanceof Entity<?> entity) {
+                    this.stampIndex.index(entity);
+                }
+            });
+            // Under the save lock, so a checkpoint does not write the same file concurrently.
+            saveLock.lock();
+            try {
+                this.stampIndexComplete = true;
+                this.stampIndex.write();
+            } finally {
+                saveLock.unlock();
+            }
+            stopwatch.stop();
+            LOG.info("Indexed citations of " + this.stampIndex.size() + " stamps in: " + stopwatch.durationString());
+        } catch (IOException | ExecutionException | InterruptedException | RuntimeException e) {
+            LOG.error("Stamp index population failed, stamp queries will scan: " + e.getLocalizedMessage(), e);
+            AlertStreams.dispatchToRoot(e);
+        } finally {
+            this.stampIndexLoadedLatch.countDown();
+        }
+    }
+
+    /**
+     * Index the identifier semantics already in the store, for a store saved without an identifier index. If
+     * indexing fails, the index is not saved, and {@link #indexesIdentifiers()} returns false so callers scan
+     * instead.
+     */
+    private void populateIdentifierIndex() {
+        Stopwatch stopwatch = new Stopwatch();
+        try {
+            this.uuidsLoadedLatch.await();
+            int patternNid = identifierPatternNid();
+            if (patternNid != UuidNidIndex.NOT_FOUND) {
+                forEachSemanticNidOfPattern(patternNid, nid -> {
+                    if (EntityRecordFactory.make(this.entityToBytesMap.get(nid)) instanceof SemanticEntity<?> semantic) {
+                        this.identifierIndex.index(semantic);
+                    }
+                });
+            }
+            // Under the save lock, so a checkpoint does not write the same file concurrently.
+            saveLock.lock();
+            try {
+                this.identifierIndexComplete = true;
+                this.identifierIndex.write();
+            } finally {
+                saveLock.unlock();
+            }
+            stopwatch.stop();
+            LOG.info("Indexed " + this.identifierIndex.size() + " identifiers in: " + stopwatch.durationString());
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            LOG.error("Identifier index population failed, identifier lookups will scan: " + e.getLocalizedMessage(), e);
+            AlertStreams.dispatchToRoot(e);
+        } finally {
+            this.identifierIndexLoadedLatch.countDown();
+        }
+    }
+
+    /**
+     * @return the nid of the identifier pattern, or {@link UuidNidIndex#NOT_FOUND} if no entity has referenced it yet.
+     */
+    private int identifierPatternNid() {
+        int patternNid = this.identifierPatternNid;
+        if (patternNid == UuidNidIndex.NOT_FOUND) {
+            for (UUID uuid : TinkarTerm.IDENTIFIER_PATTERN.uuids()) {
+                patternNid = uuidNidIndex.get(uuid);
+                if (patternNid != UuidNidIndex.NOT_FOUND) {
+                    this.identifierPatternNid = patternNid;
+                    break;
+                }
+            }
+        }
+        return patternNid;
+    }
+
+    /**
+     * @return the value of a property that may be set as any number or as a string, checked to be positive.
+     */
+    private static long positiveLongProperty(ServiceKeys key, long defaultValue) {
+        Object value = ServiceProperties.get(key, defaultValue);
+        long longValue = switch (value) {
+            case Number number -> number.longValue();
+            case String string -> {
+                try {
+                    yield Long.parseLong(string.strip());
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException(key + " is not a number: " + string, e);
+                }
+            }
+            default -> throw new IllegalArgumentException(key + " is not a number: " + value);
+        };
+        if (longValue <= 0) {
+            throw new IllegalArgumentException(key + " must be positive: " + longValue);
+        }
+        return longValue;
+    }
+
+    /**
+     * Apply a logged merge again. The entity may already be in a spine written by a checkpoint that did not
+     * finish writing the indexes, so the indexes derived from the merge are updated even if it is.
+     */
+    private void replay(int nid, int patternNid, int referencedComponentNid, byte[] value) {
+        Entity<?> entity = EntityRecordFactory.make(value);
+        nextNid.accumulateAndGet(nid + 1, Math::max);
+        applyMerge(nid, patternNid, referencedComponentNid, value, entity, false, true);
+        if (entity instanceof SemanticEntity) {
+            replayedSemanticNids.add(nid);
+        }
+    }
+
+    /**
+     * Restore a logged nid assignment, which may not have been followed by a merge of the entity with the uuid, and
+     * move the next nid past it so it is not assigned again.
+     */
+    private void replayNidAssignment(long mostSignificantBits, long leastSignificantBits, int nid) {
+        nextNid.accumulateAndGet(nid + 1, Math::max);
+        uuidNidIndex.put(mostSignificantBits, leastSignificantBits, nid);
+    }
+
+    /**
+     * Checkpoint when the write ahead log has grown past the configured size, so replay and save pauses stay
+     * bounded. Skipped until the uuid index and nid sets are complete, since a checkpoint also writes them.
+     * Deferred indexes are not rebuilt, since a bulk load may be in progress, but are saved to be rebuilt later.
+     */
+    private void checkpointIfNeeded() {
+        if (uuidsLoadedLatch.getCount() == 0 && nidSetsLoadedLatch.getCount() == 0
+                && writeAheadLog.segmentBytes() > checkpointBytes) {
+            checkpoint(false);
+        }
     }
 
     private void listAndCancelUncommittedStamps() {
-        LOG.debug("Searching for canceled stamps in set of size " + stampNids.size());
-        int[] stampNidArray = stampNids.stream().sorted().mapToInt(value -> (int) value).toArray();
+        LOG.debug("Searching for canceled stamps in set of size " + nidSets.stampNids.size());
+        int[] stampNidArray = nidSets.stampNids.toArray();
         for (int stampNid : stampNidArray) {
             StampRecord stamp = Entity.getStamp(stampNid);
             if (stamp.lastVersion() == null) {
@@ -264,10 +546,12 @@ public void close() {
         Stopwatch stopwatch = new Stopwatch();
         LOG.info("Closing SpinedArrayProvider");
         try {
+            this.checkpointer.cancel(false);
             this.changeSetWriterServices.forEach(ChangeSetWriterService::shutdown);
             save();
             listAndCancelUncommittedStamps();
             entityToBytesMap.close();
+            this.writeAheadLog.close();
             SpinedArrayProvider.singleton = null;
             this.indexer.close();
         } catch (IOException e) {
@@ -278,18 +562,56 @@ public void close() {
         }
     }
 
+    /**
+     * Checkpoint the provider: rotate the write ahead log, write the changed spines, indexes and nid sets, and
+     * then delete the log segments they now contain.
+     */
     public void save() {
+        checkpoint(true);
+    }
+
+    /**
+     * @param rebuildDeferred if true, rebuild deferred indexes before the log is rotated. If false, the nids of
+     *                        semantics with deferred indexes are saved, and rebuilt at the end of the load phase,
+     *                        or when the provider next opens.
+     */
+    private void checkpoint(boolean rebuildDeferred) {
         Stopwatch stopwatch = new Stopwatch();
         LOG.info("Saving SpinedArrayProvider");
+        saveLock.lock();
         try {
+            long checkpointGeneration;
+            checkpointLock.writeLock().lock();
+            try {
+                if (rebuildDeferred) {
+                    rebuildDeferredIndexesLocked();
+                }
+                // Merges are applied before they are logged, so everything in the rotated segments is in the maps.
+                checkpointGeneration = this.writeAheadLog.rotate();
+            } finally {
+                checkpointLock.writeLock().unlock();
+            }
             Files.writeString(this.nextNidKeyFile.toPath(), Integer.toString(nextNid.get()));
             nidToPatternNidMap.write(this.nidToPatternNidMapDirectory);
             this.entityToBytesMap.write();
             this.nidToCitingComponentsNidMap.write();
+            this.uuidNidIndex.write();
+            this.nidSets.write();
+            if (this.identifierIndexComplete) {
+                this.identifierIndex.write();
+            }
+            if (this.stampIndexComplete) {
+                this.stampIndex.write();
+            }
+            // Includes every nid deferred by a merge in the rotated segments.
+            this.deferredIndexNids.write(this.deferredIndexNidsFile);
             this.indexer.commit();
-        } catch (IOException e) {
-            LOG.error(e.getLocalizedMessage(), e);
+            this.writeAheadLog.deleteSegmentsThrough(checkpointGeneration);
+        } catch (IOException | RuntimeException e) {
+            // The log segments are kept, and replayed on open, since what they hold may not have been written.
+            LOG.error("Checkpoint failed, keeping write ahead log segments: " + e.getLocalizedMessage(), e);
         } finally {
+            saveLock.unlock();
             stopwatch.stop();
             LOG.info("Save SpinedArrayProvider in: " + stopwatch.durationString());
         }
@@ -300,7 +622,7 @@ public int nidForUuids(UUID... uuids) {
         try {
             this.uuidsLoadedLatch.await();
             if (uuids.length == 1) {
-                return uuidToNidMap.computeIfAbsent(uuids[0], uuidKey -> newNid());
+                return nidForUuid(uuids[0]);
             }
 
             OptionalInt optionalNid = optionalNid(uuids);
@@ -309,9 +631,9 @@ public int nidForUuids(UUID... uuids) {
 
             for (UUID uuid : uuids) {
                 if (nid == Integer.MAX_VALUE) {
-                    nid = uuidToNidMap.computeIfAbsent(uuids[0], uuidKey -> newNid());
+                    nid = nidForUuid(uuids[0]);
                 } else {
-                    uuidToNidMap.put(uuid, nid);
+                    putNid(uuid, nid);
                 }
             }
             if (nid == Integer.MIN_VALUE) {
@@ -326,8 +648,9 @@ public int nidForUuids(UUID... uuids) {
 
     private OptionalInt optionalNid(UUID... uuids) {
         for (UUID uuid : uuids) {
-            if (uuidToNidMap.containsKey(uuid)) {
-                return OptionalInt.of(uuidToNidMap.get(uuid));
+            int nid = uuidNidIndex.get(uuid);
+            if (nid != UuidNidIndex.NOT_FOUND) {
+                return OptionalInt.of(nid);
             }
         }
         return OptionalInt.empty();
@@ -338,12 +661,41 @@ public int newNid() {
         return nextNid.getAndIncrement();
     }
 
+    /**
+     * @return the nid of the uuid, assigning a new nid if it has none. A new assignment is logged, since bytes
+     * merged before the entity with the uuid may cite the nid.
+     */
+    private int nidForUuid(UUID uuid) {
+        return uuidNidIndex.getIfAbsentPut(uuid, () -> logNidAssignment(uuid, newNid()));
+    }
+
+    private void putNid(UUID uuid, int nid) {
+        if (uuidNidIndex.get(uuid) != nid) {
+            uuidNidIndex.put(uuid, nid);
+            logNidAssignment(uuid, nid);
+        }
+    }
+
+    /**
+     * Log a nid assignment as it is made. If the record is appended before a checkpoint rotates the log, the
+     * assignment is in the uuid index that the checkpoint then writes; otherwise it is in a segment the checkpoint
+     * keeps.
+     */
+    private int logNidAssignment(UUID uuid, int nid) {
+        try {
+            this.writeAheadLog.appendNidAssignment(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), nid);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return nid;
+    }
+
     @Override
     public int nidForUuids(ImmutableList<UUID> uuidList) {
         try {
             this.uuidsLoadedLatch.await();
             if (uuidList.size() == 1) {
-                return uuidToNidMap.computeIfAbsent(uuidList.get(0), uuidKey -> newNid());
+                return nidForUuid(uuidList.get(0));
             }
 
             OptionalInt optionalNid = optionalNid(uuidList.toArray(new UUID[uuidList.size()]));
@@ -352,9 +704,9 @@ public int nidForUuids(ImmutableList<UUID> uuidList) {
 
             for (UUID uuid : uuidList) {
                 if (nid == Integer.MAX_VALUE) {
-                    nid = uuidToNidMap.computeIfAbsent(uuid, uuidKey -> newNid());
+                    nid = nidForUuid(uuid);
                 } else {
-                    uuidToNidMap.put(uuid, nid);
+                    putNid(uuid, nid);
                 }
             }
             if (nid == Integer.MIN_VALUE) {
@@ -374,7 +726,7 @@ public boolean hasPublicId(PublicId publicId) {
         } catch (InterruptedException e) {
             throw new RuntimeException(e);
         }
-        return publicId.asUuidList().stream().anyMatch(uuidToNidMap::containsKey);
+        return publicId.asUuidList().stream().anyMatch(uuidNidIndex::containsKey);
     }
 
     @Override
@@ -407,39 +759,204 @@ public byte[] getBytes(int nid) {
 
     @Override
     public byte[] merge(int nid, int patternNid, int referencedComponentNid, byte[] value, Object sourceObject, DataActivity activity) {
+        return merge(nid, patternNid, referencedComponentNid, value, sourceObject, activity, false);
+    }
+
+    @Override
+    public byte[] mergeDeferringIndexes(int nid, int patternNid, int referencedComponentNid, byte[] value,
+                                        Object sourceObject, DataActivity activity) {
+        return merge(nid, patternNid, referencedComponentNid, value, sourceObject, activity, true);
+    }
+
+    private byte[] merge(int nid, int patternNid, int referencedComponentNid, byte[] value, Object sourceObject,
+                         DataActivity activity, boolean deferIndexes) {
         if (nid == Integer.MIN_VALUE) {
             LOG.error("NID should not be Integer.MIN_VALUE");
             throw new IllegalStateException("NID should not be Integer.MIN_VALUE");
         }
-        if (!this.entityToBytesMap.containsKey(nid)) {
+        byte[] mergedBytes;
+        checkpointLock.readLock().lock();
+        try {
+            mergedBytes = applyMerge(nid, patternNid, referencedComponentNid, value, sourceObject, deferIndexes, false);
+            this.writeAheadLog.append(nid, patternNid, referencedComponentNid, value);
+        } catch (IOException e) {
+            LOG.error(e.getLocalizedMessage(), e);
+            throw new RuntimeException(e);
+        } finally {
+            checkpointLock.readLock().unlock();
+        }
+        this.changeSetWriterServices.forEach(writerService -> writerService.writeToChangeSet((Entity) sourceObject, activity));
+        if (!deferIndexes) {
+            this.indexer.index(sourceObject);
+        }
+        return mergedBytes;
+    }
+
+    /**
+     * Index every semantic merged with deferred indexes, in one parallel pass over their merged bytes. Also
+     * called by {@link #save()}, since the write ahead log no longer holds these merges after a checkpoint.
+     */
+    @Override
+    public void rebuildDeferredIndexes() {
+        saveLock.lock();
+        try {
+            rebuildDeferredIndexesLocked();
+        } finally {
+            saveLock.unlock();
+        }
+    }
+
+    /**
+     * Called holding {@link #saveLock}, so a checkpoint does not save the deferred nids while they are being
+     * rebuilt, and lose those not yet indexed.
+     */
+    private void rebuildDeferredIndexesLocked() {
+        if (this.deferredIndexNids.isEmpty()) {
+            return;
+        }
+        Stopwatch stopwatch = new Stopwatch();
+        int[] nids = this.deferredIndexNids.toArray();
+        try {
+            this.entityToBytesMap.forEachParallel(IntLists.immutable.of(nids), (bytes, nid) -> {
+                // Removed before indexing, so a concurrent deferred merge of the nid is indexed again next time.
+                this.deferredIndexNids.remove(nid);
+                if (EntityRecordFactory.make(bytes) instanceof SemanticEntity<?> semantic) {
+                    addCitationAndPatternMembership(nid, semantic.patternNid(), semantic.referencedComponentNid());
+                    this.stampIndex.index(semantic);
+                    if (semantic.patternNid() == identifierPatternNid()) {
+                        this.identifierIndex.index(semantic);
+                    }
+                    this.indexer.index(semantic);
+                }
+            });
+            // Let the search index and suggester see the bulk loaded semantics when the load phase ends.
+            this.indexer.awaitIndexed(this.indexer.writeSequence());
+        } catch (ExecutionException | InterruptedException e) {
+            AlertStreams.dispatchToRoot(e);
+        }
+        stopwatch.stop();
+        LOG.info("Rebuilt deferred indexes for " + nids.length + " semantics in: " + stopwatch.durationString());
+    }
+
+    private void addCitationAndPatternMembership(int nid, int patternNid, int referencedComponentNid) {
+        long citationLong = IntsInLong.ints2Long(nid, patternNid);
+        this.nidToCitingComponentsNidMap.accumulateAndGet(referencedComponentNid, new long[]{citationLong},
+                PrimitiveDataService::mergeCitations);
+        addToPatternElementSet(patternNid, nid);
+    }
+
+    /**
+     * Apply a merge to the maps and nid sets, without logging it.
+     *
+     * @param deferIndexes if true, record semantics for {@link #rebuildDeferredIndexes()} instead of adding them
+     *                     to the citation, pattern membership and identifier indexes.
+     * @param replaying    if true, update the uuid index, nid sets, citations and pattern membership even if the
+     *                     entity is already stored.
+     */
+    private byte[] applyMerge(int nid, int patternNid, int referencedComponentNid, byte[] value, Object sourceObject,
+                              boolean deferIndexes, boolean replaying) {
+        if (deferIndexes && patternNid != Integer.MAX_VALUE) {
+            this.deferredIndexNids.add(nid);
+        }
+        // Each update below is idempotent, so a replay can apply it again.
+        if (replaying || !this.entityToBytesMap.containsKey(nid)) {
             this.nidToPatternNidMap.put(nid, patternNid);
-            if (patternNid != Integer.MAX_VALUE) {
-                long citationLong = IntsInLong.ints2Long(nid, patternNid);
-                this.nidToCitingComponentsNidMap.accumulateAndGet(referencedComponentNid, new long[]{citationLong},
-                        PrimitiveDataService::mergeCitations);
-                addToPatternElementSet(patternNid, nid);
+            if (patternNid != Integer.MAX_VALUE && !deferIndexes) {
+                addCitationAndPatternMembership(nid, patternNid, referencedComponentNid);
+            }
+            if (sourceObject instanceof Entity<?> entity) {
+                // Entities may be merged without a prior nidForUuids call, as when repairing or importing bytes.
+                for (UUID uuid : entity.publicId().asUuidArray()) {
+                    uuidNidIndex.put(uuid, nid);
+                }
             }
             if (sourceObject instanceof ConceptEntity concept) {
-                this.conceptNids.add(concept.nid());
+                this.nidSets.conceptNids.add(concept.nid());
             } else if (sourceObject instanceof SemanticEntity semanticEntity) {
-                this.semanticNids.add(semanticEntity.nid());
+                this.nidSets.semanticNids.add(semanticEntity.nid());
             } else if (sourceObject instanceof PatternEntity patternEntity) {
-                this.patternNids.add(patternEntity.nid());
+                this.nidSets.patternNids.add(patternEntity.nid());
             } else if (sourceObject instanceof StampEntity stampEntity) {
-                this.stampNids.add(stampEntity.nid());
+                this.nidSets.stampNids.add(stampEntity.nid());
             }
         }
         byte[] mergedBytes = this.entityToBytesMap.accumulateAndGet(nid, value, PrimitiveDataService::merge);
+        if (patternNid == Integer.MAX_VALUE || !deferIndexes) {
+            // Only the merged versions need indexing; bulk loaded semantics are indexed when the load phase ends.
+            Object mergedEntity = sourceObject instanceof Entity<?> ? sourceObject : EntityRecordFactory.make(value);
+            if (mergedEntity instanceof Entity<?> entity) {
+                this.stampIndex.index(entity);
+            }
+        }
+        if (patternNid != Integer.MAX_VALUE && !deferIndexes && patternNid == identifierPatternNid()) {
+            // Earlier versions were indexed when they were merged, so only the new versions need indexing.
+            Object identifierSemantic = sourceObject instanceof SemanticEntity<?> ? sourceObject : EntityRecordFactory.make(value);
+            if (identifierSemantic instanceof SemanticEntity<?> semantic) {
+                this.identifierIndex.index(semantic);
+            }
+        }
         this.writeSequence.increment();
-        this.changeSetWriterServices.forEach(writerService -> writerService.writeToChangeSet((Entity) sourceObject, activity));
-        this.indexer.index(sourceObject);
         return mergedBytes;
     }
 
-    public boolean addToPatternElementSet(int patternNid, int elementNid) {
+    /**
+     * Waits until the identifier index is read or populated.
+     *
+     * @return false if population of the identifier index failed.
+     */
+    @Override
+    public boolean indexesIdentifiers() {
+        try {
+            this.identifierIndexLoadedLatch.await();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+        return this.identifierIndexComplete;
+    }
+
+    @Override
+    public int[] semanticNidsForIdentifier(int identifierSourceNid, String identifierValue) {
+        if (!indexesIdentifiers()) {
+            throw new UnsupportedOperationException("Identifier index population failed");
+        }
+        return this.identifierIndex.get(identifierSourceNid, identifierValue);
+    }
+
+    /**
+     * Waits until the stamp index is read or populated.
+     *
+     * @return false if population of the stamp index failed.
+     */
+    @Override
+    public boolean indexesStamps() {
+        try {
+            this.stampIndexLoadedLatch.await();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+        return this.stampIndexComplete;
+    }
+
+    @Override
+    public void forEachStampNidInTimeRange(long fromEpochMillis, long toEpochMillis, IntProcedure procedure) {
+        awaitStampIndex();
+        this.stampIndex.forEachStampNid(fromEpochMillis, toEpochMillis, procedure);
+    }
+
+    @Override
+    public void forEachNidForStamp(int stampNid, IntProcedure procedure) {
+        awaitStampIndex();
+        this.stampIndex.forEachCitingNid(stampNid, procedure);
+    }
+
+    private void awaitStampIndex() {
+        if (!indexesStamps()) {
+            throw new UnsupportedOperationException("Stamp index population failed");
+        }
+    }
 
-        return patternElementNidsMap.getIfAbsentPut(patternNid, integer -> new ConcurrentHashSet())
-                .add(elementNid);
+    public boolean addToPatternElementSet(int patternNid, int elementNid) {
+        return nidSets.addToPatternElementSet(patternNid, elementNid);
     }
 
     @Override
@@ -447,6 +964,12 @@ public PrimitiveDataSearchResult[] search(String query, int maxResultSize) throw
         return this.searcher.search(query, maxResultSize);
     }
 
+    @Override
+    public PrimitiveDataSearchResult[] search(String query, int maxResultSize, PrimitiveDataSearchFilter filter,
+                                              boolean highlight) throws Exception {
+        return this.searcher.search(query, maxResultSize, filter, highlight);
+    }
+
     @Override
     public CompletableFuture<Void> recreateLuceneIndex() {
         return CompletableFuture.supplyAsync(() -> {
@@ -457,39 +980,35 @@ public CompletableFuture<Void> recreateLuceneIndex() {
                         "Search and Type Ahead Suggestions may not function as expected.", ex));
             }
             return null;
-        }, TinkExecutor.ioThreadPool());
+        }, TinkExecutor.virtualThreadExecutor());
     }
 
     @Override
     public int[] semanticNidsOfPattern(int patternNid) {
-        IntSet elementNids = getElementNidsForPatternNid(patternNid);
-        if (elementNids.notEmpty()) {
-            MutableIntList elementNidList = IntLists.mutable.withInitialCapacity(elementNids.size());
-            elementNids.forEach(integer -> elementNidList.add(integer));
-            return elementNidList.toArray();
+        ConcurrentNidBitSet elementNids = getElementNidsForPatternNid(patternNid);
+        if (elementNids != null) {
+            return elementNids.toArray();
         }
         return new int[0];
     }
 
-    public IntSet getElementNidsForPatternNid(int patternNid) {
-        if (patternElementNidsMap.containsKey(patternNid)) {
-            return IntSets.immutable.ofAll(patternElementNidsMap.get(patternNid).stream().mapToInt(value -> (int) value));
+    /**
+     * @return the live set of semantic nids of the pattern, or null if the pattern has no semantics.
+     */
+    public ConcurrentNidBitSet getElementNidsForPatternNid(int patternNid) {
+        try {
+            this.nidSetsLoadedLatch.await();
+        } catch (InterruptedException e) {
+            LOG.error(e.getLocalizedMessage(), e);
+            throw new RuntimeException(e);
         }
-        return IntSets.immutable.empty();
+        return nidSets.getElementNidsForPatternNid(patternNid);
     }
 
     @Override
     public void forEachSemanticNidOfPattern(int patternNid, IntProcedure procedure) {
-        IntSet elementNids;
-        if (LOG.isTraceEnabled()) {
-            Stopwatch sw = new Stopwatch();
-            elementNids = getElementNidsForPatternNid(patternNid);
-            LOG.atTrace().log("getElementNidsForPatternNid " + PrimitiveData.text(patternNid) +
-                    " time: " + sw.durationString());
-        } else {
-            elementNids = getElementNidsForPatternNid(patternNid);
-        }
-        if (elementNids.notEmpty()) {
+        ConcurrentNidBitSet elementNids = getElementNidsForPatternNid(patternNid);
+        if (elementNids != null && elementNids.notEmpty()) {
             elementNids.forEach(procedure);
         } else {
             Entity entity = Entity.getFast(patternNid);
@@ -503,8 +1022,8 @@ public void forEachSemanticNidOfPattern(int patternNid, IntProcedure procedure)
     @Override
     public void forEachPatternNid(IntProcedure procedure) {
         try {
-            this.uuidsLoadedLatch.await();
-            this.patternNids.forEach(patternNid -> procedure.accept(patternNid));
+            this.nidSetsLoadedLatch.await();
+            this.nidSets.patternNids.forEach(procedure);
         } catch (InterruptedException e) {
             LOG.error(e.getLocalizedMessage(), e);
             throw new RuntimeException(e);
@@ -514,8 +1033,8 @@ public void forEachPatternNid(IntProcedure procedure) {
     @Override
     public void forEachConceptNid(IntProcedure procedure) {
         try {
-            this.uuidsLoadedLatch.await();
-            this.conceptNids.forEach(conceptNid -> procedure.accept(conceptNid));
+            this.nidSetsLoadedLatch.await();
+            this.nidSets.conceptNids.forEach(procedure);
         } catch (InterruptedException e) {
             LOG.error(e.getLocalizedMessage(), e);
             throw new RuntimeException(e);
@@ -525,8 +1044,8 @@ public void forEachConceptNid(IntProcedure procedure) {
     @Override
     public void forEachStampNid(IntProcedure procedure) {
         try {
-            this.uuidsLoadedLatch.await();
-            this.stampNids.forEach(stampNid -> procedure.accept(stampNid));
+            this.nidSetsLoadedLatch.await();
+            this.nidSets.stampNids.forEach(procedure);
         } catch (InterruptedException e) {
             LOG.error(e.getLocalizedMessage(), e);
             throw new RuntimeException(e);
@@ -536,8 +1055,8 @@ public void forEachStampNid(IntProcedure procedure) {
     @Override
     public void forEachSemanticNid(IntProcedure procedure) {
         try {
-            this.uuidsLoadedLatch.await();
-            this.semanticNids.forEach(semanticNid -> procedure.accept(semanticNid));
+            this.nidSetsLoadedLatch.await();
+            this.nidSets.semanticNids.forEach(procedure);
         } catch (InterruptedException e) {
             LOG.error(e.getLocalizedMessage(), e);
             throw new RuntimeException(e);
@@ -576,13 +1095,17 @@ public String name() {
 
     @Override
     public void erase(int nid) {
+        int patternNid = this.nidToPatternNidMap.get(nid);
+        if (patternNid != Integer.MAX_VALUE) {
+            ConcurrentNidBitSet elementNids = this.nidSets.getElementNidsForPatternNid(patternNid);
+            if (elementNids != null) {
+                elementNids.remove(nid);
+            }
+        }
         this.entityToBytesMap.put(nid, null);
         this.nidToPatternNidMap.put(nid, Integer.MAX_VALUE);
         this.nidToCitingComponentsNidMap.put(nid, null);
-        this.conceptNids.remove(nid);
-        this.semanticNids.remove(nid);
-        this.patternNids.remove(nid);
-        this.stampNids.remove(nid);
+        this.nidSets.remove(nid);
         this.nidToCitingComponentsNidMap.forEach((nidPatternsCitingComponent, referencedComponentNid) -> {
             MutableLongList nidPatternInLongToRemove = LongLists.mutable.withInitialCapacity(2);
             for (long nidPatternInLong : nidPatternsCitingComponent) {
@@ -636,6 +1159,9 @@ byte[] merge(byte[] bytesToMergeInto, byte[] bytesToBeErased, DataActivity activ
         MutableSet<UUID> uuidSet = Sets.mutable.ofAll(mergeIntoUuids);
         uuidSet.addAll(uuidsFromBytesToBeErased.castToList());
         ImmutableList<UUID> mergedUuids = uuidSet.toImmutableList();
+        for (UUID uuid : mergedUuids) {
+            uuidNidIndex.put(uuid, mergeIntoNid);
+        }
 
         // Note first array (the chronicle fields) will be larger by the number of additional UUIDs...
 
@@ -0,0 +1,264 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.provider.spinedarray;
+
+import dev.ikm.tinkar.collection.ConcurrentNidBitSet;
+import dev.ikm.tinkar.entity.Entity;
+import dev.ikm.tinkar.entity.EntityVersion;
+import dev.ikm.tinkar.entity.StampEntity;
+import dev.ikm.tinkar.entity.StampEntityVersion;
+import org.eclipse.collections.api.block.procedure.primitive.IntProcedure;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Persistent index from time to the stamps with a version at that time, and from each stamp to the concepts,
+ * semantics and patterns with a version on it, so a time-based export reads only the stamps and components that
+ * changed in its time span.
+ * <p>
+ * The time of every stamp version is indexed, and entries are never removed, since versions are only appended.
+ * The components citing a stamp are held in a sorted array while there are few of them, and in a
+ * {@link ConcurrentNidBitSet} once there are more than {@value #MAX_ARRAY_CITATIONS}, so release stamps cited by
+ * most of the store do not copy an array on every add. The index is written to a single file, replacing the
+ * previous file atomically.
+ */
+public class StampIndex {
+    private static final String INDEX_FILE = "stamps";
+    static final int MAX_ARRAY_CITATIONS = 256;
+
+    private final File directory;
+    private final ConcurrentSkipListMap<Long, int[]> timeStampNids = new ConcurrentSkipListMap<>();
+    private final ConcurrentHashMap<Integer, int[]> citingNidArrays = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, ConcurrentNidBitSet> citingNidSets = new ConcurrentHashMap<>();
+    private final AtomicBoolean changed = new AtomicBoolean();
+
+    public StampIndex(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @return true if a previously saved index exists in the directory, false if the index must be
+     * populated from the entities in the store.
+     */
+    public boolean exists() {
+        return new File(directory, INDEX_FILE).exists();
+    }
+
+    /**
+     * @return the number of stamps read.
+     */
+    public int read() throws IOException {
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(
+                new FileInputStream(new File(directory, INDEX_FILE))))) {
+            int timeCount = dis.readInt();
+            for (int i = 0; i < timeCount; i++) {
+                long time = dis.readLong();
+                timeStampNids.put(time, readNids(dis));
+            }
+            int stampCount = dis.readInt();
+            for (int i = 0; i < stampCount; i++) {
+                int stampNid = dis.readInt();
+                int[] citingNids = readNids(dis);
+                if (citingNids.length <= MAX_ARRAY_CITATIONS) {
+                    citingNidArrays.put(stampNid, citingNids);
+                } else {
+                    citingNidSets.put(stampNid, toNidSet(citingNids));
+                }
+            }
+            return stampCount;
+        }
+    }
+
+    /**
+     * Write the index if it changed since the last write.
+     *
+     * @return true if the index was written.
+     */
+    public boolean write() throws IOException {
+        return IndexFiles.writeIfChanged(changed, directory, INDEX_FILE, dos -> {
+            // Entries added while writing are marked changed again, and written next time.
+            Map.Entry<Long, int[]>[] timeEntries = timeStampNids.entrySet().toArray(new Map.Entry[0]);
+            dos.writeInt(timeEntries.length);
+            for (Map.Entry<Long, int[]> entry : timeEntries) {
+                dos.writeLong(entry.getKey());
+                writeNids(dos, entry.getValue());
+            }
+            Map.Entry<Integer, int[]>[] arrayEntries = citingNidArrays.entrySet().toArray(new Map.Entry[0]);
+            Map.Entry<Integer, ConcurrentNidBitSet>[] setEntries = citingNidSets.entrySet().toArray(new Map.Entry[0]);
+            dos.writeInt(arrayEntries.length + setEntries.length);
+            for (Map.Entry<Integer, int[]> entry : arrayEntries) {
+                dos.writeInt(entry.getKey());
+                writeNids(dos, entry.getValue());
+            }
+            for (Map.Entry<Integer, ConcurrentNidBitSet> entry : setEntries) {
+                dos.writeInt(entry.getKey());
+                writeNids(dos, entry.getValue().toArray());
+            }
+        });
+    }
+
+    public int size() {
+        return citingNidArrays.size() + citingNidSets.size();
+    }
+
+    /**
+     * Index the times of each version of a stamp, or the stamps of each version of a concept, semantic or pattern.
+     */
+    public void index(Entity<?> entity) {
+        int nid = entity.nid();
+        if (entity instanceof StampEntity<?> stamp) {
+            for (StampEntityVersion version : stamp.versions()) {
+                indexTime(version.time(), nid);
+            }
+        } else {
+            for (EntityVersion version : entity.versions()) {
+                indexCitation(version.stampNid(), nid);
+            }
+        }
+    }
+
+    private void indexTime(long time, int stampNid) {
+        timeStampNids.compute(time, (key, stampNids) -> {
+            int[] newStampNids = insert(stampNids, stampNid);
+            if (newStampNids != stampNids) {
+                changed.set(true);
+            }
+            return newStampNids;
+        });
+    }
+
+    private void indexCitation(int stampNid, int citingNid) {
+        ConcurrentNidBitSet citingNidSet = citingNidSets.get(stampNid);
+        if (citingNidSet != null) {
+            if (citingNidSet.add(citingNid)) {
+                changed.set(true);
+            }
+            return;
+        }
+        citingNidArrays.compute(stampNid, (key, citingNids) -> {
+            if (citingNids == null) {
+                // Promoted to a set by a concurrent add after the check above.
+                ConcurrentNidBitSet promotedSet = citingNidSets.get(stampNid);
+                if (promotedSet != null) {
+                    if (promotedSet.add(citingNid)) {
+                        changed.set(true);
+                    }
+                    return null;
+                }
+            }
+            int[] newCitingNids = insert(citingNids, citingNid);
+            if (newCitingNids == citingNids) {
+                return citingNids;
+            }
+            changed.set(true);
+            if (newCitingNids.length > MAX_ARRAY_CITATIONS) {
+                // Published before the array is removed, so no add finds neither.
+                citingNidSets.put(stampNid, toNidSet(newCitingNids));
+                return null;
+            }
+            return newCitingNids;
+        });
+    }
+
+    /**
+     * Pass each stamp with a version in the inclusive time range to the procedure, in ascending time order.
+     */
+    public void forEachStampNid(long fromEpochMillis, long toEpochMillis, IntProcedure procedure) {
+        if (fromEpochMillis > toEpochMillis) {
+            return;
+        }
+        for (int[] stampNids : timeStampNids.subMap(fromEpochMillis, true, toEpochMillis, true).values()) {
+            for (int stampNid : stampNids) {
+                procedure.value(stampNid);
+            }
+        }
+    }
+
+    /**
+     * Pass each component with a version on the stamp to the procedure, in ascending nid order.
+     */
+    public void forEachCitingNid(int stampNid, IntProcedure procedure) {
+        ConcurrentNidBitSet citingNidSet = citingNidSets.get(stampNid);
+        if (citingNidSet != null) {
+            citingNidSet.forEach(procedure);
+            return;
+        }
+        int[] citingNids = citingNidArrays.get(stampNid);
+        if (citingNids == null) {
+            // May have been promoted between the two reads.
+            citingNidSet = citingNidSets.get(stampNid);
+            if (citingNidSet != null) {
+                citingNidSet.forEach(procedure);
+            }
+            return;
+        }
+        for (int citingNid : citingNids) {
+            procedure.value(citingNid);
+        }
+    }
+
+    /**
+     * @return the sorted array with the nid inserted, or the same array if it already holds the nid.
+     */
+    private static int[] insert(int[] sortedNids, int nid) {
+        if (sortedNids == null) {
+            return new int[]{nid};
+        }
+        int index = Arrays.binarySearch(sortedNids, nid);
+        if (index >= 0) {
+            return sortedNids;
+        }
+        int insertionPoint = -index - 1;
+        int[] newNids = new int[sortedNids.length + 1];
+        System.arraycopy(sortedNids, 0, newNids, 0, insertionPoint);
+        newNids[insertionPoint] = nid;
+        System.arraycopy(sortedNids, insertionPoint, newNids, insertionPoint + 1, sortedNids.length - insertionPoint);
+        return newNids;
+    }
+
+    private static ConcurrentNidBitSet toNidSet(int[] nids) {
+        ConcurrentNidBitSet nidSet = new ConcurrentNidBitSet();
+        for (int nid : nids) {
+            nidSet.add(nid);
+        }
+        return nidSet;
+    }
+
+    private static int[] readNids(DataInputStream dis) throws IOException {
+        int[] nids = new int[dis.readInt()];
+        for (int i = 0; i < nids.length; i++) {
+            nids[i] = dis.readInt();
+        }
+        return nids;
+    }
+
+    private static void writeNids(DataOutputStream dos, int[] nids) throws IOException {
+        dos.writeInt(nids.length);
+        for (int nid : nids) {
+            dos.writeInt(nid);
+        }
+    }
+}
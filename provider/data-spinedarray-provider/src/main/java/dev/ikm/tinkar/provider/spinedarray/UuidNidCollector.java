@@ -15,26 +15,22 @@
  */
 package dev.ikm.tinkar.provider.spinedarray;
 
-import dev.ikm.tinkar.common.sets.ConcurrentHashSet;
 import dev.ikm.tinkar.common.util.time.Stopwatch;
 import dev.ikm.tinkar.component.FieldDataType;
 import dev.ikm.tinkar.entity.EntityRecordFactory;
-import org.eclipse.collections.impl.map.mutable.ConcurrentHashMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.UUID;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.ObjIntConsumer;
 
 public class UuidNidCollector implements ObjIntConsumer<byte[]> {
     private static final Logger LOG = LoggerFactory.getLogger(UuidNidCollector.class);
-    final ConcurrentHashMap<UUID, Integer> uuidToNidMap;
-    final ConcurrentHashSet<Integer> patternNids;
-    final ConcurrentHashSet<Integer> conceptNids;
-    final ConcurrentHashSet<Integer> semanticNids;
-    final ConcurrentHashSet<Integer> stampNids;
-    final ConcurrentHashMap<Integer, ConcurrentHashSet<Integer>> patternElementNidsMap;
+    /**
+     * Null if the uuid index was read from disk, and UUIDs need not be collected.
+     */
+    final UuidNidIndex uuidNidIndex;
+    final NidBitSetFileStore nidSets;
 
 
     AtomicInteger totalCount = new AtomicInteger();
@@ -45,18 +41,9 @@ public class UuidNidCollector implements ObjIntConsumer<byte[]> {
     AtomicInteger other = new AtomicInteger();
     Stopwatch stopwatch = new Stopwatch();
 
-    public UuidNidCollector(ConcurrentHashMap<UUID, Integer> uuidToNidMap,
-                            ConcurrentHashSet<Integer> patternNids,
-                            ConcurrentHashSet<Integer> conceptNids,
-                            ConcurrentHashSet<Integer> semanticNids,
-                            ConcurrentHashSet<Integer> stampNids,
-                            ConcurrentHashMap<Integer, ConcurrentHashSet<Integer>> patternElementNidsMap) {
-        this.uuidToNidMap = uuidToNidMap;
-        this.patternNids = patternNids;
-        this.conceptNids = conceptNids;
-        this.semanticNids = semanticNids;
-        this.stampNids = stampNids;
-        this.patternElementNidsMap = patternElementNidsMap;
+    public UuidNidCollector(UuidNidIndex uuidNidIndex, NidBitSetFileStore nidSets) {
+        this.uuidNidIndex = uuidNidIndex;
+        this.nidSets = nidSets;
     }
 
     @Override
@@ -72,40 +59,39 @@ public void accept(byte[] bytes, int nid) {
                 patternCount.incrementAndGet();
                 totalCount.incrementAndGet();
                 typeToProcess = true;
-                this.patternNids.add(nid);
+                nidSets.patternNids.add(nid);
                 break;
             case CONCEPT_CHRONOLOGY:
                 conceptCount.incrementAndGet();
                 totalCount.incrementAndGet();
-                this.conceptNids.add(nid);
+                nidSets.conceptNids.add(nid);
                 typeToProcess = true;
                 break;
             case SEMANTIC_CHRONOLOGY:
                 semanticCount.incrementAndGet();
                 totalCount.incrementAndGet();
                 typeToProcess = true;
-                semanticNids.add(nid);
+                nidSets.semanticNids.add(nid);
                 break;
             case STAMP:
                 stampCount.incrementAndGet();
                 totalCount.incrementAndGet();
                 typeToProcess = true;
-                stampNids.add(nid);
+                nidSets.stampNids.add(nid);
                 break;
             default:
                 other.incrementAndGet();
                 totalCount.incrementAndGet();
         }
         if (typeToProcess == true) {
-            EntityRecordFactory.collectUuids(bytes, patternElementNidsMap, uuidToNidMap);
+            EntityRecordFactory.collectUuids(bytes, nidSets::addToPatternElementSet, uuidNidIndex == null ? null : uuidNidIndex::put);
             /*
             Entity<?> entity = EntityRecordFactory.make(bytes);
             if (entity instanceof SemanticEntity semanticEntity) {
-                patternElementNidsMap.getIfAbsentPut(semanticEntity.patternNid(), integer -> new ConcurrentHashSet())
-                        .add(semanticEntity.nid());
+                nidSets.addToPatternElementSet(semanticEntity.patternNid(), semanticEntity.nid());
             }
             for (UUID uuid : entity.asUuidArray()) {
-                uuidToNidMap.put(uuid, entity.nid());
+                uuidNidIndex.put(uuid, entity.nid());
             }
 
              */
@@ -122,7 +108,9 @@ public String report() {
         sb.append("Finished: ").append(this.getClass().getSimpleName());
         sb.append("\nDuration: ").append(stopwatch.durationString());
         sb.append("\nAverage realization time: ").append(stopwatch.averageDurationForElementString(totalCount.get()));
-        sb.append("\nUUIDs: ").append(uuidToNidMap.size());
+        if (uuidNidIndex != null) {
+            sb.append("\nUUIDs: ").append(uuidNidIndex.size());
+        }
         if (conceptCount.get() > 0) {
             sb.append("\nConcepts: ").append(conceptCount);
         }
@@ -0,0 +1,346 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.provider.spinedarray;
+
+import dev.ikm.tinkar.collection.SpineFileUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.IntSupplier;
+
+/**
+ * Persistent UUID to nid index backed by primitive, open-addressed hash tables.
+ * <p>
+ * The index is split into a fixed number of segments, each holding parallel {@code long[]} most and least
+ * significant bit arrays and an {@code int[]} nid array. Each segment is stored as a spine file in the index
+ * directory, and is memory-mapped and bulk copied into its arrays at open, so opening the index does not
+ * depend on decoding any entities. Segments are guarded by a {@link StampedLock}, allowing lock-free
+ * optimistic reads on the lookup path.
+ * <p>
+ * A nid value of 0 marks an empty slot. Nids are allocated upward from {@code Integer.MIN_VALUE + 1}, and
+ * the spined maps reject 0 as an index, so 0 is never a valid nid.
+ */
+public class UuidNidIndex {
+    private static final Logger LOG = LoggerFactory.getLogger(UuidNidIndex.class);
+    public static final int NOT_FOUND = Integer.MIN_VALUE;
+    private static final int SEGMENT_COUNT = 256;
+    private static final int SEGMENT_SHIFT = 24;
+    private static final int INITIAL_SEGMENT_CAPACITY = 1024;
+    private static final int EMPTY_SLOT = 0;
+    // capacity, size
+    private static final int HEADER_BYTES = 8;
+    private static final String TEMP_PREFIX = "tmp-";
+
+    private final File directory;
+    private final Segment[] segments = new Segment[SEGMENT_COUNT];
+    private final AtomicInteger size = new AtomicInteger();
+
+    public UuidNidIndex(File directory) {
+        this.directory = directory;
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = new Segment(new Table(INITIAL_SEGMENT_CAPACITY), 0);
+        }
+    }
+
+    /**
+     * @return true if a previously saved index exists in the directory, false if the index must be
+     * populated from the entities in the store.
+     */
+    public boolean exists() {
+        return SpineFileUtil.readSpineCount(directory) == SEGMENT_COUNT;
+    }
+
+    /**
+     * Map each saved segment file and copy its contents into the segment's arrays.
+     *
+     * @return the number of UUIDs read.
+     */
+    public int read() throws IOException {
+        int uuidsRead = 0;
+        for (int segmentIndex = 0; segmentIndex < SEGMENT_COUNT; segmentIndex++) {
+            File segmentFile = new File(directory, SpineFileUtil.SPINE_PREFIX + segmentIndex);
+            if (segmentFile.exists()) {
+                try (FileChannel channel = FileChannel.open(segmentFile.toPath(), StandardOpenOption.READ)) {
+                    MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                    int capacity = buffer.getInt();
+                    int segmentSize = buffer.getInt();
+                    if (capacity <= 0 || Integer.bitCount(capacity) != 1 || channel.size() != segmentFileSize(capacity)) {
+                        throw new IOException("Invalid uuid index segment: " + segmentFile);
+                    }
+                    long[] msbs = new long[capacity];
+                    long[] lsbs = new long[capacity];
+                    int[] nids = new int[capacity];
+                    buffer.asLongBuffer().get(msbs);
+                    buffer.position(HEADER_BYTES + capacity * Long.BYTES);
+                    buffer.asLongBuffer().get(lsbs);
+                    buffer.position(HEADER_BYTES + capacity * Long.BYTES * 2);
+                    buffer.asIntBuffer().get(nids);
+                    segments[segmentIndex] = new Segment(new Table(msbs, lsbs, nids), segmentSize);
+                    uuidsRead += segmentSize;
+                }
+            }
+        }
+        size.set(uuidsRead);
+        return uuidsRead;
+    }
+
+    /**
+     * Write each segment that changed since the last write. Each segment is written to a temporary file that is
+     * forced to disk and moved over the segment file, and the spine count that marks the index as saved is
+     * written after every segment, so a crash while writing leaves each segment file as it was.
+     *
+     * @return true if any segment was written.
+     */
+    public boolean write() throws IOException {
+        directory.mkdirs();
+        boolean wroteAny = false;
+        for (int segmentIndex = 0; segmentIndex < SEGMENT_COUNT; segmentIndex++) {
+            Segment segment = segments[segmentIndex];
+            if (segment.changed.getAndSet(false)) {
+                wroteAny = true;
+                long stamp = segment.lock.readLock();
+                try {
+                    writeSegment(segmentIndex, segment);
+                } catch (IOException | RuntimeException e) {
+                    segment.changed.set(true);
+                    throw e;
+                } finally {
+                    segment.lock.unlockRead(stamp);
+                }
+            }
+        }
+        if (!exists()) {
+            // Written once, after the first complete write, rather than replaced on every write.
+            SpineFileUtil.writeSpineCount(directory, SEGMENT_COUNT);
+        }
+        return wroteAny;
+    }
+
+    private void writeSegment(int segmentIndex, Segment segment) throws IOException {
+        File segmentFile = new File(directory, SpineFileUtil.SPINE_PREFIX + segmentIndex);
+        File tempFile = new File(directory, TEMP_PREFIX + segmentIndex);
+        Table table = segment.table;
+        int capacity = table.nids.length;
+        try (FileChannel channel = FileChannel.open(tempFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentFileSize(capacity));
+            buffer.putInt(capacity);
+            buffer.putInt(segment.size);
+            buffer.asLongBuffer().put(table.msbs);
+            buffer.position(HEADER_BYTES + capacity * Long.BYTES);
+            buffer.asLongBuffer().put(table.lsbs);
+            buffer.position(HEADER_BYTES + capacity * Long.BYTES * 2);
+            buffer.asIntBuffer().put(table.nids);
+            buffer.force();
+        }
+        Files.move(tempFile.toPath(), segmentFile.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static long segmentFileSize(int capacity) {
+        return HEADER_BYTES + (long) capacity * (Long.BYTES * 2 + Integer.BYTES);
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    public boolean containsKey(UUID uuid) {
+        return get(uuid) != NOT_FOUND;
+    }
+
+    /**
+     * @return the nid associated with the uuid, or {@link #NOT_FOUND} if the uuid is not in the index.
+     */
+    public int get(UUID uuid) {
+        return get(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+    }
+
+    public int get(long msb, long lsb) {
+        int hash = hash(msb, lsb);
+        return segmentFor(hash).get(msb, lsb, hash);
+    }
+
+    public void put(UUID uuid, int nid) {
+        put(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), nid);
+    }
+
+    public void put(long msb, long lsb, int nid) {
+        if (nid == EMPTY_SLOT || nid == NOT_FOUND) {
+            throw new IllegalStateException("Invalid nid for uuid index: " + nid);
+        }
+        int hash = hash(msb, lsb);
+        segmentFor(hash).put(msb, lsb, hash, nid, null);
+    }
+
+    /**
+     * Return the nid associated with the uuid, or if absent, associate the uuid with the nid provided by the
+     * supplier. The supplier is called at most once, while holding the segment lock.
+     */
+    public int getIfAbsentPut(UUID uuid, IntSupplier nidSupplier) {
+        long msb = uuid.getMostSignificantBits();
+        long lsb = uuid.getLeastSignificantBits();
+        int hash = hash(msb, lsb);
+        Segment segment = segmentFor(hash);
+        int nid = segment.get(msb, lsb, hash);
+        if (nid != NOT_FOUND) {
+            return nid;
+        }
+        return segment.put(msb, lsb, hash, EMPTY_SLOT, nidSupplier);
+    }
+
+    private Segment segmentFor(int hash) {
+        return segments[hash >>> SEGMENT_SHIFT];
+    }
+
+    private static int hash(long msb, long lsb) {
+        long h = msb ^ Long.rotateLeft(lsb, 32);
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    private static int probe(Table table, long msb, long lsb, int hash) {
+        int mask = table.nids.length - 1;
+        for (int probes = 0, slot = hash & mask; probes < table.nids.length; probes++, slot = (slot + 1) & mask) {
+            int nid = table.nids[slot];
+            if (nid == EMPTY_SLOT) {
+                return NOT_FOUND;
+            }
+            if (table.msbs[slot] == msb && table.lsbs[slot] == lsb) {
+                return nid;
+            }
+        }
+        return NOT_FOUND;
+    }
+
+    private record Table(long[] msbs, long[] lsbs, int[] nids) {
+        Table(int capacity) {
+            this(new long[capacity], new long[capacity], new int[capacity]);
+        }
+    }
+
+    private final class Segment {
+        final StampedLock lock = new StampedLock();
+        final AtomicBoolean changed = new AtomicBoolean();
+        Table table;
+        int size;
+
+        Segment(Table table, int size) {
+            this.table = table;
+            this.size = size;
+        }
+
+        int get(long msb, long lsb, int hash) {
+            long stamp = lock.tryOptimisticRead();
+            if (stamp != 0) {
+                int nid = probe(table, msb, lsb, hash);
+                if (lock.validate(stamp)) {
+                    return nid;
+                }
+            }
+            stamp = lock.readLock();
+            try {
+                return probe(table, msb, lsb, hash);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        /**
+         * @param nid         the nid to associate with the uuid, ignored if nidSupplier is not null.
+         * @param nidSupplier if not null, only associate a new nid if the uuid is absent.
+         * @return the nid associated with the uuid after the operation.
+         */
+        int put(long msb, long lsb, int hash, int nid, IntSupplier nidSupplier) {
+            long stamp = lock.writeLock();
+            try {
+                long[] msbs = table.msbs;
+                long[] lsbs = table.lsbs;
+                int[] nids = table.nids;
+                int mask = nids.length - 1;
+                int slot = hash & mask;
+                while (nids[slot] != EMPTY_SLOT) {
+                    if (msbs[slot] == msb && lsbs[slot] == lsb) {
+                        if (nidSupplier != null) {
+                            return nids[slot];
+                        }
+                        if (nids[slot] != nid) {
+                            nids[slot] = nid;
+                            changed.set(true);
+                        }
+                        return nid;
+                    }
+                    slot = (slot + 1) & mask;
+                }
+                if (nidSupplier != null) {
+                    nid = nidSupplier.getAsInt();
+                }
+                msbs[slot] = msb;
+                lsbs[slot] = lsb;
+                nids[slot] = nid;
+                size++;
+                UuidNidIndex.this.size.incrementAndGet();
+                changed.set(true);
+                if (size * 4 > nids.length * 3) {
+                    resize();
+                }
+                return nid;
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        private void resize() {
+            Table oldTable = this.table;
+            int newCapacity = oldTable.nids.length << 1;
+            if (newCapacity < 0) {
+                throw new IllegalStateException("Uuid index segment capacity exceeded");
+            }
+            Table newTable = new Table(newCapacity);
+            int mask = newCapacity - 1;
+            for (int i = 0; i < oldTable.nids.length; i++) {
+                if (oldTable.nids[i] != EMPTY_SLOT) {
+                    int slot = hash(oldTable.msbs[i], oldTable.lsbs[i]) & mask;
+                    while (newTable.nids[slot] != EMPTY_SLOT) {
+                        slot = (slot + 1) & mask;
+                    }
+                    newTable.msbs[slot] = oldTable.msbs[i];
+                    newTable.lsbs[slot] = oldTable.lsbs[i];
+                    newTable.nids[slot] = oldTable.nids[i];
+                }
+            }
+            this.table = newTable;
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Resized uuid index segment to: " + newCapacity);
+            }
+        }
+    }
+}
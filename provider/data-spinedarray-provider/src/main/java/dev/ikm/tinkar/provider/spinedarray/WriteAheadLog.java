@@ -0,0 +1,408 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.provider.spinedarray;
+
+import dev.ikm.tinkar.common.service.TinkExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+
+/**
+ * Append only log of the merges applied to the spined array provider since its last checkpoint, and of the nids
+ * assigned to uuids, which may be cited by merged bytes before the entity with the uuid is merged.
+ * <p>
+ * Each record is an int length, an int CRC32C checksum, and a payload starting with a record type byte. A merge
+ * payload follows with int nid, int pattern nid, int referenced component nid, and the merged value bytes. A nid
+ * assignment payload follows with the uuid's most and least significant bits, and the nid. Records are gathered
+ * in a write buffer, which is written to the current segment file with one channel write when it fills or when
+ * the log is synced, and made durable according to the {@link SyncPolicy}. Concurrent committers that require durability share a
+ * single write and fsync: the first to take the sync lock writes and forces everything appended so far, and the
+ * others find their record already durable when they get the lock.
+ * <p>
+ * A checkpoint {@link #rotate() rotates} to a new segment, writes the spines, and then
+ * {@link #deleteSegmentsThrough(long) deletes} the segments that the spines now contain. At open, the segments
+ * remaining from before a crash are {@link #open(Replay, NidAssignmentReplay) replayed} in order, stopping at the first torn record.
+ */
+public class WriteAheadLog implements AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(WriteAheadLog.class);
+    public static final long DEFAULT_SYNC_INTERVAL_MS = 100;
+    private static final String SEGMENT_PREFIX = "wal-";
+    // length, checksum
+    private static final int RECORD_HEADER_BYTES = 8;
+    private static final byte MERGE_RECORD = 1;
+    private static final byte NID_ASSIGNMENT_RECORD = 2;
+    // type, nid, patternNid, referencedComponentNid
+    private static final int MERGE_FIXED_BYTES = 13;
+    // type, msb, lsb, nid
+    private static final int NID_ASSIGNMENT_BYTES = 21;
+    private static final int MAX_RECORD_BYTES = 1 << 30;
+    private static final int WRITE_BUFFER_BYTES = 1 << 20;
+
+    public enum SyncPolicy {
+        /**
+         * Each merge returns only after its record is forced to disk. Concurrent merges share an fsync.
+         */
+        EVERY_COMMIT,
+        /**
+         * Records are written and forced to disk by a background task at the sync interval, or written when the
+         * write buffer fills, bounding loss on a crash or power failure to the interval.
+         */
+        BATCHED,
+        /**
+         * Records are written when the write buffer fills, and only forced to disk at rotation and close.
+         */
+        NONE
+    }
+
+    @FunctionalInterface
+    public interface Replay {
+        void accept(int nid, int patternNid, int referencedComponentNid, byte[] value);
+    }
+
+    @FunctionalInterface
+    public interface NidAssignmentReplay {
+        void accept(long mostSignificantBits, long leastSignificantBits, int nid);
+    }
+
+    private final File directory;
+    private final SyncPolicy syncPolicy;
+    private final long syncIntervalMs;
+    private final Object appendLock = new Object();
+    private final ReentrantLock syncLock = new ReentrantLock();
+    // Guarded by appendLock
+    private final ByteBuffer writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES);
+    private FileChannel channel;
+    private long generation;
+    private long segmentBytes;
+    private long appendedSequence;
+
+    private volatile long durableSequence;
+    private ScheduledFuture<?> syncTask;
+
+    public WriteAheadLog(File directory, SyncPolicy syncPolicy, long syncIntervalMs) {
+        this.directory = directory;
+        this.syncPolicy = syncPolicy;
+        this.syncIntervalMs = syncIntervalMs;
+    }
+
+    /**
+     * Replay the merges left from before the last checkpoint, ignoring nid assignments, then start a new segment
+     * for appends.
+     *
+     * @return the number of records replayed.
+     */
+    public int open(Replay replay) throws IOException {
+        return open(replay, (mostSignificantBits, leastSignificantBits, nid) -> {});
+    }
+
+    /**
+     * Replay the segments left from before the last checkpoint, in the order the records were appended, then start
+     * a new segment for appends.
+     *
+     * @return the number of records replayed.
+     */
+    public int open(Replay replay, NidAssignmentReplay nidAssignmentReplay) throws IOException {
+        directory.mkdirs();
+        long[] generations = segmentGenerations();
+        int replayed = 0;
+        for (long segmentGeneration : generations) {
+            replayed += replaySegment(segmentFile(segmentGeneration), replay, nidAssignmentReplay);
+        }
+        synchronized (appendLock) {
+            this.generation = generations.length == 0 ? 0 : generations[generations.length - 1] + 1;
+            openSegment();
+        }
+        if (syncPolicy == SyncPolicy.BATCHED) {
+            this.syncTask = TinkExecutor.scheduled().scheduleWithFixedDelay(this::syncQuietly,
+                    syncIntervalMs, syncIntervalMs, TimeUnit.MILLISECONDS);
+        }
+        if (replayed > 0) {
+            LOG.info("Replayed " + replayed + " write ahead log records from " + generations.length + " segment(s)");
+        }
+        return replayed;
+    }
+
+    private int replaySegment(File segmentFile, Replay replay, NidAssignmentReplay nidAssignmentReplay)
+            throws IOException {
+        int replayed = 0;
+        CRC32C crc = new CRC32C();
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(segmentFile)))) {
+            while (true) {
+                int length;
+                try {
+                    length = dis.readInt();
+                } catch (EOFException e) {
+                    return replayed;
+                }
+                try {
+                    int checksum = dis.readInt();
+                    if (length < Math.min(MERGE_FIXED_BYTES, NID_ASSIGNMENT_BYTES) || length > MAX_RECORD_BYTES) {
+                        LOG.warn("Invalid record length " + length + " in " + segmentFile.getName() + " after " + replayed + " records");
+                        return replayed;
+                    }
+                    byte[] payload = new byte[length];
+                    dis.readFully(payload);
+                    crc.reset();
+                    crc.update(payload);
+                    if ((int) crc.getValue() != checksum) {
+                        LOG.warn("Checksum mismatch in " + segmentFile.getName() + " after " + replayed + " records");
+                        return replayed;
+                    }
+                    ByteBuffer buffer = ByteBuffer.wrap(payload);
+                    byte type = buffer.get();
+                    if (type == MERGE_RECORD) {
+                        int nid = buffer.getInt();
+                        int patternNid = buffer.getInt();
+                        int referencedComponentNid = buffer.getInt();
+                        byte[] value = Arrays.copyOfRange(payload, MERGE_FIXED_BYTES, length);
+                        replay.accept(nid, patternNid, referencedComponentNid, value);
+                    } else if (type == NID_ASSIGNMENT_RECORD && length == NID_ASSIGNMENT_BYTES) {
+                        nidAssignmentReplay.accept(buffer.getLong(), buffer.getLong(), buffer.getInt());
+                    } else {
+                        LOG.warn("Invalid record type " + type + " in " + segmentFile.getName() + " after " + replayed + " records");
+                        return replayed;
+                    }
+                    replayed++;
+                } catch (EOFException e) {
+                    LOG.warn("Torn record at end of " + segmentFile.getName() + " after " + replayed + " records");
+                    return replayed;
+                }
+            }
+        }
+    }
+
+    /**
+     * Append a merge to the log, waiting for it to become durable if the sync policy is
+     * {@link SyncPolicy#EVERY_COMMIT}.
+     */
+    public void append(int nid, int patternNid, int referencedComponentNid, byte[] value) throws IOException {
+        ByteBuffer record = newRecord(MERGE_RECORD, MERGE_FIXED_BYTES + value.length)
+                .putInt(nid)
+                .putInt(patternNid)
+                .putInt(referencedComponentNid)
+                .put(value);
+        long sequence = append(record);
+        if (syncPolicy == SyncPolicy.EVERY_COMMIT) {
+            sync(sequence);
+        }
+    }
+
+    /**
+     * Append the assignment of a nid to a uuid. The assignment is not synced on its own: a merge that cites the
+     * nid is appended after it, so syncing that merge also makes the assignment durable.
+     */
+    public void appendNidAssignment(long mostSignificantBits, long leastSignificantBits, int nid) throws IOException {
+        append(newRecord(NID_ASSIGNMENT_RECORD, NID_ASSIGNMENT_BYTES)
+                .putLong(mostSignificantBits)
+                .putLong(leastSignificantBits)
+                .putInt(nid));
+    }
+
+    private static ByteBuffer newRecord(byte type, int payloadLength) {
+        return ByteBuffer.allocate(RECORD_HEADER_BYTES + payloadLength)
+                .putInt(payloadLength)
+                .putInt(0)
+                .put(type);
+    }
+
+    /**
+     * Checksum a filled record and append it.
+     *
+     * @return the sequence of the record
+     */
+    private long append(ByteBuffer record) throws IOException {
+        CRC32C crc = new CRC32C();
+        crc.update(record.array(), RECORD_HEADER_BYTES, record.position() - RECORD_HEADER_BYTES);
+        record.putInt(4, (int) crc.getValue());
+        record.flip();
+        long sequence;
+        synchronized (appendLock) {
+            if (record.remaining() > writeBuffer.remaining()) {
+                flushWriteBuffer();
+            }
+            if (record.remaining() > writeBuffer.remaining()) {
+                writeFully(record);
+            } else {
+                writeBuffer.put(record);
+            }
+            segmentBytes += record.limit();
+            sequence = ++appendedSequence;
+        }
+        return sequence;
+    }
+
+    /**
+     * Force the log to disk, at least through the record with the given sequence.
+     */
+    private void sync(long sequence) throws IOException {
+        if (durableSequence >= sequence) {
+            return;
+        }
+        syncLock.lock();
+        try {
+            if (durableSequence >= sequence) {
+                return;
+            }
+            FileChannel channelToSync;
+            long targetSequence;
+            synchronized (appendLock) {
+                flushWriteBuffer();
+                channelToSync = this.channel;
+                targetSequence = this.appendedSequence;
+            }
+            channelToSync.force(false);
+            durableSequence = targetSequence;
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    private void syncQuietly() {
+        try {
+            long sequence;
+            synchronized (appendLock) {
+                sequence = this.appendedSequence;
+            }
+            sync(sequence);
+        } catch (IOException e) {
+            LOG.error(e.getLocalizedMessage(), e);
+        }
+    }
+
+    /**
+     * @return the number of bytes appended since the last rotation.
+     */
+    public long segmentBytes() {
+        synchronized (appendLock) {
+            return segmentBytes;
+        }
+    }
+
+    /**
+     * Force and close the current segment, and start a new one. Records appended before the rotation are
+     * contained in the segments up to and including the returned generation.
+     *
+     * @return the generation of the segment that was closed.
+     */
+    public long rotate() throws IOException {
+        syncLock.lock();
+        try {
+            synchronized (appendLock) {
+                flushWriteBuffer();
+                channel.force(false);
+                channel.close();
+                durableSequence = appendedSequence;
+                long rotatedGeneration = generation;
+                generation++;
+                openSegment();
+                return rotatedGeneration;
+            }
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * Delete the segments whose records are now contained in the checkpointed spines.
+     */
+    public void deleteSegmentsThrough(long checkpointedGeneration) {
+        for (long segmentGeneration : segmentGenerations()) {
+            if (segmentGeneration <= checkpointedGeneration) {
+                File segmentFile = segmentFile(segmentGeneration);
+                if (!segmentFile.delete()) {
+                    LOG.warn("Unable to delete write ahead log segment: " + segmentFile);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (syncTask != null) {
+            syncTask.cancel(false);
+        }
+        syncLock.lock();
+        try {
+            synchronized (appendLock) {
+                if (channel != null && channel.isOpen()) {
+                    flushWriteBuffer();
+                    channel.force(false);
+                    channel.close();
+                    durableSequence = appendedSequence;
+                }
+            }
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * Write the buffered records to the segment. Called holding appendLock.
+     */
+    private void flushWriteBuffer() throws IOException {
+        if (writeBuffer.position() > 0) {
+            writeBuffer.flip();
+            try {
+                writeFully(writeBuffer);
+            } finally {
+                writeBuffer.clear();
+            }
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private void openSegment() throws IOException {
+        this.channel = FileChannel.open(segmentFile(generation).toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        this.segmentBytes = 0;
+    }
+
+    private File segmentFile(long segmentGeneration) {
+        return new File(directory, SEGMENT_PREFIX + segmentGeneration);
+    }
+
+    private long[] segmentGenerations() {
+        File[] segmentFiles = directory.listFiles((dir, name) -> name.startsWith(SEGMENT_PREFIX));
+        if (segmentFiles == null) {
+            return new long[0];
+        }
+        long[] generations = new long[segmentFiles.length];
+        for (int i = 0; i < segmentFiles.length; i++) {
+            generations[i] = Long.parseLong(segmentFiles[i].getName().substring(SEGMENT_PREFIX.length()));
+        }
+        Arrays.sort(generations);
+        return generations;
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.provider.spinedarray;
+
+import dev.ikm.tinkar.entity.ConceptRecord;
+import dev.ikm.tinkar.entity.ConceptRecordBuilder;
+import dev.ikm.tinkar.entity.ConceptVersionRecord;
+import dev.ikm.tinkar.entity.ConceptVersionRecordBuilder;
+import dev.ikm.tinkar.entity.RecordListBuilder;
+import dev.ikm.tinkar.entity.StampRecord;
+import dev.ikm.tinkar.entity.StampRecordBuilder;
+import dev.ikm.tinkar.entity.StampVersionRecord;
+import dev.ikm.tinkar.entity.StampVersionRecordBuilder;
+import org.eclipse.collections.api.factory.primitive.IntLists;
+import org.eclipse.collections.api.list.primitive.MutableIntList;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StampIndexTest {
+    private static final int STATE_NID = -2_000_000;
+    private static final int AUTHOR_NID = -2_000_001;
+    private static final int MODULE_NID = -2_000_002;
+    private static final int PATH_NID = -2_000_003;
+
+    @TempDir
+    File tempDir;
+
+    @Test
+    void stampsByTime() {
+        StampIndex index = new StampIndex(tempDir);
+        index.index(stamp(-100, 1_000L));
+        index.index(stamp(-101, 2_000L, 3_000L));
+        index.index(stamp(-102, 3_000L));
+
+        assertArrayEquals(new int[]{-100, -101}, stampNids(index, 0L, 2_000L));
+        assertArrayEquals(new int[]{-101, -102, -101}, stampNids(index, 2_000L, 3_000L));
+        assertArrayEquals(new int[0], stampNids(index, 4_000L, 5_000L));
+        assertArrayEquals(new int[0], stampNids(index, 3_000L, 1_000L));
+    }
+
+    @Test
+    void citingNidsAreSortedAndDistinct() {
+        StampIndex index = new StampIndex(tempDir);
+        index.index(concept(-10, -100, -101));
+        index.index(concept(-12, -100));
+        index.index(concept(-11, -100));
+        index.index(concept(-11, -100));
+
+        assertArrayEquals(new int[]{-12, -11, -10}, citingNids(index, -100));
+        assertArrayEquals(new int[]{-10}, citingNids(index, -101));
+        assertArrayEquals(new int[0], citingNids(index, -102));
+        assertEquals(2, index.size());
+    }
+
+    @Test
+    void citingNidsPromotedToSet() {
+        StampIndex index = new StampIndex(tempDir);
+        int citingCount = StampIndex.MAX_ARRAY_CITATIONS * 2;
+        int[] expected = new int[citingCount];
+        for (int i = 0; i < citingCount; i++) {
+            int nid = -10_000 + i;
+            expected[i] = nid;
+            index.index(concept(nid, -100));
+        }
+        assertArrayEquals(expected, citingNids(index, -100));
+        assertEquals(1, index.size());
+    }
+
+    @Test
+    void writeRead() throws IOException {
+        StampIndex index = new StampIndex(tempDir);
+        assertFalse(index.exists());
+        assertFalse(index.write());
+        index.index(stamp(-100, 1_000L));
+        index.index(concept(-10, -100));
+        for (int i = 0; i <= StampIndex.MAX_ARRAY_CITATIONS; i++) {
+            index.index(concept(-10_000 + i, -101));
+        }
+        assertTrue(index.write());
+        assertFalse(index.write());
+
+        StampIndex reopened = new StampIndex(tempDir);
+        assertTrue(reopened.exists());
+        assertEquals(2, reopened.read());
+        assertArrayEquals(new int[]{-100}, stampNids(reopened, 0L, 1_000L));
+        assertArrayEquals(new int[]{-10}, citingNids(reopened, -100));
+        assertArrayEquals(citingNids(index, -101), citingNids(reopened, -101));
+        assertFalse(reopened.write());
+    }
+
+    @Test
+    void failedWriteIsRetried() throws IOException {
+        StampIndex index = new StampIndex(tempDir);
+        index.index(stamp(-100, 1_000L));
+        // A directory in place of the temporary file makes the write fail.
+        File tempFile = new File(tempDir, "tmp-stamps");
+        assertTrue(tempFile.mkdir());
+        assertThrows(IOException.class, index::write);
+        assertFalse(index.exists());
+
+        assertTrue(tempFile.delete());
+        assertTrue(index.write());
+        assertTrue(index.exists());
+        assertFalse(new File(tempDir, "tmp-stamps").exists());
+    }
+
+    private static int[] stampNids(StampIndex index, long fromEpochMillis, long toEpochMillis) {
+        MutableIntList stampNids = IntLists.mutable.empty();
+        index.forEachStampNid(fromEpochMillis, toEpochMillis, stampNids::add);
+        return stampNids.toArray();
+    }
+
+    private static int[] citingNids(StampIndex index, int stampNid) {
+        MutableIntList citingNids = IntLists.mutable.empty();
+        index.forEachCitingNid(stampNid, citingNids::add);
+        return citingNids.toArray();
+    }
+
+    private static StampRecord stamp(int nid, long... times) {
+        UUID uuid = UUID.randomUUID();
+        RecordListBuilder<StampVersionRecord> versions = RecordListBuilder.make();
+        StampRecord stampRecord = StampRecordBuilder.builder()
+                .nid(nid)
+                .mostSignificantBits(uuid.getMostSignificantBits())
+                .leastSignificantBits(uuid.getLeastSignificantBits())
+                .versions(versions)
+                .build();
+        for (long time : times) {
+            versions.add(StampVersionRecordBuilder.builder()
+                    .chronology(stampRecord)
+                    .stateNid(STATE_NID)
+                    .time(time)
+                    .authorNid(AUTHOR_NID)
+                    .moduleNid(MODULE_NID)
+                    .pathNid(PATH_NID)
+                    .build());
+        }
+        return StampRecordBuilder.builder(stampRecord).versions(versions.toImmutable()).build();
+    }
+
+    private static ConceptRecord concept(int nid, int... stampNids) {
+        UUID uuid = UUID.randomUUID();
+        RecordListBuilder<ConceptVersionRecord> versions = RecordListBuilder.make();
+        ConceptRecord conceptRecord = ConceptRecordBuilder.builder()
+                .nid(nid)
+                .mostSignificantBits(uuid.getMostSignificantBits())
+                .leastSignificantBits(uuid.getLeastSignificantBits())
+                .versions(versions)
+                .build();
+        for (int stampNid : stampNids) {
+            versions.add(ConceptVersionRecordBuilder.builder()
+                    .chronology(conceptRecord)
+                    .stampNid(stampNid)
+                    .build());
+        }
+        return ConceptRecordBuilder.builder(conceptRecord).versions(versions.toImmutable()).build();
+    }
+}
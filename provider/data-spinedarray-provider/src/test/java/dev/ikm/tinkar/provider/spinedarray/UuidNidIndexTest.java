@@ -0,0 +1,59 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.provider.spinedarray;
+
+import dev.ikm.tinkar.common.service.PrimitiveDataService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UuidNidIndexTest {
+
+    @TempDir
+    File tempDir;
+
+    @Test
+    void putGetWriteRead() throws IOException {
+        UuidNidIndex index = new UuidNidIndex(tempDir);
+        assertFalse(index.exists());
+        AtomicInteger nextNid = new AtomicInteger(PrimitiveDataService.FIRST_NID);
+        UUID[] uuids = new UUID[100_000];
+        for (int i = 0; i < uuids.length; i++) {
+            uuids[i] = UUID.randomUUID();
+            assertEquals(PrimitiveDataService.FIRST_NID + i, index.getIfAbsentPut(uuids[i], nextNid::getAndIncrement));
+        }
+        assertEquals(uuids.length, index.size());
+        assertEquals(PrimitiveDataService.FIRST_NID, index.getIfAbsentPut(uuids[0], nextNid::getAndIncrement));
+        assertEquals(UuidNidIndex.NOT_FOUND, index.get(UUID.randomUUID()));
+        assertTrue(index.write());
+
+        UuidNidIndex reopened = new UuidNidIndex(tempDir);
+        assertTrue(reopened.exists());
+        assertEquals(uuids.length, reopened.read());
+        for (int i = 0; i < uuids.length; i++) {
+            assertEquals(PrimitiveDataService.FIRST_NID + i, reopened.get(uuids[i]));
+        }
+        assertFalse(reopened.write());
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.provider.spinedarray;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class WriteAheadLogTest {
+
+    @TempDir
+    File tempDir;
+
+    @Test
+    void replayAfterCrashStopsAtTornRecord() throws IOException {
+        WriteAheadLog log = new WriteAheadLog(tempDir, WriteAheadLog.SyncPolicy.EVERY_COMMIT, WriteAheadLog.DEFAULT_SYNC_INTERVAL_MS);
+        assertEquals(0, log.open((nid, patternNid, referencedComponentNid, value) -> {}));
+        for (int i = 0; i < 100; i++) {
+            log.append(i, i + 1, i + 2, new byte[]{(byte) i, 1, 2, 3});
+        }
+        log.close();
+
+        // Simulate a crash part way through appending a record.
+        File segment = new File(tempDir, "wal-0");
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            file.setLength(file.length() - 2);
+        }
+
+        List<byte[]> replayed = new ArrayList<>();
+        WriteAheadLog reopened = new WriteAheadLog(tempDir, WriteAheadLog.SyncPolicy.NONE, WriteAheadLog.DEFAULT_SYNC_INTERVAL_MS);
+        assertEquals(99, reopened.open((nid, patternNid, referencedComponentNid, value) -> {
+            assertEquals(nid + 1, patternNid);
+            assertEquals(nid + 2, referencedComponentNid);
+            replayed.add(value);
+        }));
+        assertArrayEquals(new byte[]{42, 1, 2, 3}, replayed.get(42));
+
+        long checkpointGeneration = reopened.rotate();
+        reopened.deleteSegmentsThrough(checkpointGeneration);
+        reopened.close();
+        try (WriteAheadLog checkpointed = new WriteAheadLog(tempDir, WriteAheadLog.SyncPolicy.NONE, WriteAheadLog.DEFAULT_SYNC_INTERVAL_MS)) {
+            assertEquals(0, checkpointed.open((nid, patternNid, referencedComponentNid, value) -> {}));
+        }
+    }
+
+    @Test
+    void replayRestoresNidAssignedBeforeCrash() throws IOException {
+        File walDirectory = new File(tempDir, "wal");
+        UuidNidIndex uuidNidIndex = new UuidNidIndex(new File(tempDir, "uuids"));
+        AtomicInteger nextNid = new AtomicInteger(1);
+        WriteAheadLog log = new WriteAheadLog(walDirectory, WriteAheadLog.SyncPolicy.EVERY_COMMIT, WriteAheadLog.DEFAULT_SYNC_INTERVAL_MS);
+        log.open((nid, patternNid, referencedComponentNid, value) -> {});
+
+        // A nid is assigned to a concept, as by nidForUuids, and a semantic citing it is merged, but the process
+        // crashes before the concept itself is merged or a checkpoint writes the uuid index.
+        UUID concept = UUID.randomUUID();
+        int conceptNid = uuidNidIndex.getIfAbsentPut(concept, () -> {
+            int nid = nextNid.getAndIncrement();
+            appendNidAssignment(log, concept, nid);
+            return nid;
+        });
+        int semanticNid = nextNid.getAndIncrement();
+        log.append(semanticNid, 100, conceptNid, new byte[]{1, 2, 3});
+
+        UuidNidIndex reopenedIndex = new UuidNidIndex(new File(tempDir, "reopened-uuids"));
+        AtomicInteger reopenedNextNid = new AtomicInteger(1);
+        try (WriteAheadLog reopened = new WriteAheadLog(walDirectory, WriteAheadLog.SyncPolicy.NONE, WriteAheadLog.DEFAULT_SYNC_INTERVAL_MS)) {
+            assertEquals(2, reopened.open((nid, patternNid, referencedComponentNid, value) -> {
+                        assertEquals(conceptNid, referencedComponentNid);
+                        reopenedNextNid.accumulateAndGet(nid + 1, Math::max);
+                    },
+                    (mostSignificantBits, leastSignificantBits, nid) -> {
+                        reopenedNextNid.accumulateAndGet(nid + 1, Math::max);
+                        reopenedIndex.put(mostSignificantBits, leastSignificantBits, nid);
+                    }));
+        } finally {
+            log.close();
+        }
+        assertEquals(conceptNid, reopenedIndex.get(concept));
+        assertEquals(nextNid.get(), reopenedNextNid.get());
+        // A new uuid is not given the concept's nid.
+        int otherNid = reopenedIndex.getIfAbsentPut(UUID.randomUUID(), reopenedNextNid::getAndIncrement);
+        assertNotEquals(conceptNid, otherNid);
+        assertNotEquals(semanticNid, otherNid);
+    }
+
+    private static void appendNidAssignment(WriteAheadLog log, UUID uuid, int nid) {
+        try {
+            log.appendNidAssignment(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), nid);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
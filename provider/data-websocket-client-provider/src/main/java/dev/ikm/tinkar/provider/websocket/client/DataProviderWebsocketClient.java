@@ -15,244 +15,343 @@
  */
 package dev.ikm.tinkar.provider.websocket.client;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import dev.ikm.tinkar.common.id.PublicId;
 import dev.ikm.tinkar.common.service.DataActivity;
 import dev.ikm.tinkar.common.service.PrimitiveDataSearchResult;
 import dev.ikm.tinkar.common.service.PrimitiveDataService;
+import dev.ikm.tinkar.common.service.TinkExecutor;
 import dev.ikm.tinkar.common.util.uuid.UuidUtil;
-import dev.ikm.tinkar.entity.EntityService;
 import io.activej.bytebuf.ByteBuf;
-import io.activej.bytebuf.ByteBufPool;
 import io.activej.eventloop.Eventloop;
 import io.activej.http.AsyncHttpClient;
 import io.activej.http.HttpRequest;
 import io.activej.http.WebSocket;
 import io.activej.http.WebSocket.Message;
-import io.activej.inject.annotation.Inject;
-import io.activej.inject.annotation.Provides;
-import io.activej.inject.module.Module;
-import io.activej.launcher.Launcher;
-import io.activej.service.ServiceGraphModule;
+import io.activej.promise.Promise;
 import org.eclipse.collections.api.block.procedure.primitive.IntProcedure;
 import org.eclipse.collections.api.list.ImmutableList;
 import org.eclipse.collections.api.list.primitive.ImmutableIntList;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.ObjIntConsumer;
 
-public class DataProviderWebsocketClient
-        extends Launcher
-        implements PrimitiveDataService {
+/**
+ * Data service backed by a {@code DataProviderWebsocketServer}. Requests are tagged with a request id and written
+ * to a single websocket without waiting for earlier responses, so any number of threads can have requests
+ * outstanding at once. Bytes read from the server are kept in a bounded cache, which the server's
+ * {@link RemoteOperations#WRITE_SEQUENCE WRITE_SEQUENCE} notifications invalidate.
+ * <p>
+ * Methods block until their response arrives, so they must not be called on the client's eventloop thread.
+ */
+public class DataProviderWebsocketClient implements PrimitiveDataService {
     private static final Logger LOG = LoggerFactory.getLogger(DataProviderWebsocketClient.class);
-    private static final Integer wsKey = Integer.valueOf(1);
+    /**
+     * Messages of a streamed response the server may send before the client has consumed them.
+     */
+    private static final int STREAM_CREDITS = 4;
+    private static final int BYTE_CACHE_SIZE = 10_240;
     private final URI uri;
-    @Inject
-    AsyncHttpClient httpClient;
-    @Inject
-    Eventloop eventloop;
-    ConcurrentHashMap<Integer, WebSocket> wsMap = new ConcurrentHashMap<>();
+    private final Eventloop eventloop;
+    private final AsyncHttpClient httpClient;
+    private final WebSocket webSocket;
+    private final AtomicInteger requestIds = new AtomicInteger();
+    private final ConcurrentHashMap<Integer, PendingResponse> pendingResponses = new ConcurrentHashMap<>();
+    private final Cache<Integer, byte[]> byteCache = Caffeine.newBuilder().maximumSize(BYTE_CACHE_SIZE).build();
+    private final AtomicLong writeSequence = new AtomicLong();
+    private volatile boolean closed;
+    /**
+     * The latest write, which each new write follows. Only accessed on the eventloop.
+     */
+    private Promise<Void> lastWrite = Promise.complete();
 
     public DataProviderWebsocketClient(URI uri) {
         this.uri = uri;
+        this.eventloop = Eventloop.create();
+        this.eventloop.keepAlive(true);
+        this.httpClient = AsyncHttpClient.create(eventloop);
+        Thread eventloopThread = new Thread(eventloop, "websocket-client-eventloop");
+        eventloopThread.setDaemon(true);
+        eventloopThread.start();
+        this.webSocket = connect();
+        eventloop.execute(this::readNext);
     }
 
     public static void main(String[] args) throws Exception {
-        DataProviderWebsocketClient client = new DataProviderWebsocketClient(new URI("ws://127.0.0.1:8080/"));
-        client.launch(args);
-    }
-
-    @Provides
-    Eventloop eventloop() {
-        return Eventloop.create();
-    }
-
-    @Provides
-    AsyncHttpClient client(Eventloop eventloop) {
-        return AsyncHttpClient.create(eventloop);
-    }
-
-    @Override
-    protected Module getModule() {
-        return ServiceGraphModule.create();
-    }
-
-    @Override
-    protected void run() throws ExecutionException, InterruptedException {
         String url = args.length != 0 ? args[0] : "ws://127.0.0.1:8080/";
         LOG.info("\nWeb Socket request: " + url);
-        CompletableFuture<?> future = eventloop.submit(() -> {
-            getEntity(url, PrimitiveDataService.FIRST_NID);
-        });
-        future.get();
-        future = eventloop.submit(() -> {
-            getEntity(url, PrimitiveDataService.FIRST_NID + 1);
-        });
-        future.get();
-    }
-
-    private void getEntity(String url, int nid) {
-        LOG.info("Sending nid: " + nid);
-        ByteBuf buf = ByteBufPool.allocate(32);
-        buf.writeByte(RemoteOperations.GET_BYTES.token);
-        buf.writeInt(nid);
-        httpClient.webSocketRequest(HttpRequest.get(url))
-                .then(webSocket -> webSocket.writeMessage(Message.binary(buf))
-                        .then(webSocket::readMessage)
-                        .whenResult(message -> {
-                            ByteBuf readBuf = message.getBuf();
-                            int length = readBuf.readInt();
-                            byte[] readData = new byte[length];
-                            readBuf.read(readData);
-                            LOG.info("Received: " + EntityService.get().unmarshalChronology(readData));
-                        })
-                        .whenComplete(webSocket::close));
+        DataProviderWebsocketClient client = new DataProviderWebsocketClient(new URI(url));
+        byte[][] bytes = client.getBytesForNids(new int[] {PrimitiveDataService.FIRST_NID, PrimitiveDataService.FIRST_NID + 1});
+        for (int i = 0; i < bytes.length; i++) {
+            LOG.info("Received " + (bytes[i] == null ? "nothing" : bytes[i].length + " bytes") + " for nid: " + (PrimitiveDataService.FIRST_NID + i));
+        }
+        client.close();
+    }
+
+    private WebSocket connect() {
+        CompletableFuture<WebSocket> connected = new CompletableFuture<>();
+        eventloop.execute(() -> httpClient.webSocketRequest(HttpRequest.get(uri.toString()))
+                .whenComplete((connectedSocket, e) -> {
+                    if (e == null) {
+                        connected.complete(connectedSocket);
+                    } else {
+                        connected.completeExceptionally(e);
+                    }
+                }));
+        try {
+            return connected.get();
+        } catch (InterruptedException | ExecutionException e) {
+            eventloop.execute(() -> eventloop.keepAlive(false));
+            throw new RuntimeException("Unable to connect to " + uri, e);
+        }
     }
 
     @Override
     public long writeSequence() {
-        throw new UnsupportedOperationException();
+        return writeSequence.get();
     }
 
     @Override
     public void close() {
-        WebSocket ws = wsMap.remove(wsKey);
-        if (ws != null) {
-            ws.close();
+        if (closed) {
+            return;
         }
+        closed = true;
+        eventloop.execute(() -> {
+            webSocket.close();
+            eventloop.keepAlive(false);
+        });
+        failPending(new IllegalStateException("Closed connection to " + uri));
     }
 
     @Override
     public int nidForUuids(UUID... uuids) {
-        try {
-            return nidForLongArray(UuidUtil.asArray(uuids));
-        } catch (ExecutionException | InterruptedException e) {
-            throw new RuntimeException(e);
-        }
+        return nidForLongArray(UuidUtil.asArray(uuids));
     }
 
     @Override
     public int nidForUuids(ImmutableList<UUID> uuidList) {
-        try {
-            return nidForLongArray(UuidUtil.asArray(uuidList));
-        } catch (ExecutionException | InterruptedException e) {
-            throw new RuntimeException(e);
-        }
+        return nidForLongArray(UuidUtil.asArray(uuidList));
     }
 
     @Override
     public boolean hasUuid(UUID uuid) {
-        throw new UnsupportedOperationException();
+        return request(RemoteOperations.HAS_UUID, out -> {
+            out.writeLong(uuid.getMostSignificantBits());
+            out.writeLong(uuid.getLeastSignificantBits());
+        }).get() != 0;
     }
 
     @Override
     public boolean hasPublicId(PublicId publicId) {
-        throw new UnsupportedOperationException();
+        long[] uuidParts = UuidUtil.asArray(publicId.asUuidArray());
+        return request(RemoteOperations.HAS_PUBLIC_ID, out -> writeLongs(out, uuidParts)).get() != 0;
     }
 
     @Override
     public void forEach(ObjIntConsumer<byte[]> action) {
-        throw new UnsupportedOperationException();
+        StreamResponse stream = stream(RemoteOperations.FOR_EACH, out -> {});
+        StreamMessage message;
+        do {
+            message = stream.next();
+            forEachEntity(message.records(), action);
+            stream.consumed(message);
+        } while (!message.last());
     }
 
     @Override
     public void forEachParallel(ObjIntConsumer<byte[]> action) {
-        throw new UnsupportedOperationException();
+        forEachParallel(stream(RemoteOperations.FOR_EACH, out -> {}), action);
     }
 
     @Override
     public void forEachParallel(ImmutableIntList nids, ObjIntConsumer<byte[]> action) {
-        throw new UnsupportedOperationException();
+        int[] nidArray = nids.toArray();
+        forEachParallel(stream(RemoteOperations.GET_BYTES, out -> writeInts(out, nidArray)), action);
+    }
+
+    /**
+     * Processes the messages of a stream on the thread pool while the next messages arrive. A message's credit
+     * is returned once it has been processed, which limits the messages in memory to {@link #STREAM_CREDITS}.
+     */
+    private void forEachParallel(StreamResponse stream, ObjIntConsumer<byte[]> action) {
+        List<CompletableFuture<Void>> processing = new ArrayList<>();
+        StreamMessage message;
+        do {
+            StreamMessage received = stream.next();
+            processing.add(CompletableFuture.runAsync(() -> forEachEntity(received.records(), action), TinkExecutor.threadPool())
+                    .thenRun(() -> stream.consumed(received)));
+            message = received;
+        } while (!message.last());
+        CompletableFuture.allOf(processing.toArray(CompletableFuture[]::new)).join();
+    }
+
+    private static void forEachEntity(ByteBuffer records, ObjIntConsumer<byte[]> action) {
+        while (records.hasRemaining()) {
+            int nid = records.getInt();
+            int length = records.getInt();
+            if (length >= 0) {
+                byte[] bytes = new byte[length];
+                records.get(bytes);
+                action.accept(bytes, nid);
+            }
+        }
     }
 
     @Override
     public byte[] getBytes(int nid) {
+        return getBytesForNids(new int[] {nid})[0];
+    }
 
-        ByteBuf buf = ByteBufPool.allocate(32);
-        buf.writeByte(RemoteOperations.GET_BYTES.token);
-        buf.writeInt(nid);
-        AtomicReference<byte[]> readDataReference = new AtomicReference<>();
-        final WebSocket ws = webSocket();
-
-        CompletableFuture<?> future = eventloop.submit(() -> {
-            ws.writeMessage(Message.binary(buf))
-                    .then(ws::readMessage)
-                    .whenResult(message -> {
-                        ByteBuf readBuf = message.getBuf();
-                        int length = readBuf.readInt();
-                        byte[] readData = new byte[length];
-                        readBuf.read(readData);
-                        readDataReference.set(readData);
-                        LOG.info("Received: " + EntityService.get().unmarshalChronology(readData));
-
-                    });
-        });
-
-        try {
-            future.get();
-        } catch (Exception e) {
-            e.printStackTrace();
-            throw new RuntimeException(e);
+    /**
+     * Gets the bytes for each nid, with a single request for the nids not in the cache.
+     *
+     * @return the bytes for each nid, in the order of the nids, with null for a nid that has no entity
+     */
+    public byte[][] getBytesForNids(int[] nids) {
+        byte[][] bytes = new byte[nids.length][];
+        Map<Integer, Integer> missingIndexes = new HashMap<>();
+        for (int i = 0; i < nids.length; i++) {
+            bytes[i] = byteCache.getIfPresent(nids[i]);
+            if (bytes[i] == null) {
+                missingIndexes.putIfAbsent(nids[i], i);
+            }
         }
-
-        return readDataReference.get();
+        if (missingIndexes.isEmpty()) {
+            return bytes;
+        }
+        int[] missingNids = missingIndexes.keySet().stream().mapToInt(Integer::intValue).toArray();
+        // Read before requesting, so bytes written while the request is outstanding are not cached.
+        long sequence = writeSequence.get();
+        StreamResponse stream = stream(RemoteOperations.GET_BYTES, out -> writeInts(out, missingNids));
+        StreamMessage message;
+        do {
+            message = stream.next();
+            forEachEntity(message.records(), (entityBytes, nid) -> {
+                byteCache.put(nid, entityBytes);
+                if (writeSequence.get() != sequence) {
+                    // A write was notified since the request; the bytes may be stale.
+                    byteCache.invalidate(nid);
+                }
+                bytes[missingIndexes.get(nid)] = entityBytes;
+            });
+            stream.consumed(message);
+        } while (!message.last());
+        for (int i = 0; i < nids.length; i++) {
+            if (bytes[i] == null && missingIndexes.containsKey(nids[i])) {
+                bytes[i] = bytes[missingIndexes.get(nids[i])];
+            }
+        }
+        return bytes;
     }
 
     @Override
     public byte[] merge(int nid, int patternNid, int referencedComponentNid, byte[] value, Object sourceObject, DataActivity activity) {
-        throw new UnsupportedOperationException();
+        ByteBuffer response = request(RemoteOperations.MERGE, out -> {
+            out.writeInt(nid);
+            out.writeInt(patternNid);
+            out.writeInt(referencedComponentNid);
+            out.writeByte(activity.ordinal());
+            out.writeInt(value.length);
+            out.write(value);
+        });
+        byte[] merged = new byte[response.getInt()];
+        response.get(merged);
+        return merged;
     }
 
     @Override
     public PrimitiveDataSearchResult[] search(String query, int maxResultSize) throws Exception {
-        throw new UnsupportedOperationException();
+        byte[] queryBytes = query.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer response = request(RemoteOperations.SEARCH, out -> {
+            out.writeInt(maxResultSize);
+            out.writeInt(queryBytes.length);
+            out.write(queryBytes);
+        });
+        PrimitiveDataSearchResult[] results = new PrimitiveDataSearchResult[response.getInt()];
+        for (int i = 0; i < results.length; i++) {
+            int nid = response.getInt();
+            int rcNid = response.getInt();
+            int patternNid = response.getInt();
+            int fieldIndex = response.getInt();
+            float score = response.getFloat();
+            byte[] highlighted = new byte[response.getInt()];
+            response.get(highlighted);
+            results[i] = new PrimitiveDataSearchResult(nid, rcNid, patternNid, fieldIndex, score,
+                    new String(highlighted, StandardCharsets.UTF_8));
+        }
+        return results;
     }
 
+    /**
+     * Recreates the server's search index.
+     *
+     * @return a future completed when the server has recreated the index
+     */
     @Override
     public CompletableFuture<Void> recreateLuceneIndex() throws Exception {
-        throw new UnsupportedOperationException();
+        SingleResponse response = new SingleResponse();
+        send(message(RemoteOperations.RECREATE_LUCENE_INDEX, register(response), out -> {
+        }));
+        return response.future.thenApply(payload -> null);
     }
 
     @Override
     public void forEachSemanticNidOfPattern(int patternNid, IntProcedure procedure) {
-        throw new UnsupportedOperationException();
+        forEachNid(RemoteOperations.FOR_EACH_SEMANTIC_NID_OF_PATTERN, procedure, patternNid);
     }
 
     @Override
     public void forEachPatternNid(IntProcedure procedure) {
-        throw new UnsupportedOperationException();
+        forEachNid(RemoteOperations.FOR_EACH_PATTERN_NID, procedure);
     }
 
     @Override
     public void forEachConceptNid(IntProcedure procedure) {
-        throw new UnsupportedOperationException();
+        forEachNid(RemoteOperations.FOR_EACH_CONCEPT_NID, procedure);
     }
 
     @Override
     public void forEachStampNid(IntProcedure procedure) {
-        throw new UnsupportedOperationException();
+        forEachNid(RemoteOperations.FOR_EACH_STAMP_NID, procedure);
     }
 
     @Override
     public void forEachSemanticNid(IntProcedure procedure) {
-        throw new UnsupportedOperationException();
+        forEachNid(RemoteOperations.FOR_EACH_SEMANTIC_NID, procedure);
     }
 
     @Override
     public void forEachSemanticNidForComponent(int componentNid, IntProcedure procedure) {
-        throw new UnsupportedOperationException();
+        forEachNid(RemoteOperations.FOR_EACH_SEMANTIC_NID_FOR_COMPONENT, procedure, componentNid);
     }
 
     @Override
     public void forEachSemanticNidForComponentOfPattern(int componentNid, int patternNid, IntProcedure procedure) {
-        throw new UnsupportedOperationException();
+        forEachNid(RemoteOperations.FOR_EACH_SEMANTIC_NID_FOR_COMPONENT_OF_PATTERN, procedure, componentNid, patternNid);
     }
 
     @Override
@@ -260,37 +359,248 @@ public String name() {
         return uri.toString();
     }
 
-    private int nidForLongArray(long[] uuidParts) throws ExecutionException, InterruptedException {
-        ByteBuf buf = ByteBufPool.allocate(32);
-        buf.writeByte(RemoteOperations.NID_FOR_UUIDS.token);
-        buf.writeInt(uuidParts.length);
-        for (long part : uuidParts) {
-            buf.writeLong(part);
-        }
-        AtomicInteger nid = new AtomicInteger();
-        final WebSocket ws = webSocket();
-        CompletableFuture<?> future = eventloop.submit(() -> {
-            ws.writeMessage(Message.binary(buf))
-                    .then(ws::readMessage)
-                    .whenResult(message -> {
-                        ByteBuf readBuf = message.getBuf();
-                        nid.set(readBuf.readInt());
-                    });
+    private void forEachNid(RemoteOperations operation, IntProcedure procedure, int... arguments) {
+        StreamResponse stream = stream(operation, out -> {
+            for (int argument : arguments) {
+                out.writeInt(argument);
+            }
         });
-        future.get();
-        return nid.get();
-    }
-
-    WebSocket webSocket() {
-        return wsMap.computeIfAbsent(wsKey, (Integer key) ->
-                {
-                    try {
-                        return httpClient.webSocketRequest(HttpRequest.get(uri.toString())).toCompletableFuture().get();
-                    } catch (Exception e) {
-                        e.printStackTrace();
-                        throw new RuntimeException(e);
+        StreamMessage message;
+        do {
+            message = stream.next();
+            ByteBuffer records = message.records();
+            while (records.hasRemaining()) {
+                procedure.value(records.getInt());
+            }
+            stream.consumed(message);
+        } while (!message.last());
+    }
+
+    private int nidForLongArray(long[] uuidParts) {
+        return request(RemoteOperations.NID_FOR_UUIDS, out -> writeLongs(out, uuidParts)).getInt();
+    }
+
+    private ByteBuffer request(RemoteOperations operation, MessageBody body) {
+        SingleResponse response = new SingleResponse();
+        int requestId = register(response);
+        send(message(operation, requestId, body));
+        return response.get();
+    }
+
+    /**
+     * Starts a streamed request; the request payload starts with the credits the server may use.
+     */
+    private StreamResponse stream(RemoteOperations operation, MessageBody body) {
+        StreamResponse response = new StreamResponse();
+        response.requestId = register(response);
+        send(message(operation, response.requestId, out -> {
+            out.writeInt(STREAM_CREDITS);
+            body.write(out);
+        }));
+        return response;
+    }
+
+    private int register(PendingResponse response) {
+        if (closed) {
+            throw new IllegalStateException("Closed connection to " + uri);
+        }
+        int requestId;
+        do {
+            // Request id 0 is used for notifications.
+            requestId = requestIds.incrementAndGet();
+        } while (requestId == 0);
+        pendingResponses.put(requestId, response);
+        return requestId;
+    }
+
+    private void send(byte[] message) {
+        eventloop.execute(() -> lastWrite = lastWrite
+                .then(() -> webSocket.writeMessage(Message.binary(ByteBuf.wrapForReading(message))))
+                .whenException(e -> {
+                    LOG.error("Failed writing to " + uri, e);
+                    close();
+                }));
+    }
+
+    /**
+     * Reads messages until one is not yet available, then continues when it arrives. Loops rather than recursing,
+     * since a read of a buffered message completes at once.
+     */
+    private void readNext() {
+        while (true) {
+            Promise<Message> read = webSocket.readMessage();
+            if (!read.isComplete()) {
+                read.whenComplete((message, e) -> {
+                    if (received(message, e)) {
+                        readNext();
                     }
+                });
+                return;
+            }
+            if (!received(read.getResult(), read.getException())) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return false if the connection is closed
+     */
+    private boolean received(Message message, Exception e) {
+        if (e != null || message == null) {
+            if (!closed) {
+                failPending(e != null ? e : new IllegalStateException("Connection closed by " + uri));
+            }
+            return false;
+        }
+        receive(message.getBuf().asArray());
+        return true;
+    }
+
+    private void receive(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        RemoteOperations operation = RemoteOperations.fromToken(buffer.get());
+        int requestId = buffer.getInt();
+        boolean last = (buffer.get() & RemoteOperations.LAST_MESSAGE) != 0;
+        if (operation == RemoteOperations.WRITE_SEQUENCE) {
+            long sequence = buffer.getLong();
+            // Advance the sequence before invalidating, so a concurrent read either sees the new sequence or has
+            // its cached bytes invalidated.
+            writeSequence.accumulateAndGet(sequence, Math::max);
+            int count = buffer.getInt();
+            for (int i = 0; i < count; i++) {
+                byteCache.invalidate(buffer.getInt());
+            }
+            return;
+        }
+        PendingResponse response = last || operation == RemoteOperations.ERROR
+                ? pendingResponses.remove(requestId) : pendingResponses.get(requestId);
+        if (response == null) {
+            LOG.warn("No request " + requestId + " for " + operation + " response");
+        } else if (operation == RemoteOperations.ERROR) {
+            response.fail(new IllegalStateException(uri + " failed request: " + readUtf(bytes, buffer.position())));
+        } else {
+            response.receive(buffer, last);
+        }
+    }
+
+    private void failPending(Throwable failure) {
+        pendingResponses.values().forEach(response -> response.fail(failure));
+        pendingResponses.clear();
+    }
+
+    private static byte[] message(RemoteOperations operation, int requestId, MessageBody body) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(operation.token);
+            out.writeInt(requestId);
+            out.writeByte(0);
+            body.write(out);
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeLongs(DataOutputStream out, long[] values) throws IOException {
+        out.writeInt(values.length);
+        for (long value : values) {
+            out.writeLong(value);
+        }
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        out.writeInt(values.length);
+        for (int value : values) {
+            out.writeInt(value);
+        }
+    }
+
+    private static String readUtf(byte[] bytes, int offset) {
+        try {
+            return new DataInputStream(new ByteArrayInputStream(bytes, offset, bytes.length - offset)).readUTF();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface MessageBody {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private interface PendingResponse {
+        void receive(ByteBuffer payload, boolean last);
+
+        void fail(Throwable failure);
+    }
+
+    private static final class SingleResponse implements PendingResponse {
+        private final CompletableFuture<ByteBuffer> future = new CompletableFuture<>();
+
+        @Override
+        public void receive(ByteBuffer payload, boolean last) {
+            future.complete(payload);
+        }
+
+        @Override
+        public void fail(Throwable failure) {
+            future.completeExceptionally(failure);
+        }
+
+        ByteBuffer get() {
+            try {
+                return future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException(e.getCause());
+            }
+        }
+    }
+
+    private record StreamMessage(ByteBuffer records, boolean last, Throwable failure) {}
+
+    /**
+     * The messages of a streamed response. The server sends no more than {@link #STREAM_CREDITS} messages ahead
+     * of those {@link #consumed(StreamMessage) consumed}, so the queue never fills.
+     */
+    private final class StreamResponse implements PendingResponse {
+        private final BlockingQueue<StreamMessage> messages = new ArrayBlockingQueue<>(STREAM_CREDITS + 1);
+        private int requestId;
+
+        @Override
+        public void receive(ByteBuffer payload, boolean last) {
+            if (!messages.offer(new StreamMessage(payload, last, null))) {
+                fail(new IllegalStateException("Server sent more messages than granted for request " + requestId));
+            }
+        }
+
+        @Override
+        public void fail(Throwable failure) {
+            messages.poll();
+            messages.offer(new StreamMessage(null, true, failure));
+        }
+
+        StreamMessage next() {
+            try {
+                StreamMessage message = messages.take();
+                if (message.failure() != null) {
+                    throw new RuntimeException(message.failure());
                 }
-        );
+                return message;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            }
+        }
+
+        void consumed(StreamMessage message) {
+            if (!message.last()) {
+                send(message(RemoteOperations.CREDIT, requestId, out -> out.writeInt(1)));
+            }
+        }
     }
 }
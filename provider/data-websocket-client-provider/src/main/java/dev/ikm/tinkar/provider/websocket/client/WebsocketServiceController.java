@@ -74,6 +74,7 @@ public ValidationRecord[] validate(DataServiceProperty dataServiceProperty, Obje
         return new ValidationRecord[]{};
     }
     DataUriOption dataUriOption;
+    DataProviderWebsocketClient client;
     @Override
     public String controllerName() {
         return CONTROLLER_NAME;
@@ -106,22 +107,22 @@ public Class<? extends PrimitiveDataService> serviceClass() {
 
     @Override
     public boolean running() {
-        return false;
+        return client != null;
     }
 
     @Override
     public void start() {
-        try {
-            DataProviderWebsocketClient client = new DataProviderWebsocketClient(dataUriOption.uri());
-            client.launch(new String[]{});
-        } catch (Exception e) {
-            throw new RuntimeException(e);
+        if (client == null) {
+            client = new DataProviderWebsocketClient(dataUriOption.uri());
         }
     }
 
     @Override
     public void stop() {
-
+        if (client != null) {
+            client.close();
+            client = null;
+        }
     }
 
     @Override
@@ -136,7 +137,7 @@ public void reload() {
 
     @Override
     public PrimitiveDataService provider() {
-        return null;
+        return client;
     }
 
     @Override
@@ -25,14 +25,12 @@
 
 @SuppressWarnings("module") // 7 in HL7 is not a version reference
 module dev.ikm.tinkar.provider.websocket.client {
+    requires com.github.benmanes.caffeine;
     requires org.slf4j;
     requires dev.ikm.jpms.activej.bytebuf;
     requires io.activej.eventloop;
     requires io.activej.http;
-    requires io.activej.inject;
-    requires io.activej.launcher;
     requires io.activej.promise;
-    requires io.activej.service;
     requires org.eclipse.collections.api;
     requires org.eclipse.collections.impl;
     requires java.base;
@@ -45,6 +43,4 @@
             with WebsocketServiceController;
 
     uses EntityService;
-    opens dev.ikm.tinkar.provider.websocket.client
-            to io.activej.inject;
 }
@@ -17,27 +17,31 @@
 
 import dev.ikm.tinkar.common.service.PluggableService;
 import dev.ikm.tinkar.common.service.PrimitiveDataService;
-import io.activej.bytebuf.ByteBuf;
-import io.activej.bytebuf.ByteBufPool;
 import io.activej.http.AsyncServlet;
 import io.activej.http.RoutingServlet;
-import io.activej.http.WebSocket.Message;
 import io.activej.inject.annotation.Provides;
 import io.activej.launchers.http.MultithreadedHttpServerLauncher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.ServiceLoader;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Serves a data service to {@code DataProviderWebsocketClient} connections. See {@link RemoteConnection} for how
+ * each connection handles its requests.
+ */
 public class DataProviderWebsocketServer extends MultithreadedHttpServerLauncher {
     private static final Logger LOG = LoggerFactory.getLogger(DataProviderWebsocketServer.class);
-    private final ServiceLoader<PrimitiveDataService> serviceLoader;
     private final PrimitiveDataService dataService;
+    private final Set<RemoteConnection> connections = ConcurrentHashMap.newKeySet();
 
     public DataProviderWebsocketServer() {
-        this.serviceLoader = PluggableService.load(PrimitiveDataService.class);
-        this.dataService = this.serviceLoader.findFirst().get();
+        this(PluggableService.load(PrimitiveDataService.class).findFirst().get());
+    }
+
+    public DataProviderWebsocketServer(PrimitiveDataService dataService) {
+        this.dataService = dataService;
     }
 
     public static void main(String[] args) throws Exception {
@@ -47,22 +51,26 @@ public static void main(String[] args) throws Exception {
 
     @Provides
     AsyncServlet servlet() {
-        AtomicInteger nid = new AtomicInteger();
         return RoutingServlet.create()
-                .mapWebSocket("/", webSocket -> webSocket.readMessage()
-                        .whenResult(message -> {
-                            ByteBuf buf = message.getBuf();
-                            PrimitiveDataService.RemoteOperations operation = PrimitiveDataService.RemoteOperations.fromToken(buf.readByte());
-                            nid.set(buf.readInt());
-                            LOG.info("Received: " + operation + " for: " + nid);
-                        })
-                        .then(() -> {
+                .mapWebSocket("/", webSocket -> {
+                    RemoteConnection connection = new RemoteConnection(this, dataService, webSocket);
+                    connections.add(connection);
+                    LOG.info("Client connected, " + connections.size() + " connections");
+                    connection.start();
+                });
+    }
+
+    /**
+     * Notifies every connected client that the given nids were written, so clients can invalidate cached bytes.
+     * Writes made through a client are notified by the server; writes made directly to the data service by the
+     * server's own process should be notified by calling this method.
+     */
+    public void notifyWritten(long writeSequence, int... nids) {
+        byte[] message = RemoteConnection.writeSequenceMessage(writeSequence, nids);
+        connections.forEach(connection -> connection.send(message));
+    }
 
-                            byte[] data = dataService.getBytes(nid.get());
-                            ByteBuf buf = ByteBufPool.allocate(data.length);
-                            buf.writeInt(data.length);
-                            buf.write(data);
-                            return webSocket.writeMessage(Message.binary(buf));
-                        }));
+    void removeConnection(RemoteConnection connection) {
+        connections.remove(connection);
     }
 }
@@ -0,0 +1,404 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.provider.websocket.server;
+
+import dev.ikm.tinkar.common.id.PublicIds;
+import dev.ikm.tinkar.common.service.DataActivity;
+import dev.ikm.tinkar.common.service.PrimitiveDataSearchResult;
+import dev.ikm.tinkar.common.service.PrimitiveDataService;
+import dev.ikm.tinkar.common.service.PrimitiveDataService.RemoteOperations;
+import dev.ikm.tinkar.common.service.TinkExecutor;
+import dev.ikm.tinkar.entity.EntityRecordFactory;
+import io.activej.bytebuf.ByteBuf;
+import io.activej.eventloop.Eventloop;
+import io.activej.http.WebSocket;
+import io.activej.http.WebSocket.Message;
+import io.activej.promise.Promise;
+import org.eclipse.collections.api.block.procedure.primitive.IntProcedure;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+
+/**
+ * Serves the requests of one websocket client. Messages are read on the connection's eventloop, and each request
+ * is handled on the thread pool, so many requests from one client can be outstanding at once. Requests that wait
+ * on the client or on a long running task are handled on their own virtual thread instead, so they do not hold a
+ * pool thread. Responses are written in the order they complete.
+ * <p>
+ * Streamed responses ({@link RemoteOperations#GET_BYTES GET_BYTES}, {@link RemoteOperations#FOR_EACH FOR_EACH}
+ * and the {@code FOR_EACH_..._NID} operations) start their request payload with the number of messages the client
+ * is ready to receive. The server sends no more than that until the client grants more with
+ * {@link RemoteOperations#CREDIT CREDIT} messages.
+ */
+final class RemoteConnection {
+    private static final Logger LOG = LoggerFactory.getLogger(RemoteConnection.class);
+
+    /**
+     * The size at which a message of a streamed response is sent.
+     */
+    static final int STREAM_MESSAGE_BYTES = 256 * 1024;
+
+    private final DataProviderWebsocketServer server;
+    private final PrimitiveDataService dataService;
+    private final WebSocket webSocket;
+    private final Eventloop eventloop;
+    private final ConcurrentHashMap<Integer, Semaphore> streamCredits = new ConcurrentHashMap<>();
+    private volatile boolean closed;
+    /**
+     * The latest write, which each new write follows. Only accessed on the eventloop.
+     */
+    private Promise<Void> lastWrite = Promise.complete();
+
+    RemoteConnection(DataProviderWebsocketServer server, PrimitiveDataService dataService, WebSocket webSocket) {
+        this.server = server;
+        this.dataService = dataService;
+        this.webSocket = webSocket;
+        this.eventloop = Eventloop.getCurrentEventloop();
+    }
+
+    void start() {
+        readNext();
+    }
+
+    void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        server.removeConnection(this);
+        // Wake any stream waiting for credit, so it sees the connection is closed.
+        streamCredits.values().forEach(credits -> credits.release(Integer.MAX_VALUE / 2));
+        eventloop.execute(webSocket::close);
+    }
+
+    /**
+     * Reads messages until one is not yet available, then continues when it arrives. Loops rather than recursing,
+     * since a read of a buffered message completes at once.
+     */
+    private void readNext() {
+        while (true) {
+            Promise<Message> read = webSocket.readMessage();
+            if (!read.isComplete()) {
+                read.whenComplete((message, e) -> {
+                    if (received(message, e)) {
+                        readNext();
+                    }
+                });
+                return;
+            }
+            if (!received(read.getResult(), read.getException())) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return false if the connection is closed
+     */
+    private boolean received(Message message, Exception e) {
+        if (e != null || message == null) {
+            close();
+            return false;
+        }
+        receive(message.getBuf().asArray());
+        return true;
+    }
+
+    private void receive(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        RemoteOperations operation = RemoteOperations.fromToken(buffer.get());
+        int requestId = buffer.getInt();
+        buffer.get();
+        if (operation == RemoteOperations.CREDIT) {
+            Semaphore credits = streamCredits.get(requestId);
+            if (credits != null) {
+                credits.release(buffer.getInt());
+            }
+            return;
+        }
+        Runnable task = () -> {
+            try {
+                handle(operation, requestId, buffer);
+            } catch (Throwable t) {
+                if (!closed) {
+                    LOG.error("Failed: " + operation + " request " + requestId, t);
+                    send(message(RemoteOperations.ERROR, requestId, RemoteOperations.LAST_MESSAGE,
+                            out -> out.writeUTF(String.valueOf(t.getMessage()))));
+                }
+            } finally {
+                streamCredits.remove(requestId);
+            }
+        };
+        if (waits(operation)) {
+            Thread.ofVirtual().name("websocket-" + operation + "-" + requestId).start(task);
+        } else {
+            TinkExecutor.threadPool().execute(task);
+        }
+    }
+
+    /**
+     * @return true if handling the operation waits for the client's credit, or for a long running task
+     */
+    private static boolean waits(RemoteOperations operation) {
+        return switch (operation) {
+            case GET_BYTES, FOR_EACH, FOR_EACH_CONCEPT_NID, FOR_EACH_PATTERN_NID, FOR_EACH_SEMANTIC_NID,
+                 FOR_EACH_STAMP_NID, FOR_EACH_SEMANTIC_NID_OF_PATTERN, FOR_EACH_SEMANTIC_NID_FOR_COMPONENT,
+                 FOR_EACH_SEMANTIC_NID_FOR_COMPONENT_OF_PATTERN, RECREATE_LUCENE_INDEX -> true;
+            default -> false;
+        };
+    }
+
+    private void handle(RemoteOperations operation, int requestId, ByteBuffer request) throws Exception {
+        switch (operation) {
+            case NID_FOR_UUIDS -> {
+                int nid = dataService.nidForUuids(readUuids(request));
+                respond(operation, requestId, out -> out.writeInt(nid));
+            }
+            case HAS_UUID -> {
+                boolean hasUuid = dataService.hasUuid(new UUID(request.getLong(), request.getLong()));
+                respond(operation, requestId, out -> out.writeBoolean(hasUuid));
+            }
+            case HAS_PUBLIC_ID -> {
+                boolean hasPublicId = dataService.hasPublicId(PublicIds.of(readUuids(request)));
+                respond(operation, requestId, out -> out.writeBoolean(hasPublicId));
+            }
+            case GET_BYTES -> {
+                ResponseStream stream = new ResponseStream(operation, requestId, request.getInt());
+                int count = request.getInt();
+                for (int i = 0; i < count; i++) {
+                    int nid = request.getInt();
+                    stream.addEntity(nid, dataService.getBytes(nid));
+                }
+                stream.finish();
+            }
+            case FOR_EACH -> {
+                ResponseStream stream = new ResponseStream(operation, requestId, request.getInt());
+                dataService.forEach((bytes, nid) -> stream.addEntity(nid, bytes));
+                stream.finish();
+            }
+            case FOR_EACH_CONCEPT_NID -> streamNids(operation, requestId, request, dataService::forEachConceptNid);
+            case FOR_EACH_PATTERN_NID -> streamNids(operation, requestId, request, dataService::forEachPatternNid);
+            case FOR_EACH_SEMANTIC_NID -> streamNids(operation, requestId, request, dataService::forEachSemanticNid);
+            case FOR_EACH_STAMP_NID -> streamNids(operation, requestId, request, dataService::forEachStampNid);
+            case FOR_EACH_SEMANTIC_NID_OF_PATTERN -> {
+                int credits = request.getInt();
+                int patternNid = request.getInt();
+                streamNids(operation, requestId, credits,
+                        procedure -> dataService.forEachSemanticNidOfPattern(patternNid, procedure));
+            }
+            case FOR_EACH_SEMANTIC_NID_FOR_COMPONENT -> {
+                int credits = request.getInt();
+                int componentNid = request.getInt();
+                streamNids(operation, requestId, credits,
+                        procedure -> dataService.forEachSemanticNidForComponent(componentNid, procedure));
+            }
+            case FOR_EACH_SEMANTIC_NID_FOR_COMPONENT_OF_PATTERN -> {
+                int credits = request.getInt();
+                int componentNid = request.getInt();
+                int patternNid = request.getInt();
+                streamNids(operation, requestId, credits,
+                        procedure -> dataService.forEachSemanticNidForComponentOfPattern(componentNid, patternNid, procedure));
+            }
+            case MERGE -> {
+                int nid = request.getInt();
+                int patternNid = request.getInt();
+                int referencedComponentNid = request.getInt();
+                DataActivity activity = DataActivity.values()[request.get()];
+                byte[] value = new byte[request.getInt()];
+                request.get(value);
+                byte[] merged = dataService.merge(nid, patternNid, referencedComponentNid, value,
+                        EntityRecordFactory.make(value), activity);
+                // Notify before responding, so the client that merged invalidates its cache before it caches the result.
+                server.notifyWritten(dataService.writeSequence(), nid);
+                respond(operation, requestId, out -> {
+                    out.writeInt(merged.length);
+                    out.write(merged);
+                });
+            }
+            case SEARCH -> {
+                int maxResultSize = request.getInt();
+                byte[] queryBytes = new byte[request.getInt()];
+                request.get(queryBytes);
+                PrimitiveDataSearchResult[] results = dataService.search(new String(queryBytes, StandardCharsets.UTF_8), maxResultSize);
+                respond(operation, requestId, out -> {
+                    out.writeInt(results.length);
+                    for (PrimitiveDataSearchResult result : results) {
+                        out.writeInt(result.nid());
+                        out.writeInt(result.rcNid());
+                        out.writeInt(result.patternNid());
+                        out.writeInt(result.fieldIndex());
+                        out.writeFloat(result.score());
+                        writeString(out, result.highlightedString());
+                    }
+                });
+            }
+            case RECREATE_LUCENE_INDEX -> {
+                dataService.recreateLuceneIndex().get();
+                respond(operation, requestId, out -> {
+                });
+            }
+            default -> throw new UnsupportedOperationException("Can't handle operation: " + operation);
+        }
+    }
+
+    private void streamNids(RemoteOperations operation, int requestId, ByteBuffer request, Consumer<IntProcedure> forEach) {
+        streamNids(operation, requestId, request.getInt(), forEach);
+    }
+
+    private void streamNids(RemoteOperations operation, int requestId, int credits, Consumer<IntProcedure> forEach) {
+        ResponseStream stream = new ResponseStream(operation, requestId, credits);
+        forEach.accept(stream::addNid);
+        stream.finish();
+    }
+
+    private void respond(RemoteOperations operation, int requestId, MessageBody body) {
+        send(message(operation, requestId, RemoteOperations.LAST_MESSAGE, body));
+    }
+
+    void send(byte[] message) {
+        if (closed) {
+            return;
+        }
+        eventloop.execute(() -> lastWrite = lastWrite
+                .then(() -> webSocket.writeMessage(Message.binary(ByteBuf.wrapForReading(message))))
+                .whenException(e -> close()));
+    }
+
+    static byte[] writeSequenceMessage(long writeSequence, int... nids) {
+        return message(RemoteOperations.WRITE_SEQUENCE, 0, RemoteOperations.LAST_MESSAGE, out -> {
+            out.writeLong(writeSequence);
+            out.writeInt(nids.length);
+            for (int nid : nids) {
+                out.writeInt(nid);
+            }
+        });
+    }
+
+    private static byte[] message(RemoteOperations operation, int requestId, byte flags, MessageBody body) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(operation.token);
+            out.writeInt(requestId);
+            out.writeByte(flags);
+            body.write(out);
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static UUID[] readUuids(ByteBuffer request) {
+        UUID[] uuids = new UUID[request.getInt() / 2];
+        for (int i = 0; i < uuids.length; i++) {
+            uuids[i] = new UUID(request.getLong(), request.getLong());
+        }
+        return uuids;
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string == null ? new byte[0] : string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    @FunctionalInterface
+    private interface MessageBody {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * Accumulates the records of a streamed response, sending a message each time the records reach
+     * {@link #STREAM_MESSAGE_BYTES} and the client has granted credit for another message.
+     */
+    private final class ResponseStream {
+        private final RemoteOperations operation;
+        private final int requestId;
+        private final Semaphore credits;
+        private ByteArrayOutputStream bytes;
+        private DataOutputStream out;
+
+        ResponseStream(RemoteOperations operation, int requestId, int initialCredits) {
+            this.operation = operation;
+            this.requestId = requestId;
+            this.credits = new Semaphore(initialCredits);
+            streamCredits.put(requestId, credits);
+            reset();
+        }
+
+        void addEntity(int nid, byte[] entityBytes) {
+            try {
+                out.writeInt(nid);
+                if (entityBytes == null) {
+                    out.writeInt(-1);
+                } else {
+                    out.writeInt(entityBytes.length);
+                    out.write(entityBytes);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (bytes.size() >= STREAM_MESSAGE_BYTES) {
+                sendMessage((byte) 0);
+            }
+        }
+
+        void addNid(int nid) {
+            try {
+                out.writeInt(nid);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            if (bytes.size() >= STREAM_MESSAGE_BYTES) {
+                sendMessage((byte) 0);
+            }
+        }
+
+        void finish() {
+            sendMessage(RemoteOperations.LAST_MESSAGE);
+        }
+
+        private void sendMessage(byte flags) {
+            try {
+                credits.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted streaming " + operation, e);
+            }
+            if (closed) {
+                throw new IllegalStateException("Connection closed while streaming " + operation);
+            }
+            byte[] records = bytes.toByteArray();
+            send(message(operation, requestId, flags, body -> body.write(records)));
+            reset();
+        }
+
+        private void reset() {
+            bytes = new ByteArrayOutputStream(STREAM_MESSAGE_BYTES + 1024);
+            out = new DataOutputStream(bytes);
+        }
+    }
+}
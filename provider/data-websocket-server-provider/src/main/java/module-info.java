@@ -26,11 +26,13 @@
 module dev.ikm.tinkar.provider.websocket.server {
     requires org.slf4j;
     requires dev.ikm.jpms.activej.bytebuf;
+    requires io.activej.eventloop;
     requires io.activej.http;
     requires io.activej.inject;
     requires io.activej.launchers.http;
     requires io.activej.promise;
     requires java.base;
+    requires org.eclipse.collections.api;
     requires dev.ikm.tinkar.common;
     requires dev.ikm.tinkar.component;
     requires dev.ikm.tinkar.entity;
@@ -0,0 +1,158 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.provider.websocket.server;
+
+import dev.ikm.tinkar.common.service.DataActivity;
+import dev.ikm.tinkar.common.service.PrimitiveDataService;
+import dev.ikm.tinkar.provider.ephemeral.ProviderEphemeral;
+import dev.ikm.tinkar.provider.websocket.client.DataProviderWebsocketClient;
+import org.eclipse.collections.api.factory.primitive.IntLists;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.net.ServerSocket;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs a websocket client against an in-process server over an ephemeral data service.
+ */
+public class RemoteProtocolTest {
+    private static final int ENTITY_COUNT = 2_000;
+    private static final int ENTITY_SIZE = 1_024;
+
+    private static PrimitiveDataService dataService;
+    private static DataProviderWebsocketServer server;
+    private static DataProviderWebsocketClient client;
+    private static int[] nids;
+
+    @BeforeAll
+    public static void startServer() throws Exception {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        System.setProperty("config.http.listenAddresses", "127.0.0.1:" + port);
+        dataService = ProviderEphemeral.provider();
+        server = new DataProviderWebsocketServer(dataService);
+        Thread serverThread = new Thread(() -> {
+            try {
+                server.launch(new String[0]);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }, "websocket-test-server");
+        serverThread.setDaemon(true);
+        serverThread.start();
+        client = connect(new URI("ws://127.0.0.1:" + port + "/"));
+
+        // Entities larger in total than the stream credits, so streaming has to wait for credit.
+        nids = new int[ENTITY_COUNT];
+        for (int i = 0; i < ENTITY_COUNT; i++) {
+            nids[i] = dataService.nidForUuids(UUID.randomUUID());
+            dataService.merge(nids[i], Integer.MAX_VALUE, Integer.MAX_VALUE, entityBytes(i), null, DataActivity.LOCAL_EDIT);
+        }
+    }
+
+    @AfterAll
+    public static void stopServer() {
+        client.close();
+        server.shutdown();
+    }
+
+    private static DataProviderWebsocketClient connect(URI uri) throws InterruptedException {
+        RuntimeException failure = null;
+        for (int attempt = 0; attempt < 50; attempt++) {
+            try {
+                return new DataProviderWebsocketClient(uri);
+            } catch (RuntimeException e) {
+                failure = e;
+                Thread.sleep(100);
+            }
+        }
+        throw failure;
+    }
+
+    @Test
+    public void concurrentRequestsShareConnection() {
+        UUID[] uuids = IntStream.range(0, 500).mapToObj(i -> UUID.randomUUID()).toArray(UUID[]::new);
+        int[] remoteNids = Arrays.stream(uuids).parallel().mapToInt(uuid -> client.nidForUuids(uuid)).toArray();
+        for (int i = 0; i < uuids.length; i++) {
+            assertEquals(dataService.nidForUuids(uuids[i]), remoteNids[i]);
+            assertTrue(client.hasUuid(uuids[i]));
+        }
+        assertEquals(uuids.length, Arrays.stream(remoteNids).distinct().count());
+    }
+
+    @Test
+    public void getBytesForNidsInOneRequest() {
+        int unknownNid = dataService.nidForUuids(UUID.randomUUID());
+        int[] requested = Arrays.copyOf(nids, nids.length + 2);
+        requested[nids.length] = unknownNid;
+        requested[nids.length + 1] = nids[0];
+        byte[][] bytes = client.getBytesForNids(requested);
+        for (int i = 0; i < nids.length; i++) {
+            assertArrayEquals(entityBytes(i), bytes[i]);
+        }
+        assertNull(bytes[nids.length]);
+        assertArrayEquals(entityBytes(0), bytes[nids.length + 1]);
+    }
+
+    @Test
+    public void forEachStreamsEveryEntity() {
+        Set<Integer> streamed = ConcurrentHashMap.newKeySet();
+        client.forEach((bytes, nid) -> streamed.add(nid));
+        Set<Integer> streamedInParallel = ConcurrentHashMap.newKeySet();
+        client.forEachParallel((bytes, nid) -> streamedInParallel.add(nid));
+        AtomicInteger streamedForNids = new AtomicInteger();
+        client.forEachParallel(IntLists.immutable.of(nids), (bytes, nid) -> streamedForNids.incrementAndGet());
+
+        for (int nid : nids) {
+            assertTrue(streamed.contains(nid));
+        }
+        assertEquals(streamed, streamedInParallel);
+        assertEquals(ENTITY_COUNT, streamedForNids.get());
+    }
+
+    @Test
+    public void writeNotificationsAdvanceClientSequence() throws InterruptedException {
+        long sequence = dataService.writeSequence() + 1_000;
+        server.notifyWritten(sequence, nids[0]);
+        for (int attempt = 0; attempt < 50 && client.writeSequence() < sequence; attempt++) {
+            Thread.sleep(100);
+        }
+        assertEquals(sequence, client.writeSequence());
+        assertArrayEquals(entityBytes(0), client.getBytes(nids[0]));
+    }
+
+    private static byte[] entityBytes(int index) {
+        byte[] bytes = new byte[ENTITY_SIZE];
+        Arrays.fill(bytes, (byte) index);
+        bytes[0] = (byte) (index >>> 8);
+        return bytes;
+    }
+}
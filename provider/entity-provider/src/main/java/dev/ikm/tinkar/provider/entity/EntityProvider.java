@@ -41,8 +41,10 @@
 import dev.ikm.tinkar.terms.State;
 import dev.ikm.tinkar.terms.TinkarTerm;
 import org.eclipse.collections.api.factory.Sets;
+import org.eclipse.collections.api.factory.primitive.IntLists;
 import org.eclipse.collections.api.factory.primitive.IntSets;
 import org.eclipse.collections.api.list.ImmutableList;
+import org.eclipse.collections.api.list.primitive.MutableIntList;
 import org.eclipse.collections.api.set.MutableSet;
 import org.eclipse.collections.api.set.primitive.ImmutableIntSet;
 import org.slf4j.Logger;
@@ -54,6 +56,7 @@
 import java.util.UUID;
 import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 
 import static dev.ikm.tinkar.terms.TinkarTerm.DESCRIPTION_PATTERN;
@@ -70,6 +73,8 @@ public class EntityProvider implements EntityService, PublicIdService, DefaultDe
     //Multi<Entity<? extends EntityVersion>> chronologyBroadcaster = BroadcastProcessor.create().toHotStream();
     //  <T extends Entity<? extends EntityVersion>>
     final Broadcaster<Integer> processor;
+    final Broadcaster<CacheInvalidation> cacheInvalidationProcessor = new SimpleBroadcaster<>();
+    private final AtomicLong invalidationSequence = new AtomicLong();
 
     private boolean loadPhase = false;
 
@@ -91,6 +96,29 @@ public void addSubscriberWithWeakReference(Subscriber<Integer> subscriber) {
         this.processor.addSubscriberWithWeakReference(subscriber);
     }
 
+    @Override
+    public void addCacheInvalidationSubscriber(Subscriber<CacheInvalidation> subscriber) {
+        this.cacheInvalidationProcessor.addSubscriberWithWeakReference(subscriber);
+    }
+
+    @Override
+    public void removeCacheInvalidationSubscriber(Subscriber<CacheInvalidation> subscriber) {
+        this.cacheInvalidationProcessor.removeSubscriber(subscriber);
+    }
+
+    @Override
+    public long invalidationSequence() {
+        return invalidationSequence.get();
+    }
+
+    private void dispatchInvalidation(int... nids) {
+        cacheInvalidationProcessor.dispatch(CacheInvalidation.of(invalidationSequence.incrementAndGet(), nids));
+    }
+
+    private void dispatchInvalidationOfAll() {
+        cacheInvalidationProcessor.dispatch(CacheInvalidation.all(invalidationSequence.incrementAndGet()));
+    }
+
     @Override
     public String textFast(int nid) {
 
@@ -233,10 +261,52 @@ private void putEntity(Entity entity, DataActivity activity, boolean dispatch) {
 
         ENTITY_CACHE.put(entity.nid(),  EntityRecordFactory.make(mergedEntityBytes));
         if (dispatch) {
-            processor.dispatch(entity.nid());
             if (entity instanceof SemanticEntity semanticEntity) {
+                dispatchInvalidation(entity.nid(), semanticEntity.referencedComponentNid());
+                processor.dispatch(entity.nid());
                 processor.dispatch(semanticEntity.referencedComponentNid());
+            } else {
+                dispatchInvalidation(entity.nid());
+                processor.dispatch(entity.nid());
+            }
+        }
+    }
+
+    /**
+     * Within a load phase, merges each entity without walking its referenced components to invalidate cached
+     * strings, without decoding the merged bytes into the entity cache, and without dispatching, and lets the
+     * data service defer derived index maintenance. Caches of strings are cleared, and deferred indexes are
+     * rebuilt, when the load phase ends.
+     */
+    @Override
+    public void putEntitiesInBulk(Iterable<? extends Entity<?>> entities, DataActivity activity) {
+        if (!loadPhase) {
+            EntityService.super.putEntitiesInBulk(entities, activity);
+            return;
+        }
+        for (Entity<?> entity : entities) {
+            ENTITY_CACHE.invalidate(entity.nid());
+            STAMP_CACHE.invalidate(entity.nid());
+            int patternNid = Integer.MAX_VALUE;
+            int referencedComponentNid = Integer.MAX_VALUE;
+            switch (entity) {
+                case SemanticEntity semanticEntity -> {
+                    patternNid = semanticEntity.patternNid();
+                    referencedComponentNid = semanticEntity.referencedComponentNid();
+                }
+                case StampEntity stampEntity -> {
+                    if (stampEntity.lastVersion().stateNid() == State.CANCELED.nid()) {
+                        PrimitiveData.get().addCanceledStampNid(stampEntity.nid());
+                    }
+                }
+                case ConceptEntity _ -> {
+                }
+                case PatternEntity _ -> {
+                }
+                default -> throw new IllegalStateException("Unexpected value: " + entity);
             }
+            PrimitiveData.get().mergeDeferringIndexes(entity.nid(), patternNid, referencedComponentNid,
+                    entity.getBytes(), entity, activity);
         }
     }
 
@@ -319,10 +389,18 @@ public int[] semanticNidsForComponentOfPattern(int componentNid, int patternNid)
 
     @Override
     public void notifyRefreshRequired(Transaction transaction) {
+        if (loadPhase) {
+            // Ending the load phase invalidates every cache and notifies subscribers once for all of its writes.
+            return;
+        }
+        MutableIntList nids = IntLists.mutable.empty();
         transaction.forEachComponentInTransaction(nid -> {
             Entity.get(nid).ifPresent(entity -> invalidateCaches(entity));
-            this.processor.dispatch(nid);
+            nids.add(nid);
         });
+        // One batch for the whole transaction, so caches do their invalidation work once per commit.
+        dispatchInvalidation(nids.toArray());
+        nids.forEach(this.processor::dispatch);
     }
 
     @Override
@@ -379,6 +457,11 @@ public void reset() {
 
     @Override
     public void dispatch(Integer item) {
+        if (item == Integer.MIN_VALUE) {
+            dispatchInvalidationOfAll();
+        } else {
+            dispatchInvalidation(item);
+        }
         this.processor.dispatch(item);
     }
 
@@ -401,14 +484,13 @@ public void erase(Entity entity) {
     public Future<Entity> mergeThenErase(Entity entityToMergeInto, Entity entityToErase) {
         if (entityToMergeInto.getClass().equals(entityToMergeInto.getClass())) {
             if (PrimitiveData.get() instanceof PrimitiveDataRepair primitiveDataRepair) {
-                FutureTask<Entity> mergeThenEraseTask = new FutureTask<>(() -> {
+                return TinkExecutor.threadPool().submit(() -> {
                     Future<Entity> mergedEntity = mergeEntities(entityToMergeInto, entityToErase);
                     Entity entityToKeep = mergedEntity.get();
                     erase(entityToErase);
                     primitiveDataRepair.put(entityToMergeInto.nid(), mergedEntity.get().getBytes());
                     return entityToKeep;
                 });
-                return (Future<Entity>) TinkExecutor.threadPool().submit(mergeThenEraseTask);
             } else {
                 throw new UnsupportedOperationException("PrimitiveDataRepair is not supported by: " +
                         PrimitiveData.get().getClass().getName());
@@ -524,7 +606,11 @@ public void beginLoadPhase() {
 
     @Override
     public void endLoadPhase() {
+        PrimitiveData.get().rebuildDeferredIndexes();
+        // Bulk writes do not invalidate the strings of the components their semantics describe.
+        STRING_CACHE.invalidateAll();
         loadPhase = false;
+        dispatchInvalidationOfAll();
         processor.dispatch(Integer.MIN_VALUE);
         // Now we build the AnalyzingSuggester Index
         try {
@@ -0,0 +1,77 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.provider.executor;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What a {@link TinkarThreadPoolExecutor} does with a task when all its threads are busy and its queue is full.
+ */
+public enum BackPressurePolicy {
+    /**
+     * Run the task on the submitting thread, which slows the submitter down to the rate the pool can sustain.
+     */
+    CALLER_RUNS,
+    /**
+     * Block the submitting thread until there is room in the queue, and reject the task if there is no room
+     * within the block timeout.
+     */
+    BLOCK,
+    /**
+     * Reject the task with a {@link RejectedExecutionException}.
+     */
+    ABORT;
+
+    private static final Logger LOG = LoggerFactory.getLogger(BackPressurePolicy.class);
+
+    public static BackPressurePolicy fromString(String policyName) {
+        try {
+            return valueOf(policyName.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            LOG.warn("Unknown back pressure policy: " + policyName + ". Using " + CALLER_RUNS);
+            return CALLER_RUNS;
+        }
+    }
+
+    RejectedExecutionHandler handler(long blockTimeoutMillis) {
+        return switch (this) {
+            case CALLER_RUNS -> new ThreadPoolExecutor.CallerRunsPolicy();
+            case BLOCK -> (runnable, executor) -> block(runnable, executor, blockTimeoutMillis);
+            case ABORT -> new ThreadPoolExecutor.AbortPolicy();
+        };
+    }
+
+    private static void block(Runnable runnable, ThreadPoolExecutor executor, long blockTimeoutMillis) {
+        if (executor.isShutdown()) {
+            throw new RejectedExecutionException("Executor is shut down");
+        }
+        try {
+            if (!executor.getQueue().offer(runnable, blockTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new RejectedExecutionException("No room in the executor after waiting " +
+                        blockTimeoutMillis + " ms");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting to enqueue", e);
+        }
+    }
+}
@@ -16,16 +16,19 @@
 package dev.ikm.tinkar.provider.executor;
 
 import dev.ikm.tinkar.common.alert.UncaughtExceptionAlertStreamer;
+import dev.ikm.tinkar.common.service.ExecutorPoolMetrics;
 import dev.ikm.tinkar.common.service.ExecutorService;
+import dev.ikm.tinkar.common.service.ServiceKeys;
+import dev.ikm.tinkar.common.service.ServiceProperties;
+import dev.ikm.tinkar.common.util.thread.LatencyHistogram;
 import dev.ikm.tinkar.common.util.thread.NamedThreadFactory;
-import dev.ikm.tinkar.common.util.thread.ThreadPoolExecutorFixed;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.SynchronousQueue;
@@ -43,14 +46,22 @@
  * The {@link #blockingThreadPool()} that this provides is a standard thread pool with (up to) the same number of threads
  * as there are cores present on the computer - with a minimum of 6 threads.  This executor has no queue - internally
  * it uses a {@link SynchronousQueue} - so if no thread is available to accept the task being queued, it will block
- * submission of the task until a thread is available to accept the job.
+ * submission of the task until a thread is available to accept the job, or reject it after
+ * {@link ServiceKeys#EXECUTOR_BLOCK_TIMEOUT_MS}.
  * <p>
  * The {@link #threadPool()} that this provides is a standard thread pool with (up to) the same number of threads
- * as there are cores present on the computer - with a minimum of 6 threads.  This executor has an unbounded queue
- * depth, and FIFO behavior.
+ * as there are cores present on the computer - with a minimum of 6 threads.  This executor has a bounded queue,
+ * and FIFO behavior.  When the queue is full, the {@link ServiceKeys#EXECUTOR_BACK_PRESSURE_POLICY} applies.
  * <p>
- * The {@link #ioThreadPool()} that this provides is a standard thread pool with 6 threads.  This executor has an unbounded queue
+ * The {@link #ioThreadPool()} that this provides is a standard thread pool with 6 threads.  This executor has a bounded queue
  * depth, and FIFO behavior.  This executor is good for jobs that tend to block on disk IO, where you don't want many running in parallel.
+ * <p>
+ * The {@link #virtualThreadExecutor()} that this provides runs each task on its own virtual thread, with a limit on
+ * how many run at once.  This executor is good for jobs that spend most of their time blocked on IO, where a job
+ * should not hold one of the few IO threads while it waits.
+ * <p>
+ * Pool sizes, queue capacities, and the back pressure policy are read from {@link ServiceProperties} when the pools
+ * start.  {@link #metrics()} reports the activity, queue depth, and task latencies of each pool.
  *
  * @author <a href="mailto:daniel.armbrust.list@gmail.com">Dan Armbrust</a>
  */
@@ -61,6 +72,17 @@ public class ExecutorProvider implements ExecutorService {
 
     private static final UncaughtExceptionAlertStreamer exceptionAlertStreamer = new UncaughtExceptionAlertStreamer();
 
+    /**
+     * Unbounded by default. With a bounded queue and {@link BackPressurePolicy#CALLER_RUNS}, a full queue runs
+     * tasks on the submitting thread, which may be an event loop thread that the task then blocks. Deployments that
+     * bound the queue should pick a policy that suits their submitters.
+     */
+    private static final int DEFAULT_QUEUE_CAPACITY = Integer.MAX_VALUE;
+
+    private static final long DEFAULT_BLOCK_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(10);
+
+    private static final int DEFAULT_VIRTUAL_THREAD_CONCURRENCY = 256;
+
     private final AtomicBoolean started = new AtomicBoolean(false);
 
     /**
@@ -71,12 +93,12 @@ public class ExecutorProvider implements ExecutorService {
     /**
      * The blocking thread pool executor.
      */
-    private ThreadPoolExecutor blockingThreadPoolExecutor;
+    private TinkarThreadPoolExecutor blockingThreadPoolExecutor;
 
     /**
      * The thread pool executor.
      */
-    private ThreadPoolExecutor threadPoolExecutor;
+    private TinkarThreadPoolExecutor threadPoolExecutor;
 
     /**
      * The io thread pool executor.
@@ -88,6 +110,11 @@ public class ExecutorProvider implements ExecutorService {
      */
     private TinkarScheduledExecutor scheduledExecutor;
 
+    /**
+     * The virtual thread executor.
+     */
+    private VirtualThreadExecutor virtualThreadExecutor;
+
     /**
      * Start me.
      */
@@ -101,8 +128,17 @@ protected void start() {
         // The java default ForkJoinPool.commmonPool starts with only 1 thread, on 1 and 2 core systems, which can get us deadlocked pretty easily.
         final int procCount = Runtime.getRuntime()
                 .availableProcessors();
-        final int parallelism = ((procCount - 1) < 6 ? 6
-                : procCount - 1);  // set between 6 and 1 less than proc count (not less than 6)
+        final int parallelism = ServiceProperties.get(ServiceKeys.EXECUTOR_THREAD_POOL_SIZE,
+                (procCount - 1) < 6 ? 6 : procCount - 1);  // set between 6 and 1 less than proc count (not less than 6)
+        final int ioPoolSize = ServiceProperties.get(ServiceKeys.EXECUTOR_IO_THREAD_POOL_SIZE, 6);
+        final int queueCapacity = ServiceProperties.get(ServiceKeys.EXECUTOR_QUEUE_CAPACITY, DEFAULT_QUEUE_CAPACITY);
+        final BackPressurePolicy backPressurePolicy = BackPressurePolicy.fromString(
+                ServiceProperties.get(ServiceKeys.EXECUTOR_BACK_PRESSURE_POLICY, BackPressurePolicy.CALLER_RUNS.name()));
+        final long blockTimeoutMillis = ServiceProperties.get(ServiceKeys.EXECUTOR_BLOCK_TIMEOUT_MS,
+                DEFAULT_BLOCK_TIMEOUT_MS);
+        final int scheduledPoolSize = ServiceProperties.get(ServiceKeys.EXECUTOR_SCHEDULED_POOL_SIZE, 2);
+        final int virtualThreadConcurrency = ServiceProperties.get(ServiceKeys.EXECUTOR_VIRTUAL_THREAD_CONCURRENCY,
+                DEFAULT_VIRTUAL_THREAD_CONCURRENCY);
 
         this.forkJoinExecutor = new ForkJoinPool(parallelism);
 
@@ -112,48 +148,50 @@ protected void start() {
         final TimeUnit timeUnit = TimeUnit.SECONDS;
 
         // The blocking executor
-        this.blockingThreadPoolExecutor = new ThreadPoolExecutorFixed(corePoolSize,
+        this.blockingThreadPoolExecutor = new TinkarThreadPoolExecutor("blocking",
+                corePoolSize,
                 maximumPoolSize,
                 keepAliveTime,
                 timeUnit,
                 new SynchronousQueue<>(),
-                new NamedThreadFactory("Tinkar-B-work-thread", true));
-        this.blockingThreadPoolExecutor.setRejectedExecutionHandler((runnable, executor) -> {
-            try {
-                executor.getQueue()
-                        .offer(runnable, Long.MAX_VALUE, TimeUnit.HOURS);
-            } catch (final Exception e) {
-                throw new RejectedExecutionException("Interrupted while waiting to enqueue");
-            }
-        });
+                new NamedThreadFactory("Tinkar-B-work-thread", true),
+                BackPressurePolicy.BLOCK.handler(blockTimeoutMillis));
 
         // The non-blocking executor - set core threads equal to max - otherwise, it will never increase the thread count
-        // with an unbounded queue.
-        this.threadPoolExecutor = new ThreadPoolExecutorFixed(maximumPoolSize,
+        // with a queue.
+        this.threadPoolExecutor = new TinkarThreadPoolExecutor("thread",
+                maximumPoolSize,
                 maximumPoolSize,
                 keepAliveTime,
                 timeUnit,
-                new LinkedBlockingQueue<>(),
-                new NamedThreadFactory("Tinkar-Q-work-thread", true));
+                new LinkedBlockingQueue<>(queueCapacity),
+                new NamedThreadFactory("Tinkar-Q-work-thread", true),
+                backPressurePolicy.handler(blockTimeoutMillis));
         this.threadPoolExecutor.allowCoreThreadTimeOut(true);
 
         // The IO non-blocking executor - set core threads equal to max - otherwise, it will never increase the thread count
-        // with an unbounded queue.
-        this.ioThreadPoolExecutor = new TinkarThreadPoolExecutor(6,
-                6,
+        // with a queue.
+        this.ioThreadPoolExecutor = new TinkarThreadPoolExecutor("io",
+                ioPoolSize,
+                ioPoolSize,
                 keepAliveTime,
                 timeUnit,
-                new LinkedBlockingQueue<>(),
-                new NamedThreadFactory("Tinkar-IO-work-thread", true));
+                new LinkedBlockingQueue<>(queueCapacity),
+                new NamedThreadFactory("Tinkar-IO-work-thread", true),
+                backPressurePolicy.handler(blockTimeoutMillis));
         this.ioThreadPoolExecutor.allowCoreThreadTimeOut(true);
 
+        this.virtualThreadExecutor = new VirtualThreadExecutor("Tinkar-VT-work-thread", virtualThreadConcurrency);
+
         // Execute this once, early on, in a background thread - as randomUUID uses secure random - and the initial
         // init of secure random can block on many systems that don't have enough entropy occuring.  The DB load process
         // should provide enough entropy to get it initialized, so it doesn't pause things later when someone requests a random UUID.
         threadPool().execute(() -> UUID.randomUUID());
-        this.scheduledExecutor = new TinkarScheduledExecutor(1,
+        this.scheduledExecutor = new TinkarScheduledExecutor(scheduledPoolSize,
                 new NamedThreadFactory("Tinkar-Scheduled-Thread", true));
-        LOG.info("WorkExecutors thread pools ready");
+        LOG.info("WorkExecutors thread pools ready: {} compute threads, {} IO threads, {} concurrent virtual thread " +
+                        "tasks, queue capacity {} with {} back pressure", parallelism, ioPoolSize,
+                virtualThreadConcurrency, queueCapacity, backPressurePolicy);
 
     }
 
@@ -166,6 +204,7 @@ protected void stop() {
         }
 
         LOG.info("Stopping WorkExecutors thread pools. ");
+        metrics().forEach(poolMetrics -> LOG.info(poolMetrics.toString()));
 
         try {
             if (this.forkJoinExecutor != null) {
@@ -196,6 +235,13 @@ protected void stop() {
                 }
             }
 
+            if (this.virtualThreadExecutor != null) {
+                this.virtualThreadExecutor.shutdown();
+                if (this.virtualThreadExecutor.awaitTermination(30, TimeUnit.SECONDS)) {
+                    LOG.info("virtualThreadExecutor terminated successfully");
+                }
+            }
+
             if (this.scheduledExecutor != null) {
                 this.scheduledExecutor.shutdown();
                 if (this.scheduledExecutor.awaitTermination(30, TimeUnit.SECONDS)) {
@@ -228,7 +274,7 @@ public ForkJoinPool forkJoinThreadPool() {
      *
      * @return The Tinkar common {@link ThreadPoolExecutor} - (behavior described in the class docs).
      * This is a synchronous queue - if no thread is available to take a job, it will block until a thread
-     * is available to accept the job.
+     * is available to accept the job, or reject the job after the block timeout.
      */
     public ThreadPoolExecutor blockingThreadPool() {
         return this.blockingThreadPoolExecutor;
@@ -238,7 +284,7 @@ public ThreadPoolExecutor blockingThreadPool() {
      * Gets the executor.
      *
      * @return The Tinkar common {@link ThreadPoolExecutor} - (behavior described in the class docs).
-     * This is backed by an unbounded queue - it won't block / reject submissions because of being full.
+     * This is backed by a bounded queue - when it is full, the back pressure policy applies.
      * This executor has processing threads linked to the number of CPUs available.  It is good for compute
      * intensive jobs.
      */
@@ -251,7 +297,7 @@ public ThreadPoolExecutor threadPool() {
      * Gets the IO executor.
      *
      * @return The Tinkar common IO {@link ThreadPoolExecutor} - (behavior described in the class docs).
-     * This is backed by an unbounded queue - it won't block / reject submissions because of being full.
+     * This is backed by a bounded queue - when it is full, the back pressure policy applies.
      * This executor differs from {@link #threadPool()} by having a much smaller number of threads - good for
      * jobs that tend to block on IO.
      */
@@ -264,10 +310,42 @@ public ThreadPoolExecutor ioThreadPool() {
      * Gets the scheduled thread pool executor.
      *
      * @return the Tinkar common {@link ScheduledThreadPoolExecutor} instance - (behavior described in the class docs)
-     * This pool only has a single thread - submitted jobs should be fast executing.
+     * This pool only has a few threads - submitted jobs should be fast executing.
      */
     @Override
     public ScheduledExecutorService scheduled() {
         return this.scheduledExecutor;
     }
+
+    /**
+     * Gets the virtual thread executor.
+     *
+     * @return an executor that runs each job on its own virtual thread - (behavior described in the class docs).
+     * Submissions never block; jobs beyond the concurrency limit wait on their virtual thread.
+     */
+    @Override
+    public java.util.concurrent.ExecutorService virtualThreadExecutor() {
+        return this.virtualThreadExecutor;
+    }
+
+    @Override
+    public List<ExecutorPoolMetrics> metrics() {
+        if (!started.get()) {
+            return List.of();
+        }
+        return List.of(forkJoinMetrics(),
+                this.blockingThreadPoolExecutor.metrics(),
+                this.threadPoolExecutor.metrics(),
+                this.ioThreadPoolExecutor.metrics(),
+                this.virtualThreadExecutor.metrics(),
+                this.scheduledExecutor.metrics());
+    }
+
+    private ExecutorPoolMetrics forkJoinMetrics() {
+        return new ExecutorPoolMetrics("forkJoin", this.forkJoinExecutor.getPoolSize(),
+                this.forkJoinExecutor.getActiveThreadCount(),
+                this.forkJoinExecutor.getQueuedTaskCount() + this.forkJoinExecutor.getQueuedSubmissionCount(),
+                Integer.MAX_VALUE, 0, 0,
+                LatencyHistogram.Snapshot.EMPTY, LatencyHistogram.Snapshot.EMPTY);
+    }
 }
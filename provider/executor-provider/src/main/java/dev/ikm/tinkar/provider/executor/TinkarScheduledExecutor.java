@@ -17,7 +17,9 @@
 
 import dev.ikm.tinkar.common.alert.AlertObject;
 import dev.ikm.tinkar.common.alert.AlertStreams;
+import dev.ikm.tinkar.common.service.ExecutorPoolMetrics;
 import dev.ikm.tinkar.common.service.TrackingCallable;
+import dev.ikm.tinkar.common.util.thread.LatencyHistogram;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -46,6 +48,15 @@ public TinkarScheduledExecutor(int corePoolSize, ThreadFactory threadFactory, Re
         super(corePoolSize, threadFactory, handler);
     }
 
+    /**
+     * Scheduled tasks wait in the queue by design, so queue latency is not meaningful and is not recorded.
+     */
+    public ExecutorPoolMetrics metrics() {
+        return new ExecutorPoolMetrics("scheduled", getPoolSize(), getActiveCount(), getQueue().size(),
+                Integer.MAX_VALUE, getCompletedTaskCount(), 0,
+                LatencyHistogram.Snapshot.EMPTY, LatencyHistogram.Snapshot.EMPTY);
+    }
+
     @Override
     protected <V> RunnableScheduledFuture<V> decorateTask(Runnable runnable, RunnableScheduledFuture<V> task) {
         if (runnable instanceof TrackingCallable) {
@@ -17,21 +17,31 @@
 
 import dev.ikm.tinkar.common.alert.AlertObject;
 import dev.ikm.tinkar.common.alert.AlertStreams;
-import dev.ikm.tinkar.common.service.TrackingCallable;
+import dev.ikm.tinkar.common.service.ExecutorPoolMetrics;
+import dev.ikm.tinkar.common.util.thread.LatencyHistogram;
 import dev.ikm.tinkar.common.util.thread.PausableThreadPoolExecutor;
+import dev.ikm.tinkar.common.util.thread.ThreadPoolExecutorFixed;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.RunnableFuture;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 public class TinkarThreadPoolExecutor extends PausableThreadPoolExecutor {
     private static final Logger LOG = LoggerFactory.getLogger(TinkarThreadPoolExecutor.class);
 
+    private String name = getClass().getSimpleName();
+    private final LatencyHistogram queueLatency = new LatencyHistogram();
+    private final LatencyHistogram runLatency = new LatencyHistogram();
+    private final LongAdder rejectedCount = new LongAdder();
+
     public TinkarThreadPoolExecutor(int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit, BlockingQueue<Runnable> workQueue) {
         super(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue);
     }
@@ -48,29 +58,104 @@ public TinkarThreadPoolExecutor(int corePoolSize, int maximumPoolSize, long keep
         super(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue, threadFactory, handler);
     }
 
+    public TinkarThreadPoolExecutor(String name, int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit,
+                                    BlockingQueue<Runnable> workQueue, ThreadFactory threadFactory,
+                                    RejectedExecutionHandler handler) {
+        this(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue, threadFactory);
+        this.name = name;
+        setRejectedExecutionHandler(handler);
+    }
+
+    public String name() {
+        return name;
+    }
+
+    @Override
+    public void setRejectedExecutionHandler(RejectedExecutionHandler handler) {
+        super.setRejectedExecutionHandler(new CountingRejectedExecutionHandler(handler));
+    }
+
+    public ExecutorPoolMetrics metrics() {
+        return new ExecutorPoolMetrics(name, getPoolSize(), getActiveCount(), getQueue().size(),
+                getQueue().size() + getQueue().remainingCapacity(), getCompletedTaskCount(), rejectedCount.sum(),
+                queueLatency.snapshot(), runLatency.snapshot());
+    }
+
+    /**
+     * Wraps each task to record when it was queued.
+     */
+    @Override
+    public void execute(Runnable command) {
+        super.execute(command instanceof TimedTask ? command : new TimedTask(command));
+    }
+
+    @Override
+    protected void beforeExecute(Thread t, Runnable r) {
+        super.beforeExecute(t, r);
+        if (r instanceof TimedTask timedTask) {
+            timedTask.startNanos = System.nanoTime();
+            queueLatency.record(timedTask.startNanos - timedTask.enqueuedNanos);
+        }
+    }
+
+    /**
+     * A submitted {@link FutureTask} is returned unwrapped, as {@link ThreadPoolExecutorFixed} does, so callers that
+     * cast the returned future get the task's own result and exception. The queue time wrapper is added in
+     * {@link #execute(Runnable)}, around the future, so it does not change what the future returns.
+     */
     @Override
     protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
-        if (runnable instanceof TrackingCallable trackingCallable) {
-            //return TaskWrapper.make(trackingCallable);
+        if (runnable instanceof FutureTask) {
+            return (FutureTask<T>) runnable;
         }
         return super.newTaskFor(runnable, value);
     }
 
     @Override
     protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
-        if (callable instanceof TrackingCallable trackingCallable) {
-//            TaskWrapper<T> taskWrapper = TaskWrapper.make(trackingCallable);
-//            Platform.runLater(() -> KometExecutorService.pendingTasks.add(taskWrapper));
-//            return taskWrapper;
+        if (callable instanceof FutureTask) {
+            return (FutureTask<T>) callable;
         }
         return super.newTaskFor(callable);
     }
 
     @Override
     protected void afterExecute(Runnable r, Throwable t) {
+        if (r instanceof TimedTask timedTask && timedTask.startNanos != 0) {
+            runLatency.record(System.nanoTime() - timedTask.startNanos);
+        }
         super.afterExecute(r, t);
         if (t != null) {
             AlertStreams.getRoot().dispatch(AlertObject.makeError(t));
         }
     }
-}
\ No newline at end of file
+
+    private static final class TimedTask implements Runnable {
+        final Runnable task;
+        final long enqueuedNanos = System.nanoTime();
+        long startNanos;
+
+        TimedTask(Runnable task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            task.run();
+        }
+    }
+
+    private class CountingRejectedExecutionHandler implements RejectedExecutionHandler {
+        final RejectedExecutionHandler handler;
+
+        CountingRejectedExecutionHandler(RejectedExecutionHandler handler) {
+            this.handler = handler instanceof CountingRejectedExecutionHandler counting ? counting.handler : handler;
+        }
+
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            rejectedCount.increment();
+            handler.rejectedExecution(r, executor);
+        }
+    }
+}
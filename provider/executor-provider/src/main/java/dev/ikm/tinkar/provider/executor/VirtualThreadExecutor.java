@@ -0,0 +1,124 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.provider.executor;
+
+import dev.ikm.tinkar.common.alert.AlertObject;
+import dev.ikm.tinkar.common.alert.AlertStreams;
+import dev.ikm.tinkar.common.service.ExecutorPoolMetrics;
+import dev.ikm.tinkar.common.util.thread.LatencyHistogram;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs each task on its own virtual thread, for tasks that block on I/O. At most the configured number of tasks run
+ * at once; the others wait on their own virtual thread, so submitting never blocks and there is no task queue to
+ * overflow.
+ */
+public class VirtualThreadExecutor extends AbstractExecutorService {
+    private final String name;
+    private final int concurrency;
+    private final ExecutorService threadPerTaskExecutor;
+    private final Semaphore runPermits;
+    private final AtomicInteger waitingCount = new AtomicInteger();
+    private final AtomicInteger activeCount = new AtomicInteger();
+    private final LongAdder completedCount = new LongAdder();
+    private final LongAdder rejectedCount = new LongAdder();
+    private final LatencyHistogram queueLatency = new LatencyHistogram();
+    private final LatencyHistogram runLatency = new LatencyHistogram();
+
+    public VirtualThreadExecutor(String name, int concurrency) {
+        this.name = name;
+        this.concurrency = concurrency;
+        this.runPermits = new Semaphore(concurrency);
+        this.threadPerTaskExecutor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-", 0).factory());
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        long enqueuedNanos = System.nanoTime();
+        waitingCount.incrementAndGet();
+        try {
+            threadPerTaskExecutor.execute(() -> run(task, enqueuedNanos));
+        } catch (RejectedExecutionException e) {
+            waitingCount.decrementAndGet();
+            rejectedCount.increment();
+            throw e;
+        }
+    }
+
+    private void run(Runnable task, long enqueuedNanos) {
+        // Uninterruptible, so that a cancelled future task still runs to record its cancellation.
+        runPermits.acquireUninterruptibly();
+        long startNanos = System.nanoTime();
+        waitingCount.decrementAndGet();
+        activeCount.incrementAndGet();
+        queueLatency.record(startNanos - enqueuedNanos);
+        try {
+            task.run();
+        } catch (Throwable t) {
+            AlertStreams.getRoot().dispatch(AlertObject.makeError(t));
+            throw t;
+        } finally {
+            runLatency.record(System.nanoTime() - startNanos);
+            activeCount.decrementAndGet();
+            completedCount.increment();
+            runPermits.release();
+        }
+    }
+
+    public ExecutorPoolMetrics metrics() {
+        return new ExecutorPoolMetrics(name, concurrency, activeCount.get(),
+                waitingCount.get(), Integer.MAX_VALUE, completedCount.sum(), rejectedCount.sum(),
+                queueLatency.snapshot(), runLatency.snapshot());
+    }
+
+    public int concurrency() {
+        return concurrency;
+    }
+
+    @Override
+    public void shutdown() {
+        threadPerTaskExecutor.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        return threadPerTaskExecutor.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return threadPerTaskExecutor.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return threadPerTaskExecutor.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return threadPerTaskExecutor.awaitTermination(timeout, unit);
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.provider.executor;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TinkarThreadPoolExecutorTest {
+
+    private static TinkarThreadPoolExecutor executor() {
+        return new TinkarThreadPoolExecutor(2, 2, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+    }
+
+    @Test
+    void submittedFutureTaskIsNotWrapped() throws Exception {
+        TinkarThreadPoolExecutor executor = executor();
+        try {
+            FutureTask<String> task = new FutureTask<>(() -> "result");
+            Future<?> future = executor.submit(task);
+            assertSame(task, future);
+            assertEquals("result", future.get(1, TimeUnit.MINUTES));
+
+            FutureTask<String> failingTask = new FutureTask<>(() -> {
+                throw new IllegalStateException("failed");
+            });
+            Future<?> failingFuture = executor.submit(failingTask);
+            ExecutionException e = assertThrows(ExecutionException.class,
+                    () -> failingFuture.get(1, TimeUnit.MINUTES));
+            assertInstanceOf(IllegalStateException.class, e.getCause());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void recordsLatencies() throws Exception {
+        TinkarThreadPoolExecutor executor = executor();
+        for (int i = 0; i < 10; i++) {
+            int value = i;
+            assertEquals(value, executor.submit(() -> value).get(1, TimeUnit.MINUTES));
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        assertEquals(10, executor.metrics().completedTaskCount());
+        assertEquals(10, executor.metrics().queueLatency().count());
+        assertEquals(10, executor.metrics().runLatency().count());
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.provider.executor;
+
+import dev.ikm.tinkar.common.service.ExecutorPoolMetrics;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VirtualThreadExecutorTest {
+
+    @Test
+    void limitsConcurrency() throws Exception {
+        VirtualThreadExecutor executor = new VirtualThreadExecutor("test", 2);
+        try {
+            AtomicInteger running = new AtomicInteger();
+            AtomicInteger maxRunning = new AtomicInteger();
+            CountDownLatch twoRunning = new CountDownLatch(2);
+            CountDownLatch release = new CountDownLatch(1);
+            List<Future<Integer>> futures = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                int value = i;
+                futures.add(executor.submit(() -> {
+                    maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    twoRunning.countDown();
+                    release.await();
+                    running.decrementAndGet();
+                    return value;
+                }));
+            }
+            assertTrue(twoRunning.await(1, TimeUnit.MINUTES));
+            ExecutorPoolMetrics waiting = executor.metrics();
+            assertEquals(2, waiting.activeCount());
+            assertEquals(18, waiting.queuedCount());
+
+            release.countDown();
+            for (int i = 0; i < futures.size(); i++) {
+                assertEquals(i, futures.get(i).get(1, TimeUnit.MINUTES));
+            }
+            assertEquals(2, maxRunning.get());
+
+            // Metrics are updated after a future completes, so wait for the threads to finish.
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+            ExecutorPoolMetrics done = executor.metrics();
+            assertEquals(0, done.activeCount());
+            assertEquals(0, done.queuedCount());
+            assertEquals(20, done.completedTaskCount());
+            assertEquals(20, done.queueLatency().count());
+            assertEquals(20, done.runLatency().count());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void failedTaskCompletesFuture() throws Exception {
+        VirtualThreadExecutor executor = new VirtualThreadExecutor("test", 1);
+        try {
+            Future<Object> future = executor.submit(() -> {
+                throw new IllegalStateException("failed");
+            });
+            ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(1, TimeUnit.MINUTES));
+            assertInstanceOf(IllegalStateException.class, e.getCause());
+            // The permit is released, so the next task runs.
+            assertEquals("next", executor.submit(() -> "next").get(1, TimeUnit.MINUTES));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void rejectsAfterShutdown() throws InterruptedException {
+        VirtualThreadExecutor executor = new VirtualThreadExecutor("test", 1);
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        assertThrows(RejectedExecutionException.class, () -> executor.execute(() -> { }));
+        ExecutorPoolMetrics metrics = executor.metrics();
+        assertEquals(1, metrics.rejectedTaskCount());
+        assertEquals(0, metrics.queuedCount());
+    }
+}
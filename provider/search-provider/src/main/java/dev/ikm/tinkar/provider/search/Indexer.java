@@ -15,7 +15,12 @@
  */
 package dev.ikm.tinkar.provider.search;
 
+import dev.ikm.tinkar.common.alert.AlertStreams;
+import dev.ikm.tinkar.common.service.PrimitiveData;
+import dev.ikm.tinkar.common.service.ServiceKeys;
+import dev.ikm.tinkar.common.service.ServiceProperties;
 import dev.ikm.tinkar.common.util.time.Stopwatch;
+import dev.ikm.tinkar.entity.EntityRecordFactory;
 import dev.ikm.tinkar.entity.EntityService;
 import dev.ikm.tinkar.entity.SemanticEntity;
 import dev.ikm.tinkar.entity.SemanticEntityVersion;
@@ -24,6 +29,7 @@
 import org.apache.lucene.document.Document;
 import org.apache.lucene.document.Field;
 import org.apache.lucene.document.IntPoint;
+import org.apache.lucene.document.NumericDocValuesField;
 import org.apache.lucene.document.StoredField;
 import org.apache.lucene.document.TextField;
 import org.apache.lucene.index.DirectoryReader;
@@ -34,19 +40,44 @@
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
 import org.eclipse.collections.api.list.ImmutableList;
+import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Indexes the text fields of semantics with Lucene.
+ * <p>
+ * {@link #index(Object)} does not write to Lucene on the calling thread. Semantics are placed on a bounded queue
+ * that dedicated indexer threads drain in batches with {@link IndexWriter#addDocuments(Iterable)}, so writers only
+ * wait on the index when the queue is full. Each request is given a write sequence, and callers that need to
+ * search their own writes can wait with {@link #awaitIndexed(long)}.
+ */
 public class Indexer {
     public static final String NID_POINT = "nidPoint";
     public static final String NID = "nid";
     public static final String RC_NID = "rcNid";
     public static final String PATTERN_NID = "patternNid";
     public static final String FIELD_INDEX = "fieldIndex";
+    /*
+     * Doc values of the nids are kept under their own field names: the nid fields of indexes written before they
+     * had doc values are stored only, and Lucene rejects a document that changes the doc values type of a field.
+     */
+    public static final String NID_DOC_VALUES = "nidDv";
+    public static final String RC_NID_DOC_VALUES = "rcNidDv";
+    public static final String PATTERN_NID_DOC_VALUES = "patternNidDv";
+    public static final String FIELD_INDEX_DOC_VALUES = "fieldIndexDv";
     public static final String TEXT_FIELD_NAME = "text";
     private static final Logger LOG = LoggerFactory.getLogger(Indexer.class);
     private static final File defaultDataDirectory = new File("target/lucene/");
@@ -54,14 +85,47 @@ public class Indexer {
     private static Directory indexDirectory;
     private static Analyzer analyzer;
     private static IndexWriter indexWriter;
+    private static Directory suggesterDirectory;
+    private static volatile Indexer current;
+    public static final int DEFAULT_QUEUE_CAPACITY = 16_384;
+    public static final int DEFAULT_INDEXER_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() / 4);
+    private static final int MAX_BATCH_SIZE = 512;
+    private static final long INDEXED_POLL_MS = 100;
+    private static final int MAX_INDEX_ATTEMPTS = 3;
     private final Path indexPath;
+    private final BlockingQueue<Integer> indexQueue = new ArrayBlockingQueue<>(
+            ServiceProperties.get(ServiceKeys.INDEXER_QUEUE_CAPACITY, DEFAULT_QUEUE_CAPACITY));
+    private final ConcurrentHashMap<Integer, PendingDocument> pendingDocuments = new ConcurrentHashMap<>();
+    private final Object sequenceLock = new Object();
+    private final Object indexedMonitor = new Object();
+    /**
+     * Sequences of index requests that are queued or being written, guarded by sequenceLock.
+     */
+    private final TreeSet<Long> outstandingSequences = new TreeSet<>();
+    private long writeSequence;
+    /**
+     * The sequence of the last index request made by each thread.
+     */
+    private final ThreadLocal<Long> threadWriteSequence = ThreadLocal.withInitial(() -> 0L);
+    private final List<Thread> indexerThreads = new ArrayList<>();
+    private volatile boolean running = true;
 
     public Indexer() throws IOException {
         Indexer.indexDirectory = new ByteBuffersDirectory();
         Indexer.analyzer = new StandardAnalyzer();
         Indexer.indexWriter = Indexer.getIndexWriter();
         Indexer.indexReader = DirectoryReader.open(Indexer.indexWriter, true, false);
+        Indexer.suggesterDirectory = new ByteBuffersDirectory();
         this.indexPath = null;
+        startIndexerThreads();
+    }
+
+    private void startIndexerThreads() {
+        int threadCount = ServiceProperties.get(ServiceKeys.INDEXER_THREADS, DEFAULT_INDEXER_THREADS);
+        for (int i = 0; i < threadCount; i++) {
+            indexerThreads.add(Thread.ofPlatform().daemon().name("lucene-indexer-" + i).start(this::drainIndexQueue));
+        }
+        Indexer.current = this;
     }
 
     private static IndexWriter getIndexWriter() throws IOException {
@@ -83,6 +147,13 @@ public static Directory indexDirectory() {
     public static DirectoryReader indexReader() {
         return indexReader;
     }
+    /**
+     * @return the directory of the type ahead suggester, which is next to the index directory when the index
+     * is on disk. The suggester closes it.
+     */
+    public static Directory suggesterDirectory() {
+        return suggesterDirectory;
+    }
 
     public Indexer(Path indexPath) throws IOException {
         Stopwatch stopwatch = new Stopwatch();
@@ -92,6 +163,8 @@ public Indexer(Path indexPath) throws IOException {
         Indexer.analyzer = new StandardAnalyzer();
         Indexer.indexWriter = Indexer.getIndexWriter();
         Indexer.indexReader = DirectoryReader.open(Indexer.indexWriter);
+        Indexer.suggesterDirectory = FSDirectory.open(indexPath.resolveSibling(indexPath.getFileName() + "-suggester"));
+        startIndexerThreads();
         stopwatch.stop();
         LOG.info("Opened lucene index in: " + stopwatch.durationString());
     }
@@ -99,7 +172,9 @@ public Indexer(Path indexPath) throws IOException {
     public void commit() throws IOException {
         Stopwatch stopwatch = new Stopwatch();
         LOG.info("Committing lucene index");
+        awaitIndexed(writeSequence());
         indexWriter.commit();
+        TypeAheadSearch.commitIfOpen();
         stopwatch.stop();
         LOG.info("Committed lucene index in: {}", stopwatch.durationString());
     }
@@ -107,78 +182,332 @@ public void commit() throws IOException {
     public void close() throws IOException {
         Stopwatch stopwatch = new Stopwatch();
         LOG.info("Closing lucene index");
+        awaitIndexed(writeSequence());
+        // Indexer threads are stopped without interrupts, which would close an FSDirectory's channels.
+        running = false;
+        for (Thread indexerThread : indexerThreads) {
+            try {
+                indexerThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        if (Indexer.current == this) {
+            Indexer.current = null;
+        }
+        TypeAheadSearch.closeIfOpen();
         Indexer.indexReader.close();
         Indexer.indexWriter.close();
-        TypeAheadSearch.get().close();
         stopwatch.stop();
         LOG.info("Closed lucene index in: " + stopwatch.durationString());
     }
 
-    public void index(Object object) {
-        if (object instanceof SemanticEntity semanticEntity) {
-            IntPoint nidPoint = new IntPoint(NID_POINT, 0);
-            // The IntPoint field does not store the value,
-            // so we also need a stored field to retrieve the nid from a document.
-            StoredField nidField = new StoredField(NID, 0);
-            StoredField rcNidField = new StoredField(RC_NID, 0);
-            StoredField patternNidField = new StoredField(PATTERN_NID, 0);
-            StoredField fieldIndexField = new StoredField(FIELD_INDEX, 0);
-
-            // KEC: Deliberately commented out. See explanation on method for reason.
-            // deleteDocumentIfExists(semanticEntity);
-
-
-            Document document = new Document();
-            nidPoint.setIntValue(semanticEntity.nid());
-            nidField.setIntValue(semanticEntity.nid());
-            rcNidField.setIntValue(semanticEntity.referencedComponentNid());
-            patternNidField.setIntValue(semanticEntity.patternNid());
-
-            document.add(nidPoint);
-            document.add(nidField);
-            document.add(rcNidField);
-            document.add(patternNidField);
-            for (SemanticEntityVersion version : ((SemanticEntity<SemanticEntityVersion>) semanticEntity).versions()) {
-                ImmutableList<Object> fields = version.fieldValues();
-                for (int i = 0; i < fields.size(); i++) {
-                    Object field = fields.get(i);
-                    if (field instanceof String text) {
-                        text = text.strip();
-                        if (i == 0) {
+    /**
+     * Queues a semantic for indexing and returns without waiting for Lucene. Blocks while the queue is full. If
+     * the nid is already queued, the requests are coalesced, and the semantic is read from the store with all of
+     * its versions when it is indexed.
+     *
+     * @return the write sequence of this index request, to use with {@link #awaitIndexed(long)}. Objects that are
+     * not semantics are not indexed, and return the current write sequence.
+     */
+    public long index(Object object) {
+        if (!(object instanceof SemanticEntity semanticEntity)) {
+            return writeSequence();
+        }
+        PendingDocument pending;
+        synchronized (sequenceLock) {
+            pending = new PendingDocument(semanticEntity, ++writeSequence, 0);
+            outstandingSequences.add(pending.sequence);
+        }
+        threadWriteSequence.set(pending.sequence);
+        PendingDocument queued = pendingDocuments.merge(semanticEntity.nid(), pending,
+                (older, newer) -> new PendingDocument(newer.semanticEntity, older.sequence, older.attempts));
+        if (queued == pending) {
+            try {
+                indexQueue.put(semanticEntity.nid());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                pendingDocuments.remove(semanticEntity.nid(), pending);
+                completed(pending.sequence);
+                throw new RuntimeException(e);
+            }
+        } else {
+            // Coalesced with an already queued request, which completes no later than this sequence would.
+            completed(pending.sequence);
+        }
+        return pending.sequence;
+    }
+
+    /**
+     * @return the sequence of the most recent index request.
+     */
+    public long writeSequence() {
+        synchronized (sequenceLock) {
+            return writeSequence;
+        }
+    }
+
+    /**
+     * @return the sequence of the last index request made by the calling thread, or 0 if it has made none.
+     */
+    public long threadWriteSequence() {
+        return threadWriteSequence.get();
+    }
+
+    /**
+     * @return the highest write sequence at or below which every index request has been added to the index writer.
+     */
+    public long indexedSequence() {
+        synchronized (sequenceLock) {
+            return outstandingSequences.isEmpty() ? writeSequence : outstandingSequences.first() - 1;
+        }
+    }
+
+    /**
+     * Blocks until every index request up to and including {@code sequence} has been added to the index writer,
+     * so a search that refreshes its reader afterwards sees those writes.
+     */
+    public void awaitIndexed(long sequence) {
+        synchronized (indexedMonitor) {
+            while (indexedSequence() < sequence) {
+                try {
+                    indexedMonitor.wait(INDEXED_POLL_MS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Blocks until every index request made before this call has been added to the index writer of the open
+     * indexer, if there is one.
+     *
+     * @return the write sequence that was awaited, or 0 if no indexer is open.
+     */
+    public static long awaitIndexed() {
+        Indexer indexer = Indexer.current;
+        if (indexer == null) {
+            return 0;
+        }
+        long sequence = indexer.writeSequence();
+        indexer.awaitIndexed(sequence);
+        return sequence;
+    }
+
+    /**
+     * @return the open indexer, or null if no indexer is open.
+     */
+    static Indexer current() {
+        return Indexer.current;
+    }
+
+    private void completed(long sequence) {
+        synchronized (sequenceLock) {
+            outstandingSequences.remove(sequence);
+        }
+    }
+
+    private void drainIndexQueue() {
+        IntArrayList batchNids = new IntArrayList(MAX_BATCH_SIZE);
+        List<PendingDocument> batch = new ArrayList<>(MAX_BATCH_SIZE);
+        List<Document> documents = new ArrayList<>(MAX_BATCH_SIZE);
+        List<Integer> drained = new ArrayList<>(MAX_BATCH_SIZE);
+        while (running) {
+            try {
+                Integer nid = indexQueue.poll(INDEXED_POLL_MS, TimeUnit.MILLISECONDS);
+                if (nid == null) {
+                    continue;
+                }
+                drained.add(nid);
+            } catch (InterruptedException e) {
+                return;
+            }
+            indexQueue.drainTo(drained, MAX_BATCH_SIZE - 1);
+            for (Integer nid : drained) {
+                PendingDocument pending = pendingDocuments.remove(nid);
+                if (pending != null) {
+                    batchNids.add(nid);
+                    batch.add(pending);
+                }
+            }
+            try {
+                for (int i = 0; i < batch.size(); i++) {
+                    documents.add(document(storedSemantic(batchNids.get(i), batch.get(i).semanticEntity)));
+                }
+                indexWriter.addDocuments(documents);
+                synchronized (sequenceLock) {
+                    batch.forEach(pending -> outstandingSequences.remove(pending.sequence));
+                }
+            } catch (IOException | RuntimeException e) {
+                // Lucene adds none of the batch when one document fails.
+                LOG.warn("Exception indexing nids: " + batchNids + ", indexing them one at a time", e);
+                documents.clear();
+                indexIndividually(batchNids, batch, documents);
+            }
+            try {
+                indexed(documents);
+            } catch (IOException | RuntimeException e) {
+                LOG.error("Exception adding suggestions for nids: " + batchNids, e);
+            } finally {
+                synchronized (indexedMonitor) {
+                    indexedMonitor.notifyAll();
+                }
+                drained.clear();
+                batchNids.clear();
+                batch.clear();
+                documents.clear();
+            }
+        }
+    }
+
+    /**
+     * Indexes the semantics of a batch that failed, so one semantic that cannot be indexed does not lose the rest.
+     * Semantics that fail again are queued again, up to {@value #MAX_INDEX_ATTEMPTS} attempts.
+     *
+     * @param documents receives the documents that were added
+     */
+    private void indexIndividually(IntArrayList batchNids, List<PendingDocument> batch, List<Document> documents) {
+        for (int i = 0; i < batch.size(); i++) {
+            int nid = batchNids.get(i);
+            PendingDocument pending = batch.get(i);
+            try {
+                Document document = document(storedSemantic(nid, pending.semanticEntity));
+                indexWriter.addDocument(document);
+                documents.add(document);
+                completed(pending.sequence);
+            } catch (IOException | RuntimeException e) {
+                retryOrFail(nid, pending, e);
+            }
+        }
+    }
+
+    private void retryOrFail(int nid, PendingDocument pending, Exception e) {
+        if (pending.attempts + 1 < MAX_INDEX_ATTEMPTS) {
+            PendingDocument retry = new PendingDocument(pending.semanticEntity, pending.sequence, pending.attempts + 1);
+            if (pendingDocuments.putIfAbsent(nid, retry) != null) {
+                // A newer request for the nid is queued, and will index the stored semantic with its versions.
+                completed(pending.sequence);
+                return;
+            }
+            // Not put, which could block this thread on the queue that it drains.
+            if (indexQueue.offer(nid)) {
+                return;
+            }
+            pendingDocuments.remove(nid, retry);
+        }
+        completed(pending.sequence);
+        LOG.error("Semantic " + nid + " was not indexed after " + (pending.attempts + 1) + " attempts", e);
+        AlertStreams.dispatchToRoot(new IllegalStateException("Semantic " + nid + " could not be indexed", e));
+    }
+
+    /**
+     * Adds the text of indexed documents to the suggester, and schedules a searcher refresh.
+     */
+    private static void indexed(List<Document> documents) throws IOException {
+        if (documents.isEmpty()) {
+            return;
+        }
+        // The suggester is built once when a load phase ends, but the searcher is refreshed for bulk loads too.
+        if (!EntityService.get().isLoadPhase()) {
+            List<String> texts = new ArrayList<>();
+            for (Document document : documents) {
+                texts.addAll(Arrays.asList(document.getValues(TEXT_FIELD_NAME)));
+            }
+            TypeAheadSearch.get().add(texts);
+        }
+        Searcher.refreshSoon();
+    }
+
+    /**
+     * The semantic that was queued may be the object of a merge, with only the versions it added, and requests
+     * for the nid are coalesced, so the semantic is read from the store with all of its versions.
+     *
+     * @return the stored semantic, or the queued semantic if the store cannot be read, as while it is opening
+     */
+    private static SemanticEntity storedSemantic(int nid, SemanticEntity queued) {
+        byte[] bytes;
+        try {
+            bytes = PrimitiveData.get().getBytes(nid);
+        } catch (RuntimeException e) {
+            return queued;
+        }
+        if (bytes != null && EntityRecordFactory.make(bytes) instanceof SemanticEntity<?> semantic) {
+            return semantic;
+        }
+        return queued;
+    }
+
+    private static Document document(SemanticEntity semanticEntity) {
+        IntPoint nidPoint = new IntPoint(NID_POINT, 0);
+        // The IntPoint field does not store the value,
+        // so we also need a stored field to retrieve the nid from a document.
+        StoredField nidField = new StoredField(NID, 0);
+        StoredField rcNidField = new StoredField(RC_NID, 0);
+        StoredField patternNidField = new StoredField(PATTERN_NID, 0);
+        StoredField fieldIndexField = new StoredField(FIELD_INDEX, 0);
+
+        // KEC: Deliberately commented out. See explanation on method for reason.
+        // deleteDocumentIfExists(semanticEntity);
+
+
+        Document document = new Document();
+        nidPoint.setIntValue(semanticEntity.nid());
+        nidField.setIntValue(semanticEntity.nid());
+        rcNidField.setIntValue(semanticEntity.referencedComponentNid());
+        patternNidField.setIntValue(semanticEntity.patternNid());
+
+        document.add(nidPoint);
+        document.add(nidField);
+        document.add(rcNidField);
+        document.add(patternNidField);
+        // Doc values let search filters read the nids of each match without loading stored fields.
+        document.add(new NumericDocValuesField(NID_DOC_VALUES, semanticEntity.nid()));
+        document.add(new NumericDocValuesField(RC_NID_DOC_VALUES, semanticEntity.referencedComponentNid()));
+        document.add(new NumericDocValuesField(PATTERN_NID_DOC_VALUES, semanticEntity.patternNid()));
+        int lastTextFieldIndex = -1;
+        for (SemanticEntityVersion version : ((SemanticEntity<SemanticEntityVersion>) semanticEntity).versions()) {
+            ImmutableList<Object> fields = version.fieldValues();
+            for (int i = 0; i < fields.size(); i++) {
+                Object field = fields.get(i);
+                if (field instanceof String text) {
+                    text = text.strip();
+                    if (i == 0) {
+                        document.add(new TextField(TEXT_FIELD_NAME, text, Field.Store.YES));
+                        fieldIndexField.setIntValue(i);
+                        document.add(fieldIndexField);
+                        lastTextFieldIndex = i;
+                    } else {
+                        // Check to make sure identical text is not already in the document,
+                        // to prevent unnecessary document/index bloat.
+                        boolean alreadyAdded = false;
+                        for (String value: document.getValues(TEXT_FIELD_NAME)) {
+                            if (text.equals(value)) {
+                                alreadyAdded = true;
+                                break;
+                            }
+                        }
+                        if (!alreadyAdded) {
                             document.add(new TextField(TEXT_FIELD_NAME, text, Field.Store.YES));
                             fieldIndexField.setIntValue(i);
                             document.add(fieldIndexField);
-                        } else {
-                            // Check to make sure identical text is not already in the document,
-                            // to prevent unnecessary document/index bloat.
-                            boolean alreadyAdded = false;
-                            for (String value: document.getValues(TEXT_FIELD_NAME)) {
-                                if (text.equals(value)) {
-                                    alreadyAdded = true;
-                                    break;
-                                }
-                            }
-                            if (!alreadyAdded) {
-                                document.add(new TextField(TEXT_FIELD_NAME, text, Field.Store.YES));
-                                fieldIndexField.setIntValue(i);
-                                document.add(fieldIndexField);
-                            }
+                            lastTextFieldIndex = i;
                         }
                     }
                 }
             }
-            try {
-                long addSequence = indexWriter.addDocument(document);
-                if (!EntityService.get().isLoadPhase()) {
-                    TypeAheadSearch.get().buildSuggester();
-                }
-            } catch (IOException e) {
-                LOG.error("Exception writing: " + object);
-            }
         }
-
+        if (lastTextFieldIndex >= 0) {
+            // The stored field instance is shared by every text, so it holds the index of the last text added.
+            document.add(new NumericDocValuesField(FIELD_INDEX_DOC_VALUES, lastTextFieldIndex));
+        }
+        return document;
     }
 
+    private record PendingDocument(SemanticEntity semanticEntity, long sequence, int attempts) {}
+
     /**
      * This method would delete any existing document for the semantic. This is a costly operation,
      * and unnecessary for standard use cases. Since the semantic chronologies are append only,
@@ -0,0 +1,135 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.provider.search;
+
+import dev.ikm.tinkar.common.service.PrimitiveDataSearchFilter;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.StoredFields;
+import org.apache.lucene.search.ConstantScoreScorer;
+import org.apache.lucene.search.ConstantScoreWeight;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryVisitor;
+import org.apache.lucene.search.ScoreMode;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.TwoPhaseIterator;
+import org.apache.lucene.search.Weight;
+
+import java.io.IOException;
+import java.util.Set;
+
+/**
+ * Matches the documents whose pattern, referenced component and semantic are accepted by a
+ * {@link PrimitiveDataSearchFilter}. Used as a filter clause beside the text query, so only documents that match
+ * the text are tested, and the filter is tested while hits are collected, before the top hits are taken.
+ * <p>
+ * Nids are read from doc values. Documents indexed before the nids had doc values are read from stored fields.
+ */
+final class SearchFilterQuery extends Query {
+    /**
+     * Cost of testing one document, relative to advancing the text query, so the filter is tested last.
+     */
+    private static final float MATCH_COST = 100f;
+
+    private final PrimitiveDataSearchFilter filter;
+
+    SearchFilterQuery(PrimitiveDataSearchFilter filter) {
+        this.filter = filter;
+    }
+
+    @Override
+    public Weight createWeight(IndexSearcher searcher, ScoreMode scoreMode, float boost) {
+        return new ConstantScoreWeight(this, boost) {
+            @Override
+            public Scorer scorer(LeafReaderContext context) throws IOException {
+                DocIdSetIterator approximation = DocIdSetIterator.all(context.reader().maxDoc());
+                NidReader nids = new NidReader(context.reader());
+                TwoPhaseIterator twoPhase = new TwoPhaseIterator(approximation) {
+                    @Override
+                    public boolean matches() throws IOException {
+                        int doc = approximation.docID();
+                        return filter.acceptsPattern(nids.nid(nids.patternNids, Indexer.PATTERN_NID, doc))
+                                && filter.acceptsReferencedComponent(nids.nid(nids.rcNids, Indexer.RC_NID, doc))
+                                && filter.acceptsSemantic(nids.nid(nids.semanticNids, Indexer.NID, doc));
+                    }
+
+                    @Override
+                    public float matchCost() {
+                        return MATCH_COST;
+                    }
+                };
+                return new ConstantScoreScorer(this, score(), scoreMode, twoPhase);
+            }
+
+            @Override
+            public boolean isCacheable(LeafReaderContext context) {
+                // The filter's predicates may change with the data, and are compared by identity.
+                return false;
+            }
+        };
+    }
+
+    @Override
+    public void visit(QueryVisitor visitor) {
+        visitor.visitLeaf(this);
+    }
+
+    @Override
+    public String toString(String field) {
+        return "SearchFilterQuery(" + filter + ")";
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return sameClassAs(other) && filter.equals(((SearchFilterQuery) other).filter);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * classHash() + filter.hashCode();
+    }
+
+    /**
+     * Reads the nids of documents of one segment, in increasing document order.
+     */
+    private static final class NidReader {
+        private final LeafReader reader;
+        private final NumericDocValues patternNids;
+        private final NumericDocValues rcNids;
+        private final NumericDocValues semanticNids;
+        private StoredFields storedFields;
+
+        private NidReader(LeafReader reader) throws IOException {
+            this.reader = reader;
+            this.patternNids = reader.getNumericDocValues(Indexer.PATTERN_NID_DOC_VALUES);
+            this.rcNids = reader.getNumericDocValues(Indexer.RC_NID_DOC_VALUES);
+            this.semanticNids = reader.getNumericDocValues(Indexer.NID_DOC_VALUES);
+        }
+
+        private int nid(NumericDocValues values, String field, int doc) throws IOException {
+            if (values != null && values.advanceExact(doc)) {
+                return (int) values.longValue();
+            }
+            if (storedFields == null) {
+                storedFields = reader.storedFields();
+            }
+            return storedFields.document(doc, Set.of(field)).getField(field).numericValue().intValue();
+        }
+    }
+}
@@ -18,8 +18,9 @@
 import dev.ikm.tinkar.common.id.IntIdSet;
 import dev.ikm.tinkar.common.id.PublicId;
 import dev.ikm.tinkar.common.service.PrimitiveData;
+import dev.ikm.tinkar.common.service.PrimitiveDataSearchFilter;
 import dev.ikm.tinkar.common.service.PrimitiveDataSearchResult;
-import dev.ikm.tinkar.common.util.time.Stopwatch;
+import dev.ikm.tinkar.common.service.TinkExecutor;
 import dev.ikm.tinkar.component.Component;
 import dev.ikm.tinkar.coordinate.Calculators;
 import dev.ikm.tinkar.coordinate.Coordinates;
@@ -38,20 +39,26 @@
 import dev.ikm.tinkar.terms.EntityProxy;
 import dev.ikm.tinkar.terms.TinkarTerm;
 import org.apache.lucene.document.Document;
-import org.apache.lucene.document.StoredField;
+import org.apache.lucene.index.LeafReader;
+import org.apache.lucene.index.LeafReaderContext;
+import org.apache.lucene.index.NumericDocValues;
+import org.apache.lucene.index.ReaderUtil;
 import org.apache.lucene.queryparser.classic.ParseException;
 import org.apache.lucene.queryparser.classic.QueryParser;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.SearcherManager;
-import org.apache.lucene.search.highlight.Formatter;
 import org.apache.lucene.search.highlight.Highlighter;
 import org.apache.lucene.search.highlight.InvalidTokenOffsetsException;
 import org.apache.lucene.search.highlight.NullFragmenter;
 import org.apache.lucene.search.highlight.QueryScorer;
 import org.apache.lucene.search.highlight.SimpleHTMLFormatter;
+import org.eclipse.collections.api.set.primitive.MutableIntSet;
 import org.eclipse.collections.impl.factory.Lists;
+import org.eclipse.collections.impl.factory.primitive.IntSets;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -60,7 +67,11 @@
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class Searcher {
     private static final Logger LOG = LoggerFactory.getLogger(Searcher.class);
@@ -68,8 +79,27 @@ public class Searcher {
     public static final EntityProxy.Pattern DIAGNOSTIC_DEVICE_PATTERN = EntityProxy.Pattern.make(null, UUID.fromString("a507b3c7-eadb-5d54-84c0-c44f3155d0bc"));
     public static final EntityProxy.Pattern QUANTITATIVE_ALLOWED_RESULT_SET_PATTERN = EntityProxy.Pattern.make(null, UUID.fromString("9d40d06b-7776-5a56-97e4-0c27f5d574c7"));
     public static final EntityProxy.Pattern QUALITATIVE_ALLOWED_RESULT_SET_PATTERN = EntityProxy.Pattern.make(null, UUID.fromString("160a63a6-3cba-510e-83d1-235822045885"));
-    QueryParser parser;
+    /**
+     * Query parsers are not thread safe, so each thread parses with its own.
+     */
+    private final ThreadLocal<QueryParser> parser =
+            ThreadLocal.withInitial(() -> new QueryParser(Indexer.TEXT_FIELD_NAME, Indexer.analyzer()));
     private static final SearcherManager searcherManager;
+    /**
+     * Milliseconds between an index write and the background refresh that makes it searchable.
+     */
+    private static final long REFRESH_DELAY_MS = 100;
+    private static final Set<String> STORED_NID_FIELDS =
+            Set.of(Indexer.NID, Indexer.RC_NID, Indexer.PATTERN_NID, Indexer.FIELD_INDEX);
+    private static final Set<String> STORED_FIELDS = Set.of(Indexer.NID, Indexer.RC_NID, Indexer.PATTERN_NID,
+            Indexer.FIELD_INDEX, Indexer.TEXT_FIELD_NAME);
+    /**
+     * The indexer and highest index write sequence that the searcher manager's current searcher includes. Write
+     * sequences start again when an indexer is opened, so a sequence is only compared with those of its indexer.
+     */
+    private static final AtomicReference<RefreshedSequence> refreshedSequence =
+            new AtomicReference<>(new RefreshedSequence(null, 0));
+    private static final AtomicBoolean refreshScheduled = new AtomicBoolean();
 
     //TODO - refactor this class to not have static fields. Currently needed when using this SearcherManager class.
     static {
@@ -81,47 +111,196 @@ public class Searcher {
     }
 
     public Searcher() throws IOException {
-        Stopwatch stopwatch = new Stopwatch();
-        LOG.info("Opening lucene searcher");
-        this.parser = new QueryParser("text", Indexer.analyzer());
-        stopwatch.stop();
-        LOG.info("Opened lucene searcher in: " + stopwatch.durationString());
+        LOG.info("Opened lucene searcher");
+    }
+
+    /**
+     * Schedules a refresh of the searcher, so that semantics just indexed are searchable without a search having to
+     * wait for the refresh. Requests made while a refresh is scheduled share it.
+     */
+    static void refreshSoon() {
+        if (refreshScheduled.compareAndSet(false, true)) {
+            TinkExecutor.scheduled().schedule(Searcher::refreshInBackground, REFRESH_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static void refreshInBackground() {
+        refreshScheduled.set(false);
+        try {
+            Indexer indexer = Indexer.current();
+            if (indexer != null) {
+                refresh(indexer, indexer.indexedSequence());
+            }
+        } catch (IOException | RuntimeException e) {
+            LOG.error("Caught Exception refreshing searcher {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Waits for the writes made by the calling thread to be indexed, and refreshes the searcher if it does not
+     * include them yet. Writes by other threads are made searchable by the background refresh, so a search does
+     * not wait for the whole index queue.
+     */
+    private static void awaitSearchable() throws IOException {
+        Indexer indexer = Indexer.current();
+        if (indexer != null) {
+            long sequence = indexer.threadWriteSequence();
+            indexer.awaitIndexed(sequence);
+            refresh(indexer, sequence);
+        }
+    }
+
+    /**
+     * Refreshes the searcher if it does not include the write sequence of the indexer.
+     */
+    private static void refresh(Indexer indexer, long sequence) throws IOException {
+        RefreshedSequence refreshed = refreshedSequence.get();
+        if (refreshed.indexer() != indexer || sequence > refreshed.sequence()) {
+            long indexedSequence = indexer.indexedSequence();
+            searcherManager.maybeRefreshBlocking();
+            // Everything indexed before the refresh began is in the refreshed searcher.
+            refreshedSequence.accumulateAndGet(new RefreshedSequence(indexer, indexedSequence),
+                    (previous, next) -> previous.indexer() == next.indexer() && previous.sequence() > next.sequence() ?
+                            previous : next);
+        }
     }
 
+    private record RefreshedSequence(Indexer indexer, long sequence) {}
+
     public PrimitiveDataSearchResult[] search(String queryString, int maxResultSize) throws
             ParseException, IOException, InvalidTokenOffsetsException {
-        boolean refreshOutcome = searcherManager.maybeRefresh();
-        LOG.debug("Index Reader refresh outcome = {}", refreshOutcome);
+        if (queryString == null || queryString.isEmpty()) {
+            return new PrimitiveDataSearchResult[0];
+        }
+        awaitSearchable();
         IndexSearcher indexSearcher = searcherManager.acquire();
         try {
-            if (queryString != null & !queryString.isEmpty()) {
-                PrimitiveDataSearchResult[] results;
-                    Query query = parser.parse(queryString);
-                    Formatter formatter = new SimpleHTMLFormatter();
-                    QueryScorer scorer = new QueryScorer(query);
-                    Highlighter highlighter = new Highlighter(formatter, scorer);
-                    highlighter.setTextFragmenter(new NullFragmenter());
-
-                    ScoreDoc[] hits = indexSearcher.search(query, maxResultSize).scoreDocs;
-                    results = new PrimitiveDataSearchResult[hits.length];
-                    for (int i = 0; i < hits.length; i++) {
-                        Document hitDoc = indexSearcher.doc(hits[i].doc);
-                        StoredField nidField = (StoredField) hitDoc.getField(Indexer.NID);
-                        StoredField patternNidField = (StoredField) hitDoc.getField(Indexer.PATTERN_NID);
-                        StoredField rcNidField = (StoredField) hitDoc.getField(Indexer.RC_NID);
-                        StoredField fieldIndexField = (StoredField) hitDoc.getField(Indexer.FIELD_INDEX);
-                        StoredField textField = (StoredField) hitDoc.getField(Indexer.TEXT_FIELD_NAME);
-                        String highlightedString = highlighter.getBestFragment(Indexer.analyzer(), Indexer.TEXT_FIELD_NAME, textField.stringValue());
-
-                        results[i] = new PrimitiveDataSearchResult(nidField.numericValue().intValue(), rcNidField.numericValue().intValue(),
-                                patternNidField.numericValue().intValue(), fieldIndexField.numericValue().intValue(), hits[i].score, highlightedString);
+            Query query = parser.get().parse(queryString);
+            Highlighter highlighter = highlighter(query);
+            ScoreDoc[] hits = indexSearcher.search(query, maxResultSize).scoreDocs;
+            PrimitiveDataSearchResult[] results = new PrimitiveDataSearchResult[hits.length];
+            for (int i = 0; i < hits.length; i++) {
+                results[i] = result(indexSearcher, hits[i], highlighter);
+            }
+            return results;
+        } finally {
+            searcherManager.release(indexSearcher);
+        }
+    }
+
+    /**
+     * Search for up to maxResultSize semantics that match the query and the filter. The filter is a clause of the
+     * Lucene query, so hits outside its scope are skipped while collecting, and do not take places in the top hits.
+     * Each semantic is indexed again when it changes, so hits are collected until maxResultSize distinct semantics
+     * are found, keeping the best scoring hit of each. Only those hits are read, and highlighted if requested.
+     */
+    public PrimitiveDataSearchResult[] search(String queryString, int maxResultSize, PrimitiveDataSearchFilter filter,
+                                              boolean highlight) throws
+            ParseException, IOException, InvalidTokenOffsetsException {
+        if (queryString == null || queryString.isEmpty()) {
+            return new PrimitiveDataSearchResult[0];
+        }
+        awaitSearchable();
+        IndexSearcher indexSearcher = searcherManager.acquire();
+        try {
+            Query textQuery = parser.get().parse(queryString);
+            Query query = new BooleanQuery.Builder()
+                    .add(textQuery, BooleanClause.Occur.MUST)
+                    .add(new SearchFilterQuery(filter), BooleanClause.Occur.FILTER)
+                    .build();
+            Highlighter highlighter = highlight ? highlighter(textQuery) : null;
+
+            int requested = maxResultSize;
+            while (true) {
+                ScoreDoc[] hits = indexSearcher.search(query, requested).scoreDocs;
+                MutableIntSet resultNids = IntSets.mutable.empty();
+                List<PrimitiveDataSearchResult> results = new ArrayList<>();
+                for (ScoreDoc hit : hits) {
+                    if (results.size() == maxResultSize) {
+                        break;
+                    }
+                    if (resultNids.add(nid(indexSearcher, hit))) {
+                        results.add(result(indexSearcher, hit, highlighter));
                     }
-                return results;
+                }
+                if (results.size() == maxResultSize || hits.length < requested || requested == Integer.MAX_VALUE) {
+                    return results.toArray(new PrimitiveDataSearchResult[results.size()]);
+                }
+                requested = (int) Math.min(Integer.MAX_VALUE, requested * 2L);
             }
         } finally {
             searcherManager.release(indexSearcher);
         }
-        return new PrimitiveDataSearchResult[0];
+    }
+
+    private static Highlighter highlighter(Query query) {
+        Highlighter highlighter = new Highlighter(new SimpleHTMLFormatter(), new QueryScorer(query));
+        highlighter.setTextFragmenter(new NullFragmenter());
+        return highlighter;
+    }
+
+    private static LeafReaderContext leaf(IndexSearcher indexSearcher, ScoreDoc hit) {
+        List<LeafReaderContext> leaves = indexSearcher.getIndexReader().leaves();
+        return leaves.get(ReaderUtil.subIndex(hit.doc, leaves));
+    }
+
+    /**
+     * @return the nid of a hit, read from doc values, or from stored fields for documents indexed before the nids
+     * had doc values
+     */
+    static int nid(IndexSearcher indexSearcher, ScoreDoc hit) throws IOException {
+        LeafReaderContext leaf = leaf(indexSearcher, hit);
+        int doc = hit.doc - leaf.docBase;
+        NumericDocValues nidValues = docValues(leaf.reader(), Indexer.NID_DOC_VALUES, doc);
+        if (nidValues != null) {
+            return (int) nidValues.longValue();
+        }
+        return leaf.reader().storedFields().document(doc, Set.of(Indexer.NID))
+                .getField(Indexer.NID).numericValue().intValue();
+    }
+
+    /**
+     * Reads the nids of a hit from doc values, and the text only to highlight it, rather than decompressing every
+     * stored field. Documents indexed before the nids had doc values are read from stored fields.
+     *
+     * @param highlighter the highlighter for the query, or null to leave the result without a highlighted string
+     */
+    private static PrimitiveDataSearchResult result(IndexSearcher indexSearcher, ScoreDoc hit, Highlighter highlighter)
+            throws IOException, InvalidTokenOffsetsException {
+        LeafReaderContext leaf = leaf(indexSearcher, hit);
+        LeafReader reader = leaf.reader();
+        int doc = hit.doc - leaf.docBase;
+        NumericDocValues nidValues = docValues(reader, Indexer.NID_DOC_VALUES, doc);
+        NumericDocValues rcNidValues = docValues(reader, Indexer.RC_NID_DOC_VALUES, doc);
+        NumericDocValues patternNidValues = docValues(reader, Indexer.PATTERN_NID_DOC_VALUES, doc);
+        NumericDocValues fieldIndexValues = docValues(reader, Indexer.FIELD_INDEX_DOC_VALUES, doc);
+        Document storedDoc = null;
+        if (highlighter != null) {
+            storedDoc = reader.storedFields().document(doc, STORED_FIELDS);
+        } else if (nidValues == null || rcNidValues == null || patternNidValues == null || fieldIndexValues == null) {
+            storedDoc = reader.storedFields().document(doc, STORED_NID_FIELDS);
+        }
+        String highlightedString = highlighter == null ? null :
+                highlighter.getBestFragment(Indexer.analyzer(), Indexer.TEXT_FIELD_NAME, storedDoc.get(Indexer.TEXT_FIELD_NAME));
+
+        return new PrimitiveDataSearchResult(intValue(nidValues, storedDoc, Indexer.NID),
+                intValue(rcNidValues, storedDoc, Indexer.RC_NID), intValue(patternNidValues, storedDoc, Indexer.PATTERN_NID),
+                intValue(fieldIndexValues, storedDoc, Indexer.FIELD_INDEX), hit.score, highlightedString);
+    }
+
+    /**
+     * @return the doc values of the field, positioned on the document, or null if the document has no value
+     */
+    private static NumericDocValues docValues(LeafReader reader, String field, int doc) throws IOException {
+        NumericDocValues values = reader.getNumericDocValues(field);
+        return values != null && values.advanceExact(doc) ? values : null;
+    }
+
+    private static int intValue(NumericDocValues values, Document storedDoc, String field) throws IOException {
+        if (values != null) {
+            return (int) values.longValue();
+        }
+        return storedDoc.getField(field).numericValue().intValue();
     }
 
     /**
@@ -395,15 +574,20 @@ public static Optional<PublicId> getPublicId(PublicId identifierSource, String i
             throw new RuntimeException("Identifier Pattern is absent from data set");
         }
 
+        if (identifierSource == null || identifierValue == null || !PrimitiveData.get().hasPublicId(identifierSource)) {
+            return Optional.empty();
+        }
         try {
-            int[] semanticNids = EntityService.get().semanticNidsOfPattern(TinkarTerm.IDENTIFIER_PATTERN.nid());
+            int identifierSourceNid = EntityService.get().nidForPublicId(identifierSource);
+            // The index includes identifiers of any version, so check the latest version.
+            int[] semanticNids = EntityService.get().semanticNidsForIdentifier(identifierSourceNid, identifierValue);
             for (int nid : semanticNids) {
                 EntityVersion entityVersion = viewCalc.latest(nid).get();
                 if (entityVersion instanceof SemanticEntityVersion semanticEntityVersion) {
                     Object idValue = latestIdPattern.get().getFieldWithMeaning(TinkarTerm.IDENTIFIER_VALUE, semanticEntityVersion);
-                    if (identifierValue != null && identifierValue.equals(idValue)) {
+                    if (identifierValue.equals(idValue)) {
                         Component idSource = latestIdPattern.get().getFieldWithMeaning(TinkarTerm.IDENTIFIER_SOURCE, semanticEntityVersion);
-                        if (identifierSource != null && idSource != null && PublicId.equals(idSource.publicId(), identifierSource)) {
+                        if (idSource != null && PublicId.equals(idSource.publicId(), identifierSource)) {
                             return Optional.of(semanticEntityVersion.referencedComponent().publicId());
                         }
                     }
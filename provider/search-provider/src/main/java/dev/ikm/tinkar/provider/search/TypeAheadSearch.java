@@ -16,6 +16,7 @@
 
 package dev.ikm.tinkar.provider.search;
 
+import dev.ikm.tinkar.common.service.PrimitiveDataSearchFilter;
 import dev.ikm.tinkar.common.service.TinkExecutor;
 import dev.ikm.tinkar.common.service.TrackingCallable;
 import dev.ikm.tinkar.coordinate.navigation.calculator.NavigationCalculator;
@@ -24,34 +25,55 @@
 import dev.ikm.tinkar.entity.SemanticEntityVersion;
 import dev.ikm.tinkar.terms.EntityFacade;
 import org.apache.lucene.index.DirectoryReader;
-import org.apache.lucene.search.spell.LuceneDictionary;
+import org.apache.lucene.search.suggest.DocumentDictionary;
 import org.apache.lucene.search.suggest.Lookup;
-import org.apache.lucene.search.suggest.analyzing.AnalyzingSuggester;
-import org.apache.lucene.search.suggest.analyzing.FuzzySuggester;
+import org.apache.lucene.search.suggest.analyzing.AnalyzingInfixSuggester;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.util.BytesRef;
 import org.eclipse.collections.api.list.ImmutableList;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Future;
-import java.util.stream.Collectors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+/**
+ * Type ahead suggestions over the text fields of indexed semantics.
+ * <p>
+ * The suggester is an {@link AnalyzingInfixSuggester} kept in {@link Indexer#suggesterDirectory()}, so it persists
+ * next to the index and is only built from scratch when it is empty, or when a load phase ends. Semantics indexed
+ * outside a load phase are added incrementally with {@link #add(Iterable)}, and the suggester's searcher is
+ * refreshed once per {@link #REFRESH_DELAY_MS}, however many texts were added.
+ */
 public class TypeAheadSearch {
     private static final Logger LOG = LoggerFactory.getLogger(TypeAheadSearch.class);
     private static final String TEXT_FIELD_NAME = "text";
+    private static final long REFRESH_DELAY_MS = 250;
 
-    private AnalyzingSuggester suggester;
-    private FuzzySuggester fuzzySuggester;
-    private DirectoryReader reader;
+    private final AnalyzingInfixSuggester suggester;
+    /**
+     * Incremental adds hold the read lock, a full build holds the write lock, since a build recreates the
+     * suggester's index.
+     */
+    private final ReentrantReadWriteLock buildLock = new ReentrantReadWriteLock();
+    private final AtomicBoolean refreshScheduled = new AtomicBoolean();
+    private final AtomicBoolean uncommittedAdds = new AtomicBoolean();
+    private Future<Void> pendingBuild;
 
     private static TypeAheadSearch typeAheadSearch = null;
     public static synchronized TypeAheadSearch get() {
         if (typeAheadSearch == null) {
             typeAheadSearch = new TypeAheadSearch();
             try {
-                typeAheadSearch.buildSuggester();
+                if (typeAheadSearch.suggester.getCount() == 0) {
+                    typeAheadSearch.buildSuggester();
+                }
             } catch (IOException e) {
                 LOG.error("Caught Exception building suggester for TypeAheadSearch {}", e.getMessage());
             }
@@ -59,26 +81,143 @@ public static synchronized TypeAheadSearch get() {
         return typeAheadSearch;
     }
 
+    /**
+     * Closes the suggester if one is open, without opening one.
+     */
+    public static synchronized void closeIfOpen() {
+        if (typeAheadSearch != null) {
+            typeAheadSearch.close();
+        }
+    }
+
+    /**
+     * Commits the suggester if one is open, without opening one.
+     */
+    public static synchronized void commitIfOpen() throws IOException {
+        if (typeAheadSearch != null) {
+            typeAheadSearch.commit();
+        }
+    }
+
     private TypeAheadSearch() {
+        this.suggester = openSuggester(Indexer.suggesterDirectory());
+    }
+
+    private static AnalyzingInfixSuggester openSuggester(Directory directory) {
+        try {
+            try {
+                return new AnalyzingInfixSuggester(directory, Indexer.analyzer());
+            } catch (IOException | IllegalArgumentException e) {
+                // A suggester written by an incompatible codec is discarded and rebuilt from the index.
+                LOG.warn("Discarding unreadable type ahead suggester: {}", e.getMessage());
+                for (String file : directory.listAll()) {
+                    directory.deleteFile(file);
+                }
+                return new AnalyzingInfixSuggester(directory, Indexer.analyzer());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Rebuilds the suggester from every text field in the index. A request made while a build is waiting to run
+     * returns the waiting build.
+     */
+    public synchronized Future<Void> buildSuggester() throws IOException {
+        if (pendingBuild == null || pendingBuild.isDone()) {
+            pendingBuild = TinkExecutor.threadPool().submit(new BuildSuggester());
+        }
+        return pendingBuild;
+    }
+
+    /**
+     * Adds texts to the suggester, replacing identical texts that are already present. The texts are visible to
+     * lookups after the next debounced refresh.
+     */
+    public void add(Iterable<String> texts) throws IOException {
+        buildLock.readLock().lock();
+        try {
+            for (String text : texts) {
+                suggester.update(new BytesRef(text), null, 0, null);
+            }
+            uncommittedAdds.set(true);
+        } finally {
+            buildLock.readLock().unlock();
+        }
+        if (refreshScheduled.compareAndSet(false, true)) {
+            TinkExecutor.scheduled().schedule(this::refresh, REFRESH_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
     }
 
-    public Future<Void> buildSuggester() throws IOException {
-        return TinkExecutor.threadPool().submit(new BuildSuggester());
+    private void refresh() {
+        refreshScheduled.set(false);
+        buildLock.readLock().lock();
+        try {
+            suggester.refresh();
+        } catch (IOException | RuntimeException e) {
+            LOG.error("Caught Exception refreshing suggester {}", e.getMessage());
+        } finally {
+            buildLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Persists texts added since the last commit.
+     */
+    public void commit() throws IOException {
+        buildLock.readLock().lock();
+        try {
+            // The suggester has no writer to commit until something is added.
+            if (uncommittedAdds.getAndSet(false)) {
+                suggester.commit();
+            }
+        } finally {
+            buildLock.readLock().unlock();
+        }
     }
 
     public void close() {
-        if (reader != null) {
-            try {
-                reader.close();
-            } catch (IOException e) {
-                LOG.error("Caught Exception closing reader {}", e.getMessage());
+        synchronized (TypeAheadSearch.class) {
+            if (typeAheadSearch == this) {
+                typeAheadSearch = null;
             }
         }
+        buildLock.writeLock().lock();
+        try {
+            suggester.close();
+        } catch (IOException e) {
+            LOG.error("Caught Exception closing suggester {}", e.getMessage());
+        } finally {
+            buildLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Returns indexed texts matching the userInput, whose last word may be a prefix, using the type ahead suggester
+     * rather than a search of the index.
+     *
+     * @param   userInput String userInput
+     * @param   maxResults int maxResults
+     * @return  List of distinct texts, empty if the suggester has not been built
+     */
+    public List<String> textSuggestions(String userInput, int maxResults) {
+        buildLock.readLock().lock();
+        try {
+            return suggest(userInput, maxResults);
+        } catch (IOException | IllegalStateException e) {
+            // The suggester throws IllegalStateException until its first build or add.
+            LOG.error("Encountered exception {}", e.getMessage());
+            return List.of();
+        } finally {
+            buildLock.readLock().unlock();
+        }
     }
 
     private List<String> suggest(String term, int maxResults) throws IOException {
-        List<Lookup.LookupResult> lookup = suggester.lookup(term, false, maxResults);
-        return lookup.stream().map(a -> a.key.toString()).collect(Collectors.toList());
+        // A full build may add the same text more than once.
+        List<Lookup.LookupResult> lookup = suggester.lookup(term, false, maxResults * 2);
+        return lookup.stream().map(a -> a.key.toString()).distinct().limit(maxResults).toList();
     }
 
     /**
@@ -114,7 +253,9 @@ public List<EntityFacade> typeAheadSuggestions(NavigationCalculator navCalc, Str
     private List<EntityFacade> searchInput(NavigationCalculator navCalc, String userInput, int maxResults) {
         List<EntityFacade> entityList = new ArrayList<>();
         try {
-            ImmutableList<LatestVersionSearchResult> results = navCalc.search(userInput, Math.max(maxResults, 40));
+            // Suggestions are not highlighted, so skip reading and highlighting the matched text.
+            ImmutableList<LatestVersionSearchResult> results = navCalc.search(userInput, Math.max(maxResults, 40),
+                    PrimitiveDataSearchFilter.NONE, false);
             for (LatestVersionSearchResult r : results) {
                 Latest<SemanticEntityVersion> latest = r.latestVersion();
                 if (latest.isPresent() && !entityList.contains(latest.get().referencedComponent())) {
@@ -155,11 +296,13 @@ protected Void compute() throws IOException {
             updateMessage("Building Type Ahead Suggester...");
             updateProgress(-1, 1);
 
-            reader = DirectoryReader.open(Indexer.indexWriter());
-            LuceneDictionary dict = new LuceneDictionary(reader, TEXT_FIELD_NAME);
-            AnalyzingSuggester analyzingSuggester = new AnalyzingSuggester(Indexer.indexDirectory(), "suggest", Indexer.analyzer());
-            analyzingSuggester.build(dict);
-            suggester = analyzingSuggester;
+            buildLock.writeLock().lock();
+            try (DirectoryReader reader = DirectoryReader.open(Indexer.indexWriter())) {
+                suggester.build(new DocumentDictionary(reader, TEXT_FIELD_NAME, null).getEntryIterator());
+                suggester.commit();
+            } finally {
+                buildLock.writeLock().unlock();
+            }
 
             updateProgress(1, 1);
 
@@ -0,0 +1,60 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.provider.search;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.ScoreDoc;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SearcherTest {
+
+    @Test
+    void nidReadFromDocValues() throws IOException {
+        Indexer indexer = new Indexer();
+        try {
+            IndexWriter indexWriter = Indexer.indexWriter();
+            // The stored nid differs from the doc values, to show which one is read.
+            Document document = new Document();
+            document.add(new NumericDocValuesField(Indexer.NID_DOC_VALUES, -5));
+            document.add(new StoredField(Indexer.NID, -6));
+            indexWriter.addDocument(document);
+            // Indexed before the nids had doc values.
+            Document storedOnly = new Document();
+            storedOnly.add(new StoredField(Indexer.NID, -7));
+            indexWriter.addDocument(storedOnly);
+
+            try (DirectoryReader reader = DirectoryReader.open(indexWriter)) {
+                IndexSearcher indexSearcher = new IndexSearcher(reader);
+                ScoreDoc[] hits = indexSearcher.search(new MatchAllDocsQuery(), 10).scoreDocs;
+                assertEquals(2, hits.length);
+                assertEquals(-5, Searcher.nid(indexSearcher, hits[0]));
+                assertEquals(-7, Searcher.nid(indexSearcher, hits[1]));
+            }
+        } finally {
+            indexer.close();
+        }
+    }
+}
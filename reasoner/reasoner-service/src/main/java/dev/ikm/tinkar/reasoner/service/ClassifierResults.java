@@ -16,6 +16,7 @@
 package dev.ikm.tinkar.reasoner.service;
 
 import java.time.Instant;
+import java.util.Optional;
 import java.util.Set;
 import java.util.TreeSet;
 
@@ -62,6 +63,11 @@ public class ClassifierResults implements Encodable {
     private final ImmutableIntObjectMap<Set<int[]>> conceptsWithCycles;
     private final ImmutableIntSet orphanedConcepts;
 
+    /**
+     * Not encoded: only meaningful in the process that wrote the results.
+     */
+    private WriteBackTimings writeBackTimings;
+
     private ClassifierResults(DecoderInput data) {
         this.classificationConceptSet = IntLists.immutable.of(data.readNidArray());
         this.conceptsWithInferredChanges = IntLists.immutable.of(data.readNidArray());
@@ -223,4 +229,15 @@ public Instant getCommitTime() {
     public ImmutableIntList getConceptsWithInferredChanges() {
         return conceptsWithInferredChanges;
     }
+
+    /**
+     * @return the time spent in each phase of writing these results, if they were written by this process
+     */
+    public Optional<WriteBackTimings> getWriteBackTimings() {
+        return Optional.ofNullable(writeBackTimings);
+    }
+
+    void setWriteBackTimings(WriteBackTimings writeBackTimings) {
+        this.writeBackTimings = writeBackTimings;
+    }
 }
@@ -22,7 +22,6 @@
 import dev.ikm.tinkar.coordinate.stamp.calculator.Latest;
 import dev.ikm.tinkar.coordinate.view.ViewCoordinateRecord;
 import dev.ikm.tinkar.entity.Entity;
-import dev.ikm.tinkar.entity.EntityService;
 import dev.ikm.tinkar.entity.EntityVersion;
 import dev.ikm.tinkar.entity.RecordListBuilder;
 import dev.ikm.tinkar.entity.SemanticEntityVersion;
@@ -63,6 +62,8 @@ public class InferredResultsWriter {
 
 	private TrackingCallable<?> progressUpdater = null;
 
+	private WriteBackChanges changes;
+
 	public InferredResultsWriter(ReasonerService rs) {
 		super();
 		this.rs = rs;
@@ -82,8 +83,7 @@ private void updateProgress(int count, int total) {
 	}
 
 	private void processSemantic(Entity<? extends EntityVersion> entity) {
-		updateTransaction.addComponent(entity);
-		Entity.provider().putEntity(entity);
+		changes.add(entity);
 	}
 
 	public ClassifierResults write() {
@@ -91,38 +91,39 @@ public ClassifierResults write() {
 		updateProgress(0, totalCount);
 		final AtomicInteger processedCount = new AtomicInteger();
 		updateTransaction = Transaction.make("Committing classification");
-		EntityService.get().beginLoadPhase();
-		try {
-			StampEntity<?> updateStamp = updateTransaction.getStamp(State.ACTIVE,
-					getViewCoordinateRecord().getAuthorNidForChanges(), getViewCoordinateRecord().getDefaultModuleNid(),
-					getViewCoordinateRecord().getDefaultPathNid());
-			updateStampNid = updateStamp.nid();
-			inferredPatternNid = getViewCoordinateRecord().logicCoordinate().inferredAxiomsPatternNid();
-			inferredNavigationPatternNid = TinkarTerm.INFERRED_NAVIGATION_PATTERN.nid();
-			multipleEndpointTimer = new MultipleEndpointTimer<>(IsomorphicResults.EndPoints.class);
-			equivalentSets = new ConcurrentHashSet<>();
-			conceptsWithInferredChanges = new ConcurrentHashSet<>();
-			conceptsWithNavigationChanges = new ConcurrentHashSet<>();
-			axiomDataNotFoundCounter = new AtomicInteger();
-			rs.getReasonerConceptSet().primitiveParallelStream().forEach(conceptNid -> {
-				updateEquivalentSets(conceptNid);
-				writeNNF(conceptNid);
-				writeNavigation(conceptNid);
-				updateProgress(processedCount.incrementAndGet(), totalCount);
-			});
-			updateTransaction.commit();
-		} finally {
-			EntityService.get().endLoadPhase();
-		}
+		StampEntity<?> updateStamp = updateTransaction.getStamp(State.ACTIVE,
+				getViewCoordinateRecord().getAuthorNidForChanges(), getViewCoordinateRecord().getDefaultModuleNid(),
+				getViewCoordinateRecord().getDefaultPathNid());
+		updateStampNid = updateStamp.nid();
+		inferredPatternNid = getViewCoordinateRecord().logicCoordinate().inferredAxiomsPatternNid();
+		inferredNavigationPatternNid = TinkarTerm.INFERRED_NAVIGATION_PATTERN.nid();
+		multipleEndpointTimer = new MultipleEndpointTimer<>(IsomorphicResults.EndPoints.class);
+		equivalentSets = new ConcurrentHashSet<>();
+		conceptsWithInferredChanges = new ConcurrentHashSet<>();
+		conceptsWithNavigationChanges = new ConcurrentHashSet<>();
+		axiomDataNotFoundCounter = new AtomicInteger();
+		changes = new WriteBackChanges();
+		// Compute every change before writing any, so the parallel phase only reads.
+		rs.getReasonerConceptSet().primitiveParallelStream().forEach(conceptNid -> {
+			updateEquivalentSets(conceptNid);
+			writeNNF(conceptNid);
+			writeNavigation(conceptNid);
+			updateProgress(processedCount.incrementAndGet(), totalCount);
+		});
+		if (progressUpdater != null)
+			progressUpdater.updateMessage("Writing " + changes.size() + " inferred changes");
+		WriteBackTimings timings = changes.applyAndCommit(updateTransaction);
 		LOG.info("Inferred changes: " + conceptsWithInferredChanges.size());
 		LOG.info("Navigation changes: " + conceptsWithNavigationChanges.size());
 		LOG.info("NavigationSemantics processed not in AxiomData: " + axiomDataNotFoundCounter.get());
 		ViewCoordinateRecord commitCoordinate = getViewCoordinateRecord().withStampCoordinate(
 				getViewCoordinateRecord().stampCoordinate().withStampPositionTime(updateTransaction.commitTime()));
-		return new ClassifierResults(rs.getReasonerConceptSet(),
+		ClassifierResults results = new ClassifierResults(rs.getReasonerConceptSet(),
 				IntLists.immutable.ofAll(conceptsWithInferredChanges.stream().sorted().mapToInt(Integer::intValue)),
 				IntLists.immutable.ofAll(conceptsWithNavigationChanges.stream().sorted().mapToInt(Integer::intValue)),
 				equivalentSets, commitCoordinate);
+		results.setWriteBackTimings(timings);
+		return results;
 	}
 
 	private void updateEquivalentSets(int conceptNid) {
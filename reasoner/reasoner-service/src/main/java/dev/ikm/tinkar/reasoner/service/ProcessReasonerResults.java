@@ -16,7 +16,6 @@
 package dev.ikm.tinkar.reasoner.service;
 
 import java.util.Arrays;
-import java.util.HashSet;
 import java.util.Optional;
 import java.util.OptionalInt;
 import java.util.UUID;
@@ -49,8 +48,6 @@
 import dev.ikm.tinkar.coordinate.view.ViewCoordinateRecord;
 import dev.ikm.tinkar.coordinate.view.calculator.ViewCalculator;
 import dev.ikm.tinkar.entity.Entity;
-import dev.ikm.tinkar.entity.EntityService;
-import dev.ikm.tinkar.entity.EntityVersion;
 import dev.ikm.tinkar.entity.RecordListBuilder;
 import dev.ikm.tinkar.entity.SemanticEntityVersion;
 import dev.ikm.tinkar.entity.SemanticRecord;
@@ -93,6 +90,8 @@ public class ProcessReasonerResults {
 	private final int watchNid = PrimitiveData.nid(UUID.fromString("23e07078-f1e2-3f6a-9b7a-9397bcd91cfe"));
 	private final boolean reinferAllHierarchy;
 
+	private WriteBackTimings writeBackTimings;
+
 	public ProcessReasonerResults(ReasonerService reasonerService, boolean reinferAllHierarchy, TrackingCallable<ClassifierResults> callable) {
 
 		this.reasonerService = reasonerService;
@@ -107,14 +106,8 @@ protected ClassifierResults compute() throws Exception {
 		callable.ifPresent(tracking -> tracking.updateMessage("Getting classified results"));
 		LOG.info("Getting classified results...");
 		Transaction updateTransaction = Transaction.make("Committing classification");
-		ClassifierResults classifierResults = null;
-		EntityService.get().beginLoadPhase();
-		try {
-			classifierResults = collectResults(reasonerService.getReasonerConceptSet(),
-					updateTransaction);
-		} finally {
-			EntityService.get().endLoadPhase();
-		}
+		ClassifierResults classifierResults = collectResults(reasonerService.getReasonerConceptSet(),
+				updateTransaction);
 		AtomicReference<String> durationString = new AtomicReference<>();
 		callable.ifPresent(tracking -> durationString.set(tracking.durationString()));
 		callable.ifPresent(tracking -> tracking.updateMessage("Processed results in " + durationString.get()));
@@ -131,7 +124,7 @@ private ClassifierResults collectResults(ImmutableIntList classificationConceptS
 		callable.ifPresent(tracking -> tracking.updateMessage("Collecting reasoner results. "));
 		LOG.info("Collecting reasoner results... {}", classificationConceptSet.size());
 		callable.ifPresent(tracking -> tracking.addToTotalWork(classificationConceptSet.size() * 2L)); // get each node, then write back inferred.
-		final HashSet<ImmutableIntList> equivalentSets = new HashSet<>();
+		final ConcurrentHashSet<ImmutableIntList> equivalentSets = new ConcurrentHashSet<>();
 		LOG.debug("collect results begins for {} concepts", classificationConceptSet.size());
 		classificationConceptSet.primitiveParallelStream().forEach((conceptNid) -> {
 			callable.ifPresent(tracking -> tracking.completedUnitOfWork());
@@ -152,9 +145,10 @@ private ClassifierResults collectResults(ImmutableIntList classificationConceptS
 
 		ConcurrentHashSet<Integer> conceptsWithInferredChanges = new ConcurrentHashSet<>();
 		ConcurrentHashSet<Integer> conceptsWithNavigationChanges = new ConcurrentHashSet<>();
+		WriteBackChanges changes = new WriteBackChanges();
 
 		ViewCoordinateRecord commitView = writeBackInferred(reasonerService.getReasonerConceptSet(),
-				conceptsWithInferredChanges, conceptsWithNavigationChanges, updateTransaction);
+				conceptsWithInferredChanges, conceptsWithNavigationChanges, updateTransaction, changes);
 
 		int[] conceptsWithNavigationChangesNidArray = conceptsWithNavigationChanges.stream()
 				.mapToInt(boxedInt -> (int) boxedInt).toArray();
@@ -167,8 +161,10 @@ private ClassifierResults collectResults(ImmutableIntList classificationConceptS
 		Arrays.sort(conceptsWithInferredChangesNidArray);
 		ImmutableIntList conceptsWithInferredChangesAsList = IntLists.immutable.of(conceptsWithInferredChangesNidArray);
 
-		return new ClassifierResults(classificationConceptSet, conceptsWithInferredChangesAsList,
-				conceptsWithNavigationChangesAsList, equivalentSets, commitView);
+		ClassifierResults classifierResults = new ClassifierResults(classificationConceptSet,
+				conceptsWithInferredChangesAsList, conceptsWithNavigationChangesAsList, equivalentSets, commitView);
+		classifierResults.setWriteBackTimings(writeBackTimings);
+		return classifierResults;
 	}
 
 	/**
@@ -176,7 +172,8 @@ private ClassifierResults collectResults(ImmutableIntList classificationConceptS
 	 */
 	private ViewCoordinateRecord writeBackInferred(ImmutableIntList classificationConceptSet,
 			ConcurrentHashSet<Integer> conceptNidsWithInferredChanges,
-			ConcurrentHashSet<Integer> conceptsWithNavigationChanges, Transaction updateTransaction) {
+			ConcurrentHashSet<Integer> conceptsWithNavigationChanges, Transaction updateTransaction,
+			WriteBackChanges changes) {
 		// TODO change type of affectedConcepts to a parallel friendly primitive class.
 		final AtomicInteger sufficientSets = new AtomicInteger();
 		StampEntity updateStamp = updateTransaction.getStamp(State.ACTIVE,
@@ -280,7 +277,7 @@ private ViewCoordinateRecord writeBackInferred(ImmutableIntList classificationCo
 										.nid(PrimitiveData.nid(uuidForSemantic)).referencedComponentNid(conceptNid)
 										.patternNid(inferredPatternNid).versions(versionRecords).build();
 								versionRecords.add(new SemanticVersionRecord(semanticRecord, updateStampNid, fields));
-								processSemantic(semanticRecord, updateTransaction);
+								changes.add(semanticRecord);
 								conceptNidsWithInferredChanges.add(conceptNid);
 							}
 							case 1 -> {
@@ -324,8 +321,8 @@ private ViewCoordinateRecord writeBackInferred(ImmutableIntList classificationCo
 								if (changed || reinferAllHierarchy) {
 									conceptNidsWithInferredChanges.add(conceptNid);
 									conceptsWithNavigationChanges.add(conceptNid);
-									processSemantic(viewCalculator.updateFields(inferredSemanticNids[0], fields,
-											updateStampNid), updateTransaction);
+									changes.add(viewCalculator.updateFields(inferredSemanticNids[0], fields,
+											updateStampNid));
 								}
 							}
 							default -> throw new IllegalStateException("More than one inferred semantic of pattern "
@@ -351,14 +348,12 @@ private ViewCoordinateRecord writeBackInferred(ImmutableIntList classificationCo
 		});
 
 		updateInferredNavigationSemantics(conceptsWithNavigationChanges, inferredNavigationPatternNid, updateStampNid,
-				updateTransaction);
+				changes);
 
 		LOG.info("Timing info: " + multipleEndpointTimer.summary());
-		callable.ifPresent(tracking -> tracking.updateMessage("Commiting " + updateTransaction.componentsInTransactionCount() + " components. "));
-
-		LOG.debug("Comitting {} semantics", updateTransaction.componentsInTransactionCount());
-		callable.ifPresent(tracking -> tracking.updateMessage("Commiting " + updateTransaction.componentsInTransactionCount() + " components. "));
-		updateTransaction.commit();
+		LOG.debug("Comitting {} semantics", changes.size());
+		callable.ifPresent(tracking -> tracking.updateMessage("Commiting " + changes.size() + " components. "));
+		writeBackTimings = changes.applyAndCommit(updateTransaction);
 		ViewCoordinateRecord commitCoordinate = this.viewCalculator.viewCoordinateRecord();
 		commitCoordinate = commitCoordinate.withStampCoordinate(
 				commitCoordinate.stampCoordinate().withStampPositionTime(updateTransaction.commitTime()));
@@ -404,7 +399,7 @@ private void updateConceptsWithInferredNavigationChanges(int conceptNid, int inf
 	}
 
 	private void updateInferredNavigationSemantics(ConcurrentHashSet<Integer> conceptsWithNavigationChanges,
-			int inferredNavigationPatternNid, int updateStampNid, Transaction updateTransaction) {
+			int inferredNavigationPatternNid, int updateStampNid, WriteBackChanges changes) {
 		AtomicInteger axiomDataNotFoundCounter = new AtomicInteger();
 		conceptsWithNavigationChanges.parallelStream().forEach(conceptNid -> {
 
@@ -438,7 +433,7 @@ private void updateInferredNavigationSemantics(ConcurrentHashSet<Integer> concep
 					IntIdSet childrenIds = IntIds.set.of(childNids.toArray());
 					versionRecords.add(new SemanticVersionRecord(navigationRecord, updateStampNid,
 							Lists.immutable.of(childrenIds, parentIds)));
-					processSemantic(navigationRecord, updateTransaction);
+					changes.add(navigationRecord);
 				}
 			}
 			case 1 -> {
@@ -459,8 +454,8 @@ private void updateInferredNavigationSemantics(ConcurrentHashSet<Integer> concep
 				if (navigationChanged) {
 					IntIdSet newParentIds = IntIds.set.of(parentNids.toArray());
 					IntIdSet newChildIds = IntIds.set.of(childNids.toArray());
-					processSemantic(viewCalculator.updateFields(inferredNavigationNids[0],
-							Lists.immutable.of(newChildIds, newParentIds), updateStampNid), updateTransaction);
+					changes.add(viewCalculator.updateFields(inferredNavigationNids[0],
+							Lists.immutable.of(newChildIds, newParentIds), updateStampNid));
 				}
 			}
 			default -> throw new IllegalStateException(
@@ -475,11 +470,6 @@ private ViewCoordinateRecord getViewCoordinateRecord() {
 		return this.viewCalculator.viewCoordinateRecord();
 	}
 
-	private void processSemantic(Entity<? extends EntityVersion> entity, Transaction updateTransaction) {
-		updateTransaction.addComponent(entity);
-		Entity.provider().putEntity(entity);
-	}
-
 	private void testForProperSetSize(int[] inferredSemanticNids, int conceptNid, int[] statedSemanticNids)
 			throws IllegalStateException {
 		if (inferredSemanticNids.length > 1) {
@@ -0,0 +1,92 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.reasoner.service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import dev.ikm.tinkar.common.service.DataActivity;
+import dev.ikm.tinkar.common.util.time.Stopwatch;
+import dev.ikm.tinkar.entity.Entity;
+import dev.ikm.tinkar.entity.EntityService;
+import dev.ikm.tinkar.entity.EntityVersion;
+import dev.ikm.tinkar.entity.transaction.Transaction;
+
+/**
+ * Collects the semantics that classification changes, from any number of threads, and then writes them all in one
+ * bulk load phase and commits them with the single stamp of the classification transaction. Computing changes only
+ * reads the data store, so the computation can run in parallel without contending with writes, and caches are
+ * invalidated once when the load phase ends rather than for each semantic.
+ */
+class WriteBackChanges {
+
+	private static final Logger LOG = LoggerFactory.getLogger(WriteBackChanges.class);
+
+	private final ConcurrentLinkedQueue<Entity<? extends EntityVersion>> changes = new ConcurrentLinkedQueue<>();
+
+	private final Stopwatch computeStopwatch = new Stopwatch();
+
+	void add(Entity<? extends EntityVersion> entity) {
+		changes.add(entity);
+	}
+
+	int size() {
+		return changes.size();
+	}
+
+	/**
+	 * Writes the collected changes and commits the transaction.
+	 *
+	 * @return the time spent computing changes, since this was created, and the time of each write phase
+	 */
+	WriteBackTimings applyAndCommit(Transaction updateTransaction) {
+		computeStopwatch.stop();
+		List<Entity<? extends EntityVersion>> sortedChanges = new ArrayList<>(changes);
+		// Writing in nid order keeps writes to each spine or page together.
+		sortedChanges.sort(Comparator.comparingInt(Entity::nid));
+		sortedChanges.forEach(updateTransaction::addComponent);
+
+		Duration apply;
+		Duration commit;
+		Stopwatch indexStopwatch;
+		EntityService.get().beginLoadPhase();
+		try {
+			Stopwatch applyStopwatch = new Stopwatch();
+			EntityService.get().putEntitiesInBulk(sortedChanges, DataActivity.SYNCHRONIZABLE_EDIT);
+			applyStopwatch.stop();
+			apply = applyStopwatch.duration();
+
+			Stopwatch commitStopwatch = new Stopwatch();
+			updateTransaction.commit();
+			commitStopwatch.stop();
+			commit = commitStopwatch.duration();
+		} finally {
+			indexStopwatch = new Stopwatch();
+			EntityService.get().endLoadPhase();
+			indexStopwatch.stop();
+		}
+		WriteBackTimings timings = new WriteBackTimings(sortedChanges.size(), computeStopwatch.duration(), apply,
+				commit, indexStopwatch.duration());
+		LOG.info(timings.toString());
+		return timings;
+	}
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright © 2015 Integrated Knowledge Management (support@ikm.dev)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package dev.ikm.tinkar.reasoner.service;
+
+import java.time.Duration;
+
+import dev.ikm.tinkar.common.util.time.DurationUtil;
+
+/**
+ * Time spent in each phase of writing classifier results back to the data store.
+ *
+ * @param changeCount the number of semantics written
+ * @param compute     computing the changed inferred and navigation semantics
+ * @param apply       writing the changed semantics in bulk
+ * @param commit      committing the classification transaction
+ * @param indexes     rebuilding the indexes that were deferred during the bulk write, and invalidating caches
+ */
+public record WriteBackTimings(int changeCount, Duration compute, Duration apply, Duration commit, Duration indexes) {
+
+	public Duration total() {
+		return compute.plus(apply).plus(commit).plus(indexes);
+	}
+
+	@Override
+	public String toString() {
+		return "Wrote " + changeCount + " semantics in " + DurationUtil.format(total()) + " (compute "
+				+ DurationUtil.format(compute) + ", apply " + DurationUtil.format(apply) + ", commit "
+				+ DurationUtil.format(commit) + ", indexes " + DurationUtil.format(indexes) + ")";
+	}
+}